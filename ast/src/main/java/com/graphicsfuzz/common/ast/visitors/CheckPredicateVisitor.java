@@ -18,6 +18,12 @@ package com.graphicsfuzz.common.ast.visitors;
 
 import com.graphicsfuzz.common.ast.IAstNode;
 
+/**
+ * A visitor for checking whether some predicate holds of any node in a subtree.  Subclasses
+ * override visitor methods and call predicateHolds() when they find a node of interest; no further
+ * nodes are then visited.  Early termination is signalled via a flag rather than an exception, so
+ * that a check that succeeds is no more expensive than one that fails.
+ */
 public abstract class CheckPredicateVisitor extends StandardVisitor {
 
   private boolean predicateHolds;
@@ -26,18 +32,18 @@ public abstract class CheckPredicateVisitor extends StandardVisitor {
     this.predicateHolds = false;
   }
 
+  /**
+   * Records that the predicate holds, and stops visitation of any further nodes.  This method
+   * returns normally, so the code in the calling visitor method that follows the call still
+   * executes; it may call this method again, which is harmless.
+   */
   public final void predicateHolds() {
-    assert !predicateHolds;
     predicateHolds = true;
-    throw new AbortVisitationException();
+    abortVisitation();
   }
 
   public final boolean test(IAstNode node) {
-    try {
-      visit(node);
-    } catch (AbortVisitationException exception) {
-      // Good: visitation exited early
-    }
+    visit(node);
     return predicateHolds;
   }
 
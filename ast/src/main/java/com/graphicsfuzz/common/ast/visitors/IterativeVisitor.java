@@ -0,0 +1,163 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.common.ast.visitors;
+
+import com.graphicsfuzz.common.ast.IAstNode;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A visitor that traverses an AST using an explicit stack, rather than via recursive calls, so
+ * that arbitrarily deeply nested trees can be visited without risk of stack overflow.
+ *
+ * <p>Children are visited in exactly the order in which StandardVisitor visits them.  Subclasses
+ * override enterNode, which is invoked on the way down (and which can prevent the children of a
+ * node from being visited), and leaveNode, which is invoked on the way back up.  Visitation can be
+ * stopped early via abortVisitation.</p>
+ *
+ * <p>This is a separate kind of visitor rather than a mode of StandardVisitor, because subclasses
+ * of StandardVisitor, including ScopeTrackingVisitor, do their work in visitor methods that run
+ * code before and after calling the superclass method; that code relies on the recursion, so it
+ * cannot be driven from an explicit stack.  IterativeVisitor itself does not track scopes: an
+ * analysis that needs scope information should extend IterativeScopeTrackingVisitor instead.</p>
+ */
+public abstract class IterativeVisitor {
+
+  private final ChildCollector childCollector;
+
+  private int currentDepth;
+
+  private boolean visitationAborted;
+
+  public IterativeVisitor() {
+    this.childCollector = new ChildCollector();
+    this.currentDepth = 0;
+    this.visitationAborted = false;
+  }
+
+  /**
+   * Invoked when a node is first reached.
+   * @param node The node being entered.
+   * @return true if the children of the node should be visited, false if they should be skipped.
+   */
+  protected boolean enterNode(IAstNode node) {
+    return true;
+  }
+
+  /**
+   * Invoked after a node, and its children if they were not skipped, have been visited.
+   * @param node The node being left.
+   */
+  protected void leaveNode(IAstNode node) {
+  }
+
+  /**
+   * Requests that no further nodes are entered or left; visit returns as soon as the current
+   * enterNode or leaveNode invocation completes.
+   */
+  protected final void abortVisitation() {
+    visitationAborted = true;
+  }
+
+  protected final boolean isVisitationAborted() {
+    return visitationAborted;
+  }
+
+  /**
+   * Gives the depth of the node currently being entered or left, where the root of the traversal
+   * has depth 1.
+   * @return The current depth of visitation.
+   */
+  protected final int getCurrentDepth() {
+    return currentDepth;
+  }
+
+  public final void visit(IAstNode root) {
+    if (root == null) {
+      throw new RuntimeException("Attempt to visit null node");
+    }
+    visitationAborted = false;
+    final Deque<Frame> stack = new ArrayDeque<>();
+    push(stack, root);
+    while (!stack.isEmpty() && !visitationAborted) {
+      final Frame top = stack.peek();
+      if (top.nextChild < top.children.size()) {
+        final IAstNode child = top.children.get(top.nextChild);
+        top.nextChild++;
+        push(stack, child);
+      } else {
+        stack.pop();
+        leaveNode(top.node);
+        currentDepth = stack.size();
+      }
+    }
+    stack.clear();
+    currentDepth = 0;
+  }
+
+  private void push(Deque<Frame> stack, IAstNode node) {
+    currentDepth = stack.size() + 1;
+    final List<IAstNode> children = enterNode(node) && !visitationAborted
+        ? childCollector.getChildren(node)
+        : Collections.emptyList();
+    stack.push(new Frame(node, children));
+  }
+
+  private static final class Frame {
+
+    private final IAstNode node;
+    private final List<IAstNode> children;
+    private int nextChild;
+
+    private Frame(IAstNode node, List<IAstNode> children) {
+      this.node = node;
+      this.children = children;
+      this.nextChild = 0;
+    }
+
+  }
+
+  /**
+   * Reuses the child-ordering logic of StandardVisitor to get the immediate children of a node:
+   * rather than descending into each child, the child is simply recorded.  The children are
+   * captured in a fresh list so that enterNode and leaveNode are free to modify the AST.
+   */
+  private static final class ChildCollector extends StandardVisitor {
+
+    private List<IAstNode> children;
+
+    private List<IAstNode> getChildren(IAstNode node) {
+      children = new ArrayList<>();
+      node.accept(this);
+      final List<IAstNode> result = children;
+      children = null;
+      return result;
+    }
+
+    @Override
+    protected <T extends IAstNode> void visitChildFromParent(Consumer<T> visitorMethod, T child,
+        IAstNode parent) {
+      children.add(child);
+    }
+
+  }
+
+}
@@ -81,8 +81,12 @@ public abstract class StandardVisitor implements IAstVisitor {
 
   private int currentDepth;
 
+  // Set once a subclass has decided that there is no point visiting further nodes.
+  private boolean visitationAborted;
+
   public StandardVisitor() {
     currentDepth = 0;
+    visitationAborted = false;
   }
 
   public VisitationDepth getVistitationDepth() {
@@ -94,6 +98,9 @@ public abstract class StandardVisitor implements IAstVisitor {
     if (node == null) {
       throw new RuntimeException("Attempt to visit null node");
     }
+    if (visitationAborted) {
+      return;
+    }
     currentDepth++;
     node.accept(this);
     currentDepth--;
@@ -411,8 +418,40 @@ public abstract class StandardVisitor implements IAstVisitor {
     visitChildFromParent(lengthExpr.getReceiver(), lengthExpr);
   }
 
+  /**
+   * Requests that no further nodes are visited.  This is a cheap alternative to throwing an
+   * exception to escape from a deep traversal: the visitor methods that are currently on the stack
+   * run to completion, but every subsequent call to visit, and every subsequent visit of a child
+   * via visitChildFromParent, returns immediately.  A visitor method that a subclass invokes
+   * directly still runs, but does not visit any children.
+   */
+  protected final void abortVisitation() {
+    visitationAborted = true;
+  }
+
+  /**
+   * Determines whether visitation has been aborted.
+   * @return true if and only if abortVisitation has been invoked and visitation has not since been
+   *         resumed.
+   */
+  protected final boolean isVisitationAborted() {
+    return visitationAborted;
+  }
+
+  /**
+   * Allows a visitor whose visitation was aborted to be used for a further traversal.
+   */
+  protected final void resumeVisitation() {
+    visitationAborted = false;
+  }
+
   protected <T extends IAstNode> void visitChildFromParent(Consumer<T> visitorMethod, T child,
       IAstNode parent) {
+    // Children may be visited via a visitor method rather than via visit, so visitation must be
+    // checked for having been aborted here too.
+    if (visitationAborted) {
+      return;
+    }
     visitorMethod.accept(child);
   }
 
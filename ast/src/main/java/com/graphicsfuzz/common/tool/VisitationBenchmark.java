@@ -0,0 +1,198 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.common.tool;
+
+import com.graphicsfuzz.common.ast.IAstNode;
+import com.graphicsfuzz.common.ast.TranslationUnit;
+import com.graphicsfuzz.common.ast.expr.VariableIdentifierExpr;
+import com.graphicsfuzz.common.ast.visitors.AbortVisitationException;
+import com.graphicsfuzz.common.ast.visitors.CheckPredicateVisitor;
+import com.graphicsfuzz.common.ast.visitors.IterativeVisitor;
+import com.graphicsfuzz.common.ast.visitors.StandardVisitor;
+import com.graphicsfuzz.common.util.ParseHelper;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Predicate;
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
+import net.sourceforge.argparse4j.inf.Namespace;
+
+/**
+ * Measures the cost of the various ways of traversing an AST, on the largest shaders found under
+ * a given directory: full recursive traversal, exception-based early exit, flag-based early exit
+ * (as used by CheckPredicateVisitor) and explicit-stack traversal (as used by IterativeVisitor).
+ */
+public class VisitationBenchmark {
+
+  private static final String[] SHADER_EXTENSIONS = { ".frag", ".vert", ".comp" };
+
+  private static Namespace parse(String[] args) throws ArgumentParserException {
+    ArgumentParser parser = ArgumentParsers.newArgumentParser("VisitationBenchmark")
+        .defaultHelp(true)
+        .description("Benchmark AST visitation on the largest shaders in a directory.");
+
+    // Required arguments
+    parser.addArgument("shaders")
+        .help("Directory that is searched recursively for shaders.")
+        .type(File.class);
+
+    // Optional arguments
+    parser.addArgument("--num-shaders")
+        .help("Number of shaders, largest first, to benchmark.")
+        .setDefault(10)
+        .type(Integer.class);
+
+    parser.addArgument("--iterations")
+        .help("Number of timed traversals per shader and traversal kind.")
+        .setDefault(2000)
+        .type(Integer.class);
+
+    return parser.parseArgs(args);
+  }
+
+  public static void main(String[] args) {
+    try {
+      final Namespace ns = parse(args);
+      final List<File> shaders = new ArrayList<>();
+      findShaders(ns.get("shaders"), shaders);
+      shaders.sort(Comparator.comparingLong(File::length).reversed());
+      final int iterations = ns.getInt("iterations");
+
+      final List<TranslationUnit> tus = new ArrayList<>();
+      for (File shader : shaders.subList(0, Math.min(ns.getInt("num_shaders"),
+          shaders.size()))) {
+        tus.add(ParseHelper.parse(shader));
+        System.out.println("Benchmarking " + shader + " (" + shader.length() + " bytes)");
+      }
+
+      // Each check is run with a predicate that never holds, so that all of the tree is traversed,
+      // and with one that holds at the first variable reference, so that the early exit path is
+      // exercised.
+      final Predicate<VariableIdentifierExpr> never = item -> false;
+      final Predicate<VariableIdentifierExpr> always = item -> true;
+
+      // Warm up, so that the JIT has the chance to compile all traversal kinds before timing.
+      for (int i = 0; i < iterations; i++) {
+        for (TranslationUnit tu : tus) {
+          recursiveFullTraversal(tu);
+          exceptionCheck(tu, always);
+          flagCheck(tu, always);
+          iterativeCheck(tu, never);
+        }
+      }
+
+      report("recursive, full traversal", iterations, tus,
+          tu -> recursiveFullTraversal(tu));
+      report("exception early exit, no match", iterations, tus, tu -> exceptionCheck(tu, never));
+      report("exception early exit, first match", iterations, tus,
+          tu -> exceptionCheck(tu, always));
+      report("flag early exit, no match", iterations, tus, tu -> flagCheck(tu, never));
+      report("flag early exit, first match", iterations, tus, tu -> flagCheck(tu, always));
+      report("iterative, no match", iterations, tus, tu -> iterativeCheck(tu, never));
+      report("iterative, first match", iterations, tus, tu -> iterativeCheck(tu, always));
+    } catch (Throwable exception) {
+      exception.printStackTrace();
+      System.exit(1);
+    }
+  }
+
+  private static void findShaders(File directory, List<File> result) {
+    final File[] files = directory.listFiles();
+    if (files == null) {
+      return;
+    }
+    for (File file : files) {
+      if (file.isDirectory()) {
+        findShaders(file, result);
+      } else if (Arrays.stream(SHADER_EXTENSIONS).anyMatch(item -> file.getName()
+          .endsWith(item))) {
+        result.add(file);
+      }
+    }
+  }
+
+  private static void report(String name, int iterations, List<TranslationUnit> tus,
+                             Predicate<TranslationUnit> traversal) {
+    int matches = 0;
+    final long startTime = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      for (TranslationUnit tu : tus) {
+        if (traversal.test(tu)) {
+          matches++;
+        }
+      }
+    }
+    final long endTime = System.nanoTime();
+    System.out.printf("%-36s %10.1f us/traversal (%d matches)%n", name,
+        (endTime - startTime) / 1000.0 / (iterations * (long) tus.size()), matches);
+  }
+
+  private static boolean recursiveFullTraversal(IAstNode node) {
+    new StandardVisitor() { }.visit(node);
+    return false;
+  }
+
+  private static boolean exceptionCheck(IAstNode node,
+                                        Predicate<VariableIdentifierExpr> predicate) {
+    try {
+      new StandardVisitor() {
+        @Override
+        public void visitVariableIdentifierExpr(VariableIdentifierExpr variableIdentifierExpr) {
+          if (predicate.test(variableIdentifierExpr)) {
+            throw new AbortVisitationException();
+          }
+        }
+      }.visit(node);
+    } catch (AbortVisitationException exception) {
+      return true;
+    }
+    return false;
+  }
+
+  private static boolean flagCheck(IAstNode node, Predicate<VariableIdentifierExpr> predicate) {
+    return new CheckPredicateVisitor() {
+      @Override
+      public void visitVariableIdentifierExpr(VariableIdentifierExpr variableIdentifierExpr) {
+        if (predicate.test(variableIdentifierExpr)) {
+          predicateHolds();
+        }
+      }
+    }.test(node);
+  }
+
+  private static boolean iterativeCheck(IAstNode node,
+                                        Predicate<VariableIdentifierExpr> predicate) {
+    final boolean[] result = new boolean[1];
+    new IterativeVisitor() {
+      @Override
+      protected boolean enterNode(IAstNode current) {
+        if (current instanceof VariableIdentifierExpr
+            && predicate.test((VariableIdentifierExpr) current)) {
+          result[0] = true;
+          abortVisitation();
+        }
+        return true;
+      }
+    }.visit(node);
+    return result[0];
+  }
+
+}
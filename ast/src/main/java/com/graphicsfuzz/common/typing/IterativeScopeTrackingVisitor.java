@@ -0,0 +1,222 @@
+/*
+ * Copyright 2019 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.common.typing;
+
+import com.graphicsfuzz.common.ast.IAstNode;
+import com.graphicsfuzz.common.ast.decl.FunctionDefinition;
+import com.graphicsfuzz.common.ast.decl.FunctionPrototype;
+import com.graphicsfuzz.common.ast.decl.InterfaceBlock;
+import com.graphicsfuzz.common.ast.decl.ParameterDecl;
+import com.graphicsfuzz.common.ast.decl.VariableDeclInfo;
+import com.graphicsfuzz.common.ast.decl.VariablesDeclaration;
+import com.graphicsfuzz.common.ast.stmt.BlockStmt;
+import com.graphicsfuzz.common.ast.stmt.ForStmt;
+import com.graphicsfuzz.common.ast.stmt.WhileStmt;
+import com.graphicsfuzz.common.ast.type.StructDefinitionType;
+import com.graphicsfuzz.common.ast.visitors.IterativeVisitor;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * This class extends IterativeVisitor to track details of what is in scope at each point of
+ * visitation, following the same scoping rules as ScopeTrackingVisitor.  It is for analyses that
+ * need scope information but must not overflow the stack on deeply nested shaders.
+ *
+ * <p>Subclasses that override enterNode or leaveNode *must* invoke the superclass method,
+ * otherwise scopes will not be properly tracked.  When enterNode is invoked on a node, the current
+ * scope is the scope in which the node occurs; a declaration is added to the current scope when
+ * the declaration is left, as happens with ScopeTrackingVisitor.</p>
+ */
+public abstract class IterativeScopeTrackingVisitor extends IterativeVisitor {
+
+  // Tracks the scope at the current point of visitation.
+  private Scope currentScope;
+
+  // Tracks the function, if any, enclosing the current point of visitation.  If this field is null,
+  // this indicates that visitation is at global scope.
+  private FunctionDefinition enclosingFunction;
+
+  // A stack of the blocks that enclose the current point of visitation.
+  private final Deque<BlockStmt> enclosingBlocks;
+
+  // A stack of the variables declarations that enclose the current point of visitation; a
+  // variable declaration info is added to scope using the base type of the innermost one.
+  private final Deque<VariablesDeclaration> enclosingVariablesDeclarations;
+
+  // All of the function prototypes that have been encountered during visitation so far.
+  private final List<FunctionPrototype> encounteredFunctionPrototypes;
+
+  // As with ScopeTrackingVisitor, parameters are added to the current scope if and only if they
+  // belong to the prototype of a function definition.
+  private boolean addEncounteredParametersToScope;
+
+  protected IterativeScopeTrackingVisitor() {
+    this.currentScope = new Scope();
+    this.enclosingFunction = null;
+    this.enclosingBlocks = new LinkedList<>();
+    this.enclosingVariablesDeclarations = new LinkedList<>();
+    this.encounteredFunctionPrototypes = new ArrayList<>();
+    this.addEncounteredParametersToScope = false;
+  }
+
+  @Override
+  protected boolean enterNode(IAstNode node) {
+    if (getCurrentDepth() == 1) {
+      // A previous visitation might have been aborted part way through, so get back to global
+      // scope before starting.
+      resetToGlobalScope();
+    }
+    if (node instanceof FunctionDefinition) {
+      assert enclosingFunction == null;
+      enclosingFunction = (FunctionDefinition) node;
+      pushScope();
+    } else if (node instanceof FunctionPrototype) {
+      addEncounteredParametersToScope = enclosingFunction != null
+          && enclosingFunction.getPrototype() == node;
+    } else if (node instanceof BlockStmt) {
+      enclosingBlocks.addFirst((BlockStmt) node);
+      if (((BlockStmt) node).introducesNewScope()) {
+        pushScope();
+      }
+    } else if (node instanceof ForStmt || node instanceof WhileStmt) {
+      // As with ScopeTrackingVisitor, a 'for' or 'while' statement, rather than its open-curly,
+      // starts a new scope.
+      pushScope();
+    } else if (node instanceof VariablesDeclaration) {
+      enclosingVariablesDeclarations.addFirst((VariablesDeclaration) node);
+    }
+    return true;
+  }
+
+  @Override
+  protected void leaveNode(IAstNode node) {
+    if (node instanceof FunctionDefinition) {
+      popScope();
+      enclosingFunction = null;
+    } else if (node instanceof FunctionPrototype) {
+      encounteredFunctionPrototypes.add((FunctionPrototype) node);
+      addEncounteredParametersToScope = false;
+    } else if (node instanceof ParameterDecl) {
+      final ParameterDecl parameterDecl = (ParameterDecl) node;
+      if (addEncounteredParametersToScope && parameterDecl.getName() != null) {
+        currentScope.add(parameterDecl.getName(),
+            Typer.combineBaseTypeAndArrayInfo(parameterDecl.getType(),
+                parameterDecl.getArrayInfo()),
+            parameterDecl);
+      }
+    } else if (node instanceof BlockStmt) {
+      if (((BlockStmt) node).introducesNewScope()) {
+        popScope();
+      }
+      enclosingBlocks.removeFirst();
+    } else if (node instanceof ForStmt || node instanceof WhileStmt) {
+      popScope();
+    } else if (node instanceof VariablesDeclaration) {
+      enclosingVariablesDeclarations.removeFirst();
+    } else if (node instanceof VariableDeclInfo) {
+      final VariableDeclInfo declInfo = (VariableDeclInfo) node;
+      final VariablesDeclaration variablesDeclaration = enclosingVariablesDeclarations.peekFirst();
+      currentScope.add(declInfo.getName(),
+          Typer.combineBaseTypeAndArrayInfo(variablesDeclaration.getBaseType(),
+              declInfo.getArrayInfo()),
+          declInfo, variablesDeclaration);
+    } else if (node instanceof StructDefinitionType) {
+      final StructDefinitionType structDefinitionType = (StructDefinitionType) node;
+      if (structDefinitionType.hasStructNameType()) {
+        currentScope.addStructDefinition(structDefinitionType);
+      }
+    } else if (node instanceof InterfaceBlock) {
+      assert atGlobalScope();
+      final InterfaceBlock interfaceBlock = (InterfaceBlock) node;
+      for (String member : interfaceBlock.getMemberNames()) {
+        currentScope.add(member, interfaceBlock.getMemberType(member), interfaceBlock);
+      }
+    }
+  }
+
+  /**
+   * Returns the closest block enclosing the current point of visitation.
+   *
+   * @return The closest block
+   */
+  protected BlockStmt currentBlock() {
+    return enclosingBlocks.peekFirst();
+  }
+
+  /**
+   * Returns true if and only if visitation is in some block.
+   *
+   * @return Whether visitation is in a block
+   */
+  protected boolean inSomeBlock() {
+    return !enclosingBlocks.isEmpty();
+  }
+
+  /**
+   * Yield the function prototypes that have been encountered during visitation so far.
+   * @return The function prototypes that have been encountered during visitation so far
+   */
+  protected List<FunctionPrototype> getEncounteredFunctionPrototypes() {
+    return Collections.unmodifiableList(encounteredFunctionPrototypes);
+  }
+
+  /**
+   * Determines whether visitation is at global scope, i.e. not in any function.
+   * @return true if and only if visitation is at global scope
+   */
+  protected boolean atGlobalScope() {
+    return !currentScope.hasParent();
+  }
+
+  /**
+   * Yields the current scope.
+   * @return the current scope
+   */
+  protected Scope getCurrentScope() {
+    return currentScope;
+  }
+
+  /**
+   * Yields the function enclosing the current point of visitation.
+   * @return the function enclosing the current point of visitation
+   */
+  protected FunctionDefinition getEnclosingFunction() {
+    return enclosingFunction;
+  }
+
+  private void popScope() {
+    currentScope = currentScope.getParent();
+  }
+
+  private void pushScope() {
+    currentScope = new Scope(currentScope);
+  }
+
+  private void resetToGlobalScope() {
+    while (currentScope.hasParent()) {
+      popScope();
+    }
+    enclosingFunction = null;
+    enclosingBlocks.clear();
+    enclosingVariablesDeclarations.clear();
+    addEncounteredParametersToScope = false;
+  }
+
+}
@@ -36,6 +36,10 @@ public class Scope {
   private final Map<String, StructDefinitionType> structMapping = new HashMap<>();
   private final Scope parent;
 
+  // Incremented whenever a variable is added to or removed from this scope, so that clients can
+  // cache information derived from the variables in scope.
+  private int numVariableModifications = 0;
+
   public Scope() {
     this.parent = null;
   }
@@ -51,6 +55,7 @@ public class Scope {
   public void add(String name, Type type) {
     checkNameTypeAndParam(name, type, Optional.empty());
     variableMapping.put(name, new ScopeEntry(type));
+    numVariableModifications++;
   }
 
   public void add(String name, Type type,
@@ -58,16 +63,19 @@ public class Scope {
                   VariablesDeclaration variablesDecl) {
     checkNameTypeAndParam(name, type, Optional.empty());
     variableMapping.put(name, new ScopeEntry(type, declInfo, variablesDecl));
+    numVariableModifications++;
   }
 
   public void add(String name, Type type, ParameterDecl parameterDecl) {
     checkNameTypeAndParam(name, type, Optional.of(parameterDecl));
     variableMapping.put(name, new ScopeEntry(type, parameterDecl));
+    numVariableModifications++;
   }
 
   public void add(String name, Type type, InterfaceBlock interfaceBlock) {
     checkNameTypeAndParam(name, type, Optional.empty());
     variableMapping.put(name, new ScopeEntry(type, interfaceBlock));
+    numVariableModifications++;
   }
 
   public void addStructDefinition(StructDefinitionType sdt) {
@@ -100,11 +108,10 @@ public class Scope {
    * @return Corresponding struct definition, if found, otherwise null.
    */
   public StructDefinitionType lookupStructName(String structName) {
-    if (structMapping.containsKey(structName)) {
-      return structMapping.get(structName);
-    }
-    if (hasParent()) {
-      return getParent().lookupStructName(structName);
+    for (Scope current = this; current != null; current = current.parent) {
+      if (current.structMapping.containsKey(structName)) {
+        return current.structMapping.get(structName);
+      }
     }
     return null;
   }
@@ -128,11 +135,10 @@ public class Scope {
   }
 
   public ScopeEntry lookupScopeEntry(String name) {
-    if (variableMapping.containsKey(name)) {
-      return variableMapping.get(name);
-    }
-    if (parent != null) {
-      return parent.lookupScopeEntry(name);
+    for (Scope current = this; current != null; current = current.parent) {
+      if (current.variableMapping.containsKey(name)) {
+        return current.variableMapping.get(name);
+      }
     }
     return null;
   }
@@ -156,6 +162,20 @@ public class Scope {
     return Collections.unmodifiableList(result);
   }
 
+  /**
+   * Yields a number that changes whenever a variable is added to or removed from this scope or one
+   * of its ancestors.  Comparing versions of the same scope object thus shows whether the set of
+   * variables in scope may have changed.
+   * @return The version of the variables in scope.
+   */
+  public int getVariablesVersion() {
+    int result = 0;
+    for (Scope scope = this; scope != null; scope = scope.parent) {
+      result += scope.numVariableModifications;
+    }
+    return result;
+  }
+
   public List<String> namesOfAllStructDefinitionsInScope() {
     List<String> result = new ArrayList<>();
     Scope scope = this;
@@ -201,6 +221,7 @@ public class Scope {
    */
   public ScopeEntry remove(String name) {
     if (variableMapping.containsKey(name)) {
+      numVariableModifications++;
       return variableMapping.remove(name);
     }
     if (hasParent()) {
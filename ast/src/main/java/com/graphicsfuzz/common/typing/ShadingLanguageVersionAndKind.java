@@ -50,6 +50,11 @@ public class ShadingLanguageVersionAndKind {
 
   @Override
   public int hashCode() {
-    return Objects.hash(shadingLanguageVersion, isWgslCompatible, shaderKind);
+    // Computed without Objects.hash, which allocates, as a key is made on every lookup of the
+    // built-ins.
+    int result = Objects.hashCode(shadingLanguageVersion);
+    result = 31 * result + Boolean.hashCode(isWgslCompatible);
+    result = 31 * result + Objects.hashCode(shaderKind);
+    return result;
   }
 }
@@ -34,7 +34,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.stream.Collectors;
 
 /**
  * This helper class factors out some context-independent parts of typechecking,
@@ -43,8 +42,9 @@ import java.util.stream.Collectors;
 public final class TyperHelper {
 
   // Maps a shading language version + shader kind (+ WGSL compatibility) to a mapping from
-  // builtin names to builtin function prototypes.
-  private static ConcurrentMap<ShadingLanguageVersionAndKind, Map<String,
+  // builtin names to builtin function prototypes.  Each mapping is built once, the first time it
+  // is asked for, and is then shared, unmodifiable, by all threads.
+  private static final ConcurrentMap<ShadingLanguageVersionAndKind, Map<String,
       List<FunctionPrototype>>> builtins =
       new ConcurrentHashMap<>();
 
@@ -287,7 +287,8 @@ public final class TyperHelper {
    *                         should be included.
    * @param shaderKind kind of shader (e.g. fragment or compute) for which relevant builtins
    *                   should be returned.
-   * @return a mapping from name of builtin to sequence of function prototypes.
+   * @return a mapping from name of builtin to sequence of function prototypes; the mapping and
+   *         its sequences are shared, and cannot be modified.
    */
   public static Map<String, List<FunctionPrototype>> getBuiltins(
       ShadingLanguageVersion shadingLanguageVersion,
@@ -296,14 +297,21 @@ public final class TyperHelper {
 
     assert shadingLanguageVersion != null;
     assert shaderKind != null;
-    ShadingLanguageVersionAndKind key = new ShadingLanguageVersionAndKind(shadingLanguageVersion,
-        isWgslCompatible, shaderKind);
+    // Threads that ask for the same mapping while it is being built wait for it, rather than
+    // building it again.
+    return builtins.computeIfAbsent(
+        new ShadingLanguageVersionAndKind(shadingLanguageVersion, isWgslCompatible, shaderKind),
+        key -> freeze(getBuiltinsForGlslVersion(shadingLanguageVersion, isWgslCompatible,
+            shaderKind)));
+  }
 
-    if (!builtins.containsKey(key)) {
-      builtins.putIfAbsent(key,
-          getBuiltinsForGlslVersion(shadingLanguageVersion, isWgslCompatible, shaderKind));
+  private static Map<String, List<FunctionPrototype>> freeze(
+      Map<String, List<FunctionPrototype>> builtinsForVersion) {
+    final Map<String, List<FunctionPrototype>> result = new HashMap<>();
+    for (Map.Entry<String, List<FunctionPrototype>> entry : builtinsForVersion.entrySet()) {
+      result.put(entry.getKey(), Collections.unmodifiableList(entry.getValue()));
     }
-    return Collections.unmodifiableMap(builtins.get(key));
+    return Collections.unmodifiableMap(result);
   }
 
   private static Map<String, List<FunctionPrototype>> getBuiltinsForGlslVersion(
@@ -553,14 +561,10 @@ public final class TyperHelper {
       ShadingLanguageVersion shadingLanguageVersion) {
     // We need these for every function, so instead of constantly calling the functions,
     // we'll just cache them to reduce cruft.
-    final List<Type> genVectors = genType().stream().filter(
-        item -> !BasicType.allScalarTypes().contains(item)).collect(Collectors.toList());
-    final List<Type> igenVectors = igenType().stream().filter(
-        item -> !BasicType.allScalarTypes().contains(item)).collect(Collectors.toList());
-    final List<Type> ugenVectors = ugenType().stream().filter(
-        item -> !BasicType.allScalarTypes().contains(item)).collect(Collectors.toList());
-    final List<Type> bgenVectors = bgenType().stream().filter(
-        item -> !BasicType.allScalarTypes().contains(item)).collect(Collectors.toList());
+    final List<Type> genVectors = vectorTypes(genType());
+    final List<Type> igenVectors = vectorTypes(igenType());
+    final List<Type> ugenVectors = vectorTypes(ugenType());
+    final List<Type> bgenVectors = vectorTypes(bgenType());
     final boolean supportsUnsigned = shadingLanguageVersion.supportedUnsigned();
 
     {
@@ -1568,6 +1572,18 @@ public final class TyperHelper {
     return Arrays.asList(BasicType.BOOL, BasicType.BVEC2, BasicType.BVEC3, BasicType.BVEC4);
   }
 
+  // A plain loop rather than a stream: the tables are built at startup, when setting up a stream
+  // pipeline costs more than the filtering it does.
+  private static List<Type> vectorTypes(List<Type> types) {
+    final List<Type> result = new ArrayList<>();
+    for (Type type : types) {
+      if (!BasicType.allScalarTypes().contains(type)) {
+        result.add(type);
+      }
+    }
+    return result;
+  }
+
   /**
    * Checks equality on types, after following struct definitions to their struct names.
    * @param lhsType The first type to be checked for equality
@@ -58,4 +58,23 @@ public class IdGenerator {
     return result;
   }
 
+  /**
+   * Gets the id from which the search for the next fresh id will start, so that the generator
+   * can later be put back in the same position; e.g. to replay a reduction.
+   *
+   * @return The id from which the next search starts.
+   */
+  public int getNextFreeId() {
+    return nextFreeId;
+  }
+
+  /**
+   * Sets the id from which the search for the next fresh id will start.
+   *
+   * @param nextFreeId An id previously obtained from {@link #getNextFreeId()}.
+   */
+  public void setNextFreeId(int nextFreeId) {
+    this.nextFreeId = nextFreeId;
+  }
+
 }
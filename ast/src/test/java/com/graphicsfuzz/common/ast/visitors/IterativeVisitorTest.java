@@ -0,0 +1,219 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.common.ast.visitors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.graphicsfuzz.common.ast.IAstNode;
+import com.graphicsfuzz.common.ast.TranslationUnit;
+import com.graphicsfuzz.common.ast.decl.FunctionPrototype;
+import com.graphicsfuzz.common.ast.expr.Expr;
+import com.graphicsfuzz.common.ast.expr.IntConstantExpr;
+import com.graphicsfuzz.common.ast.expr.ParenExpr;
+import com.graphicsfuzz.common.ast.expr.VariableIdentifierExpr;
+import com.graphicsfuzz.common.ast.stmt.BlockStmt;
+import com.graphicsfuzz.common.ast.stmt.BreakStmt;
+import com.graphicsfuzz.common.ast.stmt.ForStmt;
+import com.graphicsfuzz.common.util.ParseHelper;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import org.junit.Test;
+
+public class IterativeVisitorTest {
+
+  private static final String PROGRAM = "#version 310 es\n"
+      + "struct S { int a; float b[3]; };\n"
+      + "uniform S s;\n"
+      + "int foo(int x, float y[2]);\n"
+      + "int foo(int x, float y[2]) {\n"
+      + "  for (int i = 0; i < x; i++) {\n"
+      + "    if (i > 2) { break; } else { x += s.a; }\n"
+      + "  }\n"
+      + "  switch (x) { case 1: return 2; default: break; }\n"
+      + "  return x > 0 ? int(y[0]) : (x + 1);\n"
+      + "}\n"
+      + "void main() {\n"
+      + "  float arr[2] = float[2](1.0, 2.0);\n"
+      + "  do { foo(1, arr); } while (false);\n"
+      + "}\n";
+
+  @Test
+  public void testSameOrderAsStandardVisitor() throws Exception {
+    final TranslationUnit tu = ParseHelper.parse(PROGRAM);
+
+    final List<IAstNode> recursiveOrder = new ArrayList<>();
+    recursiveOrder.add(tu);
+    new StandardVisitor() {
+      @Override
+      protected <T extends IAstNode> void visitChildFromParent(Consumer<T> visitorMethod,
+                                                               T child, IAstNode parent) {
+        recursiveOrder.add(child);
+        super.visitChildFromParent(visitorMethod, child, parent);
+      }
+    }.visit(tu);
+
+    final List<IAstNode> iterativeOrder = new ArrayList<>();
+    new IterativeVisitor() {
+      @Override
+      protected boolean enterNode(IAstNode node) {
+        iterativeOrder.add(node);
+        return true;
+      }
+    }.visit(tu);
+
+    assertEquals(recursiveOrder.size(), iterativeOrder.size());
+    for (int i = 0; i < recursiveOrder.size(); i++) {
+      assertSame(recursiveOrder.get(i), iterativeOrder.get(i));
+    }
+  }
+
+  @Test
+  public void testEnterAndLeaveAreBalanced() throws Exception {
+    final TranslationUnit tu = ParseHelper.parse(PROGRAM);
+    final List<IAstNode> stack = new ArrayList<>();
+    new IterativeVisitor() {
+      @Override
+      protected boolean enterNode(IAstNode node) {
+        stack.add(node);
+        assertEquals(stack.size(), getCurrentDepth());
+        return true;
+      }
+
+      @Override
+      protected void leaveNode(IAstNode node) {
+        assertEquals(stack.size(), getCurrentDepth());
+        assertSame(node, stack.remove(stack.size() - 1));
+      }
+    }.visit(tu);
+    assertTrue(stack.isEmpty());
+  }
+
+  @Test
+  public void testSkipChildren() throws Exception {
+    final TranslationUnit tu = ParseHelper.parse(PROGRAM);
+    // There is a break inside the for loop and one inside the switch statement; only the latter
+    // should be found if loop bodies are skipped.
+    final List<BreakStmt> breaks = new ArrayList<>();
+    new IterativeVisitor() {
+      @Override
+      protected boolean enterNode(IAstNode node) {
+        if (node instanceof BreakStmt) {
+          breaks.add((BreakStmt) node);
+        }
+        return !(node instanceof ForStmt);
+      }
+    }.visit(tu);
+    assertEquals(1, breaks.size());
+  }
+
+  @Test
+  public void testAbortVisitation() throws Exception {
+    final TranslationUnit tu = ParseHelper.parse(PROGRAM);
+    final List<IAstNode> entered = new ArrayList<>();
+    final List<IAstNode> left = new ArrayList<>();
+    new IterativeVisitor() {
+      @Override
+      protected boolean enterNode(IAstNode node) {
+        entered.add(node);
+        if (node instanceof VariableIdentifierExpr) {
+          abortVisitation();
+        }
+        return true;
+      }
+
+      @Override
+      protected void leaveNode(IAstNode node) {
+        left.add(node);
+      }
+    }.visit(tu);
+    assertTrue(entered.get(entered.size() - 1) instanceof VariableIdentifierExpr);
+    assertFalse(left.contains(tu));
+  }
+
+  @Test
+  public void testVeryDeepExpression() {
+    // An expression nested deeply enough that a recursive traversal would overflow the stack.
+    final int depth = 200000;
+    Expr expr = new IntConstantExpr("1");
+    for (int i = 0; i < depth; i++) {
+      expr = new ParenExpr(expr);
+    }
+    final int[] numNodes = new int[1];
+    final int[] maxDepth = new int[1];
+    new IterativeVisitor() {
+      @Override
+      protected boolean enterNode(IAstNode node) {
+        numNodes[0]++;
+        maxDepth[0] = Math.max(maxDepth[0], getCurrentDepth());
+        return true;
+      }
+    }.visit(expr);
+    assertEquals(depth + 1, numNodes[0]);
+    assertEquals(depth + 1, maxDepth[0]);
+  }
+
+  @Test
+  public void testCheckPredicateVisitorStopsEarly() throws Exception {
+    final TranslationUnit tu = ParseHelper.parse(PROGRAM);
+    // Plenty of variable identifiers follow the first break statement; none of them should be
+    // reached once the predicate has been found to hold.
+    final List<VariableIdentifierExpr> visitedAfterMatch = new ArrayList<>();
+    assertTrue(new CheckPredicateVisitor() {
+      @Override
+      public void visitVariableIdentifierExpr(VariableIdentifierExpr variableIdentifierExpr) {
+        if (isVisitationAborted()) {
+          visitedAfterMatch.add(variableIdentifierExpr);
+        }
+        super.visitVariableIdentifierExpr(variableIdentifierExpr);
+      }
+
+      @Override
+      public void visitBreakStmt(BreakStmt breakStmt) {
+        predicateHolds();
+      }
+    }.test(tu));
+    assertTrue(visitedAfterMatch.isEmpty());
+  }
+
+  @Test
+  public void testAbortStopsChildrenVisitedViaVisitorMethods() throws Exception {
+    final TranslationUnit tu = ParseHelper.parse(PROGRAM);
+    // StandardVisitor visits the body of a function definition by calling visitBlockStmt directly
+    // rather than via visit; aborting while visiting the prototype must still skip the body.
+    final List<BlockStmt> visitedAfterAbort = new ArrayList<>();
+    new StandardVisitor() {
+      @Override
+      public void visitFunctionPrototype(FunctionPrototype functionPrototype) {
+        abortVisitation();
+      }
+
+      @Override
+      public void visitBlockStmt(BlockStmt stmt) {
+        if (isVisitationAborted()) {
+          visitedAfterAbort.add(stmt);
+        }
+        super.visitBlockStmt(stmt);
+      }
+    }.visit(tu);
+    assertTrue(visitedAfterAbort.isEmpty());
+  }
+
+}
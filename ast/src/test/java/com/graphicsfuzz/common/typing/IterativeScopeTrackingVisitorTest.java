@@ -0,0 +1,167 @@
+/*
+ * Copyright 2019 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.common.typing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.graphicsfuzz.common.ast.IAstNode;
+import com.graphicsfuzz.common.ast.TranslationUnit;
+import com.graphicsfuzz.common.ast.decl.VariableDeclInfo;
+import com.graphicsfuzz.common.ast.decl.VariablesDeclaration;
+import com.graphicsfuzz.common.ast.expr.TypeConstructorExpr;
+import com.graphicsfuzz.common.ast.expr.VariableIdentifierExpr;
+import com.graphicsfuzz.common.ast.stmt.BlockStmt;
+import com.graphicsfuzz.common.ast.stmt.DeclarationStmt;
+import com.graphicsfuzz.common.ast.stmt.ExprStmt;
+import com.graphicsfuzz.common.ast.stmt.Stmt;
+import com.graphicsfuzz.common.ast.type.BasicType;
+import com.graphicsfuzz.common.util.ParseHelper;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+public class IterativeScopeTrackingVisitorTest {
+
+  private static final String PROGRAM = "#version 310 es\n"
+      + "struct S { int a; };\n"
+      + "uniform buf { int x; float y; };\n"
+      + "int g = 1;\n"
+      + "int foo(int g, float y);\n"
+      + "int foo(int g, float y) {\n"
+      + "  S s = S(g);\n"
+      + "  {\n"
+      + "    struct T { float b; };\n"
+      + "    T t = T(y);\n"
+      + "    int g = s.a;\n"
+      + "    g++;\n"
+      + "  }\n"
+      + "  for (int x = g; x < 10; x++) {\n"
+      + "    int g = x;\n"
+      + "    g++;\n"
+      + "  }\n"
+      + "  while (x > g) {\n"
+      + "    bool x = false;\n"
+      + "    x = !x;\n"
+      + "  }\n"
+      + "  return g + x;\n"
+      + "}\n"
+      + "void main() {\n"
+      + "  int a = g, b = a + x;\n"
+      + "  switch (a) { default: int g = b; g++; }\n"
+      + "  foo(g, y);\n"
+      + "}\n";
+
+  @Test
+  public void testResolvesNamesAsScopeTrackingVisitorDoes() throws Exception {
+    final TranslationUnit tu = ParseHelper.parse(PROGRAM);
+
+    final List<Object> recursiveResolutions = new ArrayList<>();
+    new ScopeTrackingVisitor() {
+      @Override
+      public void visitVariableIdentifierExpr(VariableIdentifierExpr variableIdentifierExpr) {
+        super.visitVariableIdentifierExpr(variableIdentifierExpr);
+        recursiveResolutions.add(resolve(getCurrentScope(), variableIdentifierExpr));
+      }
+
+      @Override
+      public void visitTypeConstructorExpr(TypeConstructorExpr typeConstructorExpr) {
+        recursiveResolutions.add(resolve(getCurrentScope(), typeConstructorExpr));
+        super.visitTypeConstructorExpr(typeConstructorExpr);
+      }
+    }.visit(tu);
+
+    final List<Object> iterativeResolutions = new ArrayList<>();
+    new IterativeScopeTrackingVisitor() {
+      @Override
+      protected boolean enterNode(IAstNode node) {
+        super.enterNode(node);
+        if (node instanceof TypeConstructorExpr) {
+          iterativeResolutions.add(resolve(getCurrentScope(), node));
+        }
+        return true;
+      }
+
+      @Override
+      protected void leaveNode(IAstNode node) {
+        super.leaveNode(node);
+        if (node instanceof VariableIdentifierExpr) {
+          iterativeResolutions.add(resolve(getCurrentScope(), node));
+        }
+      }
+    }.visit(tu);
+
+    assertEquals(25, recursiveResolutions.size());
+    assertEquals(recursiveResolutions.size(), iterativeResolutions.size());
+    for (int i = 0; i < recursiveResolutions.size(); i++) {
+      assertNotNull(recursiveResolutions.get(i));
+      assertSame(recursiveResolutions.get(i), iterativeResolutions.get(i));
+    }
+  }
+
+  @Test
+  public void testDeeplyNestedBlocks() throws Exception {
+    // Declare a variable at the top of a very deeply nested stack of blocks, and use it at the
+    // bottom; recursive visitation of such a tree would overflow the stack.
+    final VariableDeclInfo declInfo = new VariableDeclInfo("v", null, null);
+    final VariableIdentifierExpr use = new VariableIdentifierExpr("v");
+    Stmt stmt = new ExprStmt(use);
+    for (int i = 0; i < 100000; i++) {
+      stmt = new BlockStmt(Collections.singletonList(stmt), true);
+    }
+    final BlockStmt root = new BlockStmt(Arrays.asList(
+        new DeclarationStmt(new VariablesDeclaration(BasicType.INT, declInfo)), stmt), true);
+
+    final List<Object> resolutions = new ArrayList<>();
+    new IterativeScopeTrackingVisitor() {
+      @Override
+      protected void leaveNode(IAstNode node) {
+        if (node == use) {
+          resolutions.add(resolve(getCurrentScope(), node));
+          assertTrue(inSomeBlock());
+        }
+        super.leaveNode(node);
+      }
+    }.visit(root);
+
+    assertEquals(1, resolutions.size());
+    assertSame(declInfo, resolutions.get(0));
+  }
+
+  private static Object resolve(Scope scope, IAstNode node) {
+    if (node instanceof TypeConstructorExpr) {
+      return scope.lookupStructName(((TypeConstructorExpr) node).getTypename());
+    }
+    final ScopeEntry scopeEntry = scope.lookupScopeEntry(((VariableIdentifierExpr) node)
+        .getName());
+    if (scopeEntry == null) {
+      return null;
+    }
+    if (scopeEntry.hasVariableDeclInfo()) {
+      return scopeEntry.getVariableDeclInfo();
+    }
+    if (scopeEntry.hasParameterDecl()) {
+      return scopeEntry.getParameterDecl();
+    }
+    return scopeEntry.getInterfaceBlock();
+  }
+
+}
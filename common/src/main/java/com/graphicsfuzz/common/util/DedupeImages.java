@@ -0,0 +1,104 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.common.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
+import net.sourceforge.argparse4j.inf.Namespace;
+
+/**
+ * Moves the images below a directory, e.g. a server's working directory, into an image store, so
+ * that identical images share disk space.  Results written below the directory from then on use
+ * the store too.  See {@link ImageStore}.
+ */
+public final class DedupeImages {
+
+  private DedupeImages() {
+    // Utility class
+  }
+
+  private static Namespace parse(String[] args) throws ArgumentParserException {
+    ArgumentParser parser = ArgumentParsers.newArgumentParser("DedupeImages")
+        .defaultHelp(true)
+        .description("Make identical .png images below a directory share disk space, by storing "
+            + "them in an image store.");
+
+    parser.addArgument("directory")
+        .help("Directory below which to dedupe images; the image store is created here unless "
+            + "an enclosing directory has one.")
+        .type(File.class);
+
+    return parser.parseArgs(args);
+  }
+
+  public static void main(String[] args) {
+    try {
+      final Namespace ns = parse(args);
+      final File directory = ns.get("directory");
+      if (!directory.isDirectory()) {
+        throw new IllegalArgumentException("Not a directory: " + directory);
+      }
+      final Optional<ImageStore> existingStore = ImageStore.find(new File(directory, "unused"));
+      final ImageStore imageStore = existingStore.isPresent()
+          ? existingStore.get()
+          : ImageStore.create(directory.getAbsoluteFile());
+      final Path storeDir = imageStore.getStoreDir().getAbsoluteFile().toPath();
+
+      final List<Path> images;
+      try (Stream<Path> paths = Files.walk(directory.getAbsoluteFile().toPath())) {
+        images = paths
+            .filter(path -> !path.startsWith(storeDir))
+            .filter(path -> path.getFileName().toString().endsWith(".png"))
+            .filter(Files::isRegularFile)
+            .collect(Collectors.toList());
+      }
+
+      int numShared = 0;
+      long bytesSaved = 0;
+      for (Path image : images) {
+        final long size = Files.size(image);
+        try {
+          if (imageStore.dedupe(image.toFile())) {
+            numShared++;
+            bytesSaved += size;
+          }
+        } catch (IOException exception) {
+          System.err.println("Could not dedupe " + image + ": " + exception.getMessage());
+        }
+      }
+      System.out.println("Images: " + images.size());
+      System.out.println("Images sharing their content with another: " + numShared);
+      System.out.println("Bytes saved: " + bytesSaved);
+    } catch (ArgumentParserException exception) {
+      exception.getParser().handleError(exception);
+      System.exit(1);
+    } catch (Throwable exception) {
+      exception.printStackTrace();
+      System.exit(1);
+    }
+  }
+
+}
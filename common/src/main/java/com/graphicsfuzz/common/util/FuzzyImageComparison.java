@@ -404,6 +404,30 @@ public class FuzzyImageComparison {
         || leftImage.getHeight() != rightImage.getHeight()) {
       throw new IllegalArgumentException("Images have different sizes! \n" + left + "\n" + right);
     }
+    compareImages(leftImage, rightImage, thresholdConfigurations);
+  }
+
+  /**
+   * Compares images that are already in memory, using the default configurations.
+   * @param leftImage The first image.
+   * @param rightImage The second image.
+   * @return The result, as {@link #mainHelper} would give for files holding the images.
+   */
+  public static MainResult compareImages(BufferedImage leftImage, BufferedImage rightImage) {
+    if (leftImage.getWidth() != rightImage.getWidth()
+        || leftImage.getHeight() != rightImage.getHeight()) {
+      throw new IllegalArgumentException("Images have different sizes!");
+    }
+    final List<ThresholdConfiguration> configurations = new ArrayList<>();
+    addDefaultConfigurations(configurations);
+    compareImages(leftImage, rightImage, configurations);
+    return makeMainResult(configurations);
+  }
+
+  private static void compareImages(
+      BufferedImage leftImage,
+      BufferedImage rightImage,
+      List<ThresholdConfiguration> thresholdConfigurations) {
 
     int[] colorsLeft = ImageColorComponents.getRgb(leftImage);
     int[] colorsRight = ImageColorComponents.getRgb(rightImage);
@@ -523,6 +547,10 @@ public class FuzzyImageComparison {
 
     compareImages(imageA, imageB, configurations);
 
+    return makeMainResult(configurations);
+  }
+
+  private static MainResult makeMainResult(List<ThresholdConfiguration> configurations) {
     boolean different =
         configurations.stream().anyMatch(ThresholdConfiguration::areImagesDifferent);
 
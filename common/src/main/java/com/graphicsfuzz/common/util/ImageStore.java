@@ -0,0 +1,171 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.common.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Optional;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stores images by content, so that identical images, e.g. the many variant results that match
+ * their reference, take up space once.
+ *
+ * <p>Each distinct image is stored once in the store directory, named by its SHA-256 hash, and
+ * every image file with that content is a hard link to it.  Image files therefore look just as
+ * they would without the store, to the web UI and to scripts alike.  Stored images are read-only,
+ * so that writing to one of the links fails rather than changing every image that shares it; an
+ * image file must be replaced, not overwritten, and {@link #writeImage(File, byte[])} does so.</p>
+ *
+ * <p>A store is used for all results written below the directory that contains it; see
+ * {@link #find(File)}.  Where hard links are unavailable, e.g. because the store is on another
+ * file system, images are written as plain files.</p>
+ */
+public class ImageStore {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ImageStore.class);
+
+  public static final String STORE_DIR_NAME = ".imagestore";
+
+  private final File storeDir;
+
+  public ImageStore(File storeDir) {
+    this.storeDir = storeDir;
+  }
+
+  /**
+   * Creates the store for the results below a directory, if there is none yet.
+   * @param rootDir The directory.
+   * @return The store.
+   * @throws IOException if the store directory cannot be created.
+   */
+  public static ImageStore create(File rootDir) throws IOException {
+    final File storeDir = new File(rootDir, STORE_DIR_NAME);
+    Files.createDirectories(storeDir.toPath());
+    return new ImageStore(storeDir);
+  }
+
+  /**
+   * Finds the store to use for an image file: the one in the closest enclosing directory that has
+   * a store.
+   * @param imageFile The image file.
+   * @return The store, or empty if no enclosing directory has one.
+   */
+  public static Optional<ImageStore> find(File imageFile) {
+    for (File dir = imageFile.getAbsoluteFile().getParentFile(); dir != null;
+         dir = dir.getParentFile()) {
+      final File storeDir = new File(dir, STORE_DIR_NAME);
+      if (storeDir.isDirectory()) {
+        return Optional.of(new ImageStore(storeDir));
+      }
+    }
+    return Optional.empty();
+  }
+
+  public File getStoreDir() {
+    return storeDir;
+  }
+
+  /**
+   * Writes an image, sharing its content with any identical image already in the store.
+   * @param imageFile The image file to write; replaced if it exists.
+   * @param contents The contents of the image.
+   * @throws IOException if the image cannot be written.
+   */
+  public void writeImage(File imageFile, byte[] contents) throws IOException {
+    final Path stored = store(DigestUtils.sha256Hex(contents), contents);
+    if (!link(imageFile.toPath(), stored)) {
+      Files.deleteIfExists(imageFile.toPath());
+      Files.write(imageFile.toPath(), contents);
+    }
+  }
+
+  /**
+   * Makes an existing image share its content with any identical image in the store.
+   * @param imageFile An image file.
+   * @return true if the image file is now a link to a stored image that other image files share.
+   * @throws IOException if the image cannot be read or replaced.
+   */
+  public boolean dedupe(File imageFile) throws IOException {
+    final byte[] contents = Files.readAllBytes(imageFile.toPath());
+    final String hash = DigestUtils.sha256Hex(contents);
+    final Path stored = getStoredImage(hash);
+    final boolean shared = Files.exists(stored);
+    if (shared && Files.isSameFile(stored, imageFile.toPath())) {
+      return true;
+    }
+    return link(imageFile.toPath(), store(hash, contents)) && shared;
+  }
+
+  private Path getStoredImage(String hash) {
+    return storeDir.toPath().resolve(hash.substring(0, 2)).resolve(hash + ".png");
+  }
+
+  private Path store(String hash, byte[] contents) throws IOException {
+    final Path stored = getStoredImage(hash);
+    if (Files.exists(stored)) {
+      return stored;
+    }
+    Files.createDirectories(stored.getParent());
+    // Write to a temporary file first, so that the stored image is never seen half-written, even
+    // if another process stores the same image at the same time.
+    final Path temp = Files.createTempFile(stored.getParent(), hash, ".tmp");
+    try {
+      Files.write(temp, contents);
+      temp.toFile().setReadOnly();
+      try {
+        Files.move(temp, stored, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException exception) {
+        Files.move(temp, stored);
+      }
+    } catch (FileAlreadyExistsException exception) {
+      // Someone else stored the same image first.
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+    return stored;
+  }
+
+  // Replaces a file with a hard link to a stored image.  Returns false if hard links cannot be
+  // used, in which case the file is left unchanged.
+  private boolean link(Path file, Path stored) throws IOException {
+    if (Files.exists(file) && Files.isSameFile(file, stored)) {
+      return true;
+    }
+    final Path temp = file.resolveSibling(file.getFileName() + ".link");
+    try {
+      Files.deleteIfExists(temp);
+      Files.createLink(temp, stored);
+    } catch (UnsupportedOperationException | IOException exception) {
+      LOGGER.debug("Could not link {} to {}; writing it as a plain file.", file, stored,
+          exception);
+      return false;
+    }
+    // Moving the link into place replaces the file in one step, so that readers of the file see
+    // either the old or the new image.
+    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+    return true;
+  }
+
+}
@@ -20,7 +20,9 @@ import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.function.IntFunction;
 import javax.imageio.ImageIO;
+import org.bytedeco.javacpp.BytePointer;
 import org.bytedeco.javacpp.FloatPointer;
 import org.bytedeco.javacpp.IntPointer;
 import org.bytedeco.javacpp.opencv_core;
@@ -41,6 +43,17 @@ public class ImageUtil {
     return mat;
   }
 
+  /**
+   * Decodes an image held in memory, e.g. one that a worker has just sent, and converts it to HSV.
+   * @param png The encoded image.
+   * @return The decoded image.
+   */
+  public static opencv_core.Mat getImage(byte[] png) {
+    opencv_core.Mat mat = decode(png, opencv_imgcodecs.IMREAD_COLOR);
+    opencv_imgproc.cvtColor(mat, mat, opencv_imgproc.COLOR_BGR2HSV);
+    return mat;
+  }
+
   public static opencv_core.Mat getHistogram(String file) throws FileNotFoundException {
     if (!new File(file).isFile()) {
       throw new FileNotFoundException();
@@ -48,17 +61,30 @@ public class ImageUtil {
 
     System.gc();
 
+    return getHistogram(flags -> opencv_imgcodecs.imread(file, flags));
+  }
+
+  /**
+   * Computes the histogram of an image held in memory; see {@link #getHistogram(String)}.
+   * @param png The encoded image.
+   * @return The histogram.
+   */
+  public static opencv_core.Mat getHistogram(byte[] png) {
+    return getHistogram(flags -> decode(png, flags));
+  }
+
+  // Computes the histogram of an image, read by the given function with the given imread flags.
+  private static opencv_core.Mat getHistogram(IntFunction<opencv_core.Mat> read) {
+
     // Load PNG image.
     // IMREAD_UNCHANGED causes the alpha channel to be included, if present.
-    opencv_core.Mat matWithAlpha = opencv_imgcodecs.imread(
-        file,
-        opencv_imgcodecs.IMREAD_UNCHANGED);
+    opencv_core.Mat matWithAlpha = read.apply(opencv_imgcodecs.IMREAD_UNCHANGED);
 
     // The image might not have four channels (i.e. no alpha channel).
     if (matWithAlpha.type() != opencv_core.CV_8UC4) {
       // The file could be in several different formats, including greyscale.
       // Reload the image, converting to BGR.
-      matWithAlpha = opencv_imgcodecs.imread(file, opencv_imgcodecs.IMREAD_COLOR);
+      matWithAlpha = read.apply(opencv_imgcodecs.IMREAD_COLOR);
       assert matWithAlpha.type() == opencv_core.CV_8UC3;
       // Add (opaque) alpha channel.
       opencv_imgproc.cvtColor(matWithAlpha, matWithAlpha, opencv_imgproc.COLOR_BGR2BGRA);
@@ -107,6 +133,10 @@ public class ImageUtil {
     return hist;
   }
 
+  private static opencv_core.Mat decode(byte[] png, int flags) {
+    return opencv_imgcodecs.imdecode(new opencv_core.Mat(new BytePointer(png)), flags);
+  }
+
   public static double compareHistograms(opencv_core.Mat mat1, opencv_core.Mat mat2) {
     return opencv_imgproc.compareHist(mat1, mat2, opencv_imgproc.HISTCMP_CHISQR);
   }
@@ -123,6 +153,10 @@ public class ImageUtil {
     return opencv_core.PSNR(image1, image2);
   }
 
+  public static double comparePsnr(opencv_core.Mat image1, opencv_core.Mat image2) {
+    return opencv_core.PSNR(image1, image2);
+  }
+
   public static boolean identicalImages(File file1, File file2) throws IOException {
 
     BufferedImage img1 = ImageIO.read(file1);
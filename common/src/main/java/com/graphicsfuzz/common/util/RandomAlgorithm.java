@@ -0,0 +1,68 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.common.util;
+
+import com.graphicsfuzz.util.ArgsUtil;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.Namespace;
+
+/**
+ * The pseudo-random number generation algorithms that tools can be asked to use.  The same seed
+ * yields different results under different algorithms, so the algorithm needs to be recorded
+ * alongside the seed for a run to be reproducible.
+ */
+public enum RandomAlgorithm {
+
+  ISAAC,
+  SPLITMIX64;
+
+  public IRandom create(long seed) {
+    switch (this) {
+      case ISAAC:
+        return new RandomWrapper(seed);
+      case SPLITMIX64:
+        return new SplitMix64Random(seed);
+      default:
+        throw new RuntimeException("Unknown random algorithm " + this);
+    }
+  }
+
+  public static void addRandomAlgorithmArgument(ArgumentParser parser) {
+    parser.addArgument("--random-algorithm")
+        .help("Algorithm for the random number generator.  ISAAC is used by default; "
+            + "SPLITMIX64 is faster, especially when many child generators are spawned, but "
+            + "yields different results for the same seed.")
+        .type(RandomAlgorithm.class)
+        .setDefault(ISAAC);
+  }
+
+  /**
+   * Creates a random number generator using the seed and algorithm given by the "--seed" and
+   * "--random-algorithm" arguments.
+   * @param ns Parsed arguments, which must include both arguments.
+   * @return A random number generator.
+   */
+  public static IRandom createFromArgs(Namespace ns) {
+    return getFromArgs(ns).create(ArgsUtil.getSeedArgument(ns));
+  }
+
+  public static RandomAlgorithm getFromArgs(Namespace ns) {
+    final RandomAlgorithm result = ns.get("random_algorithm");
+    return result == null ? ISAAC : result;
+  }
+
+}
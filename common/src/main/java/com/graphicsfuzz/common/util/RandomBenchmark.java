@@ -0,0 +1,96 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.common.util;
+
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
+import net.sourceforge.argparse4j.inf.Namespace;
+
+/**
+ * Measures, for each random algorithm, the cost of spawning a child generator and drawing a
+ * number of values from it.  This mirrors the way generation uses random generators: a child is
+ * spawned per variant and per transformation, and typically only a modest number of values are
+ * drawn from each child.
+ */
+public class RandomBenchmark {
+
+  private static Namespace parse(String[] args) throws ArgumentParserException {
+    ArgumentParser parser = ArgumentParsers.newArgumentParser("RandomBenchmark")
+        .defaultHelp(true)
+        .description("Benchmark spawning of, and drawing from, random number generators.");
+
+    parser.addArgument("--spawns")
+        .help("Number of child generators to spawn per timed run.")
+        .setDefault(100000)
+        .type(Integer.class);
+
+    parser.addArgument("--draws")
+        .help("Number of values to draw from each child generator.")
+        .setDefault(10)
+        .type(Integer.class);
+
+    parser.addArgument("--seed")
+        .help("Seed (unsigned 64 bit long integer) for the parent generator.")
+        .setDefault("0")
+        .type(String.class);
+
+    return parser.parseArgs(args);
+  }
+
+  public static void main(String[] args) {
+    try {
+      final Namespace ns = parse(args);
+      final int spawns = ns.getInt("spawns");
+      final int draws = ns.getInt("draws");
+      final long seed = Long.parseUnsignedLong(ns.getString("seed"));
+
+      // Warm up, so that the JIT has the chance to compile the code for all algorithms.
+      for (RandomAlgorithm algorithm : RandomAlgorithm.values()) {
+        spawnAndDraw(algorithm.create(seed), spawns, draws);
+      }
+
+      for (RandomAlgorithm algorithm : RandomAlgorithm.values()) {
+        final IRandom parent = algorithm.create(seed);
+        final long startTime = System.nanoTime();
+        final long checksum = spawnAndDraw(parent, spawns, draws);
+        final long endTime = System.nanoTime();
+        System.out.printf("%-12s %10.1f ns/spawn+%d draws (checksum %d)%n", algorithm,
+            (endTime - startTime) / (double) spawns, draws, checksum);
+      }
+    } catch (ArgumentParserException exception) {
+      exception.getParser().handleError(exception);
+      System.exit(1);
+    } catch (Throwable exception) {
+      exception.printStackTrace();
+      System.exit(1);
+    }
+  }
+
+  private static long spawnAndDraw(IRandom parent, int spawns, int draws) {
+    // The values drawn are accumulated so that the work cannot be optimized away.
+    long checksum = 0;
+    for (int i = 0; i < spawns; i++) {
+      final IRandom child = parent.spawnChild();
+      for (int j = 0; j < draws; j++) {
+        checksum += child.nextInt(100);
+      }
+    }
+    return checksum;
+  }
+
+}
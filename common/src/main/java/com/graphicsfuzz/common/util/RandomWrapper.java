@@ -60,7 +60,7 @@ public class RandomWrapper implements IRandom {
 
   @Override
   public String getDescription() {
-    return "RandomWrapper with seed: " + Long.toUnsignedString(seed);
+    return "RandomWrapper (ISAAC) with seed: " + Long.toUnsignedString(seed);
   }
 
 }
@@ -97,4 +97,8 @@ public final class ReductionProgressHelper {
     return new File(workDir, shaderJobShortName + ".exception");
   }
 
+  public static File getReductionProgressFile(File workDir, String shaderJobShortName) {
+    return new File(workDir, shaderJobShortName + ".progress");
+  }
+
 }
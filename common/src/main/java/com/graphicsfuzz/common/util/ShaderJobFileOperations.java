@@ -41,7 +41,6 @@ import com.graphicsfuzz.util.ToolHelper;
 import com.graphicsfuzz.util.ToolPaths;
 import java.awt.image.BufferedImage;
 import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
@@ -50,6 +49,7 @@ import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Paths;
@@ -58,6 +58,10 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 import javax.imageio.ImageIO;
 import javax.imageio.stream.FileImageOutputStream;
@@ -77,6 +81,31 @@ public class ShaderJobFileOperations {
   private static final Logger LOGGER = LoggerFactory.getLogger(ShaderJobFileOperations.class);
   public static final String FUZZY_DIFF_KEY = "fuzzydiff";
 
+  // Animations of nondeterministic results are made in the background, as encoding them takes
+  // much longer than the rest of writing a result.
+  private static final ExecutorService GIF_EXECUTOR = Executors.newSingleThreadExecutor(
+      runnable -> {
+        final Thread thread = new Thread(runnable, "NondetGifWriter");
+        thread.setDaemon(true);
+        return thread;
+      });
+
+  // Told of every shader job result written by this process.
+  private static final List<Consumer<File>> RESULT_LISTENERS = new CopyOnWriteArrayList<>();
+
+  /**
+   * Registers a listener to be told of each shader job result written by this process, e.g. so
+   * that an index of results can be kept up to date without rescanning the file system.
+   * @param listener Called with the .info.json file of each result once the result is written.
+   */
+  public static void addResultListener(Consumer<File> listener) {
+    RESULT_LISTENERS.add(listener);
+  }
+
+  public static void removeResultListener(Consumer<File> listener) {
+    RESULT_LISTENERS.remove(listener);
+  }
+
   public boolean areImagesOfShaderResultsIdentical(
       File referenceShaderResultFile,
       File variantShaderResultFile) throws IOException {
@@ -690,9 +719,78 @@ public class ShaderJobFileOperations {
   }
 
   public void writeByteArrayToFile(File file, byte[] contents) throws IOException {
+    // Replace rather than overwrite the file, as it may be an image shared via an image store.
+    Files.deleteIfExists(file.toPath());
     FileUtils.writeByteArrayToFile(file, contents);
   }
 
+  /**
+   * Writes an image, sharing its content with identical images if the file is covered by an
+   * image store.
+   * @param imageFile The image file to write; replaced if it exists.
+   * @param png The image.
+   * @throws IOException on failure to write the image.
+   */
+  public void writeImageFile(File imageFile, byte[] png) throws IOException {
+    final Optional<ImageStore> imageStore = ImageStore.find(imageFile);
+    if (imageStore.isPresent()) {
+      FileUtils.forceMkdirParent(imageFile);
+      imageStore.get().writeImage(imageFile, png);
+    } else {
+      writeByteArrayToFile(imageFile, png);
+    }
+  }
+
+  /**
+   * Makes the animation of the two images of a result that was found to be nondeterministic,
+   * unless it exists already.  Animations are made in the background as results are written, so
+   * an animation may not exist yet, or at all if the process writing the result has since exited.
+   * @param shaderJobResultFile The result, e.g. "variant_blah.info.json".
+   * @return The animation, or empty if the result does not have two images.
+   * @throws IOException on failure to read the images or write the animation.
+   */
+  public Optional<File> createNondetGif(File shaderJobResultFile) throws IOException {
+    assertIsShaderJobResultFile(shaderJobResultFile);
+    final String shaderJobResultNoExtension =
+        FileHelper.removeEnd(shaderJobResultFile.toString(), ".info.json");
+    final File gifFile = new File(shaderJobResultNoExtension + ".gif");
+    if (gifFile.isFile()) {
+      return Optional.of(gifFile);
+    }
+    final File nondet1 = new File(shaderJobResultNoExtension + "_nondet1.png");
+    final File nondet2 = new File(shaderJobResultNoExtension + "_nondet2.png");
+    if (!nondet1.isFile() || !nondet2.isFile()) {
+      return Optional.empty();
+    }
+
+    final BufferedImage nondetImg = ImageIO.read(
+        Thread.currentThread().getContextClassLoader().getResourceAsStream("nondet.png"));
+    final BufferedImage img1 = ImageIO.read(nondet1);
+    final BufferedImage img2 = ImageIO.read(nondet2);
+
+    // Write to a temporary file first, so that a partly written animation is never shown.
+    final File tempFile = File.createTempFile(gifFile.getName(), ".tmp",
+        gifFile.getAbsoluteFile().getParentFile());
+    try {
+      try (ImageOutputStream gifOutput = new FileImageOutputStream(tempFile)) {
+        final GifSequenceWriter gifWriter =
+            new GifSequenceWriter(
+                gifOutput,
+                img1.getType(),
+                500,
+                true);
+        gifWriter.writeToSequence(nondetImg);
+        gifWriter.writeToSequence(img1);
+        gifWriter.writeToSequence(img2);
+        gifWriter.close();
+      }
+      Files.move(tempFile.toPath(), gifFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(tempFile.toPath());
+    }
+    return Optional.of(gifFile);
+  }
+
   public void writeShaderJobFile(
       final ShaderJob shaderJob,
       final File outputShaderJobFile) throws FileNotFoundException {
@@ -785,12 +883,63 @@ public class ShaderJobFileOperations {
         shaderResultFile,
         this,
         referenceShaderResultFile);
+
+    for (Consumer<File> listener : RESULT_LISTENERS) {
+      listener.accept(shaderResultFile);
+    }
+  }
+
+  /**
+   * Writes just the status, stage and log of a result: enough to see why a shader job failed,
+   * without the cost of writing and comparing images.
+   * @param shaderResult Input imageJobResult.
+   * @param shaderResultFile E.g. "variant_blah.info.json"
+   */
+  public void writeShaderResultStatusToFile(
+      ImageJobResult shaderResult,
+      File shaderResultFile) throws IOException {
+    assertIsShaderJobResultFile(shaderResultFile);
+    if (shaderResult.isSetLog()) {
+      writeStringToFile(
+          new File(FileHelper.removeEnd(shaderResultFile.toString(), ".info.json") + ".txt"),
+          shaderResult.getLog());
+    }
+    final JsonObject infoJson = new JsonObject();
+    if (shaderResult.isSetStage()) {
+      infoJson.addProperty("stage", shaderResult.getStage().toString());
+    }
+    if (shaderResult.isSetStatus()) {
+      infoJson.addProperty("status", shaderResult.getStatus().toString());
+    }
+    writeStringToFileAtomically(shaderResultFile, JsonHelper.jsonToString(infoJson));
+
+    for (Consumer<File> listener : RESULT_LISTENERS) {
+      listener.accept(shaderResultFile);
+    }
   }
 
   public void writeStringToFile(File file, String contents) throws IOException {
     FileUtils.writeStringToFile(file, contents, Charset.defaultCharset());
   }
 
+  /**
+   * Writes a file so that it is never seen partly written: a shader job's result is complete once
+   * its .info.json file exists, and runs that are resumed skip shader jobs that have one.
+   * @param file The file to write; replaced if it exists.
+   * @param contents The contents of the file.
+   * @throws IOException on failure to write the file.
+   */
+  public void writeStringToFileAtomically(File file, String contents) throws IOException {
+    final File tempFile = new File(file.getPath() + ".tmp");
+    writeStringToFile(tempFile, contents);
+    try {
+      Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException exception) {
+      Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
   /**
    * Provides an in-memory representation of the image associated with a shader job result.
    * Assumes that an image file is present as part of the shader job result.
@@ -803,6 +952,16 @@ public class ShaderJobFileOperations {
     return ImageIO.read(getUnderlyingImageFileFromShaderJobResultFile(shaderJobResultFile));
   }
 
+  /**
+   * Reads the image associated with a shader job result, without decoding it.
+   * @param shaderJobResultFile The shader job result; must have an image.
+   * @return The encoded image.
+   * @throws IOException on absence of an image file or failing to read the file.
+   */
+  public byte[] readImageOfShaderJobResultFile(File shaderJobResultFile) throws IOException {
+    return readFileToByteArray(getUnderlyingImageFileFromShaderJobResultFile(shaderJobResultFile));
+  }
+
   private static void assertIsShaderJobFile(File shaderJobFile) {
     if (!shaderJobFile.getName().endsWith(".json")
         || shaderJobFile.getName().endsWith(".info.json")) {
@@ -1196,7 +1355,7 @@ public class ShaderJobFileOperations {
 
       // We write out the .info.json file now, so that the Python tooling for diffing compute
       // shader results can be invoked on it if needed.
-      fileOps.writeStringToFile(
+      fileOps.writeStringToFileAtomically(
           shaderJobResultFile,
           infoJson.toString());
 
@@ -1250,7 +1409,7 @@ public class ShaderJobFileOperations {
         infoJson.add("comparison_with_reference", computeShaderComparisonWithReference);
       }
 
-      fileOps.writeStringToFile(
+      fileOps.writeStringToFileAtomically(
           shaderJobResultFile,
           infoJson.toString());
 
@@ -1260,10 +1419,11 @@ public class ShaderJobFileOperations {
     final File outputImage = new File(shaderJobResultNoExtension + ".png");
 
     if (shaderResult.isSetPNG()) {
-      fileOps.writeByteArrayToFile(outputImage, shaderResult.getPNG());
+      fileOps.writeImageFile(outputImage, shaderResult.getPNG());
     }
 
-    // TODO: Not mockable yet; directly accesses files.
+    // An animation left from an earlier result for this shader job would be out of date.
+    fileOps.tryDeleteFile(new File(shaderJobResultNoExtension + ".gif"));
 
     // Create gif when there is two image files set. This may happen not only for NONDET state,
     // but also in case of Sanity error after a nondet.
@@ -1271,34 +1431,17 @@ public class ShaderJobFileOperations {
       // we can dump both images
       File outputNondet1 = new File(shaderJobResultNoExtension + "_nondet1.png");
       File outputNondet2 = new File(shaderJobResultNoExtension +  "_nondet2.png");
-      fileOps.writeByteArrayToFile(outputNondet1, shaderResult.getPNG());
-      fileOps.writeByteArrayToFile(outputNondet2, shaderResult.getPNG2());
-
-      // Create gif
-      try {
-        BufferedImage nondetImg = ImageIO.read(
-            Thread.currentThread().getContextClassLoader().getResourceAsStream("nondet.png"));
-        BufferedImage img1 = ImageIO.read(
-            new ByteArrayInputStream(shaderResult.getPNG()));
-        BufferedImage img2 = ImageIO.read(
-            new ByteArrayInputStream(shaderResult.getPNG2()));
-        File gifFile = new File(shaderJobResultNoExtension + ".gif");
-        ImageOutputStream gifOutput = new FileImageOutputStream(gifFile);
-        GifSequenceWriter gifWriter =
-            new GifSequenceWriter(
-                gifOutput,
-                img1.getType(),
-                500,
-                true);
+      fileOps.writeImageFile(outputNondet1, shaderResult.getPNG());
+      fileOps.writeImageFile(outputNondet2, shaderResult.getPNG2());
 
-        gifWriter.writeToSequence(nondetImg);
-        gifWriter.writeToSequence(img1);
-        gifWriter.writeToSequence(img2);
-        gifWriter.close();
-        gifOutput.close();
-      } catch (Exception err) {
-        LOGGER.error("Error while creating GIF for nondet");
-      }
+      // Create gif in the background; it is also created on demand if this does not happen.
+      GIF_EXECUTOR.execute(() -> {
+        try {
+          fileOps.createNondetGif(shaderJobResultFile);
+        } catch (Exception err) {
+          LOGGER.error("Error while creating GIF for nondet", err);
+        }
+      });
     }
 
 
@@ -1317,7 +1460,7 @@ public class ShaderJobFileOperations {
     JsonObject infoObject = makeInfoJson(shaderResult, outputImage, referenceImageData);
 
     // Dump job info in JSON
-    fileOps.writeStringToFile(
+    fileOps.writeStringToFileAtomically(
         shaderJobResultFile,
         JsonHelper.jsonToString(infoObject));
   }
@@ -0,0 +1,468 @@
+/*
+ * Copyright 2019 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.common.util;
+
+import com.graphicsfuzz.common.ast.IAstNode;
+import com.graphicsfuzz.common.ast.TranslationUnit;
+import com.graphicsfuzz.common.ast.decl.Declaration;
+import com.graphicsfuzz.common.ast.decl.FunctionDefinition;
+import com.graphicsfuzz.common.ast.decl.FunctionPrototype;
+import com.graphicsfuzz.common.ast.decl.InterfaceBlock;
+import com.graphicsfuzz.common.ast.decl.ParameterDecl;
+import com.graphicsfuzz.common.ast.decl.VariableDeclInfo;
+import com.graphicsfuzz.common.ast.decl.VariablesDeclaration;
+import com.graphicsfuzz.common.ast.expr.ArrayIndexExpr;
+import com.graphicsfuzz.common.ast.expr.BinaryExpr;
+import com.graphicsfuzz.common.ast.expr.Expr;
+import com.graphicsfuzz.common.ast.expr.FunctionCallExpr;
+import com.graphicsfuzz.common.ast.expr.MemberLookupExpr;
+import com.graphicsfuzz.common.ast.expr.ParenExpr;
+import com.graphicsfuzz.common.ast.expr.UnaryExpr;
+import com.graphicsfuzz.common.ast.expr.VariableIdentifierExpr;
+import com.graphicsfuzz.common.ast.stmt.BreakStmt;
+import com.graphicsfuzz.common.ast.stmt.ContinueStmt;
+import com.graphicsfuzz.common.ast.stmt.DefaultCaseLabel;
+import com.graphicsfuzz.common.ast.stmt.DiscardStmt;
+import com.graphicsfuzz.common.ast.stmt.ExprCaseLabel;
+import com.graphicsfuzz.common.ast.stmt.ReturnStmt;
+import com.graphicsfuzz.common.ast.stmt.Stmt;
+import com.graphicsfuzz.common.ast.type.StructDefinitionType;
+import com.graphicsfuzz.common.ast.type.TypeQualifier;
+import com.graphicsfuzz.common.ast.visitors.StandardVisitor;
+import com.graphicsfuzz.common.glslversion.ShadingLanguageVersion;
+import com.graphicsfuzz.common.typing.TyperHelper;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Determines which statements and expressions of a translation unit are free from side effects.
+ *
+ * <p>A call to a function defined in the translation unit is side-effect free if the function
+ * has no out or inout parameters, does not write to global variables, does not discard, and only
+ * calls functions that are themselves side-effect free.  A function with an out or inout
+ * parameter is regarded as having side effects even if its body does not write to the parameter,
+ * because the argument is written back on return.  These summaries are computed once
+ * for all functions, over the call graph.  The answer for each node is also remembered, and is
+ * worked out bottom-up from the answers for its children, so that asking about each node of a
+ * nested expression in turn takes time linear in the size of the expression.</p>
+ *
+ * <p>What is remembered describes the translation unit as it was when first asked about;
+ * {@link #invalidate()} must be called after the translation unit is changed.</p>
+ */
+public class SideEffectAnalysis {
+
+  // Built-ins whose side effects do not show up as out or inout parameters: they synchronize
+  // invocations, or write to images, atomic counters or geometry shader outputs.  Not all of them
+  // are known to the typer, so they are matched by name.
+  private static final Set<String> SIDE_EFFECTING_BUILTINS = new HashSet<>(Arrays.asList(
+      "barrier",
+      "memoryBarrier",
+      "memoryBarrierAtomicCounter",
+      "memoryBarrierBuffer",
+      "memoryBarrierImage",
+      "memoryBarrierShared",
+      "groupMemoryBarrier",
+      "imageStore",
+      "imageAtomicAdd",
+      "imageAtomicMin",
+      "imageAtomicMax",
+      "imageAtomicAnd",
+      "imageAtomicOr",
+      "imageAtomicXor",
+      "imageAtomicExchange",
+      "imageAtomicCompSwap",
+      "atomicCounterIncrement",
+      "atomicCounterDecrement",
+      "EmitVertex",
+      "EndPrimitive",
+      "EmitStreamVertex",
+      "EndStreamPrimitive"));
+
+  private final Optional<TranslationUnit> translationUnit;
+  private final ShadingLanguageVersion shadingLanguageVersion;
+  private final ShaderKind shaderKind;
+
+  // Looked up when first needed, rather than for every function call.
+  private Map<String, List<FunctionPrototype>> builtins;
+
+  // Maps each built-in that has been called to the indices of its out and inout parameters, over
+  // all of its overloads.
+  private final Map<String, Set<Integer>> builtinLValueParameters;
+
+  // Maps the name of each function defined in the translation unit, and of each struct that can be
+  // constructed, to whether calling it is side-effect free; computed when first needed.
+  private Map<String, Boolean> functionSummaries;
+
+  private final Map<IAstNode, Boolean> nodeIsSideEffectFree;
+
+  /**
+   * Creates an analysis of a translation unit.
+   * @param translationUnit The translation unit whose nodes will be asked about.
+   * @param shadingLanguageVersion The shading language version, which determines the built-ins.
+   */
+  public SideEffectAnalysis(TranslationUnit translationUnit,
+                            ShadingLanguageVersion shadingLanguageVersion) {
+    this(Optional.of(translationUnit), shadingLanguageVersion,
+        translationUnit.getShaderKind());
+  }
+
+  /**
+   * Creates an analysis for nodes whose translation unit is not known; every call to a function
+   * that is not a built-in is then assumed to have side effects.
+   * @param shadingLanguageVersion The shading language version, which determines the built-ins.
+   * @param shaderKind The kind of shader, which determines the built-ins.
+   */
+  public SideEffectAnalysis(ShadingLanguageVersion shadingLanguageVersion,
+                            ShaderKind shaderKind) {
+    this(Optional.empty(), shadingLanguageVersion, shaderKind);
+  }
+
+  private SideEffectAnalysis(Optional<TranslationUnit> translationUnit,
+                             ShadingLanguageVersion shadingLanguageVersion,
+                             ShaderKind shaderKind) {
+    this.translationUnit = translationUnit;
+    this.shadingLanguageVersion = shadingLanguageVersion;
+    this.shaderKind = shaderKind;
+    this.builtinLValueParameters = new HashMap<>();
+    this.nodeIsSideEffectFree = new IdentityHashMap<>();
+  }
+
+  public boolean isSideEffectFree(Stmt stmt) {
+    return isSideEffectFreeNode(stmt);
+  }
+
+  public boolean isSideEffectFree(Expr expr) {
+    return isSideEffectFreeNode(expr);
+  }
+
+  /**
+   * Determines whether calling a function defined in the translation unit is side-effect free.
+   * @param name The name of the function; if it is overloaded, all overloads must be side-effect
+   *             free.
+   * @return true if and only if the function is known to be side-effect free.
+   */
+  public boolean isSideEffectFreeFunction(String name) {
+    return getFunctionSummaries().getOrDefault(name, false);
+  }
+
+  /**
+   * Forgets everything worked out so far; must be called after the translation unit is changed.
+   */
+  public void invalidate() {
+    functionSummaries = null;
+    nodeIsSideEffectFree.clear();
+  }
+
+  private boolean isSideEffectFreeNode(IAstNode node) {
+    if (!nodeIsSideEffectFree.containsKey(node)) {
+      new NodeVisitor().visit(node);
+    }
+    return nodeIsSideEffectFree.get(node);
+  }
+
+  private Set<Integer> getBuiltinLValueParameters(String name) {
+    if (builtins == null) {
+      builtins = TyperHelper.getBuiltins(shadingLanguageVersion, false, shaderKind);
+    }
+    if (!builtins.containsKey(name)) {
+      return null;
+    }
+    return builtinLValueParameters.computeIfAbsent(name, item -> {
+      final Set<Integer> result = new HashSet<>();
+      // We could be more precise here by finding the specific overload of the function rather
+      // than checking every possible prototype for lvalue parameters.
+      for (FunctionPrototype prototype : builtins.get(item)) {
+        for (int i = 0; i < prototype.getNumParameters(); i++) {
+          if (isLValueParameter(prototype.getParameters().get(i))) {
+            result.add(i);
+          }
+        }
+      }
+      return result;
+    });
+  }
+
+  private static boolean isLValueParameter(ParameterDecl parameterDecl) {
+    return parameterDecl.getType().hasQualifier(TypeQualifier.OUT_PARAM)
+        || parameterDecl.getType().hasQualifier(TypeQualifier.INOUT_PARAM);
+  }
+
+  private Map<String, Boolean> getFunctionSummaries() {
+    if (functionSummaries == null) {
+      functionSummaries = translationUnit.isPresent()
+          ? computeFunctionSummaries(translationUnit.get())
+          : new HashMap<>();
+    }
+    return functionSummaries;
+  }
+
+  private Map<String, Boolean> computeFunctionSummaries(TranslationUnit tu) {
+    final Set<String> globalNames = new HashSet<>();
+    for (VariableDeclInfo variableDeclInfo : tu.getGlobalVarDeclInfos()) {
+      globalNames.add(variableDeclInfo.getName());
+    }
+    final List<FunctionDefinition> functionDefinitions = new ArrayList<>();
+    for (Declaration declaration : tu.getTopLevelDeclarations()) {
+      if (declaration instanceof InterfaceBlock) {
+        final InterfaceBlock interfaceBlock = (InterfaceBlock) declaration;
+        globalNames.addAll(interfaceBlock.getMemberNames());
+        if (interfaceBlock.hasIdentifierName()) {
+          globalNames.add(interfaceBlock.getInstanceName());
+        }
+      } else if (declaration instanceof FunctionDefinition) {
+        functionDefinitions.add((FunctionDefinition) declaration);
+      }
+    }
+
+    // Start from the assumption that every function is side-effect free unless it has side effects
+    // of its own, and then rule out functions that call functions that have been ruled out, until
+    // nothing changes.
+    final Map<String, Boolean> result = new HashMap<>();
+    for (StructDefinitionType structDefinitionType : tu.getStructDefinitions()) {
+      if (structDefinitionType.hasStructNameType()) {
+        result.put(structDefinitionType.getStructNameType().getName(), true);
+      }
+    }
+    final Map<FunctionDefinition, Set<String>> callees = new HashMap<>();
+    for (FunctionDefinition functionDefinition : functionDefinitions) {
+      final FunctionBodyVisitor visitor = new FunctionBodyVisitor(functionDefinition, globalNames);
+      final String name = functionDefinition.getPrototype().getName();
+      result.put(name, result.getOrDefault(name, true)
+          && !functionDefinition.getPrototype().getParameters().stream()
+              .anyMatch(SideEffectAnalysis::isLValueParameter)
+          && !visitor.hasSideEffects);
+      callees.put(functionDefinition, visitor.callees);
+    }
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      for (FunctionDefinition functionDefinition : functionDefinitions) {
+        final String name = functionDefinition.getPrototype().getName();
+        if (result.get(name)
+            && !callees.get(functionDefinition).stream()
+                .allMatch(callee -> result.getOrDefault(callee, false))) {
+          result.put(name, false);
+          changed = true;
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Works out, and remembers, whether each node of a subtree is side-effect free.  Each node is
+   * side-effect free if it has no side effect of its own and all its children are side-effect free.
+   */
+  private class NodeVisitor extends StandardVisitor {
+
+    // One entry for each node being visited, recording whether it has been found to have side
+    // effects so far.
+    private final List<Boolean> sideEffectFreeStack = new ArrayList<>();
+
+    @Override
+    public void visit(IAstNode node) {
+      Boolean sideEffectFree = nodeIsSideEffectFree.get(node);
+      if (sideEffectFree == null) {
+        sideEffectFreeStack.add(true);
+        super.visit(node);
+        sideEffectFree = sideEffectFreeStack.remove(sideEffectFreeStack.size() - 1);
+        nodeIsSideEffectFree.put(node, sideEffectFree);
+      }
+      if (!sideEffectFree && !sideEffectFreeStack.isEmpty()) {
+        sideEffect();
+      }
+    }
+
+    private void sideEffect() {
+      sideEffectFreeStack.set(sideEffectFreeStack.size() - 1, false);
+    }
+
+    @Override
+    public void visitFunctionCallExpr(FunctionCallExpr functionCallExpr) {
+      final Set<Integer> lvalueParameters =
+          getBuiltinLValueParameters(functionCallExpr.getCallee());
+      if (SIDE_EFFECTING_BUILTINS.contains(functionCallExpr.getCallee())) {
+        sideEffect();
+      } else if (lvalueParameters != null) {
+        // A built-in with out or inout parameters can cause side effects.
+        if (!lvalueParameters.isEmpty()) {
+          sideEffect();
+        }
+      } else if (!MacroNames.isGraphicsFuzzMacro(functionCallExpr)
+          && !isSideEffectFreeFunction(functionCallExpr.getCallee())) {
+        sideEffect();
+      }
+      super.visitFunctionCallExpr(functionCallExpr);
+    }
+
+    @Override
+    public void visitUnaryExpr(UnaryExpr unaryExpr) {
+      if (unaryExpr.getOp().isSideEffecting()) {
+        sideEffect();
+      }
+      super.visitUnaryExpr(unaryExpr);
+    }
+
+    @Override
+    public void visitBinaryExpr(BinaryExpr binaryExpr) {
+      if (binaryExpr.getOp().isSideEffecting()) {
+        sideEffect();
+      }
+      super.visitBinaryExpr(binaryExpr);
+    }
+
+    @Override
+    public void visitReturnStmt(ReturnStmt returnStmt) {
+      sideEffect();
+      super.visitReturnStmt(returnStmt);
+    }
+
+    @Override
+    public void visitBreakStmt(BreakStmt breakStmt) {
+      sideEffect();
+    }
+
+    @Override
+    public void visitContinueStmt(ContinueStmt continueStmt) {
+      sideEffect();
+    }
+
+    @Override
+    public void visitDiscardStmt(DiscardStmt discardStmt) {
+      sideEffect();
+    }
+
+    @Override
+    public void visitExprCaseLabel(ExprCaseLabel exprCaseLabel) {
+      sideEffect();
+      super.visitExprCaseLabel(exprCaseLabel);
+    }
+
+    @Override
+    public void visitDefaultCaseLabel(DefaultCaseLabel defaultCaseLabel) {
+      sideEffect();
+    }
+
+  }
+
+  /**
+   * Finds whether a function body has side effects of its own, visible to callers, and which
+   * functions it calls.  Returning, and writing to local variables and to parameters, are not side
+   * effects for callers; out and inout parameters are dealt with separately, by the caller of this
+   * visitor.
+   */
+  private class FunctionBodyVisitor extends StandardVisitor {
+
+    // Names of parameters and of variables declared in the function.  A name that is also that of
+    // a global variable is not regarded as local, as it is not worth telling which declaration a
+    // use refers to.
+    private final Set<String> localNames;
+    private final Set<String> nonLocalNames;
+
+    private final Set<String> callees;
+    private boolean hasSideEffects;
+
+    FunctionBodyVisitor(FunctionDefinition functionDefinition, Set<String> globalNames) {
+      this.localNames = new HashSet<>();
+      this.nonLocalNames = new HashSet<>(globalNames);
+      this.callees = new HashSet<>();
+      this.hasSideEffects = false;
+      for (ParameterDecl parameterDecl : functionDefinition.getPrototype().getParameters()) {
+        if (parameterDecl.getName() != null) {
+          localNames.add(parameterDecl.getName());
+        }
+      }
+      visit(functionDefinition.getBody());
+    }
+
+    private boolean isLocalLValue(Expr expr) {
+      while (true) {
+        if (expr instanceof ParenExpr) {
+          expr = ((ParenExpr) expr).getExpr();
+        } else if (expr instanceof ArrayIndexExpr) {
+          expr = ((ArrayIndexExpr) expr).getArray();
+        } else if (expr instanceof MemberLookupExpr) {
+          expr = ((MemberLookupExpr) expr).getStructure();
+        } else {
+          break;
+        }
+      }
+      if (!(expr instanceof VariableIdentifierExpr)) {
+        return false;
+      }
+      final String name = ((VariableIdentifierExpr) expr).getName();
+      return localNames.contains(name) && !nonLocalNames.contains(name);
+    }
+
+    @Override
+    public void visitVariablesDeclaration(VariablesDeclaration variablesDeclaration) {
+      for (VariableDeclInfo variableDeclInfo : variablesDeclaration.getDeclInfos()) {
+        localNames.add(variableDeclInfo.getName());
+      }
+      super.visitVariablesDeclaration(variablesDeclaration);
+    }
+
+    @Override
+    public void visitFunctionCallExpr(FunctionCallExpr functionCallExpr) {
+      final Set<Integer> lvalueParameters =
+          getBuiltinLValueParameters(functionCallExpr.getCallee());
+      if (SIDE_EFFECTING_BUILTINS.contains(functionCallExpr.getCallee())) {
+        hasSideEffects = true;
+      } else if (lvalueParameters != null) {
+        for (int index : lvalueParameters) {
+          if (index < functionCallExpr.getNumArgs()
+              && !isLocalLValue(functionCallExpr.getArg(index))) {
+            hasSideEffects = true;
+          }
+        }
+      } else if (!MacroNames.isGraphicsFuzzMacro(functionCallExpr)) {
+        callees.add(functionCallExpr.getCallee());
+      }
+      super.visitFunctionCallExpr(functionCallExpr);
+    }
+
+    @Override
+    public void visitUnaryExpr(UnaryExpr unaryExpr) {
+      if (unaryExpr.getOp().isSideEffecting() && !isLocalLValue(unaryExpr.getExpr())) {
+        hasSideEffects = true;
+      }
+      super.visitUnaryExpr(unaryExpr);
+    }
+
+    @Override
+    public void visitBinaryExpr(BinaryExpr binaryExpr) {
+      if (binaryExpr.getOp().isSideEffecting() && !isLocalLValue(binaryExpr.getLhs())) {
+        hasSideEffects = true;
+      }
+      super.visitBinaryExpr(binaryExpr);
+    }
+
+    @Override
+    public void visitDiscardStmt(DiscardStmt discardStmt) {
+      hasSideEffects = true;
+    }
+
+  }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.common.util;
+
+/**
+ * Random generator based on the SplitMix64 algorithm.
+ *
+ * <p>The state of the generator is a single 64-bit value, so creating a generator, and in
+ * particular spawning a child generator, is much cheaper than for RandomWrapper, whose ISAAC
+ * state has to be allocated and mixed on construction.  A child is seeded with a value drawn from
+ * its parent, so that the child can be recreated from the seed given in its description.</p>
+ *
+ * <p>The implementation is self-contained so that the sequence of values produced for a given
+ * seed does not depend on the version of any library or of the JDK.</p>
+ */
+public class SplitMix64Random implements IRandom {
+
+  private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+  private final long seed;
+  private long state;
+
+  public SplitMix64Random(long seed) {
+    this.seed = seed;
+    this.state = seed;
+  }
+
+  @Override
+  public int nextInt(int bound) {
+    if (bound <= 0) {
+      throw new IllegalArgumentException("Bound must be positive, got " + bound);
+    }
+    final int mask = bound - 1;
+    if ((bound & mask) == 0) {
+      // The bound is a power of two, so the high bits can be used directly.
+      return (int) (nextRawLong() >>> 33) & mask;
+    }
+    // Reject values from the final, incomplete range of size 'bound', to avoid bias.
+    int bits;
+    int result;
+    do {
+      bits = (int) (nextRawLong() >>> 33);
+      result = bits % bound;
+    } while (bits - result + mask < 0);
+    return result;
+  }
+
+  @Override
+  public long nextLong(long bound) {
+    if (bound <= 0) {
+      throw new IllegalArgumentException("Bound must be positive, got " + bound);
+    }
+    final long mask = bound - 1;
+    if ((bound & mask) == 0L) {
+      return (nextRawLong() >>> 1) & mask;
+    }
+    long bits;
+    long result;
+    do {
+      bits = nextRawLong() >>> 1;
+      result = bits % bound;
+    } while (bits - result + mask < 0L);
+    return result;
+  }
+
+  @Override
+  public Float nextFloat() {
+    // Use the top 24 bits, which is the precision of a float, to get a value in [0, 1).
+    return (nextRawLong() >>> 40) * 0x1.0p-24f;
+  }
+
+  @Override
+  public boolean nextBoolean() {
+    return nextRawLong() < 0L;
+  }
+
+  @Override
+  public IRandom spawnChild() {
+    return new SplitMix64Random(nextRawLong());
+  }
+
+  @Override
+  public String getDescription() {
+    return "SplitMix64Random with seed: " + Long.toUnsignedString(seed);
+  }
+
+  /**
+   * Advances the generator and yields a uniformly distributed 64-bit value.
+   * @return The next value in the sequence.
+   */
+  long nextRawLong() {
+    state += GOLDEN_GAMMA;
+    long result = state;
+    result = (result ^ (result >>> 30)) * 0xbf58476d1ce4e5b9L;
+    result = (result ^ (result >>> 27)) * 0x94d049bb133111ebL;
+    return result ^ (result >>> 31);
+  }
+
+}
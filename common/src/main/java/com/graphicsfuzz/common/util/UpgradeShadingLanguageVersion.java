@@ -136,29 +136,36 @@ public class UpgradeShadingLanguageVersion extends ScopeTrackingVisitor {
     return parser.parseArgs(args);
   }
 
-  public static void main(String[] args) throws IOException, InterruptedException {
-
+  public static void main(String[] args) {
     try {
-      Namespace ns = parse(args);
-
-      long startTime = System.currentTimeMillis();
-      TranslationUnit tu = ParseHelper.parse(new File(ns.getString("shader")));
-      long endTime = System.currentTimeMillis();
-      System.err.println("Time for parsing: " + (endTime - startTime));
-
-      startTime = System.currentTimeMillis();
-      upgrade(tu, ShadingLanguageVersion.ESSL_320, ns.getBoolean("norename"));
-      endTime = System.currentTimeMillis();
-      System.err.println("Time for upgrading: " + (endTime - startTime));
-
-      // After upgrading, pretty print the shader for output
-      prettyPrintShader(ns, tu);
+      mainHelper(args);
+    } catch (ArgumentParserException exception) {
+      exception.getParser().handleError(exception);
+      System.exit(1);
     } catch (Throwable exception) {
       exception.printStackTrace();
       System.exit(1);
     }
   }
 
+  public static void mainHelper(String[] args) throws ArgumentParserException, IOException,
+      ParseTimeoutException, InterruptedException, GlslParserException {
+    Namespace ns = parse(args);
+
+    long startTime = System.currentTimeMillis();
+    TranslationUnit tu = ParseHelper.parse(new File(ns.getString("shader")));
+    long endTime = System.currentTimeMillis();
+    System.err.println("Time for parsing: " + (endTime - startTime));
+
+    startTime = System.currentTimeMillis();
+    upgrade(tu, ShadingLanguageVersion.ESSL_320, ns.getBoolean("norename"));
+    endTime = System.currentTimeMillis();
+    System.err.println("Time for upgrading: " + (endTime - startTime));
+
+    // After upgrading, pretty print the shader for output
+    prettyPrintShader(ns, tu);
+  }
+
   private static void prettyPrintShader(Namespace ns, TranslationUnit tu)
       throws FileNotFoundException {
     try (PrintStream stream =
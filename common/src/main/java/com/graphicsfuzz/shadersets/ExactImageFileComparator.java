@@ -19,6 +19,7 @@ package com.graphicsfuzz.shadersets;
 import com.graphicsfuzz.common.util.ShaderJobFileOperations;
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -28,6 +29,8 @@ public class ExactImageFileComparator implements IImageFileComparator {
 
   private final boolean identicalIsInteresting;
   private final ShaderJobFileOperations fileOps;
+  private File referenceShaderResultFile;
+  private byte[] referencePng;
 
   public ExactImageFileComparator(
       boolean identicalIsInteresting,
@@ -47,18 +50,33 @@ public class ExactImageFileComparator implements IImageFileComparator {
           shaderResultFileReference,
           shaderResultFileVariant);
 
-      if (!equalContent && identicalIsInteresting) {
-        LOGGER.info("Not interesting: images do not match");
-        return false;
-      }
-      if (equalContent && !identicalIsInteresting) {
-        LOGGER.info("Not interesting: images match");
-        return false;
-      }
-      return true;
+      return isInteresting(equalContent);
     } catch (IOException exception) {
       LOGGER.error("Not interesting: exception while comparing files", exception);
       throw new RuntimeException(exception);
     }
   }
+
+  @Override
+  public boolean isImageInteresting(File shaderResultFileReference, byte[] variantPng)
+      throws IOException {
+    if (!shaderResultFileReference.equals(referenceShaderResultFile)) {
+      // The reference is the same for every variant during a reduction, so is read once.
+      referencePng = fileOps.readImageOfShaderJobResultFile(shaderResultFileReference);
+      referenceShaderResultFile = shaderResultFileReference;
+    }
+    return isInteresting(Arrays.equals(referencePng, variantPng));
+  }
+
+  private boolean isInteresting(boolean equalContent) {
+    if (!equalContent && identicalIsInteresting) {
+      LOGGER.info("Not interesting: images do not match");
+      return false;
+    }
+    if (equalContent && !identicalIsInteresting) {
+      LOGGER.info("Not interesting: images match");
+      return false;
+    }
+    return true;
+  }
 }
@@ -22,4 +22,15 @@ import java.io.IOException;
 public interface IImageFileComparator {
   boolean areFilesInteresting(File shaderResultFileReference, File shaderResultFileVariant)
       throws IOException;
+
+  /**
+   * As {@link #areFilesInteresting(File, File)}, for a variant image that has not been written to
+   * a file, e.g. one that a worker has just sent back.
+   * @param shaderResultFileReference The reference result; must have an image.
+   * @param variantPng The variant image.
+   * @return true if the images are interesting.
+   * @throws IOException on failure to read the reference image.
+   */
+  boolean isImageInteresting(File shaderResultFileReference, byte[] variantPng)
+      throws IOException;
 }
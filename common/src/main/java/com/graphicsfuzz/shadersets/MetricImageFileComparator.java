@@ -16,11 +16,17 @@
 
 package com.graphicsfuzz.shadersets;
 
+import com.graphicsfuzz.common.util.FuzzyImageComparison;
+import com.graphicsfuzz.common.util.ImageUtil;
 import com.graphicsfuzz.common.util.ShaderJobFileOperations;
 import com.graphicsfuzz.server.thrift.ImageComparisonMetric;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import javax.imageio.ImageIO;
+import org.bytedeco.javacpp.opencv_core;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -33,6 +39,13 @@ public class MetricImageFileComparator implements IImageFileComparator {
   private final ImageComparisonMetric metric;
   private final ShaderJobFileOperations fileOps;
 
+  // The reference is the same for every variant during a reduction, so is read and decoded once,
+  // in the form that the metric needs.
+  private File referenceShaderResultFile;
+  private byte[] referencePng;
+  private opencv_core.Mat referenceMat;
+  private BufferedImage referenceImage;
+
   public MetricImageFileComparator(
       double threshold,
       boolean above,
@@ -64,4 +77,64 @@ public class MetricImageFileComparator implements IImageFileComparator {
       throw new RuntimeException(exception);
     }
   }
+
+  @Override
+  public boolean isImageInteresting(File shaderResultFileReference, byte[] variantPng)
+      throws IOException {
+    if (!shaderResultFileReference.equals(referenceShaderResultFile)) {
+      referencePng = fileOps.readImageOfShaderJobResultFile(shaderResultFileReference);
+      referenceMat = null;
+      referenceImage = null;
+      referenceShaderResultFile = shaderResultFileReference;
+    }
+
+    final boolean result;
+    final String comparisonValue;
+    switch (metric) {
+      case HISTOGRAM_CHISQR: {
+        if (referenceMat == null) {
+          referenceMat = ImageUtil.getHistogram(referencePng);
+        }
+        final double diff = ImageUtil.compareHistograms(referenceMat,
+            ImageUtil.getHistogram(variantPng));
+        result = (above ? diff > threshold : diff <= threshold);
+        comparisonValue = String.valueOf(diff);
+        break;
+      }
+      case PSNR: {
+        if (referenceMat == null) {
+          referenceMat = ImageUtil.getImage(referencePng);
+        }
+        final double diff = ImageUtil.comparePsnr(referenceMat, ImageUtil.getImage(variantPng));
+        result = (above ? diff > threshold : diff <= threshold);
+        comparisonValue = String.valueOf(diff);
+        break;
+      }
+      case FUZZY_DIFF: {
+        if (referenceImage == null) {
+          referenceImage = readImage(referencePng);
+        }
+        final FuzzyImageComparison.MainResult mainResult =
+            FuzzyImageComparison.compareImages(referenceImage, readImage(variantPng));
+        // Fuzzy diff has its own thresholds; images are different if a threshold is exceeded.
+        // We negate this if needed:
+        result = (above == mainResult.areImagesDifferent);
+        comparisonValue = mainResult.outputsString();
+        break;
+      }
+      default:
+        throw new RuntimeException("Unrecognised image comparison metric: " + metric.toString());
+    }
+    LOGGER.info("{}: comparison value is {}", result ? "Interesting" : "Not interesting",
+        comparisonValue);
+    return result;
+  }
+
+  private static BufferedImage readImage(byte[] png) throws IOException {
+    final BufferedImage image = ImageIO.read(new ByteArrayInputStream(png));
+    if (image == null) {
+      throw new IOException("Could not decode image.");
+    }
+    return image;
+  }
 }
@@ -0,0 +1,295 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.shadersets;
+
+import com.graphicsfuzz.common.util.ShaderJobFileOperations;
+import com.graphicsfuzz.server.thrift.ImageJob;
+import com.graphicsfuzz.server.thrift.ImageJobResult;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.commons.io.FilenameUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the shader jobs of a shader family as a pipeline, so that rendering overlaps with loading
+ * the next shader jobs and with writing the results of, and computing the metrics for, the
+ * previous ones.
+ *
+ * <p>Shader jobs are loaded by the calling thread, rendered by a number of threads per dispatcher,
+ * and their results are written by a pool of post-processing threads.  The stages are connected
+ * by bounded queues, so that loading does not run far ahead of rendering.  With several threads
+ * per dispatcher, several jobs are in flight at once for each worker, so that a worker need not
+ * wait for its next job while its last result travels back.  With several dispatchers, e.g. one
+ * per worker, the shader family is spread across them.</p>
+ *
+ * <p>As before, the reference is run first, and variants that already have a result are
+ * skipped, so that an interrupted run can be resumed.  A variant that cannot be loaded, rendered
+ * or have its result written is logged and skipped.  Anything else that goes wrong in a stage,
+ * such as an Error, stops the whole run and is rethrown by run.</p>
+ */
+public class PipelinedShaderFamilyRunner {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(PipelinedShaderFamilyRunner.class);
+
+  private final List<IShaderDispatcher> dispatchers;
+  private final int jobsPerDispatcher;
+  private final int postProcessThreads;
+  private final ShaderJobFileOperations fileOps;
+
+  private static final class Task {
+    final File shaderJobFile;
+    final File resultFile;
+    final ImageJob imageJob;
+    ImageJobResult result;
+
+    Task(File shaderJobFile, File resultFile, ImageJob imageJob) {
+      this.shaderJobFile = shaderJobFile;
+      this.resultFile = resultFile;
+      this.imageJob = imageJob;
+    }
+  }
+
+  // Tells a thread of the next stage that there are no more tasks.
+  private static final Task END = new Task(null, null, null);
+
+  private interface Stage {
+    void run() throws InterruptedException;
+  }
+
+  /**
+   * Creates a runner.
+   * @param dispatchers The dispatchers to share shader jobs between.
+   * @param jobsPerDispatcher The number of jobs to have in flight at once with each dispatcher;
+   *                          must be 1 for a dispatcher that cannot handle concurrent requests.
+   * @param postProcessThreads The number of threads that write results.
+   * @param fileOps File operations.
+   */
+  public PipelinedShaderFamilyRunner(
+      List<IShaderDispatcher> dispatchers,
+      int jobsPerDispatcher,
+      int postProcessThreads,
+      ShaderJobFileOperations fileOps) {
+    if (dispatchers.isEmpty() || jobsPerDispatcher < 1 || postProcessThreads < 1) {
+      throw new IllegalArgumentException("Need at least one dispatcher, job per dispatcher and "
+          + "post-processing thread.");
+    }
+    this.dispatchers = dispatchers;
+    this.jobsPerDispatcher = jobsPerDispatcher;
+    this.postProcessThreads = postProcessThreads;
+    this.fileOps = fileOps;
+  }
+
+  /**
+   * Runs the shader jobs of a shader family that do not yet have results.
+   * @param shaderFamilyDir The shader family.
+   * @param outputDir The directory for the results.
+   * @return The number of shader jobs run, i.e. whose results were written.
+   * @throws ShaderDispatchException if the reference cannot be run.
+   * @throws InterruptedException if interrupted.
+   * @throws IOException on failure to read or write reference files.
+   */
+  public int run(File shaderFamilyDir, File outputDir)
+      throws ShaderDispatchException, InterruptedException, IOException {
+
+    int numShadersRun = 0;
+
+    final File referenceResult = new File(outputDir, "reference.info.json");
+    final File referenceJob = new File(shaderFamilyDir, "reference.json");
+
+    // The reference must be run before the variants, whose results are compared with it.
+    if (!fileOps.doesShaderJobResultFileExist(referenceResult)) {
+      RunShaderFamily.runShader(
+          referenceResult,
+          referenceJob,
+          dispatchers.get(0),
+          Optional.empty(),
+          fileOps);
+      ++numShadersRun;
+    }
+
+    if (!fileOps.isComputeShaderJob(referenceJob)) {
+      if (!fileOps.doesShaderJobResultFileHaveImage(referenceResult)) {
+        LOGGER.info("Reference failed to render, so skipping variants.");
+        return numShadersRun;
+      }
+    }
+
+    final File[] variants =
+        fileOps.listShaderJobFiles(shaderFamilyDir, (dir, name) -> name.startsWith("variant"));
+
+    final int dispatchThreads = dispatchers.size() * jobsPerDispatcher;
+    final BlockingQueue<Task> loaded = new ArrayBlockingQueue<>(dispatchThreads);
+    final BlockingQueue<Task> rendered = new ArrayBlockingQueue<>(postProcessThreads);
+
+    final AtomicInteger numVariantsRun = new AtomicInteger(0);
+    final AtomicReference<Throwable> stageFailure = new AtomicReference<>();
+
+    final ExecutorService executorService =
+        Executors.newFixedThreadPool(dispatchThreads + postProcessThreads);
+    try {
+      final List<Future<?>> dispatchFutures = new ArrayList<>();
+      for (IShaderDispatcher dispatcher : dispatchers) {
+        for (int i = 0; i < jobsPerDispatcher; i++) {
+          dispatchFutures.add(startStage(executorService, stageFailure,
+              () -> dispatch(dispatcher, loaded, rendered)));
+        }
+      }
+      final List<Future<?>> postProcessFutures = new ArrayList<>();
+      for (int i = 0; i < postProcessThreads; i++) {
+        postProcessFutures.add(startStage(executorService, stageFailure,
+            () -> postProcess(rendered, referenceResult, numVariantsRun)));
+      }
+
+      try {
+        for (File variant : variants) {
+          final String variantName = FilenameUtils.removeExtension(variant.getName());
+          final File resultFile = new File(outputDir, variantName + ".info.json");
+
+          if (fileOps.doesShaderJobResultFileExist(resultFile)) {
+            LOGGER.info("Skipping {} because we already have a result.", variant);
+            continue;
+          }
+          final ImageJob imageJob = new ImageJob();
+          try {
+            fileOps.readShaderJobFileToImageJob(variant, imageJob);
+          } catch (Exception err) {
+            LOGGER.error("Could not load shader job " + variant, err);
+            continue;
+          }
+          loaded.put(new Task(variant, resultFile, imageJob));
+        }
+
+        for (int i = 0; i < dispatchThreads; i++) {
+          loaded.put(END);
+        }
+        awaitAll(dispatchFutures);
+        for (int i = 0; i < postProcessThreads; i++) {
+          rendered.put(END);
+        }
+        awaitAll(postProcessFutures);
+      } catch (InterruptedException exception) {
+        // A stage that fails interrupts this thread, which might otherwise wait forever to hand a
+        // task to, or for a task from, the failed stage.
+        if (stageFailure.get() != null) {
+          throw propagate(stageFailure.get());
+        }
+        throw exception;
+      }
+    } finally {
+      executorService.shutdownNow();
+    }
+    return numShadersRun + numVariantsRun.get();
+  }
+
+  /**
+   * Starts a stage of the pipeline.  If the stage fails, the failure is recorded and the thread
+   * that started the stage is interrupted, unless the failure is due to the pipeline being shut
+   * down.
+   */
+  private static Future<?> startStage(ExecutorService executorService,
+      AtomicReference<Throwable> stageFailure, Stage stage) {
+    final Thread runThread = Thread.currentThread();
+    return executorService.submit(() -> {
+      try {
+        stage.run();
+      } catch (Throwable throwable) {
+        if (!executorService.isShutdown() && stageFailure.compareAndSet(null, throwable)) {
+          runThread.interrupt();
+        }
+        throw throwable;
+      }
+      return null;
+    });
+  }
+
+  private void dispatch(IShaderDispatcher dispatcher, BlockingQueue<Task> loaded,
+      BlockingQueue<Task> rendered) throws InterruptedException {
+    while (true) {
+      final Task task = loaded.take();
+      if (task == END) {
+        return;
+      }
+      LOGGER.info("Running shader job: {} ", task.shaderJobFile);
+      try {
+        task.result = dispatcher.getImage(task.imageJob);
+      } catch (InterruptedException err) {
+        throw err;
+      } catch (Exception err) {
+        LOGGER.error("runShader() raise exception on " + task.shaderJobFile, err);
+        continue;
+      }
+      rendered.put(task);
+    }
+  }
+
+  private void postProcess(BlockingQueue<Task> rendered, File referenceResult,
+      AtomicInteger numVariantsRun) throws InterruptedException {
+    while (true) {
+      final Task task = rendered.take();
+      if (task == END) {
+        return;
+      }
+      try {
+        fileOps.writeShaderResultToFile(
+            task.result,
+            task.resultFile,
+            Optional.of(referenceResult));
+        numVariantsRun.incrementAndGet();
+      } catch (InterruptedException err) {
+        throw err;
+      } catch (Exception err) {
+        LOGGER.error("Could not write result for " + task.shaderJobFile, err);
+      }
+    }
+  }
+
+  private static void awaitAll(List<Future<?>> futures) throws InterruptedException {
+    for (Future<?> future : futures) {
+      try {
+        future.get();
+      } catch (ExecutionException exception) {
+        throw propagate(exception.getCause());
+      }
+    }
+  }
+
+  private static RuntimeException propagate(Throwable stageFailure) {
+    // This thread might have been interrupted because of the failure; that interruption should
+    // not outlive the run.
+    Thread.interrupted();
+    if (stageFailure instanceof Error) {
+      throw (Error) stageFailure;
+    }
+    if (stageFailure instanceof RuntimeException) {
+      return (RuntimeException) stageFailure;
+    }
+    return new RuntimeException(stageFailure);
+  }
+
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2019 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.shadersets;
+
+import com.graphicsfuzz.server.thrift.ImageJob;
+import com.graphicsfuzz.server.thrift.ImageJobResult;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Shares a pool of dispatchers, e.g. one per worker, between threads.  Each request is handed to
+ * a dispatcher that is not busy, waiting for one to become free if need be.  Waiting threads are
+ * served in the order in which they arrived, so that no thread is starved of dispatchers.
+ *
+ * <p>A dispatcher that can handle several requests at once may appear in the pool several
+ * times.</p>
+ */
+public class PooledShaderDispatcher implements IShaderDispatcher {
+
+  private final BlockingQueue<IShaderDispatcher> idleDispatchers;
+
+  public PooledShaderDispatcher(List<IShaderDispatcher> dispatchers) {
+    if (dispatchers.isEmpty()) {
+      throw new IllegalArgumentException("At least one dispatcher is required.");
+    }
+    this.idleDispatchers = new ArrayBlockingQueue<>(dispatchers.size(), true, dispatchers);
+  }
+
+  @Override
+  public ImageJobResult getImage(ImageJob imageJob)
+      throws ShaderDispatchException, InterruptedException {
+    final IShaderDispatcher dispatcher = idleDispatchers.take();
+    try {
+      return dispatcher.getImage(imageJob);
+    } finally {
+      // There is always room, as only dispatchers taken from the queue are put back.
+      idleDispatchers.add(dispatcher);
+    }
+  }
+
+}
@@ -44,8 +44,9 @@ public class RemoteShaderDispatcher implements IShaderDispatcher {
 
   private final AtomicLong jobCounter;
   private final int retryLimit;
+  private final boolean bypassResultCache;
 
-  private static final int DEFAULT_RETRY_LIMIT = 2;
+  public static final int DEFAULT_RETRY_LIMIT = 2;
 
   public RemoteShaderDispatcher(
       String url,
@@ -61,11 +62,33 @@ public class RemoteShaderDispatcher implements IShaderDispatcher {
       Iface fuzzerServiceManager,
       AtomicLong jobCounter,
       int retryLimit) {
+    this(url, worker, fuzzerServiceManager, jobCounter, retryLimit, false);
+  }
+
+  /**
+   * Creates a dispatcher that sends image jobs to a worker, or pool of workers, via the server.
+   * @param url URL of the server's manager API.
+   * @param worker The worker, or pool:NAME for a pool of workers.
+   * @param fuzzerServiceManager The server's manager, when running in the server process.
+   * @param jobCounter Gives ids to the jobs submitted.
+   * @param retryLimit Number of times a worker may retry a job before the job is skipped.
+   * @param bypassResultCache Whether every job must be run on a worker even if the server has a
+   *                          cached result for it, e.g. to find out whether results vary from
+   *                          run to run.
+   */
+  public RemoteShaderDispatcher(
+      String url,
+      String worker,
+      Iface fuzzerServiceManager,
+      AtomicLong jobCounter,
+      int retryLimit,
+      boolean bypassResultCache) {
     this.url = url;
     this.worker = worker;
     this.fuzzerServiceManager = fuzzerServiceManager;
     this.jobCounter = jobCounter;
     this.retryLimit = retryLimit;
+    this.bypassResultCache = bypassResultCache;
   }
 
   public RemoteShaderDispatcher(String url, String worker) {
@@ -82,6 +105,9 @@ public class RemoteShaderDispatcher implements IShaderDispatcher {
     if (!imageJob.isSetSkipRender()) {
       imageJob.setSkipRender(false);
     }
+    if (bypassResultCache) {
+      imageJob.setBypassResultCache(true);
+    }
 
     // Optimisation: no need to actually use HTTP if we are on the server.
     if (fuzzerServiceManager != null) {
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.shadersets;
+
+import com.graphicsfuzz.server.thrift.ImageJob;
+import com.graphicsfuzz.server.thrift.ImageJobResult;
+import com.graphicsfuzz.server.thrift.JobStatus;
+import com.graphicsfuzz.server.thrift.ResultConstant;
+import com.graphicsfuzz.util.StreamGobbler;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.transport.TIOStreamTransport;
+import org.apache.thrift.transport.TTransport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A renderer process that is kept alive across image jobs, so that process startup and graphics
+ * context creation are paid for once rather than once per job.
+ *
+ * <p>The protocol is the one that the server uses to talk to workers, minus the HTTP: each
+ * {@link ImageJob} is written to the renderer's standard input, and the renderer answers with an
+ * {@link ImageJobResult} on its standard output, both in the Thrift binary protocol.  The renderer
+ * should exit when its standard input is closed.  Anything it writes to its standard error is
+ * logged, and is reported as the log of a job during which it crashes.</p>
+ *
+ * <p>If the renderer exits while running a job, the job is reported as a {@link JobStatus#CRASH};
+ * if it takes longer than the timeout, it is killed and the job is reported as a
+ * {@link JobStatus#TIMEOUT}.  Either way, a fresh renderer is started for the next job.</p>
+ *
+ * <p>See {@link StubRenderer} for a renderer that implements the protocol without rendering.</p>
+ */
+public class RendererSession implements AutoCloseable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(RendererSession.class);
+
+  // Time a renderer is given to exit once its standard input has been closed.
+  private static final long EXIT_WAIT_MS = 1000;
+
+  private final List<String> command;
+  private final long timeoutMillis;
+
+  // Reads results, so that a renderer that does not answer can be abandoned.
+  private final ExecutorService exchangeExecutor = Executors.newSingleThreadExecutor(runnable -> {
+    final Thread thread = new Thread(runnable, "RendererSession");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private Process process;
+  private TTransport transport;
+  private TProtocol protocol;
+  private StreamGobbler stderrGobbler;
+  private final StringBuffer stderr = new StringBuffer();
+  private int numStarts;
+  private int numJobs;
+
+  /**
+   * Creates a session; the renderer is started when the first job arrives.
+   * @param command The command that starts the renderer.
+   * @param timeoutMillis Time after which a job is abandoned and the renderer killed; 0 means no
+   *                      limit.
+   */
+  public RendererSession(List<String> command, long timeoutMillis) {
+    this.command = new ArrayList<>(command);
+    this.timeoutMillis = timeoutMillis;
+  }
+
+  /**
+   * Runs an image job in the renderer, starting a renderer if none is running.
+   * @param imageJob The job.
+   * @return The result of the job.
+   * @throws ShaderDispatchException if no renderer can be started.
+   * @throws InterruptedException if interrupted.
+   */
+  public synchronized ImageJobResult render(ImageJob imageJob)
+      throws ShaderDispatchException, InterruptedException {
+    if (process == null) {
+      start();
+    }
+    stderr.setLength(0);
+    numJobs++;
+
+    final Future<ImageJobResult> exchange = exchangeExecutor.submit(() -> {
+      imageJob.write(protocol);
+      transport.flush();
+      final ImageJobResult result = new ImageJobResult();
+      result.read(protocol);
+      return result;
+    });
+    try {
+      return timeoutMillis > 0
+          ? exchange.get(timeoutMillis, TimeUnit.MILLISECONDS)
+          : exchange.get();
+    } catch (TimeoutException exception) {
+      LOGGER.warn("Renderer did not answer within {} ms; restarting it.", timeoutMillis);
+      exchange.cancel(true);
+      stop(true);
+      return new ImageJobResult()
+          .setStatus(JobStatus.TIMEOUT)
+          .setLog(ResultConstant.TIMEOUT + "\n" + stderr);
+    } catch (ExecutionException exception) {
+      if (!(exception.getCause() instanceof TException)) {
+        throw new ShaderDispatchException(exception.getCause());
+      }
+      // The renderer has most likely crashed; if so, it closed its output.
+      final Process crashed = process;
+      stop(false);
+      final String exitStatus = crashed.isAlive() ? "unknown"
+          : String.valueOf(crashed.exitValue());
+      LOGGER.warn("Renderer crashed (exit status {}); restarting it.", exitStatus);
+      return new ImageJobResult()
+          .setStatus(JobStatus.CRASH)
+          .setLog(ResultConstant.ERROR + "\nRenderer crashed with exit status " + exitStatus + "\n"
+              + stderr);
+    } catch (InterruptedException exception) {
+      exchange.cancel(true);
+      stop(true);
+      throw exception;
+    }
+  }
+
+  public synchronized int getNumStarts() {
+    return numStarts;
+  }
+
+  public synchronized int getNumJobs() {
+    return numJobs;
+  }
+
+  /**
+   * Stops the renderer, if running, and the session with it.
+   */
+  @Override
+  public synchronized void close() {
+    stop(false);
+    exchangeExecutor.shutdownNow();
+  }
+
+  private void start() throws ShaderDispatchException {
+    LOGGER.info("Starting renderer: {}", String.join(" ", command));
+    try {
+      process = new ProcessBuilder(command).start();
+    } catch (IOException exception) {
+      throw new ShaderDispatchException("Could not start renderer: " + String.join(" ", command),
+          exception);
+    }
+    numStarts++;
+    transport = new TIOStreamTransport(
+        new BufferedInputStream(process.getInputStream()),
+        new BufferedOutputStream(process.getOutputStream()));
+    protocol = new TBinaryProtocol(transport);
+    stderrGobbler = new StreamGobbler(process.getErrorStream()) {
+      @Override
+      protected void handleLine(String line) {
+        LOGGER.debug("renderer stderr: {}", line);
+        stderr.append(line).append("\n");
+      }
+
+      @Override
+      public StringBuffer getResult() {
+        return stderr;
+      }
+    };
+    stderrGobbler.setDaemon(true);
+    stderrGobbler.start();
+  }
+
+  // Stops the renderer, first killing it if it may be unresponsive.
+  private void stop(boolean kill) {
+    if (process == null) {
+      return;
+    }
+    if (kill) {
+      process.destroyForcibly();
+    }
+    // Closing the renderer's input asks it to exit; it is killed if it does not.
+    transport.close();
+    try {
+      if (!process.waitFor(EXIT_WAIT_MS, TimeUnit.MILLISECONDS)) {
+        process.destroyForcibly().waitFor(EXIT_WAIT_MS, TimeUnit.MILLISECONDS);
+      }
+      // Let the last words of the renderer reach the log.
+      stderrGobbler.join(EXIT_WAIT_MS);
+    } catch (InterruptedException exception) {
+      process.destroyForcibly();
+      Thread.currentThread().interrupt();
+    }
+    process = null;
+    transport = null;
+    protocol = null;
+    stderrGobbler = null;
+  }
+
+}
@@ -22,6 +22,9 @@ import com.graphicsfuzz.server.thrift.ImageJob;
 import com.graphicsfuzz.server.thrift.ImageJobResult;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicLong;
 import net.sourceforge.argparse4j.ArgumentParsers;
@@ -68,9 +71,30 @@ public class RunShaderFamily {
         .type(String.class);
 
     parser.addArgument("--worker")
-        .help("The worker used for get image requests. Used with --server.")
+        .help("The worker used for get image requests, or pool:NAME to share the requests "
+            + "between the workers of a pool. A comma-separated list of workers spreads the "
+            + "shader family across them. Used with --server.")
         .type(String.class);
 
+    parser.addArgument("--jobs-per-worker")
+        .help("Number of get image requests to have in flight at once for each worker, so that "
+            + "a worker need not wait for its next job while its last result is processed. Used "
+            + "with --server.")
+        .setDefault(1)
+        .type(Integer.class);
+
+    parser.addArgument("--no-result-cache")
+        .help("Run every image job on a worker, even if the server has a cached result for an "
+            + "identical job; use this when checking whether a device renders shaders "
+            + "nondeterministically.")
+        .action(Arguments.storeTrue());
+
+    parser.addArgument("--post-process-threads")
+        .help("Number of threads that write results and compute image comparison metrics, "
+            + "while further shader jobs are run.")
+        .setDefault(2)
+        .type(Integer.class);
+
     parser.addArgument("--output")
         .help("Output directory.")
         .setDefault(new File("."))
@@ -88,6 +112,9 @@ public class RunShaderFamily {
     final String server = ns.get("server");
     final String worker = ns.get("worker");
     final File outputDir = ns.get("output");
+    final int jobsPerWorker = ns.getInt("jobs_per_worker");
+    final int postProcessThreads = ns.getInt("post_process_threads");
+    final boolean noResultCache = ns.getBoolean("no_result_cache");
 
     if (managerOverride != null && (server == null || worker == null)) {
       throw new ArgumentParserException(
@@ -101,16 +128,29 @@ public class RunShaderFamily {
       }
     }
 
+    if (jobsPerWorker < 1 || postProcessThreads < 1) {
+      throw new ArgumentParserException(
+          "Numbers of jobs per worker and post-processing threads must be positive.", parser);
+    }
+
     ShaderJobFileOperations fileOps = new ShaderJobFileOperations();
 
-    IShaderDispatcher imageGenerator =
-        server == null
-            ? new LocalShaderDispatcher(false, fileOps, new File(outputDir, "temp"))
-            : new RemoteShaderDispatcher(
-                server + "/manageAPI",
-                worker,
-                managerOverride,
-                new AtomicLong());
+    final List<IShaderDispatcher> imageGenerators = new ArrayList<>();
+    if (server == null) {
+      imageGenerators.add(new LocalShaderDispatcher(false, fileOps, new File(outputDir, "temp")));
+    } else {
+      final AtomicLong jobCounter = new AtomicLong();
+      for (String workerName : worker.split(",")) {
+        imageGenerators.add(new RemoteShaderDispatcher(
+            server + "/manageAPI",
+            workerName.trim(),
+            managerOverride,
+            jobCounter,
+            RemoteShaderDispatcher.DEFAULT_RETRY_LIMIT,
+            noResultCache));
+      }
+    }
+    final IShaderDispatcher imageGenerator = imageGenerators.get(0);
 
     fileOps.mkdir(outputDir);
 
@@ -130,7 +170,12 @@ public class RunShaderFamily {
       return;
     }
 
-    int numRun = runShaderFamily(shaderFamily, outputDir, imageGenerator, fileOps);
+    // The local dispatcher renders one shader job at a time.
+    int numRun = new PipelinedShaderFamilyRunner(
+        imageGenerators,
+        server == null ? 1 : jobsPerWorker,
+        postProcessThreads,
+        fileOps).run(shaderFamily, outputDir);
 
     LOGGER.info("Ran {} shaders.", numRun);
   }
@@ -142,54 +187,11 @@ public class RunShaderFamily {
       ShaderJobFileOperations fileOps)
       throws ShaderDispatchException, InterruptedException, IOException {
 
-    int numShadersRun = 0;
-
-    File referenceResult = new File(outputDir, "reference.info.json");
-    File referenceJob = new File(shaderFamilyDir, "reference.json");
-
-    if (!fileOps.doesShaderJobResultFileExist(referenceResult)) {
-      runShader(
-          referenceResult,
-          referenceJob,
-          imageGenerator,
-          Optional.empty(),
-          fileOps);
-      ++numShadersRun;
-    }
-
-    if (!fileOps.isComputeShaderJob(referenceJob)) {
-      if (!fileOps.doesShaderJobResultFileHaveImage(referenceResult)) {
-        LOGGER.info("Reference failed to render, so skipping variants.");
-        return numShadersRun;
-      }
-    }
-
-    final File[] variants =
-        fileOps.listShaderJobFiles(shaderFamilyDir, (dir, name) -> name.startsWith("variant"));
-
-    for (File variant : variants) {
-
-      final String variantName = FilenameUtils.removeExtension(variant.getName());
-      final File resultFile = new File(outputDir, variantName + ".info.json");
-
-      if (fileOps.doesShaderJobResultFileExist(resultFile)) {
-        LOGGER.info("Skipping {} because we already have a result.", variant);
-      } else {
-        try {
-          runShader(
-              resultFile,
-              variant,
-              imageGenerator,
-              Optional.of(referenceResult),
-              fileOps);
-        } catch (Exception err) {
-          LOGGER.error("runShader() raise exception on {}", variant);
-          err.printStackTrace();
-        }
-        ++numShadersRun;
-      }
-    }
-    return numShadersRun;
+    return new PipelinedShaderFamilyRunner(
+        Collections.singletonList(imageGenerator),
+        1,
+        1,
+        fileOps).run(shaderFamilyDir, outputDir);
   }
 
   /**
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.shadersets;
+
+import com.graphicsfuzz.server.thrift.ImageJob;
+import com.graphicsfuzz.server.thrift.ImageJobResult;
+
+/**
+ * Runs shaders locally, like {@link LocalShaderDispatcher}, but in a renderer that stays alive
+ * between jobs, so that no files are written and no process is started per job.  See
+ * {@link RendererSession}.
+ */
+public class SessionShaderDispatcher implements IShaderDispatcher, AutoCloseable {
+
+  private final RendererSession session;
+
+  public SessionShaderDispatcher(RendererSession session) {
+    this.session = session;
+  }
+
+  @Override
+  public ImageJobResult getImage(ImageJob imageJob)
+      throws ShaderDispatchException, InterruptedException {
+    // As for LocalShaderDispatcher, make sure the renderer sees skipRender set.
+    if (!imageJob.isSetSkipRender()) {
+      imageJob.setSkipRender(false);
+    }
+    return session.render(imageJob);
+  }
+
+  @Override
+  public void close() {
+    session.close();
+  }
+
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.shadersets;
+
+import com.graphicsfuzz.server.thrift.ImageJob;
+import com.graphicsfuzz.server.thrift.ImageJobResult;
+import com.graphicsfuzz.server.thrift.JobStatus;
+import com.graphicsfuzz.server.thrift.ResultConstant;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.stream.Stream;
+import javax.imageio.ImageIO;
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
+import net.sourceforge.argparse4j.inf.Namespace;
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.transport.TIOStreamTransport;
+import org.apache.thrift.transport.TTransport;
+import org.apache.thrift.transport.TTransportException;
+
+/**
+ * A renderer for {@link RendererSession} that does not render: each job is answered at once with
+ * an image of a single colour derived from the shader source, so that different shaders give
+ * different images and identical shaders identical ones.  It can be made to report compile errors,
+ * crash or hang on shaders that contain given strings.  Used to test renderer sessions, and the
+ * tools that use them, without a GPU.
+ */
+public final class StubRenderer {
+
+  // Exit status used when crashing on purpose; that of a process killed by SIGSEGV.
+  private static final int CRASH_EXIT_STATUS = 139;
+
+  private final int width;
+  private final int height;
+  private final String compileErrorOn;
+  private final String crashOn;
+  private final String hangOn;
+  private int numJobs;
+
+  private StubRenderer(int width, int height, String compileErrorOn, String crashOn,
+                       String hangOn) {
+    this.width = width;
+    this.height = height;
+    this.compileErrorOn = compileErrorOn;
+    this.crashOn = crashOn;
+    this.hangOn = hangOn;
+  }
+
+  private static Namespace parse(String[] args) throws ArgumentParserException {
+    ArgumentParser parser = ArgumentParsers.newArgumentParser("StubRenderer")
+        .defaultHelp(true)
+        .description("Answer image jobs sent on standard input, as a renderer session does, "
+            + "without rendering.");
+
+    parser.addArgument("--width")
+        .help("Width of the images produced.")
+        .setDefault(32)
+        .type(Integer.class);
+
+    parser.addArgument("--height")
+        .help("Height of the images produced.")
+        .setDefault(32)
+        .type(Integer.class);
+
+    parser.addArgument("--compile-error-on")
+        .help("Report a compile error for shaders that contain this string.")
+        .type(String.class);
+
+    parser.addArgument("--crash-on")
+        .help("Crash on shaders that contain this string.")
+        .type(String.class);
+
+    parser.addArgument("--hang-on")
+        .help("Hang on shaders that contain this string.")
+        .type(String.class);
+
+    return parser.parseArgs(args);
+  }
+
+  public static void main(String[] args) {
+    // Standard output carries the protocol, so anything else printed goes to standard error.
+    final OutputStream protocolOutput = new BufferedOutputStream(System.out);
+    System.setOut(System.err);
+    try {
+      final Namespace ns = parse(args);
+      new StubRenderer(
+          ns.getInt("width"),
+          ns.getInt("height"),
+          ns.getString("compile_error_on"),
+          ns.getString("crash_on"),
+          ns.getString("hang_on"))
+          .serve(new TIOStreamTransport(new BufferedInputStream(System.in), protocolOutput));
+    } catch (ArgumentParserException exception) {
+      exception.getParser().handleError(exception);
+      System.exit(1);
+    } catch (Throwable exception) {
+      exception.printStackTrace();
+      System.exit(1);
+    }
+  }
+
+  private void serve(TTransport transport) throws TException, IOException,
+      InterruptedException {
+    final TProtocol protocol = new TBinaryProtocol(transport);
+    while (true) {
+      final ImageJob imageJob = new ImageJob();
+      try {
+        imageJob.read(protocol);
+      } catch (TTransportException exception) {
+        if (exception.getType() == TTransportException.END_OF_FILE) {
+          // The session is over.
+          return;
+        }
+        throw exception;
+      }
+      render(imageJob).write(protocol);
+      transport.flush();
+    }
+  }
+
+  private ImageJobResult render(ImageJob imageJob) throws IOException, InterruptedException {
+    numJobs++;
+    final String log = "Stub renderer job " + numJobs + "\n";
+    if (contains(imageJob, crashOn)) {
+      System.err.println("Crashing on purpose.");
+      Runtime.getRuntime().halt(CRASH_EXIT_STATUS);
+    }
+    if (contains(imageJob, hangOn)) {
+      Thread.sleep(Long.MAX_VALUE);
+    }
+    if (contains(imageJob, compileErrorOn)) {
+      return new ImageJobResult()
+          .setStatus(JobStatus.COMPILE_ERROR)
+          .setLog(ResultConstant.COMPILE_ERROR + "\n" + log)
+          .setPassSanityCheck(true);
+    }
+    final ImageJobResult result = new ImageJobResult()
+        .setStatus(JobStatus.SUCCESS)
+        .setLog("\n" + log)
+        .setPassSanityCheck(true);
+    if (!imageJob.isSkipRender()) {
+      result.setPNG(makeImage(Objects.hash(imageJob.getFragmentSource(),
+          imageJob.getVertexSource(), imageJob.getComputeSource())));
+    }
+    return result;
+  }
+
+  private byte[] makeImage(int rgb) throws IOException {
+    final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    final int[] pixels = new int[width * height];
+    Arrays.fill(pixels, rgb);
+    image.setRGB(0, 0, width, height, pixels, 0, width);
+    final ByteArrayOutputStream png = new ByteArrayOutputStream();
+    ImageIO.write(image, "png", png);
+    return png.toByteArray();
+  }
+
+  private static boolean contains(ImageJob imageJob, String string) {
+    return string != null
+        && Stream.of(imageJob.getFragmentSource(), imageJob.getVertexSource(),
+            imageJob.getComputeSource())
+            .anyMatch(source -> source != null && source.contains(string));
+  }
+
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.common.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ImageStoreTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private static final byte[] IMAGE = new byte[] { 1, 2, 3 };
+  private static final byte[] OTHER_IMAGE = new byte[] { 4, 5, 6 };
+
+  @Test
+  public void testIdenticalImagesShareContent() throws Exception {
+    final File root = temporaryFolder.getRoot();
+    ImageStore.create(root);
+    final File resultDir = temporaryFolder.newFolder("processing", "worker", "family");
+    final File reference = new File(resultDir, "reference.png");
+    final File variant = new File(resultDir, "variant_0.png");
+
+    final ShaderJobFileOperations fileOps = new ShaderJobFileOperations();
+    fileOps.writeImageFile(reference, IMAGE);
+    fileOps.writeImageFile(variant, IMAGE);
+    assertTrue(Files.isSameFile(reference.toPath(), variant.toPath()));
+    assertArrayEquals(IMAGE, Files.readAllBytes(variant.toPath()));
+
+    // Writing a different image must not affect the image it used to share content with.
+    fileOps.writeImageFile(variant, OTHER_IMAGE);
+    assertFalse(Files.isSameFile(reference.toPath(), variant.toPath()));
+    assertArrayEquals(IMAGE, Files.readAllBytes(reference.toPath()));
+    assertArrayEquals(OTHER_IMAGE, Files.readAllBytes(variant.toPath()));
+
+    // As must writing to the image as an ordinary file.
+    fileOps.writeImageFile(variant, IMAGE);
+    fileOps.writeByteArrayToFile(variant, OTHER_IMAGE);
+    assertArrayEquals(IMAGE, Files.readAllBytes(reference.toPath()));
+  }
+
+  @Test
+  public void testDedupe() throws Exception {
+    final File first = temporaryFolder.newFile("first.png");
+    final File second = temporaryFolder.newFile("second.png");
+    Files.write(first.toPath(), IMAGE);
+    Files.write(second.toPath(), IMAGE);
+    assertFalse(ImageStore.find(first).isPresent());
+    final ImageStore imageStore = ImageStore.create(temporaryFolder.getRoot());
+    assertEquals(imageStore.getStoreDir(), ImageStore.find(first).get().getStoreDir());
+    assertFalse(imageStore.dedupe(first));
+    assertTrue(imageStore.dedupe(second));
+    assertTrue(Files.isSameFile(first.toPath(), second.toPath()));
+    assertArrayEquals(IMAGE, Files.readAllBytes(second.toPath()));
+  }
+
+}
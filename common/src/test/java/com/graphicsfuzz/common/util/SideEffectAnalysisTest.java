@@ -0,0 +1,149 @@
+/*
+ * Copyright 2019 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.common.util;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.graphicsfuzz.common.ast.TranslationUnit;
+import com.graphicsfuzz.common.ast.decl.FunctionDefinition;
+import com.graphicsfuzz.common.ast.expr.BinOp;
+import com.graphicsfuzz.common.ast.expr.BinaryExpr;
+import com.graphicsfuzz.common.ast.expr.Expr;
+import com.graphicsfuzz.common.ast.expr.IntConstantExpr;
+import com.graphicsfuzz.common.ast.expr.VariableIdentifierExpr;
+import com.graphicsfuzz.common.ast.stmt.ExprStmt;
+import com.graphicsfuzz.common.ast.stmt.Stmt;
+import com.graphicsfuzz.common.glslversion.ShadingLanguageVersion;
+import org.junit.Test;
+
+public class SideEffectAnalysisTest {
+
+  @Test
+  public void testFunctionSummaries() throws Exception {
+    final TranslationUnit tu = ParseHelper.parse("#version 310 es\n"
+        + "int g;"
+        + "float h;"
+        + "struct S { int a; };"
+        + "float localWrites(float x) { float y = x; y++; x += y; return x; }"
+        + "void globalWrite() { g = 1; }"
+        + "void outWrite(out int x) { x = 1; }"
+        + "void outUnwritten(out int x) { }"
+        + "int inoutRead(inout int x) { return x; }"
+        + "int inRead(in int x) { x++; return x; }"
+        + "void callsOutUnwritten() { int x; outUnwritten(x); }"
+        + "void callsGlobalWrite() { globalWrite(); }"
+        + "float callsLocalWrites() { return localWrites(1.0); }"
+        + "void discards() { discard; }"
+        + "float localModf(float x) { float i; return modf(x, i); }"
+        + "float globalModf(float x) { float i; return modf(x, h); }"
+        + "void shadowsGlobal() { g = 2; int g; }"
+        + "S makeS() { return S(1); }"
+        + "void declaredOnly();"
+        + "void main() { }");
+    final SideEffectAnalysis analysis = new SideEffectAnalysis(tu, ShadingLanguageVersion.ESSL_310);
+    assertTrue(analysis.isSideEffectFreeFunction("localWrites"));
+    assertFalse(analysis.isSideEffectFreeFunction("globalWrite"));
+    assertFalse(analysis.isSideEffectFreeFunction("outWrite"));
+    // The argument for an out or inout parameter is written back on return, whether or not the
+    // function writes to the parameter.
+    assertFalse(analysis.isSideEffectFreeFunction("outUnwritten"));
+    assertFalse(analysis.isSideEffectFreeFunction("inoutRead"));
+    assertTrue(analysis.isSideEffectFreeFunction("inRead"));
+    assertFalse(analysis.isSideEffectFreeFunction("callsOutUnwritten"));
+    assertFalse(analysis.isSideEffectFreeFunction("callsGlobalWrite"));
+    assertTrue(analysis.isSideEffectFreeFunction("callsLocalWrites"));
+    assertFalse(analysis.isSideEffectFreeFunction("discards"));
+    assertTrue(analysis.isSideEffectFreeFunction("localModf"));
+    assertFalse(analysis.isSideEffectFreeFunction("globalModf"));
+    assertFalse(analysis.isSideEffectFreeFunction("shadowsGlobal"));
+    assertTrue(analysis.isSideEffectFreeFunction("makeS"));
+    assertFalse(analysis.isSideEffectFreeFunction("declaredOnly"));
+  }
+
+  @Test
+  public void testSideEffectingBuiltins() throws Exception {
+    final TranslationUnit tu = ParseHelper.parse("#version 310 es\n"
+        + "uniform highp image2D img;"
+        + "void sync() { barrier(); }"
+        + "void fence() { memoryBarrierShared(); }"
+        + "void store() { imageStore(img, ivec2(0), vec4(1.0)); }"
+        + "void callsStore() { store(); }"
+        + "void emit() { EmitVertex(); }"
+        + "float pure(float x) { return abs(x); }"
+        + "void main() { barrier(); }");
+    final SideEffectAnalysis analysis = new SideEffectAnalysis(tu, ShadingLanguageVersion.ESSL_310);
+    assertFalse(analysis.isSideEffectFreeFunction("sync"));
+    assertFalse(analysis.isSideEffectFreeFunction("fence"));
+    assertFalse(analysis.isSideEffectFreeFunction("store"));
+    assertFalse(analysis.isSideEffectFreeFunction("callsStore"));
+    assertFalse(analysis.isSideEffectFreeFunction("emit"));
+    assertTrue(analysis.isSideEffectFreeFunction("pure"));
+    assertFalse(analysis.isSideEffectFree(tu.getMainFunction().getBody().getStmt(0)));
+  }
+
+  @Test
+  public void testCallsAndNestedNodes() throws Exception {
+    final TranslationUnit tu = ParseHelper.parse("#version 310 es\n"
+        + "int g;"
+        + "int pure(int x) { return x + 1; }"
+        + "int impure(int x) { g = x; return x; }"
+        + "void main() {"
+        + "  pure(pure(2));"
+        + "  pure(impure(2));"
+        + "}");
+    final SideEffectAnalysis analysis = new SideEffectAnalysis(tu, ShadingLanguageVersion.ESSL_310);
+    final Stmt first = tu.getMainFunction().getBody().getStmt(0);
+    final Stmt second = tu.getMainFunction().getBody().getStmt(1);
+    assertTrue(analysis.isSideEffectFree(first));
+    assertFalse(analysis.isSideEffectFree(second));
+    final Expr argument = ((ExprStmt) second).getExpr().getChild(0);
+    assertFalse(analysis.isSideEffectFree(argument));
+    assertTrue(analysis.isSideEffectFree(argument.getChild(0)));
+
+    // Without the translation unit, calls to user-defined functions are assumed to have side
+    // effects.
+    assertFalse(SideEffectChecker.isSideEffectFree(first, ShadingLanguageVersion.ESSL_310,
+        ShaderKind.FRAGMENT));
+  }
+
+  @Test
+  public void testInvalidate() throws Exception {
+    final TranslationUnit tu = ParseHelper.parse("#version 310 es\n"
+        + "int g;"
+        + "int f() { return 1; }"
+        + "void main() { f(); }");
+    final SideEffectAnalysis analysis = new SideEffectAnalysis(tu, ShadingLanguageVersion.ESSL_310);
+    final Stmt call = tu.getMainFunction().getBody().getStmt(0);
+    assertTrue(analysis.isSideEffectFree(call));
+    tu.getTopLevelDeclarations().stream()
+        .filter(item -> item instanceof FunctionDefinition)
+        .map(item -> (FunctionDefinition) item)
+        .filter(item -> item.getPrototype().getName().equals("f"))
+        .findFirst()
+        .get()
+        .getBody()
+        .insertStmt(0, new ExprStmt(new BinaryExpr(new VariableIdentifierExpr("g"),
+            new IntConstantExpr("1"), BinOp.ASSIGN)));
+    // The analysis remembers its earlier answer until it is told that the translation unit has
+    // changed.
+    assertTrue(analysis.isSideEffectFree(call));
+    analysis.invalidate();
+    assertFalse(analysis.isSideEffectFree(call));
+  }
+
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.common.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class SplitMix64RandomTest {
+
+  @Test
+  public void testReferenceValues() {
+    // The first outputs of the reference SplitMix64 implementation when seeded with zero.
+    final SplitMix64Random random = new SplitMix64Random(0);
+    assertEquals(0xe220a8397b1dcdafL, random.nextRawLong());
+    assertEquals(0x6e789e6aa1b965f4L, random.nextRawLong());
+    assertEquals(0x06c45d188009454fL, random.nextRawLong());
+  }
+
+  @Test
+  public void testBounds() {
+    final IRandom random = new SplitMix64Random(42);
+    for (int i = 0; i < 10000; i++) {
+      final int intValue = random.nextInt(7);
+      assertTrue(intValue >= 0 && intValue < 7);
+      final int powerOfTwoValue = random.nextInt(16);
+      assertTrue(powerOfTwoValue >= 0 && powerOfTwoValue < 16);
+      final long longValue = random.nextLong(1000000000000L);
+      assertTrue(longValue >= 0 && longValue < 1000000000000L);
+      final float floatValue = random.nextFloat();
+      assertTrue(floatValue >= 0.0f && floatValue < 1.0f);
+      assertEquals(0, random.nextInt(1));
+    }
+  }
+
+  @Test
+  public void testAllValuesInRangeAreProduced() {
+    final IRandom random = new SplitMix64Random(7);
+    final boolean[] seen = new boolean[10];
+    for (int i = 0; i < 1000; i++) {
+      seen[random.nextInt(10)] = true;
+    }
+    for (boolean value : seen) {
+      assertTrue(value);
+    }
+  }
+
+  @Test
+  public void testChildCanBeRecreatedFromDescription() {
+    final IRandom parent = new SplitMix64Random(123);
+    parent.nextInt(10);
+    final IRandom child = parent.spawnChild();
+    final String description = child.getDescription();
+    final String prefix = "SplitMix64Random with seed: ";
+    assertTrue(description.startsWith(prefix));
+    final IRandom recreated =
+        new SplitMix64Random(Long.parseUnsignedLong(description.substring(prefix.length())));
+    for (int i = 0; i < 100; i++) {
+      assertEquals(child.nextInt(1000), recreated.nextInt(1000));
+    }
+  }
+
+  @Test
+  public void testSameSeedSameSequence() {
+    final IRandom first = RandomAlgorithm.SPLITMIX64.create(99);
+    final IRandom second = RandomAlgorithm.SPLITMIX64.create(99);
+    for (int i = 0; i < 100; i++) {
+      assertEquals(first.nextLong(Long.MAX_VALUE), second.nextLong(Long.MAX_VALUE));
+      assertEquals(first.nextBoolean(), second.nextBoolean());
+      assertEquals(first.spawnChild().nextInt(50), second.spawnChild().nextInt(50));
+    }
+  }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.shadersets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.graphicsfuzz.common.util.ShaderJobFileOperations;
+import com.graphicsfuzz.server.thrift.ImageJobResult;
+import com.graphicsfuzz.server.thrift.JobStatus;
+import java.io.File;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ExactImageFileComparatorTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private static final byte[] IMAGE = new byte[] { 1, 2, 3 };
+  private static final byte[] OTHER_IMAGE = new byte[] { 4, 5, 6 };
+
+  @Test
+  public void testInMemoryComparisonAgreesWithFiles() throws Exception {
+    final ShaderJobFileOperations fileOps = new ShaderJobFileOperations();
+    final File reference = temporaryFolder.newFile("reference.info.json");
+    final File variant = temporaryFolder.newFile("variant.info.json");
+    fileOps.writeByteArrayToFile(temporaryFolder.newFile("reference.png"), IMAGE);
+    fileOps.writeByteArrayToFile(temporaryFolder.newFile("variant.png"), IMAGE);
+
+    final ExactImageFileComparator identicalIsInteresting =
+        new ExactImageFileComparator(true, fileOps);
+    final ExactImageFileComparator differentIsInteresting =
+        new ExactImageFileComparator(false, fileOps);
+
+    assertTrue(identicalIsInteresting.areFilesInteresting(reference, variant));
+    assertTrue(identicalIsInteresting.isImageInteresting(reference, IMAGE));
+    assertFalse(identicalIsInteresting.isImageInteresting(reference, OTHER_IMAGE));
+    assertFalse(differentIsInteresting.areFilesInteresting(reference, variant));
+    assertFalse(differentIsInteresting.isImageInteresting(reference, IMAGE));
+    assertTrue(differentIsInteresting.isImageInteresting(reference, OTHER_IMAGE));
+  }
+
+  @Test
+  public void testWriteShaderResultStatus() throws Exception {
+    final ShaderJobFileOperations fileOps = new ShaderJobFileOperations();
+    final File resultFile = new File(temporaryFolder.getRoot(), "variant.info.json");
+    fileOps.writeShaderResultStatusToFile(
+        new ImageJobResult()
+            .setStatus(JobStatus.CRASH)
+            .setLog("Signal 11")
+            .setPNG(IMAGE),
+        resultFile);
+    final JsonObject info =
+        new Gson().fromJson(fileOps.readFileToString(resultFile), JsonObject.class);
+    assertEquals(JobStatus.CRASH.toString(), info.get("status").getAsString());
+    assertEquals("Signal 11",
+        fileOps.readFileToString(new File(temporaryFolder.getRoot(), "variant.txt")));
+    assertFalse(new File(temporaryFolder.getRoot(), "variant.png").exists());
+  }
+
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright 2019 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.shadersets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.graphicsfuzz.common.util.ShaderJobFileOperations;
+import com.graphicsfuzz.server.thrift.ImageJob;
+import com.graphicsfuzz.server.thrift.ImageJobResult;
+import com.graphicsfuzz.server.thrift.JobStatus;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.commons.io.FilenameUtils;
+import org.junit.Test;
+
+public class PipelinedShaderFamilyRunnerTest {
+
+  private static final File SHADER_FAMILY = new File("family");
+  private static final File OUTPUT = new File("output");
+  private static final int NUM_VARIANTS = 10;
+
+  // Keeps shader jobs and their results in memory, so that no real shaders need to be read,
+  // rendered or compared.
+  private static class FakeFileOperations extends ShaderJobFileOperations {
+
+    private final Set<String> results = ConcurrentHashMap.newKeySet();
+    private final Set<String> unloadable = ConcurrentHashMap.newKeySet();
+    private final Set<String> unwritable = ConcurrentHashMap.newKeySet();
+
+    @Override
+    public boolean doesShaderJobResultFileExist(File shaderJobResultFile) {
+      return results.contains(shaderJobResultFile.getName());
+    }
+
+    @Override
+    public boolean doesShaderJobResultFileHaveImage(File shaderJobResultFile) {
+      return results.contains(shaderJobResultFile.getName());
+    }
+
+    @Override
+    public boolean isComputeShaderJob(File shaderJobFile) {
+      return false;
+    }
+
+    @Override
+    public File[] listShaderJobFiles(File directory, FilenameFilter filter) {
+      final List<File> result = new ArrayList<>();
+      result.add(new File(directory, "reference.json"));
+      for (int i = 0; i < NUM_VARIANTS; i++) {
+        result.add(new File(directory, variantName(i) + ".json"));
+      }
+      result.removeIf(item -> filter != null && !filter.accept(directory, item.getName()));
+      return result.toArray(new File[0]);
+    }
+
+    @Override
+    public void readShaderJobFileToImageJob(File shaderJobFile, ImageJob imageJob)
+        throws IOException {
+      final String name = FilenameUtils.removeExtension(shaderJobFile.getName());
+      if (unloadable.contains(name)) {
+        throw new IOException("Cannot load " + name);
+      }
+      imageJob.setName(name);
+    }
+
+    @Override
+    public void writeShaderResultToFile(ImageJobResult shaderResult, File shaderResultFile,
+        Optional<File> referenceShaderResultFile) throws IOException {
+      if (unwritable.contains(shaderResultFile.getName())) {
+        throw new IOException("Cannot write " + shaderResultFile);
+      }
+      results.add(shaderResultFile.getName());
+    }
+
+  }
+
+  private static class Device implements IShaderDispatcher {
+
+    private final FakeFileOperations fileOps;
+    private final List<String> jobNames = Collections.synchronizedList(new ArrayList<>());
+    private final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+    private final Set<String> failing = ConcurrentHashMap.newKeySet();
+    private final Set<String> fatal = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean variantRunBeforeReference = new AtomicBoolean(false);
+
+    private Device(FakeFileOperations fileOps) {
+      this.fileOps = fileOps;
+    }
+
+    @Override
+    public ImageJobResult getImage(ImageJob imageJob) throws ShaderDispatchException,
+        InterruptedException {
+      threads.add(Thread.currentThread());
+      jobNames.add(imageJob.getName());
+      if (!imageJob.getName().equals("reference")
+          && !fileOps.results.contains("reference.info.json")) {
+        variantRunBeforeReference.set(true);
+      }
+      if (failing.contains(imageJob.getName())) {
+        throw new ShaderDispatchException("Cannot render " + imageJob.getName());
+      }
+      if (fatal.contains(imageJob.getName())) {
+        throw new Error("Device lost while rendering " + imageJob.getName());
+      }
+      Thread.sleep(1);
+      return new ImageJobResult().setStatus(JobStatus.SUCCESS);
+    }
+  }
+
+  @Test
+  public void testReferenceIsRunFirst() throws Exception {
+    final FakeFileOperations fileOps = new FakeFileOperations();
+    final Device first = new Device(fileOps);
+    final Device second = new Device(fileOps);
+
+    final int numRun = new PipelinedShaderFamilyRunner(Arrays.asList(first, second), 2, 2, fileOps)
+        .run(SHADER_FAMILY, OUTPUT);
+
+    assertEquals(NUM_VARIANTS + 1, numRun);
+    assertEquals("reference", first.jobNames.get(0));
+    assertFalse(second.jobNames.contains("reference"));
+    assertFalse(first.variantRunBeforeReference.get());
+    assertFalse(second.variantRunBeforeReference.get());
+
+    final List<String> allJobs = new ArrayList<>();
+    allJobs.addAll(first.jobNames);
+    allJobs.addAll(second.jobNames);
+    assertEquals(NUM_VARIANTS + 1, allJobs.size());
+    assertEquals(NUM_VARIANTS + 1, new HashSet<>(allJobs).size());
+    for (int i = 0; i < NUM_VARIANTS; i++) {
+      assertTrue(fileOps.results.contains(variantName(i) + ".info.json"));
+    }
+  }
+
+  @Test
+  public void testExistingResultsAreSkipped() throws Exception {
+    final FakeFileOperations fileOps = new FakeFileOperations();
+    fileOps.results.add("reference.info.json");
+    for (int i = 0; i < NUM_VARIANTS; i += 2) {
+      fileOps.results.add(variantName(i) + ".info.json");
+    }
+    final Device device = new Device(fileOps);
+
+    final int numRun = new PipelinedShaderFamilyRunner(Collections.singletonList(device), 2, 1,
+        fileOps).run(SHADER_FAMILY, OUTPUT);
+
+    assertEquals(NUM_VARIANTS / 2, numRun);
+    assertEquals(NUM_VARIANTS / 2, device.jobNames.size());
+    for (int i = 1; i < NUM_VARIANTS; i += 2) {
+      assertTrue(device.jobNames.contains(variantName(i)));
+    }
+  }
+
+  @Test
+  public void testFailedVariantsAreNotCountedAndAreRunOnResume() throws Exception {
+    final FakeFileOperations fileOps = new FakeFileOperations();
+    fileOps.unloadable.add(variantName(3));
+    fileOps.unwritable.add(variantName(5) + ".info.json");
+    final Device device = new Device(fileOps);
+    device.failing.add(variantName(7));
+
+    final int numRun = new PipelinedShaderFamilyRunner(Collections.singletonList(device), 2, 2,
+        fileOps).run(SHADER_FAMILY, OUTPUT);
+
+    // The reference, and all but the three variants that failed.
+    assertEquals(NUM_VARIANTS - 2, numRun);
+    assertFalse(fileOps.results.contains(variantName(3) + ".info.json"));
+    assertFalse(fileOps.results.contains(variantName(5) + ".info.json"));
+    assertFalse(fileOps.results.contains(variantName(7) + ".info.json"));
+
+    fileOps.unloadable.clear();
+    fileOps.unwritable.clear();
+    final Device resumingDevice = new Device(fileOps);
+    assertEquals(3, new PipelinedShaderFamilyRunner(Collections.singletonList(resumingDevice), 2,
+        2, fileOps).run(SHADER_FAMILY, OUTPUT));
+    assertEquals(new HashSet<>(Arrays.asList(variantName(3), variantName(5), variantName(7))),
+        new HashSet<>(resumingDevice.jobNames));
+  }
+
+  @Test
+  public void testReferenceFailureIsThrown() throws Exception {
+    final FakeFileOperations fileOps = new FakeFileOperations();
+    final Device device = new Device(fileOps);
+    device.failing.add("reference");
+    try {
+      new PipelinedShaderFamilyRunner(Collections.singletonList(device), 1, 1, fileOps)
+          .run(SHADER_FAMILY, OUTPUT);
+      fail("Expected the failure to run the reference to be thrown.");
+    } catch (ShaderDispatchException exception) {
+      // Expected.
+    }
+    assertEquals(Collections.singletonList("reference"), device.jobNames);
+  }
+
+  @Test
+  public void testErrorInStageStopsPipeline() throws Exception {
+    final FakeFileOperations fileOps = new FakeFileOperations();
+    // The reference already has a result, so that only the threads of the pipeline render.
+    fileOps.results.add("reference.info.json");
+    final Device device = new Device(fileOps);
+    device.fatal.add(variantName(0));
+    // With one dispatch thread and a queue of one loaded task, the loading thread would wait
+    // forever for the failed dispatch thread to take the next task, unless it is told of the
+    // failure.
+    try {
+      new PipelinedShaderFamilyRunner(Collections.singletonList(device), 1, 1, fileOps)
+          .run(SHADER_FAMILY, OUTPUT);
+      fail("Expected the error in the dispatch stage to be thrown.");
+    } catch (Error error) {
+      assertEquals("Device lost while rendering " + variantName(0), error.getMessage());
+    }
+    assertFalse(Thread.currentThread().isInterrupted());
+    for (Thread thread : device.threads) {
+      thread.join(10000);
+      assertFalse(thread.isAlive());
+    }
+    assertFalse(fileOps.results.contains(variantName(NUM_VARIANTS - 1) + ".info.json"));
+  }
+
+  private static String variantName(int index) {
+    return String.format("variant_%03d", index);
+  }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2019 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.shadersets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.graphicsfuzz.server.thrift.ImageJob;
+import com.graphicsfuzz.server.thrift.ImageJobResult;
+import com.graphicsfuzz.server.thrift.JobStatus;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class PooledShaderDispatcherTest {
+
+  // Fails the test if it is asked to handle two requests at once.
+  private static class Device implements IShaderDispatcher {
+
+    private final AtomicBoolean busy = new AtomicBoolean(false);
+    private final AtomicInteger numRequests = new AtomicInteger(0);
+    private final AtomicBoolean overlapped = new AtomicBoolean(false);
+
+    @Override
+    public ImageJobResult getImage(ImageJob imageJob) throws InterruptedException {
+      if (!busy.compareAndSet(false, true)) {
+        overlapped.set(true);
+      }
+      numRequests.incrementAndGet();
+      Thread.sleep(5);
+      busy.set(false);
+      return new ImageJobResult().setStatus(JobStatus.SUCCESS);
+    }
+  }
+
+  @Test
+  public void testRequestsAreSharedBetweenIdleDispatchers() throws Exception {
+    final Device first = new Device();
+    final Device second = new Device();
+    final IShaderDispatcher pool = new PooledShaderDispatcher(Arrays.asList(first, second));
+
+    final int numThreads = 4;
+    final int requestsPerThread = 10;
+    final ExecutorService executorService = Executors.newFixedThreadPool(numThreads);
+    try {
+      final List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < numThreads; i++) {
+        futures.add(executorService.submit(() -> {
+          for (int j = 0; j < requestsPerThread; j++) {
+            assertEquals(JobStatus.SUCCESS, pool.getImage(new ImageJob()).getStatus());
+          }
+          return null;
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executorService.shutdownNow();
+    }
+
+    assertFalse(first.overlapped.get());
+    assertFalse(second.overlapped.get());
+    assertEquals(numThreads * requestsPerThread,
+        first.numRequests.get() + second.numRequests.get());
+    assertTrue(first.numRequests.get() > 0);
+    assertTrue(second.numRequests.get() > 0);
+  }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.shadersets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.graphicsfuzz.server.thrift.ImageJob;
+import com.graphicsfuzz.server.thrift.ImageJobResult;
+import com.graphicsfuzz.server.thrift.JobStatus;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class RendererSessionTest {
+
+  private static final String SHADER = "#version 100\nvoid main() { }\n";
+  private static final String OTHER_SHADER = "#version 100\nvoid main() { gl_FragColor; }\n";
+
+  private static List<String> stubRenderer(String... args) {
+    final List<String> command = new ArrayList<>(Arrays.asList(
+        new File(new File(System.getProperty("java.home"), "bin"), "java").toString(),
+        "-cp",
+        System.getProperty("java.class.path"),
+        StubRenderer.class.getName()));
+    command.addAll(Arrays.asList(args));
+    return command;
+  }
+
+  private static ImageJob job(String fragmentSource) {
+    return new ImageJob().setFragmentSource(fragmentSource).setUniformsInfo("{}");
+  }
+
+  @Test
+  public void testJobsShareOneRenderer() throws Exception {
+    try (SessionShaderDispatcher dispatcher =
+             new SessionShaderDispatcher(new RendererSession(stubRenderer(), 0))) {
+      final ImageJobResult first = dispatcher.getImage(job(SHADER));
+      final ImageJobResult second = dispatcher.getImage(job(SHADER));
+      final ImageJobResult other = dispatcher.getImage(job(OTHER_SHADER));
+      for (ImageJobResult result : Arrays.asList(first, second, other)) {
+        assertEquals(JobStatus.SUCCESS, result.getStatus());
+        assertTrue(result.isSetPNG());
+      }
+      assertTrue(other.getLog().contains("job 3"));
+      assertArrayEquals(first.getPNG(), second.getPNG());
+      assertFalse(Arrays.equals(first.getPNG(), other.getPNG()));
+
+      final ImageJobResult skipped = dispatcher.getImage(job(SHADER).setSkipRender(true));
+      assertEquals(JobStatus.SUCCESS, skipped.getStatus());
+      assertFalse(skipped.isSetPNG());
+    }
+  }
+
+  @Test
+  public void testCrashRestartsRenderer() throws Exception {
+    final RendererSession session =
+        new RendererSession(stubRenderer("--crash-on", "gl_FragColor",
+            "--compile-error-on", "error"), 0);
+    try (SessionShaderDispatcher dispatcher = new SessionShaderDispatcher(session)) {
+      assertEquals(JobStatus.SUCCESS, dispatcher.getImage(job(SHADER)).getStatus());
+      final ImageJobResult crashed = dispatcher.getImage(job(OTHER_SHADER));
+      assertEquals(JobStatus.CRASH, crashed.getStatus());
+      assertTrue(crashed.getLog().contains("Crashing on purpose."));
+      assertEquals(JobStatus.COMPILE_ERROR,
+          dispatcher.getImage(job(SHADER + "// error\n")).getStatus());
+      assertEquals(2, session.getNumStarts());
+      assertEquals(3, session.getNumJobs());
+    }
+  }
+
+  @Test
+  public void testHangTimesOut() throws Exception {
+    final RendererSession session =
+        new RendererSession(stubRenderer("--hang-on", "gl_FragColor"), 5000);
+    try (SessionShaderDispatcher dispatcher = new SessionShaderDispatcher(session)) {
+      assertEquals(JobStatus.SUCCESS, dispatcher.getImage(job(SHADER)).getStatus());
+      assertEquals(JobStatus.TIMEOUT, dispatcher.getImage(job(OTHER_SHADER)).getStatus());
+      assertEquals(JobStatus.SUCCESS, dispatcher.getImage(job(SHADER)).getStatus());
+      assertEquals(2, session.getNumStarts());
+    }
+  }
+
+}
@@ -27,6 +27,7 @@ import com.graphicsfuzz.server.thrift.FuzzerService;
 import com.graphicsfuzz.server.thrift.GetWorkerNameResult;
 import com.graphicsfuzz.server.thrift.Job;
 import com.graphicsfuzz.server.thrift.NoJob;
+import com.graphicsfuzz.server.thrift.SourceNotFoundException;
 import com.graphicsfuzz.server.thrift.WorkerNameError;
 import com.graphicsfuzz.server.thrift.WorkerNameNotFoundException;
 import java.io.CharArrayWriter;
@@ -37,6 +38,9 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
 import java.security.SecureRandom;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 import org.apache.commons.io.FileUtils;
 import org.apache.thrift.TException;
@@ -47,7 +51,9 @@ import org.slf4j.MDC;
 public class FuzzerServiceImpl implements FuzzerService.Iface {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(FuzzerServiceImpl.class);
-  private final SessionMap sessions = new SessionMap();
+  public static final long DEFAULT_SESSION_EXPIRY_MS = 60 * 60 * 1000;
+
+  private final SessionMap sessions;
 
   private final String processingDir;
 
@@ -55,17 +61,59 @@ public class FuzzerServiceImpl implements FuzzerService.Iface {
 
   private final WorkQueue reductionWorkQueue;
 
+  // Runs the session reaper; see shutdown().
+  private final ScheduledExecutorService reaperExecutor;
+
+  private final SourceStore sourceStore = new SourceStore();
+
   private final Pattern validWorkerNamePattern = Pattern.compile("[a-zA-Z_0-9-]+");
 
   public FuzzerServiceImpl(
       String processingDir,
       ExecutorService executorService) {
+    this(processingDir, executorService, SessionMap.DEFAULT_LEASE_TIMEOUT_MS,
+        DEFAULT_SESSION_EXPIRY_MS);
+  }
+
+  /**
+   * Creates the service.
+   * @param processingDir Directory under which per-worker results are stored.
+   * @param executorService Used to run work queues.
+   * @param leaseTimeoutMs A worker that has not contacted the server for this long is considered
+   *                       dead, and the jobs queued for it are abandoned.
+   * @param sessionExpiryMs A worker that has not contacted the server for this long is forgotten,
+   *                        as long as it has no queued commands.
+   */
+  public FuzzerServiceImpl(
+      String processingDir,
+      ExecutorService executorService,
+      long leaseTimeoutMs,
+      long sessionExpiryMs) {
 
     this.processingDir = processingDir;
     this.executorService = executorService;
+    this.sessions = new SessionMap(leaseTimeoutMs);
 
     reductionWorkQueue = new WorkQueue(this.executorService, "Reduction Work Queue");
 
+    reaperExecutor =
+        Executors.newSingleThreadScheduledExecutor(runnable -> {
+          final Thread thread = new Thread(runnable, "SessionReaper");
+          thread.setDaemon(true);
+          return thread;
+        });
+    final long reaperIntervalMs = Math.max(1, leaseTimeoutMs / 4);
+    reaperExecutor.scheduleWithFixedDelay(new SessionReaper(sessions, sessionExpiryMs),
+        reaperIntervalMs, reaperIntervalMs, TimeUnit.MILLISECONDS);
+
+  }
+
+  /**
+   * Stops checking the workers' leases.  Call this when the service is no longer needed; the
+   * executor service passed to the constructor is not shut down.
+   */
+  public void shutdown() {
+    reaperExecutor.shutdownNow();
   }
 
   public WorkQueue getReductionWorkQueue() {
@@ -76,7 +124,11 @@ public class FuzzerServiceImpl implements FuzzerService.Iface {
     return sessions;
   }
 
-  public WorkQueue getClientWorkQueue(String client) {
+  public SourceStore getSourceStore() {
+    return sourceStore;
+  }
+
+  public WorkQueue getClientWorkQueue(String client) throws WorkerNameNotFoundException {
     return sessions.getWorkQueue(client);
   }
 
@@ -213,11 +265,6 @@ public class FuzzerServiceImpl implements FuzzerService.Iface {
 
   @Override
   public Job getJob(String worker) throws TException {
-
-    if (!sessions.containsWorker(worker)) {
-      throw new WorkerNameNotFoundException().setWorkerName(worker);
-    }
-
     return sessions.lockSessionAndExecute(worker, session -> {
       try {
         MDC.put("worker", worker);
@@ -248,6 +295,9 @@ public class FuzzerServiceImpl implements FuzzerService.Iface {
             logmsg.append("(job neither skip nor image? should not happen!)");
           }
           LOGGER.info(logmsg.toString());
+          if (session.sourceCache != null) {
+            return sourceStore.elideKnownSources(res, session.sourceCache);
+          }
           return res;
         }
       } catch (ServerJobException exception) {
@@ -260,15 +310,38 @@ public class FuzzerServiceImpl implements FuzzerService.Iface {
   }
 
   @Override
-  public void jobDone(String worker, Job job) throws TException {
+  public void heartbeat(String worker) throws TException {
+    sessions.lockSessionAndExecute(worker, session -> {
+      session.touch();
+      return null;
+    });
+  }
 
-    if (!sessions.containsWorker(worker)) {
-      throw new WorkerNameNotFoundException().setWorkerName(worker);
-    }
+  @Override
+  public void enableSourceCache(String worker, int capacity) throws TException {
+    sessions.lockSessionAndExecute(worker, session -> {
+      LOGGER.info("Worker {} caches up to {} sources.", worker, capacity);
+      session.touch();
+      if (session.sourceCache != null) {
+        session.sourceCache.release();
+      }
+      session.sourceCache = capacity > 0 ? sourceStore.createWorkerCache(capacity) : null;
+      return null;
+    });
+  }
+
+  @Override
+  public String getSource(String hash) throws TException {
+    return sourceStore.getSource(hash).orElseThrow(
+        () -> new SourceNotFoundException().setHash(hash));
+  }
 
+  @Override
+  public void jobDone(String worker, Job job) throws TException {
     sessions.lockSessionAndExecute(worker, session -> {
       try {
         MDC.put("worker", worker);
+        session.touch();
         StringBuilder logmsg = new StringBuilder();
         logmsg.append("jobDone(): JobId#" + job.getJobId()
             + " Queue has size: " + session.jobQueue.size());
@@ -276,11 +349,27 @@ public class FuzzerServiceImpl implements FuzzerService.Iface {
           logmsg.append(" job status: " + job.getImageJob().getResult().getStatus());
         }
         LOGGER.info(logmsg.toString());
+        if (session.forgetAbandonedJob(job.getJobId())) {
+          // The worker's lease expired while it was running the job, so the job has already
+          // been abandoned.
+          LOGGER.info("jobDone(): JobId#{} was abandoned; ignoring late result.",
+              job.getJobId());
+          return null;
+        }
         final IServerJob serverJob = session.jobQueue.peek();
+        if (serverJob == null) {
+          LOGGER.warn("jobDone(): no job is queued; ignoring result.");
+          return null;
+        }
 
         // Execute finish job on the server job and see if it should be removed.
         boolean remove = serverJob.finishJob(job);
 
+        if (session.sourceCache != null) {
+          // The worker got the job, so it now has the job's sources.
+          session.sourceCache.jobDone();
+        }
+
         LOGGER.info("Returned from finishJob. Removing job? {}", remove);
         if (remove) {
           session.jobQueue.remove();
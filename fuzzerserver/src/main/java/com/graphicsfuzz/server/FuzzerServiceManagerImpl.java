@@ -20,21 +20,28 @@ import com.graphicsfuzz.server.thrift.CommandInfo;
 import com.graphicsfuzz.server.thrift.CommandResult;
 import com.graphicsfuzz.server.thrift.FuzzerServiceManager;
 import com.graphicsfuzz.server.thrift.ImageJob;
+import com.graphicsfuzz.server.thrift.ImageJobResult;
 import com.graphicsfuzz.server.thrift.Job;
+import com.graphicsfuzz.server.thrift.JobStatus;
 import com.graphicsfuzz.server.thrift.ServerInfo;
+import com.graphicsfuzz.server.thrift.TransferInfo;
 import com.graphicsfuzz.server.thrift.WorkerInfo;
 import com.graphicsfuzz.server.thrift.WorkerNameNotFoundException;
 import com.graphicsfuzz.util.ExecHelper;
 import com.graphicsfuzz.util.ExecHelper.RedirectType;
 import com.graphicsfuzz.util.ExecResult;
 import com.graphicsfuzz.util.ToolPaths;
+import java.io.File;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Optional;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 import org.apache.thrift.TException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -49,11 +56,38 @@ public class FuzzerServiceManagerImpl implements FuzzerServiceManager.Iface {
 
   private final ICommandDispatcher commandDispatcher;
 
+  private final WorkerPools workerPools;
+
+  private final Optional<JobResultCache> resultCache;
+
+  private final Optional<Supplier<TransferInfo>> wireStatistics;
+
   public FuzzerServiceManagerImpl(FuzzerServiceImpl service,
         ICommandDispatcher commandDispatcher) {
+    this(service, commandDispatcher, Optional.empty(), Optional.empty(), Optional.empty());
+  }
+
+  /**
+   * Creates a service manager that also accepts jobs for pools of workers, and that can answer
+   * repeated jobs from a cache.
+   * @param service The fuzzer service whose workers will run submitted jobs.
+   * @param commandDispatcher Used to run queued commands.
+   * @param poolsConfigFile Optional JSON file defining named worker pools; see WorkerPools.
+   * @param resultCache Optional cache of job results; see JobResultCache.
+   * @param wireStatistics Optional source of the numbers of bytes the server has received and
+   *                       sent, as reported by getServerState.
+   */
+  public FuzzerServiceManagerImpl(FuzzerServiceImpl service,
+        ICommandDispatcher commandDispatcher,
+        Optional<File> poolsConfigFile,
+        Optional<JobResultCache> resultCache,
+        Optional<Supplier<TransferInfo>> wireStatistics) {
     this.service = service;
     this.jobIdCounter = new AtomicLong();
     this.commandDispatcher = commandDispatcher;
+    this.workerPools = new WorkerPools(service.getSessionMap(), poolsConfigFile);
+    this.resultCache = resultCache;
+    this.wireStatistics = wireStatistics;
   }
 
   @Override
@@ -65,25 +99,104 @@ public class FuzzerServiceManagerImpl implements FuzzerServiceManager.Iface {
     }
   }
 
+  /**
+   * Runs a job on a worker, or on a member of a pool of workers if the target has the form
+   * "pool:NAME" (see WorkerPools).  A pool job is given to the least loaded live member of the
+   * pool; if that member skips the job, e.g. because it crashed repeatedly while running it, the
+   * job is tried on the other members in turn before being reported as skipped.
+   *
+   * <p>If the server has a result cache, an image job identical to one already run on a device
+   * with the same platform info is answered from the cache.</p>
+   */
   @Override
   public Job submitJob(Job job, String worker, int retryLimit) throws TException {
     LOGGER.info("submitJob {}", worker);
-    Job[] result = new Job[1];
 
-    if (!service.getSessionMap().containsWorker(worker)) {
-      throw new WorkerNameNotFoundException().setWorkerName(worker);
+    if (!WorkerPools.isPool(worker)) {
+      final Optional<Job> cachedResult = lookupResult(job, Optional.of(getPlatformInfo(worker)));
+      if (cachedResult.isPresent()) {
+        return cachedResult.get();
+      }
+      final Job[] result = new Job[1];
+      // Throws if the worker's session is removed first, as a job queued for a removed session
+      // would never be run.
+      service.getSessionMap().lockSessionAndExecute(worker, session -> {
+        session.jobQueue.add(createSingleJob(job, result, retryLimit));
+        return null;
+      });
+      return recordResult(job, awaitResult(result), worker);
     }
 
-    service.getSessionMap().lockSessionAndExecute(worker, session -> {
-      session.jobQueue.add(new SingleJob(job, job1 -> {
-        synchronized (result) {
-          result[0] = job1;
-          result.notifyAll();
+    final String poolName = WorkerPools.getPoolName(worker);
+    final Optional<Job> cachedResult = lookupResult(job,
+        workerPools.getCommonPlatformInfo(poolName));
+    if (cachedResult.isPresent()) {
+      return cachedResult.get();
+    }
+    final Set<String> triedWorkers = new HashSet<>();
+    Job lastResult = null;
+    while (true) {
+      final Job[] result = new Job[1];
+      // Each attempt gets its own copy of the job, as a job accumulates state (such as its
+      // result) while it is processed.
+      final Optional<String> chosenWorker = workerPools.assignJob(poolName, triedWorkers,
+          createSingleJob(job.deepCopy(), result, retryLimit));
+      if (!chosenWorker.isPresent()) {
+        if (lastResult != null) {
+          return lastResult;
         }
-      }, jobIdCounter, retryLimit));
-      return null;
-    });
+        throw new WorkerNameNotFoundException().setWorkerName(worker);
+      }
+      LOGGER.info("submitJob {}: assigned to {}", worker, chosenWorker.get());
+      triedWorkers.add(chosenWorker.get());
+      lastResult = awaitResult(result);
+      if (!isSkipped(lastResult)) {
+        return recordResult(job, lastResult, chosenWorker.get());
+      }
+    }
+  }
 
+  private String getPlatformInfo(String worker) throws WorkerNameNotFoundException {
+    return service.getSessionMap().lockSessionAndExecute(worker,
+        session -> session.platformInfo);
+  }
+
+  private Optional<Job> lookupResult(Job job, Optional<String> platformInfo) throws TException {
+    if (!resultCache.isPresent() || !platformInfo.isPresent() || !job.isSetImageJob()) {
+      return Optional.empty();
+    }
+    final Optional<ImageJobResult> result = resultCache.get().lookup(platformInfo.get(),
+        job.getImageJob());
+    if (!result.isPresent()) {
+      return Optional.empty();
+    }
+    LOGGER.info("submitJob: answered job {} from the result cache", job.getJobId());
+    final Job cachedJob = job.deepCopy();
+    cachedJob.getImageJob().setResult(result.get());
+    return Optional.of(cachedJob);
+  }
+
+  private Job recordResult(Job job, Job resultJob, String worker) throws TException {
+    // The job returned by the worker is not used as the key, as workers do not send back the
+    // shader sources.
+    if (resultCache.isPresent() && job.isSetImageJob() && resultJob.isSetImageJob()
+        && resultJob.getImageJob().isSetResult()) {
+      resultCache.get().add(getPlatformInfo(worker), job.getImageJob(),
+          resultJob.getImageJob().getResult());
+    }
+    return resultJob;
+  }
+
+  private SingleJob createSingleJob(Job job, Job[] result, int retryLimit) {
+    return new SingleJob(job, job1 -> {
+      synchronized (result) {
+        result[0] = job1;
+        result.notifyAll();
+      }
+    }, jobIdCounter, retryLimit);
+  }
+
+  private static Job awaitResult(Job[] result) throws TException {
     synchronized (result) {
       while (result[0] == null) {
         try {
@@ -92,9 +205,14 @@ public class FuzzerServiceManagerImpl implements FuzzerServiceManager.Iface {
           throw new TException(exception);
         }
       }
+      return result[0];
     }
+  }
 
-    return result[0];
+  private static boolean isSkipped(Job job) {
+    return job.isSetImageJob()
+        && job.getImageJob().isSetResult()
+        && job.getImageJob().getResult().getStatus() == JobStatus.SKIPPED;
   }
 
   @Override
@@ -188,25 +306,43 @@ public class FuzzerServiceManagerImpl implements FuzzerServiceManager.Iface {
     {
       Set<String> workerSet = service.getSessionMap().getWorkerSet();
       for (String worker : workerSet) {
-        service.getSessionMap().lockSessionAndExecute(worker, session -> {
-
-          workers.add(
-                new WorkerInfo()
-                      .setWorkerName(worker)
-                      .setCommandQueue(session.workQueue.getQueueAsCommandInfoList())
-                      .setJobQueue(getJobQueueAsJobInfoList(session.jobQueue))
-                      .setLive(session.isLive())
-          );
-
-          return null;
-        });
+        try {
+          service.getSessionMap().lockSessionAndExecute(worker, session -> {
+            if (session.workQueue == null) {
+              // Placeholder session for a worker that is still being named.
+              return null;
+            }
+
+            workers.add(
+                  new WorkerInfo()
+                        .setWorkerName(worker)
+                        .setCommandQueue(session.workQueue.getQueueAsCommandInfoList())
+                        .setJobQueue(getJobQueueAsJobInfoList(session.jobQueue))
+                        .setLive(session.isLive(service.getSessionMap().getLeaseTimeoutMs()))
+            );
+
+            return null;
+          });
+        } catch (WorkerNameNotFoundException exception) {
+          // The worker's session was removed since the set of workers was taken.
+        }
       }
     }
 
     return
           new ServerInfo()
                 .setReductionQueue(reductionQueue)
-                .setWorkers(workers);
+                .setWorkers(workers)
+                .setPools(workerPools.getConfiguredPoolsSnapshot())
+                .setResultCache(resultCache.map(JobResultCache::getInfo).orElse(null))
+                .setTransfer(getTransferInfo());
+  }
+
+  private TransferInfo getTransferInfo() {
+    final TransferInfo result = wireStatistics.map(Supplier::get).orElse(new TransferInfo());
+    return result
+        .setSourcesElided(service.getSourceStore().getSourcesElided())
+        .setSourceBytesElided(service.getSourceStore().getSourceBytesElided());
   }
 
   private List<String> getJobQueueAsJobInfoList(Queue<IServerJob> jobQueue) {
@@ -17,6 +17,7 @@
 package com.graphicsfuzz.server;
 
 import com.graphicsfuzz.server.thrift.Job;
+import java.util.OptionalLong;
 
 public interface IServerJob {
 
@@ -32,4 +33,18 @@ public interface IServerJob {
    * @return true if this IServerJob should be removed from the job list.
    */
   boolean finishJob(Job job) throws ServerJobException;
+
+  /**
+   * Get the id of the job most recently returned by getJob(), i.e. of the job a worker may be
+   * running and may still reply to.
+   * @return empty if getJob() has not been called.
+   */
+  OptionalLong getHandedOutJobId();
+
+  /**
+   * Report that the job will not be finished by the worker it was queued for, e.g. because the
+   * worker's lease expired.  The job has already been removed from the job list.
+   * @param reason Explanation of why the job was abandoned.
+   */
+  void abandon(String reason);
 }
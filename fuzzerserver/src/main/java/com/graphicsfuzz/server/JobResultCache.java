@@ -0,0 +1,173 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.server;
+
+import com.graphicsfuzz.server.thrift.ImageJob;
+import com.graphicsfuzz.server.thrift.ImageJobResult;
+import com.graphicsfuzz.server.thrift.JobStatus;
+import com.graphicsfuzz.server.thrift.ResultCacheInfo;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.LongSupplier;
+import org.apache.thrift.TException;
+import org.apache.thrift.TSerializer;
+import org.apache.thrift.protocol.TBinaryProtocol;
+
+/**
+ * A bounded cache of the results of image jobs, so that a job identical to one that has already
+ * been run on a device with the same platform info can be answered without running it again.
+ *
+ * <p>Only results that a device should reproduce exactly are cached: successful renders and
+ * compile and link errors.  Jobs are keyed by a hash of the platform info and all job content
+ * apart from the job's name.  Entries expire after a given time, and the least recently used entry
+ * is evicted when the cache is full.  A job can ask not to be answered from the cache by setting
+ * bypassResultCache, which is needed when a job is checking for nondeterminism.</p>
+ */
+public class JobResultCache {
+
+  private static final Set<JobStatus> CACHEABLE_STATUSES =
+      EnumSet.of(JobStatus.SUCCESS, JobStatus.COMPILE_ERROR, JobStatus.LINK_ERROR);
+
+  private final int capacity;
+  private final long timeToLiveMs;
+  private final LongSupplier clock;
+
+  // Access-ordered, so that the eldest entry is the least recently used one.
+  private final LinkedHashMap<CacheKey, CacheEntry> entries;
+
+  private long hits;
+  private long misses;
+
+  public JobResultCache(int capacity, long timeToLiveMs) {
+    this(capacity, timeToLiveMs, System::currentTimeMillis);
+  }
+
+  JobResultCache(int capacity, long timeToLiveMs, LongSupplier clock) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Result cache capacity must be positive.");
+    }
+    this.capacity = capacity;
+    this.timeToLiveMs = timeToLiveMs;
+    this.clock = clock;
+    this.entries = new LinkedHashMap<CacheKey, CacheEntry>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<CacheKey, CacheEntry> eldest) {
+        return size() > JobResultCache.this.capacity;
+      }
+    };
+    this.hits = 0;
+    this.misses = 0;
+  }
+
+  /**
+   * Looks up the result of a job.
+   * @param platformInfo Platform info of the device(s) on which the job would run.
+   * @param imageJob The job.
+   * @return A copy of the cached result, or empty if there is none or the job bypasses the cache.
+   * @throws TException if the job cannot be hashed.
+   */
+  public synchronized Optional<ImageJobResult> lookup(String platformInfo, ImageJob imageJob)
+      throws TException {
+    if (imageJob.isBypassResultCache()) {
+      return Optional.empty();
+    }
+    final CacheKey key = new CacheKey(platformInfo, imageJob);
+    final CacheEntry entry = entries.get(key);
+    if (entry == null || clock.getAsLong() - entry.timeAdded > timeToLiveMs) {
+      if (entry != null) {
+        entries.remove(key);
+      }
+      misses++;
+      return Optional.empty();
+    }
+    hits++;
+    return Optional.of(entry.result.deepCopy());
+  }
+
+  /**
+   * Records the result of a job, if the result is one that can be cached.
+   * @param platformInfo Platform info of the device on which the job ran.
+   * @param imageJob The job as submitted.
+   * @param result The result of running the job.
+   * @throws TException if the job cannot be hashed.
+   */
+  public synchronized void add(String platformInfo, ImageJob imageJob, ImageJobResult result)
+      throws TException {
+    if (imageJob.isBypassResultCache() || !CACHEABLE_STATUSES.contains(result.getStatus())) {
+      return;
+    }
+    entries.put(new CacheKey(platformInfo, imageJob),
+        new CacheEntry(result.deepCopy(), clock.getAsLong()));
+  }
+
+  public synchronized ResultCacheInfo getInfo() {
+    return new ResultCacheInfo()
+        .setHits(hits)
+        .setMisses(misses)
+        .setSize(entries.size())
+        .setCapacity(capacity);
+  }
+
+  private static final class CacheEntry {
+    private final ImageJobResult result;
+    private final long timeAdded;
+
+    private CacheEntry(ImageJobResult result, long timeAdded) {
+      this.result = result;
+      this.timeAdded = timeAdded;
+    }
+  }
+
+  private static final class CacheKey {
+    private final byte[] digest;
+
+    private CacheKey(String platformInfo, ImageJob imageJob) throws TException {
+      // The name of a job and its result do not affect the result of running it.
+      final ImageJob content = imageJob.deepCopy();
+      content.unsetName();
+      content.unsetResult();
+      content.unsetBypassResultCache();
+      try {
+        final MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+        messageDigest.update(platformInfo.getBytes(StandardCharsets.UTF_8));
+        messageDigest.update((byte) 0);
+        messageDigest.update(new TSerializer(new TBinaryProtocol.Factory()).serialize(content));
+        this.digest = messageDigest.digest();
+      } catch (NoSuchAlgorithmException exception) {
+        throw new RuntimeException(exception);
+      }
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof CacheKey && Arrays.equals(digest, ((CacheKey) obj).digest);
+    }
+
+    @Override
+    public int hashCode() {
+      return Arrays.hashCode(digest);
+    }
+  }
+
+}
@@ -16,8 +16,10 @@
 
 package com.graphicsfuzz.server;
 
+import com.graphicsfuzz.server.thrift.WorkerNameNotFoundException;
 import java.util.ArrayDeque;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -28,19 +30,52 @@ public final class SessionMap {
 
   public static class Session {
 
+    private static final int MAX_ABANDONED_JOB_IDS = 16;
+
     public final Queue<IServerJob> jobQueue = new ArrayDeque<>();
     public String platformInfo;
+    // Non-null if the worker caches shader sources; see SourceStore.
+    public SourceStore.WorkerSourceCache sourceCache;
     private final Object mutex = new Object();
     private volatile long touched = System.currentTimeMillis();
+    // Set, under the mutex, when the session is removed from the map; whoever obtained the session
+    // before then must not use it.
+    private boolean removed = false;
+    // Ids of jobs that were abandoned while the worker was running them, oldest first, so that
+    // late results for them can be told apart from results for mismatched jobs.
+    private final Set<Long> abandonedJobIds = new LinkedHashSet<>();
 
-    private static final long FIVE_MINUTES = 5 * 60 * 1000;
-
+    /**
+     * Renews the worker's lease; called whenever the worker contacts the server.
+     */
     public void touch() {
       touched = System.currentTimeMillis();
     }
 
-    public boolean isLive() {
-      return System.currentTimeMillis() - touched < FIVE_MINUTES;
+    public long getTimeSinceTouchedMs() {
+      return System.currentTimeMillis() - touched;
+    }
+
+    public boolean isLive(long leaseTimeoutMs) {
+      return getTimeSinceTouchedMs() < leaseTimeoutMs;
+    }
+
+    /**
+     * Records that the worker may still reply to a job that has been abandoned.  Only the most
+     * recent few such jobs are remembered.
+     */
+    public void recordAbandonedJob(long jobId) {
+      abandonedJobIds.add(jobId);
+      if (abandonedJobIds.size() > MAX_ABANDONED_JOB_IDS) {
+        abandonedJobIds.remove(abandonedJobIds.iterator().next());
+      }
+    }
+
+    /**
+     * @return true if the job was abandoned, in which case it is forgotten.
+     */
+    public boolean forgetAbandonedJob(long jobId) {
+      return abandonedJobIds.remove(jobId);
     }
 
     // Uses its own internal mutex:
@@ -68,8 +103,25 @@ public final class SessionMap {
     T go(Session session) throws E;
   }
 
+  public static final long DEFAULT_LEASE_TIMEOUT_MS = 5 * 60 * 1000;
+
   private final ConcurrentMap<String, Session> sessions = new ConcurrentHashMap<>();
 
+  // A worker that has not contacted the server for this long is considered dead.
+  private final long leaseTimeoutMs;
+
+  public SessionMap() {
+    this(DEFAULT_LEASE_TIMEOUT_MS);
+  }
+
+  public SessionMap(long leaseTimeoutMs) {
+    this.leaseTimeoutMs = leaseTimeoutMs;
+  }
+
+  public long getLeaseTimeoutMs() {
+    return leaseTimeoutMs;
+  }
+
   public Set<String> getWorkerSet() {
     return Collections.unmodifiableSet(sessions.keySet());
   }
@@ -83,7 +135,7 @@ public final class SessionMap {
     if (session == null) {
       return false;
     }
-    return session.isLive();
+    return session.isLive(leaseTimeoutMs);
   }
 
   /**
@@ -98,18 +150,53 @@ public final class SessionMap {
   }
 
   public void remove(String worker) {
-    sessions.remove(worker);
+    final Session session = sessions.get(worker);
+    if (session != null) {
+      remove(worker, session);
+    }
   }
 
-  public WorkQueue getWorkQueue(String worker) {
-    return sessions.get(worker).workQueue;
+  /**
+   * Removes the given session of a worker, if it is still the worker's session, marking it as
+   * removed so that those waiting to lock it do not go on to use it.
+   */
+  public void remove(String worker, Session session) {
+    synchronized (session.mutex) {
+      if (sessions.remove(worker, session)) {
+        session.removed = true;
+      }
+    }
+  }
+
+  public WorkQueue getWorkQueue(String worker) throws WorkerNameNotFoundException {
+    final Session session = sessions.get(worker);
+    if (session == null) {
+      throw new WorkerNameNotFoundException().setWorkerName(worker);
+    }
+    return session.workQueue;
   }
 
+  /**
+   * Runs the given code with the session of a worker locked.
+   * @throws WorkerNameNotFoundException if the worker has no session, e.g. because it was removed
+   *     while waiting for the lock.
+   */
   public <T, E extends Throwable> T lockSessionAndExecute(String worker,
-      SessionWorkerEx<T, E> sessionWorker) throws E {
-    Session session = sessions.get(worker);
-    synchronized (session.mutex) {
-      return sessionWorker.go(session);
+      SessionWorkerEx<T, E> sessionWorker) throws E, WorkerNameNotFoundException {
+    while (true) {
+      final Session session = sessions.get(worker);
+      if (session == null) {
+        throw new WorkerNameNotFoundException().setWorkerName(worker);
+      }
+      synchronized (session.mutex) {
+        if (session.removed) {
+          throw new WorkerNameNotFoundException().setWorkerName(worker);
+        }
+        if (sessions.get(worker) == session) {
+          return sessionWorker.go(session);
+        }
+        // The session was replaced while waiting for the lock; use the new one.
+      }
     }
   }
 
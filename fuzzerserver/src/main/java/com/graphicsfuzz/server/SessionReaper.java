@@ -0,0 +1,89 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.server;
+
+import com.graphicsfuzz.server.thrift.WorkerNameNotFoundException;
+import java.util.ArrayList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Periodically checks the workers' leases.  When a worker's lease has expired, the jobs queued
+ * for it are abandoned, so that whoever submitted them stops waiting (and, for jobs submitted to
+ * a pool, the job is given to another member of the pool).  A worker that has been dead for longer
+ * than the session expiry time, and that has no queued commands, is forgotten altogether; it can
+ * reconnect under its old name later.
+ */
+public class SessionReaper implements Runnable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(SessionReaper.class);
+
+  private final SessionMap sessions;
+  private final long sessionExpiryMs;
+
+  public SessionReaper(SessionMap sessions, long sessionExpiryMs) {
+    this.sessions = sessions;
+    this.sessionExpiryMs = sessionExpiryMs;
+  }
+
+  @Override
+  public void run() {
+    try {
+      for (String worker : new ArrayList<>(sessions.getWorkerSet())) {
+        if (sessions.containsWorker(worker) && !sessions.isLive(worker)) {
+          reap(worker);
+        }
+      }
+    } catch (RuntimeException exception) {
+      // An exception would stop the reaper from being scheduled again.
+      LOGGER.error("Error while checking worker leases.", exception);
+    }
+  }
+
+  private void reap(String worker) {
+    try {
+      reapSession(worker);
+    } catch (WorkerNameNotFoundException exception) {
+      // The session was removed by someone else.
+    }
+  }
+
+  private void reapSession(String worker) throws WorkerNameNotFoundException {
+    sessions.lockSessionAndExecute(worker, session -> {
+      if (session.workQueue == null) {
+        // Placeholder session for a worker that is still being named.
+        return null;
+      }
+      while (!session.jobQueue.isEmpty()) {
+        final IServerJob job = session.jobQueue.remove();
+        LOGGER.info("Lease of worker {} expired; abandoning job {}.", worker, job);
+        job.getHandedOutJobId().ifPresent(session::recordAbandonedJob);
+        job.abandon("The lease of worker " + worker + " expired.");
+      }
+      if (session.getTimeSinceTouchedMs() >= sessionExpiryMs
+          && session.workQueue.getQueueCopy().isEmpty()) {
+        LOGGER.info("Removing session of dead worker {}.", worker);
+        if (session.sourceCache != null) {
+          session.sourceCache.release();
+        }
+        sessions.remove(worker, session);
+      }
+      return null;
+    });
+  }
+
+}
@@ -21,6 +21,7 @@ import com.graphicsfuzz.server.thrift.Job;
 import com.graphicsfuzz.server.thrift.JobStatus;
 import com.graphicsfuzz.server.thrift.ResultConstant;
 import com.graphicsfuzz.server.thrift.SkipJob;
+import java.util.OptionalLong;
 import java.util.concurrent.atomic.AtomicLong;
 
 public class SingleJob implements IServerJob {
@@ -91,4 +92,24 @@ public class SingleJob implements IServerJob {
     completer.completeJob(returnedJob);
     return true;
   }
+
+  @Override
+  public OptionalLong getHandedOutJobId() {
+    if (skipJob != null) {
+      return OptionalLong.of(skipJob.getJobId());
+    }
+    return counter > 0 ? OptionalLong.of(job.getJobId()) : OptionalLong.empty();
+  }
+
+  @Override
+  public void abandon(String reason) {
+    if (job.isSetImageJob()) {
+      job.getImageJob()
+          .setResult(
+              new ImageJobResult()
+                  .setStatus(JobStatus.SKIPPED)
+                  .setLog(ResultConstant.SKIPPED.toString() + "\n" + reason + "\n"));
+    }
+    completer.completeJob(job);
+  }
 }
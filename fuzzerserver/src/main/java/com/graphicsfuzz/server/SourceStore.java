@@ -0,0 +1,264 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.server;
+
+import com.graphicsfuzz.server.thrift.ImageJob;
+import com.graphicsfuzz.server.thrift.Job;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Content-addressed storage of the shader sources sent to workers, so that a worker that keeps a
+ * cache of sources need not be sent a source it already has.
+ *
+ * <p>A worker enables this by telling the server the capacity of its cache.  The server then
+ * tracks, per worker, which sources the worker should have: the most recently used ones, up to the
+ * capacity.  When a job is given to such a worker, each source is accompanied by its hash, and
+ * sources the worker should already have are left out.  The worker must use its cache in the same
+ * way: for the fragment, vertex and compute source in that order, record each source it is sent
+ * and mark each source it takes from the cache as most recently used.  If the worker nevertheless
+ * lacks a source, it can ask for it by hash.</p>
+ *
+ * <p>The server only records that a worker has the sources of a job once the worker reports the
+ * job done, since a job may be lost on the way.  Sources that some worker should have are kept
+ * until no worker's cache holds them, so that a worker can always ask for them.</p>
+ */
+public class SourceStore {
+
+  // How many sources the server keeps, across all workers, besides those held by worker caches.
+  public static final int DEFAULT_CAPACITY = 4096;
+
+  private final int capacity;
+
+  // Sources by hash, least recently used first.
+  private final Map<String, String> sources;
+
+  // For each source that is held by worker caches, or is part of a job that has been given to a
+  // worker that caches sources, how many such holds there are.  These sources are not evicted.
+  private final Map<String, Integer> holds;
+
+  private final AtomicLong sourcesElided;
+  private final AtomicLong sourceBytesElided;
+
+  public SourceStore() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  public SourceStore(int capacity) {
+    this.capacity = capacity;
+    this.sources = new LinkedHashMap<>(16, 0.75f, true);
+    this.holds = new HashMap<>();
+    this.sourcesElided = new AtomicLong();
+    this.sourceBytesElided = new AtomicLong();
+  }
+
+  /**
+   * Yields a source by hash.
+   * @param hash The hash of the source.
+   * @return The source, or empty if it is no longer stored.
+   */
+  public synchronized Optional<String> getSource(String hash) {
+    return Optional.ofNullable(sources.get(hash));
+  }
+
+  public long getSourcesElided() {
+    return sourcesElided.get();
+  }
+
+  public long getSourceBytesElided() {
+    return sourceBytesElided.get();
+  }
+
+  /**
+   * Creates the server's record of the sources held by a worker's cache.
+   * @param capacity The number of sources the worker caches.
+   * @return An empty record, which must be released when no longer used.
+   */
+  public WorkerSourceCache createWorkerCache(int capacity) {
+    return new WorkerSourceCache(this, capacity);
+  }
+
+  /**
+   * Prepares a job for sending to a worker that caches sources.  Once the worker reports the job
+   * done, call WorkerSourceCache.jobDone() to record that the worker has the job's sources.
+   * @param job The job to be sent; not modified.
+   * @param workerCache The server's record of which sources the worker has.
+   * @return A copy of the job in which each source has its hash set, and sources the worker has
+   *     already been sent are left out.
+   */
+  public Job elideKnownSources(Job job, WorkerSourceCache workerCache) {
+    final List<String> hashes = new ArrayList<>();
+    if (!job.isSetImageJob()) {
+      workerCache.setPendingHashes(hashes);
+      return job;
+    }
+    final Job result = job.deepCopy();
+    final ImageJob imageJob = result.getImageJob();
+    if (imageJob.isSetFragmentSource()) {
+      final String hash = storeAndHold(imageJob.getFragmentSource());
+      hashes.add(hash);
+      imageJob.setFragmentSourceHash(hash);
+      if (workerCache.has(hash)) {
+        recordElided(imageJob.getFragmentSource());
+        imageJob.unsetFragmentSource();
+      }
+    }
+    if (imageJob.isSetVertexSource()) {
+      final String hash = storeAndHold(imageJob.getVertexSource());
+      hashes.add(hash);
+      imageJob.setVertexSourceHash(hash);
+      if (workerCache.has(hash)) {
+        recordElided(imageJob.getVertexSource());
+        imageJob.unsetVertexSource();
+      }
+    }
+    if (imageJob.isSetComputeSource()) {
+      final String hash = storeAndHold(imageJob.getComputeSource());
+      hashes.add(hash);
+      imageJob.setComputeSourceHash(hash);
+      if (workerCache.has(hash)) {
+        recordElided(imageJob.getComputeSource());
+        imageJob.unsetComputeSource();
+      }
+    }
+    workerCache.setPendingHashes(hashes);
+    return result;
+  }
+
+  private void recordElided(String source) {
+    sourcesElided.incrementAndGet();
+    sourceBytesElided.addAndGet(source.getBytes(StandardCharsets.UTF_8).length);
+  }
+
+  private synchronized String storeAndHold(String source) {
+    final String hash = hash(source);
+    sources.put(hash, source);
+    hold(hash);
+    // Evict the least recently used sources that are not held.
+    final Iterator<String> iterator = sources.keySet().iterator();
+    while (sources.size() - holds.size() > capacity && iterator.hasNext()) {
+      if (!holds.containsKey(iterator.next())) {
+        iterator.remove();
+      }
+    }
+    return hash;
+  }
+
+  private synchronized void hold(String hash) {
+    assert sources.containsKey(hash);
+    holds.merge(hash, 1, Integer::sum);
+  }
+
+  private synchronized void release(String hash) {
+    holds.computeIfPresent(hash, (key, count) -> count == 1 ? null : count - 1);
+  }
+
+  public static String hash(String source) {
+    try {
+      final byte[] digest = MessageDigest.getInstance("SHA-256")
+          .digest(source.getBytes(StandardCharsets.UTF_8));
+      final StringBuilder result = new StringBuilder();
+      for (byte value : digest) {
+        result.append(String.format("%02x", value));
+      }
+      return result.toString();
+    } catch (NoSuchAlgorithmException exception) {
+      throw new RuntimeException(exception);
+    }
+  }
+
+  /**
+   * The server's record of the sources held by one worker's cache, which is a least recently used
+   * cache of a given capacity.
+   */
+  public static class WorkerSourceCache {
+
+    private final SourceStore store;
+
+    private final LinkedHashMap<String, Boolean> hashes;
+
+    // The hashes of the sources of the job most recently given to the worker, in the order the
+    // worker uses them; held in the store until the job is done.
+    private List<String> pendingHashes;
+
+    private WorkerSourceCache(SourceStore store, int capacity) {
+      this.store = store;
+      this.hashes = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+          if (size() > capacity) {
+            store.release(eldest.getKey());
+            return true;
+          }
+          return false;
+        }
+      };
+      this.pendingHashes = Collections.emptyList();
+    }
+
+    /**
+     * Checks whether the worker should have a source, without counting this as a use.
+     * @param hash The hash of the source.
+     * @return true if the worker should already have the source.
+     */
+    public synchronized boolean has(String hash) {
+      return hashes.containsKey(hash);
+    }
+
+    // The new pending hashes must already be held.
+    private synchronized void setPendingHashes(List<String> newPendingHashes) {
+      pendingHashes.forEach(store::release);
+      pendingHashes = newPendingHashes;
+    }
+
+    /**
+     * Records that the worker has used the sources of the job it was most recently given, in the
+     * same way as the worker's cache does.
+     */
+    public synchronized void jobDone() {
+      for (String hash : pendingHashes) {
+        if (hashes.get(hash) == null) {
+          store.hold(hash);
+          hashes.put(hash, true);
+        }
+      }
+      setPendingHashes(new ArrayList<>());
+    }
+
+    /**
+     * Forgets all sources, e.g. because the worker has restarted with an empty cache, allowing the
+     * store to evict them.
+     */
+    public synchronized void release() {
+      hashes.keySet().forEach(store::release);
+      hashes.clear();
+      setPendingHashes(new ArrayList<>());
+    }
+
+  }
+
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.server;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.graphicsfuzz.server.thrift.WorkerNameNotFoundException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Groups of equivalent workers to which jobs can be submitted as a whole, so that the jobs are
+ * shared between the members of the group.
+ *
+ * <p>A pool is named by a job target of the form "pool:NAME".  If NAME is a pool defined in the
+ * pool configuration file, the pool consists of the workers listed for it there.  Otherwise, if
+ * NAME is the name of a worker, the pool consists of all workers whose platform info is the same
+ * as that of the named worker.  The configuration file, if present, is a JSON object mapping each
+ * pool name to an array of worker names; it is re-read whenever it changes.</p>
+ */
+public class WorkerPools {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(WorkerPools.class);
+
+  public static final String POOL_PREFIX = "pool:";
+
+  private final SessionMap sessions;
+  private final Optional<File> configFile;
+
+  // The configured pools, and the modification time of the configuration file when they were read.
+  private Map<String, List<String>> configuredPools;
+  private long configLastModified;
+
+  // Per pool, the number of jobs assigned so far; used to break ties between equally loaded
+  // workers in a round-robin fashion.
+  private final Map<String, Integer> assignmentCounts;
+
+  public WorkerPools(SessionMap sessions, Optional<File> configFile) {
+    this.sessions = sessions;
+    this.configFile = configFile;
+    this.configuredPools = Collections.emptyMap();
+    this.configLastModified = 0;
+    this.assignmentCounts = new HashMap<>();
+  }
+
+  public static boolean isPool(String target) {
+    return target.startsWith(POOL_PREFIX);
+  }
+
+  public static String getPoolName(String target) {
+    assert isPool(target);
+    return target.substring(POOL_PREFIX.length());
+  }
+
+  /**
+   * Yields the workers that are currently members of the given pool, in order of name.
+   * @param poolName The name of the pool, without the pool prefix.
+   * @return The known workers belonging to the pool; empty if there is no such pool.
+   */
+  public synchronized List<String> getMembers(String poolName) {
+    final List<String> result = new ArrayList<>();
+    final Map<String, List<String>> pools = getConfiguredPools();
+    if (pools.containsKey(poolName)) {
+      for (String worker : pools.get(poolName)) {
+        if (sessions.containsWorker(worker)) {
+          result.add(worker);
+        }
+      }
+    } else if (sessions.containsWorker(poolName)) {
+      final JsonElement platformInfo = parsePlatformInfo(poolName);
+      for (String worker : sessions.getWorkerSet()) {
+        if (platformInfo != null && platformInfo.equals(parsePlatformInfo(worker))) {
+          result.add(worker);
+        }
+      }
+    }
+    result.sort(String::compareTo);
+    return result;
+  }
+
+  /**
+   * Yields the platform info shared by all current members of a pool.
+   * @param poolName The name of the pool, without the pool prefix.
+   * @return The platform info, or empty if the pool is empty or its members differ.
+   */
+  public synchronized Optional<String> getCommonPlatformInfo(String poolName) {
+    final List<String> members = getMembers(poolName);
+    if (members.isEmpty()) {
+      return Optional.empty();
+    }
+    final JsonElement platformInfo = parsePlatformInfo(members.get(0));
+    for (String worker : members) {
+      if (platformInfo == null || !platformInfo.equals(parsePlatformInfo(worker))) {
+        return Optional.empty();
+      }
+    }
+    try {
+      return Optional.of(sessions.lockSessionAndExecute(members.get(0),
+          session -> session.platformInfo));
+    } catch (WorkerNameNotFoundException exception) {
+      // The member has gone since the members were listed.
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * Yields all configured pools, with the workers listed for each of them.
+   * @return A map from pool name to member names.
+   */
+  public synchronized Map<String, List<String>> getConfiguredPoolsSnapshot() {
+    return new HashMap<>(getConfiguredPools());
+  }
+
+  /**
+   * Chooses the member of a pool to which a job should be given, and adds the job to that
+   * member's job queue.  The member chosen is a live worker with the fewest queued jobs; ties are
+   * broken in a round-robin fashion.  Members whose sessions are removed meanwhile are skipped.
+   * @param poolName The pool to which the job was submitted.
+   * @param excluded Workers that must not be chosen, e.g. because they already failed the job.
+   * @param job The job to be queued.
+   * @return The worker chosen, or empty if no member of the pool is available.
+   */
+  public synchronized Optional<String> assignJob(String poolName, Set<String> excluded,
+                                                 IServerJob job) {
+    final Set<String> gone = new HashSet<>();
+    while (true) {
+      final List<String> candidates = new ArrayList<>();
+      int minLoad = Integer.MAX_VALUE;
+      for (String worker : getMembers(poolName)) {
+        if (excluded.contains(worker) || gone.contains(worker) || !sessions.isLive(worker)) {
+          continue;
+        }
+        final int load;
+        try {
+          load = sessions.lockSessionAndExecute(worker, session -> session.jobQueue.size());
+        } catch (WorkerNameNotFoundException exception) {
+          gone.add(worker);
+          continue;
+        }
+        if (load < minLoad) {
+          minLoad = load;
+          candidates.clear();
+        }
+        if (load == minLoad) {
+          candidates.add(worker);
+        }
+      }
+      if (candidates.isEmpty()) {
+        return Optional.empty();
+      }
+      final int assignmentCount = assignmentCounts.getOrDefault(poolName, 0);
+      assignmentCounts.put(poolName, assignmentCount + 1);
+      final String chosen = candidates.get(assignmentCount % candidates.size());
+      try {
+        sessions.lockSessionAndExecute(chosen, session -> {
+          session.jobQueue.add(job);
+          return null;
+        });
+        return Optional.of(chosen);
+      } catch (WorkerNameNotFoundException exception) {
+        // The chosen member has gone since its load was checked; choose again.
+        gone.add(chosen);
+      }
+    }
+  }
+
+  /**
+   * @return The parsed platform info of a worker, or null if it is not valid JSON or the worker
+   *     has no session.
+   */
+  private JsonElement parsePlatformInfo(String worker) {
+    final String platformInfo;
+    try {
+      platformInfo = sessions.lockSessionAndExecute(worker, session -> session.platformInfo);
+    } catch (WorkerNameNotFoundException exception) {
+      return null;
+    }
+    if (platformInfo == null) {
+      return null;
+    }
+    try {
+      return new JsonParser().parse(platformInfo);
+    } catch (JsonParseException exception) {
+      return null;
+    }
+  }
+
+  private Map<String, List<String>> getConfiguredPools() {
+    if (!configFile.isPresent() || !configFile.get().isFile()) {
+      configuredPools = Collections.emptyMap();
+      configLastModified = 0;
+      return configuredPools;
+    }
+    final long lastModified = configFile.get().lastModified();
+    if (lastModified == configLastModified) {
+      return configuredPools;
+    }
+    final Map<String, List<String>> result = new HashMap<>();
+    try {
+      final JsonObject json = new JsonParser().parse(
+          FileUtils.readFileToString(configFile.get(), StandardCharsets.UTF_8)).getAsJsonObject();
+      for (Map.Entry<String, JsonElement> entry : json.entrySet()) {
+        final List<String> members = new ArrayList<>();
+        for (JsonElement member : entry.getValue().getAsJsonArray()) {
+          members.add(member.getAsString());
+        }
+        result.put(entry.getKey(), members);
+      }
+    } catch (IOException | RuntimeException exception) {
+      LOGGER.error("Could not read worker pool configuration " + configFile.get() + ".",
+          exception);
+      // Keep using the previous configuration.
+      return configuredPools;
+    }
+    configuredPools = result;
+    configLastModified = lastModified;
+    return configuredPools;
+  }
+
+}
@@ -30,13 +30,18 @@ import com.graphicsfuzz.server.thrift.ImageJobResult;
 import com.graphicsfuzz.server.thrift.Job;
 import com.graphicsfuzz.server.thrift.JobStatus;
 import com.graphicsfuzz.server.thrift.WorkerNameError;
+import com.graphicsfuzz.server.thrift.WorkerNameNotFoundException;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.apache.thrift.TException;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -50,6 +55,7 @@ public class FuzzerServerIntegrationTests {
   @Rule
   public ExpectedException thrown = ExpectedException.none();
 
+  private FuzzerServiceImpl fuzzerServiceImpl;
   private FuzzerService.Iface fuzzerService;
   private FuzzerServiceManager.Iface fuzzerServiceManager;
   private ExecutorService executorService;
@@ -59,7 +65,7 @@ public class FuzzerServerIntegrationTests {
     final String processing = testFolder.newFolder("processing").toString();
 
     this.executorService = Executors.newCachedThreadPool();
-    final FuzzerServiceImpl fuzzerServiceImpl = new FuzzerServiceImpl(processing, executorService);
+    this.fuzzerServiceImpl = new FuzzerServiceImpl(processing, executorService);
     this.fuzzerService = fuzzerServiceImpl;
     this.fuzzerServiceManager = new FuzzerServiceManagerImpl(fuzzerServiceImpl,
         (command, manager) -> {
@@ -68,6 +74,12 @@ public class FuzzerServerIntegrationTests {
         });
   }
 
+  @After
+  public void shutdownServices() {
+    fuzzerServiceImpl.shutdown();
+    executorService.shutdownNow();
+  }
+
   @Test
   public void willErrorOnAMismatchedJobId() throws Exception {
     final String worker = newWorkerName();
@@ -131,6 +143,131 @@ public class FuzzerServerIntegrationTests {
     assertEquals("SKIPPED\n", jobResult.getLog());
   }
 
+  @Test
+  public void willRunAPoolJobOnAMemberOfThePool() throws Exception {
+    // Workers with identical platform info form an implicit pool.
+    final String firstWorker = newWorkerName();
+    final String secondWorker = newWorkerName();
+    final Job job = new Job().setImageJob(new ImageJob()).setJobId(1);
+
+    final Future<Job> submitting = submitJob(WorkerPools.POOL_PREFIX + firstWorker, job, 1);
+    final String chosen = awaitJobOnOneOf(firstWorker, secondWorker);
+    final Job todo = getAJob(chosen);
+    todo.getImageJob().setResult(new ImageJobResult().setStatus(JobStatus.SUCCESS));
+    this.fuzzerService.jobDone(chosen, todo);
+
+    assertEquals(JobStatus.SUCCESS, submitting.get().getImageJob().getResult().getStatus());
+  }
+
+  @Test
+  public void willRetryASkippedPoolJobOnAnotherMember() throws Exception {
+    final String firstWorker = newWorkerName();
+    final String secondWorker = newWorkerName();
+    final Job job = new Job().setImageJob(new ImageJob()).setJobId(1);
+
+    final Future<Job> submitting = submitJob(WorkerPools.POOL_PREFIX + firstWorker, job, 1);
+    final String crashing = awaitJobOnOneOf(firstWorker, secondWorker);
+    final String other = crashing.equals(firstWorker) ? secondWorker : firstWorker;
+    // The member crashes while running the job, so that on asking again it is told to skip it.
+    this.clientRepeatedlyCrashes(crashing, 1);
+
+    this.clientRuns(other, (todo) -> {
+      todo.getImageJob().setResult(new ImageJobResult().setStatus(JobStatus.SUCCESS));
+      return todo;
+    });
+
+    assertEquals(JobStatus.SUCCESS, submitting.get().getImageJob().getResult().getStatus());
+  }
+
+  @Test
+  public void willRejectAnUnknownPool() throws Exception {
+    thrown.expect(WorkerNameNotFoundException.class);
+    this.fuzzerServiceManager.submitJob(new Job().setImageJob(new ImageJob()).setJobId(1),
+        WorkerPools.POOL_PREFIX + "no_such_pool", 1);
+  }
+
+  @Test
+  public void willAbandonJobWhenLeaseExpires() throws Exception {
+    useServicesWithLeaseTimeout(200);
+
+    final String worker = newWorkerName();
+    final Job job = new Job().setImageJob(new ImageJob()).setJobId(1);
+    final Future<Job> submitting = submitJob(worker, job, 3);
+    // The worker takes the job, and is then never heard from again.
+    getAJob(worker);
+
+    final Job result = submitting.get();
+    final ImageJobResult jobResult = result.getImageJob().getResult();
+    assertEquals(JobStatus.SKIPPED, jobResult.getStatus());
+    assertTrue(jobResult.getLog(), jobResult.getLog().contains("lease"));
+
+    // A late reply from the worker is ignored.
+    this.fuzzerService.jobDone(worker, job);
+  }
+
+  @Test
+  public void willNotMistakeLateResultForResultOfQueuedJob() throws Exception {
+    useServicesWithLeaseTimeout(500);
+
+    final String worker = newWorkerName();
+    final Job firstJob = new Job().setImageJob(new ImageJob()).setJobId(1);
+    final Future<Job> firstSubmitting = submitJob(worker, firstJob, 3);
+    final Job lateResult = getAJob(worker);
+    assertEquals(JobStatus.SKIPPED,
+        firstSubmitting.get().getImageJob().getResult().getStatus());
+
+    // The worker comes back to life, and another job is queued for it before the result of the
+    // abandoned job arrives.
+    this.fuzzerService.heartbeat(worker);
+    final Job secondJob = new Job().setImageJob(new ImageJob()).setJobId(2);
+    final Future<Job> secondSubmitting = submitJob(worker, secondJob, 3);
+    awaitJobOnOneOf(worker, worker);
+    lateResult.getImageJob().setResult(new ImageJobResult().setStatus(JobStatus.CRASH));
+    this.fuzzerService.jobDone(worker, lateResult);
+
+    this.clientRuns(worker, (todo) -> {
+      assertEquals(2, todo.getJobId());
+      todo.getImageJob().setResult(new ImageJobResult().setStatus(JobStatus.SUCCESS));
+      return todo;
+    });
+    final Job result = secondSubmitting.get();
+    assertEquals(2, result.getJobId());
+    assertEquals(JobStatus.SUCCESS, result.getImageJob().getResult().getStatus());
+  }
+
+  @Test
+  public void willNotHangOrFailWhenWorkersAreReapedConcurrently() throws Exception {
+    // Dead workers are forgotten as soon as their leases expire.
+    useServicesWithLeaseTimeout(20, 0);
+
+    final AtomicBoolean stopPolling = new AtomicBoolean(false);
+    final Future<Void> polling = submit(() -> {
+      while (!stopPolling.get()) {
+        this.fuzzerServiceManager.getServerState();
+      }
+      return null;
+    });
+    try {
+      for (int i = 0; i < 50; i++) {
+        final String worker = newWorkerName();
+        final Future<Job> submitting =
+            submitJob(worker, new Job().setImageJob(new ImageJob()).setJobId(i), 1);
+        // The job is either abandoned with the worker's session or refused because the session
+        // is gone; it must not be left waiting in a removed session.
+        try {
+          final Job result = submitting.get(10, TimeUnit.SECONDS);
+          assertEquals(JobStatus.SKIPPED, result.getImageJob().getResult().getStatus());
+        } catch (ExecutionException exception) {
+          assertTrue(exception.toString(),
+              exception.getCause().getCause() instanceof WorkerNameNotFoundException);
+        }
+      }
+    } finally {
+      stopPolling.set(true);
+    }
+    polling.get(10, TimeUnit.SECONDS);
+  }
+
   @Test
   public void willSanitizeValueOnOldWorkerName() throws Exception {
     String oldWorkerName = new String("  helloworld ");
@@ -192,6 +329,31 @@ public class FuzzerServerIntegrationTests {
   }
 
   // Helper methods below here
+
+  /**
+   * Replaces the services with ones whose workers are considered dead after a short time.
+   */
+  private void useServicesWithLeaseTimeout(long leaseTimeoutMs) throws IOException {
+    useServicesWithLeaseTimeout(leaseTimeoutMs, FuzzerServiceImpl.DEFAULT_SESSION_EXPIRY_MS);
+  }
+
+  /**
+   * Replaces the services with ones whose workers are considered dead after a short time, and
+   * forgotten after the given time.
+   */
+  private void useServicesWithLeaseTimeout(long leaseTimeoutMs, long sessionExpiryMs)
+      throws IOException {
+    fuzzerServiceImpl.shutdown();
+    this.fuzzerServiceImpl = new FuzzerServiceImpl(
+        testFolder.newFolder("processing_short_lease").toString(), executorService, leaseTimeoutMs,
+        sessionExpiryMs);
+    this.fuzzerService = fuzzerServiceImpl;
+    this.fuzzerServiceManager = new FuzzerServiceManagerImpl(fuzzerServiceImpl,
+        (command, manager) -> {
+          throw new RuntimeException("Commands are not used by these tests.");
+        });
+  }
+
   private Future<Job> submitJob(String worker, Job job, int retryLimit) {
     return this.submit(() ->
         this.fuzzerServiceManager.submitJob(
@@ -230,6 +392,19 @@ public class FuzzerServerIntegrationTests {
     }
   }
 
+  private String awaitJobOnOneOf(String firstWorker, String secondWorker) throws Exception {
+    while (true) {
+      for (String worker : new String[] { firstWorker, secondWorker }) {
+        final boolean hasJob = this.fuzzerServiceManager.getServerState().getWorkers().stream()
+            .anyMatch(item -> item.getWorkerName().equals(worker) && !item.getJobQueue().isEmpty());
+        if (hasJob) {
+          return worker;
+        }
+      }
+      Thread.sleep(1);
+    }
+  }
+
   private Job getAJob(String worker) throws Exception {
     while (true) {
       Job todo = this.fuzzerService.getJob(worker).deepCopy();
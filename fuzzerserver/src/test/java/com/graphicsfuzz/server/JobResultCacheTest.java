@@ -0,0 +1,103 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.graphicsfuzz.server.thrift.ImageJob;
+import com.graphicsfuzz.server.thrift.ImageJobResult;
+import com.graphicsfuzz.server.thrift.JobStatus;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+
+public class JobResultCacheTest {
+
+  private static final String PLATFORM = "{\"platform\": 1}";
+  private static final String OTHER_PLATFORM = "{\"platform\": 2}";
+
+  private static ImageJob makeJob(String name, String fragmentSource) {
+    return new ImageJob().setName(name).setFragmentSource(fragmentSource).setUniformsInfo("{}");
+  }
+
+  private static ImageJobResult makeResult(JobStatus status) {
+    return new ImageJobResult().setStatus(status).setLog(status.toString());
+  }
+
+  @Test
+  public void testHitIgnoresJobName() throws Exception {
+    final JobResultCache cache = new JobResultCache(10, 1000);
+    cache.add(PLATFORM, makeJob("a", "void main() { }"), makeResult(JobStatus.COMPILE_ERROR));
+    final ImageJob sameContent = makeJob("b", "void main() { }");
+    assertEquals(JobStatus.COMPILE_ERROR, cache.lookup(PLATFORM, sameContent).get().getStatus());
+    assertFalse(cache.lookup(OTHER_PLATFORM, sameContent).isPresent());
+    assertFalse(cache.lookup(PLATFORM, makeJob("a", "void main() { int x; }")).isPresent());
+    assertEquals(1, cache.getInfo().getHits());
+    assertEquals(2, cache.getInfo().getMisses());
+  }
+
+  @Test
+  public void testNondeterministicResultsAreNotCached() throws Exception {
+    final JobResultCache cache = new JobResultCache(10, 1000);
+    final ImageJob job = makeJob("a", "void main() { }");
+    cache.add(PLATFORM, job, makeResult(JobStatus.CRASH));
+    cache.add(PLATFORM, job, makeResult(JobStatus.NONDET));
+    cache.add(PLATFORM, job, makeResult(JobStatus.TIMEOUT));
+    assertFalse(cache.lookup(PLATFORM, job).isPresent());
+    assertEquals(0, cache.getInfo().getSize());
+  }
+
+  @Test
+  public void testBypass() throws Exception {
+    final JobResultCache cache = new JobResultCache(10, 1000);
+    cache.add(PLATFORM, makeJob("a", "void main() { }"), makeResult(JobStatus.SUCCESS));
+    final ImageJob bypassing = makeJob("a", "void main() { }").setBypassResultCache(true);
+    assertFalse(cache.lookup(PLATFORM, bypassing).isPresent());
+    assertTrue(cache.lookup(PLATFORM, makeJob("a", "void main() { }")).isPresent());
+  }
+
+  @Test
+  public void testEntriesExpire() throws Exception {
+    final AtomicLong time = new AtomicLong(0);
+    final JobResultCache cache = new JobResultCache(10, 1000, time::get);
+    final ImageJob job = makeJob("a", "void main() { }");
+    cache.add(PLATFORM, job, makeResult(JobStatus.SUCCESS));
+    time.set(1000);
+    assertTrue(cache.lookup(PLATFORM, job).isPresent());
+    time.set(1001);
+    assertFalse(cache.lookup(PLATFORM, job).isPresent());
+    assertEquals(0, cache.getInfo().getSize());
+  }
+
+  @Test
+  public void testLeastRecentlyUsedEntryIsEvicted() throws Exception {
+    final JobResultCache cache = new JobResultCache(2, 1000);
+    final ImageJob first = makeJob("first", "void main() { }");
+    final ImageJob second = makeJob("second", "void main() { int x; }");
+    final ImageJob third = makeJob("third", "void main() { int y; }");
+    cache.add(PLATFORM, first, makeResult(JobStatus.SUCCESS));
+    cache.add(PLATFORM, second, makeResult(JobStatus.SUCCESS));
+    assertTrue(cache.lookup(PLATFORM, first).isPresent());
+    cache.add(PLATFORM, third, makeResult(JobStatus.SUCCESS));
+    assertTrue(cache.lookup(PLATFORM, first).isPresent());
+    assertFalse(cache.lookup(PLATFORM, second).isPresent());
+    assertTrue(cache.lookup(PLATFORM, third).isPresent());
+    assertEquals(2, cache.getInfo().getSize());
+  }
+
+}
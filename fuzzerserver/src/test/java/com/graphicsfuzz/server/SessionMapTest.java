@@ -0,0 +1,91 @@
+/*
+ * Copyright 2019 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.server;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.graphicsfuzz.server.thrift.WorkerNameNotFoundException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.After;
+import org.junit.Test;
+
+public class SessionMapTest {
+
+  private final ExecutorService executorService = Executors.newCachedThreadPool();
+
+  @After
+  public void shutdownExecutor() {
+    executorService.shutdownNow();
+  }
+
+  @Test(expected = WorkerNameNotFoundException.class)
+  public void testUnknownWorker() throws Exception {
+    new SessionMap().lockSessionAndExecute("unknown", session -> null);
+  }
+
+  @Test
+  public void testWaiterDoesNotUseSessionRemovedWhileItWaits() throws Exception {
+    final SessionMap sessions = new SessionMap();
+    sessions.putIfAbsent("worker", new SessionMap.Session("worker", "{}", executorService));
+
+    final CountDownLatch locked = new CountDownLatch(1);
+    final CountDownLatch remove = new CountDownLatch(1);
+    final Thread remover = new Thread(() -> {
+      try {
+        sessions.lockSessionAndExecute("worker", session -> {
+          locked.countDown();
+          remove.await();
+          sessions.remove("worker", session);
+          return null;
+        });
+      } catch (Exception exception) {
+        throw new RuntimeException(exception);
+      }
+    });
+    remover.start();
+    locked.await();
+
+    final AtomicBoolean ran = new AtomicBoolean(false);
+    final AtomicBoolean refused = new AtomicBoolean(false);
+    final Thread waiter = new Thread(() -> {
+      try {
+        sessions.lockSessionAndExecute("worker", session -> {
+          ran.set(true);
+          return null;
+        });
+      } catch (WorkerNameNotFoundException exception) {
+        refused.set(true);
+      }
+    });
+    waiter.start();
+    while (waiter.getState() != Thread.State.BLOCKED) {
+      Thread.sleep(1);
+    }
+
+    remove.countDown();
+    remover.join();
+    waiter.join();
+    assertFalse(ran.get());
+    assertTrue(refused.get());
+    assertFalse(sessions.containsWorker("worker"));
+  }
+
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.graphicsfuzz.server.thrift.ImageJob;
+import com.graphicsfuzz.server.thrift.Job;
+import org.junit.Test;
+
+public class SourceStoreTest {
+
+  private static final String FRAGMENT = "void main() { }";
+  private static final String VERTEX = "void main() { gl_Position = vec4(0.0); }";
+
+  private static Job makeJob(String fragmentSource) {
+    return new Job().setJobId(1)
+        .setImageJob(new ImageJob().setFragmentSource(fragmentSource).setVertexSource(VERTEX));
+  }
+
+  @Test
+  public void testSourcesAreElidedOnceSent() throws Exception {
+    final SourceStore store = new SourceStore();
+    final SourceStore.WorkerSourceCache workerCache = store.createWorkerCache(10);
+
+    final Job original = makeJob(FRAGMENT);
+    final Job first = store.elideKnownSources(original, workerCache);
+    assertEquals(FRAGMENT, first.getImageJob().getFragmentSource());
+    assertEquals(SourceStore.hash(FRAGMENT), first.getImageJob().getFragmentSourceHash());
+    assertEquals(VERTEX, first.getImageJob().getVertexSource());
+    workerCache.jobDone();
+
+    final Job second = store.elideKnownSources(makeJob(FRAGMENT), workerCache);
+    assertFalse(second.getImageJob().isSetFragmentSource());
+    assertFalse(second.getImageJob().isSetVertexSource());
+    assertEquals(SourceStore.hash(FRAGMENT), second.getImageJob().getFragmentSourceHash());
+    assertEquals(FRAGMENT, store.getSource(SourceStore.hash(FRAGMENT)).get());
+    assertEquals(2, store.getSourcesElided());
+
+    // The job given to the store must not be changed, as it may be sent again, e.g. to a worker
+    // that does not cache sources.
+    assertTrue(original.getImageJob().isSetFragmentSource());
+    assertFalse(original.getImageJob().isSetFragmentSourceHash());
+  }
+
+  @Test
+  public void testEvictedSourcesAreSentAgain() throws Exception {
+    final SourceStore store = new SourceStore();
+    // Room for only the vertex shader and one fragment shader.
+    final SourceStore.WorkerSourceCache workerCache = store.createWorkerCache(2);
+    store.elideKnownSources(makeJob(FRAGMENT), workerCache);
+    workerCache.jobDone();
+    store.elideKnownSources(makeJob("void main() { int x; }"), workerCache);
+    workerCache.jobDone();
+    final Job job = store.elideKnownSources(makeJob(FRAGMENT), workerCache);
+    assertEquals(FRAGMENT, job.getImageJob().getFragmentSource());
+    assertFalse(job.getImageJob().isSetVertexSource());
+  }
+
+  @Test
+  public void testSourcesOfUnfinishedJobAreSentAgain() throws Exception {
+    final SourceStore store = new SourceStore();
+    final SourceStore.WorkerSourceCache workerCache = store.createWorkerCache(10);
+    // The job is lost on its way to the worker, which later asks for a job again.
+    store.elideKnownSources(makeJob(FRAGMENT), workerCache);
+    final Job job = store.elideKnownSources(makeJob(FRAGMENT), workerCache);
+    assertEquals(FRAGMENT, job.getImageJob().getFragmentSource());
+    assertEquals(VERTEX, job.getImageJob().getVertexSource());
+  }
+
+  @Test
+  public void testSourcesHeldByWorkerCachesAreKept() throws Exception {
+    // Room for just one source that no worker has.
+    final SourceStore store = new SourceStore(1);
+    final SourceStore.WorkerSourceCache workerCache = store.createWorkerCache(10);
+    store.elideKnownSources(makeJob(FRAGMENT), workerCache);
+    workerCache.jobDone();
+
+    final SourceStore.WorkerSourceCache otherWorkerCache = store.createWorkerCache(10);
+    for (int i = 0; i < 10; i++) {
+      store.elideKnownSources(new Job().setJobId(2 + i).setImageJob(
+          new ImageJob().setFragmentSource("void main() { int x" + i + "; }")), otherWorkerCache);
+    }
+    assertTrue(store.getSource(SourceStore.hash(FRAGMENT)).isPresent());
+    assertTrue(store.getSource(SourceStore.hash(VERTEX)).isPresent());
+    assertFalse(store.getSource(SourceStore.hash("void main() { int x0; }")).isPresent());
+
+    // Once the worker forgets the sources, they can be evicted.
+    workerCache.release();
+    store.elideKnownSources(makeJob("void main() { int y; }"), otherWorkerCache);
+    assertFalse(store.getSource(SourceStore.hash(FRAGMENT)).isPresent());
+  }
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.generator.fuzzer;
+
+import com.graphicsfuzz.common.ast.type.Type;
+import com.graphicsfuzz.generator.fuzzer.templates.IExprTemplate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Indexes expression templates by result type and by the kinds of context in which they can be
+ * used, so that the templates that are applicable in a given context can be found without
+ * filtering.  Within each entry of the index, templates appear in the order in which they were
+ * added.
+ */
+public class ExprTemplateIndex {
+
+  // A context class is a combination of these bits, describing the requirements that a template
+  // must meet to be used in a context.
+  private static final int REQUIRES_LVALUE = 1;
+  private static final int REQUIRES_CONST = 2;
+  private static final int REQUIRES_NO_ARGUMENTS = 4;
+  private static final int NUM_CONTEXT_CLASSES = 8;
+
+  // Maps each result type to a list with an entry per context class.  Each entry is the list of
+  // templates with that result type that are applicable in the context class.
+  private final Map<Type, List<List<IExprTemplate>>> templatesByTypeAndContext;
+
+  // Unmodifiable views of the lists stored in templatesByTypeAndContext, so that they can be
+  // handed out without copying.
+  private final Map<Type, List<List<IExprTemplate>>> viewsByTypeAndContext;
+
+  public ExprTemplateIndex() {
+    this.templatesByTypeAndContext = new HashMap<>();
+    this.viewsByTypeAndContext = new HashMap<>();
+  }
+
+  public ExprTemplateIndex(List<? extends IExprTemplate> templates) {
+    this();
+    for (IExprTemplate template : templates) {
+      add(template);
+    }
+  }
+
+  /**
+   * Adds a template to the index, after all templates previously added.
+   * @param template The template to be added.
+   */
+  public void add(IExprTemplate template) {
+    final Type resultType = template.getResultType();
+    if (!templatesByTypeAndContext.containsKey(resultType)) {
+      final List<List<IExprTemplate>> templates = new ArrayList<>();
+      final List<List<IExprTemplate>> views = new ArrayList<>();
+      for (int contextClass = 0; contextClass < NUM_CONTEXT_CLASSES; contextClass++) {
+        final List<IExprTemplate> templatesForContextClass = new ArrayList<>();
+        templates.add(templatesForContextClass);
+        views.add(Collections.unmodifiableList(templatesForContextClass));
+      }
+      templatesByTypeAndContext.put(resultType, templates);
+      viewsByTypeAndContext.put(resultType, views);
+    }
+    final List<List<IExprTemplate>> templates = templatesByTypeAndContext.get(resultType);
+    for (int contextClass = 0; contextClass < NUM_CONTEXT_CLASSES; contextClass++) {
+      if (isApplicable(template, contextClass)) {
+        templates.get(contextClass).add(template);
+      }
+    }
+  }
+
+  /**
+   * Yields the templates that can be used to make an expression of the given type in a context
+   * with the given requirements.  The result is exactly the sublist of the added templates whose
+   * result type is equal to the given type and that meet the requirements, in order.
+   * @param resultType The type of expression required.
+   * @param isLValue True if and only if the expression must be an l-value.
+   * @param constContext True if and only if the expression must be a compile-time constant.
+   * @param noArguments True if and only if the template must not require any arguments.
+   * @return An unmodifiable view of the applicable templates; it reflects subsequent additions to
+   *         the index.
+   */
+  public List<IExprTemplate> getApplicableTemplates(Type resultType, boolean isLValue,
+                                                    boolean constContext, boolean noArguments) {
+    final List<List<IExprTemplate>> views = viewsByTypeAndContext.get(resultType);
+    if (views == null) {
+      return Collections.emptyList();
+    }
+    return views.get((isLValue ? REQUIRES_LVALUE : 0)
+        | (constContext ? REQUIRES_CONST : 0)
+        | (noArguments ? REQUIRES_NO_ARGUMENTS : 0));
+  }
+
+  private static boolean isApplicable(IExprTemplate template, int contextClass) {
+    if ((contextClass & REQUIRES_LVALUE) != 0 && !template.isLValue()) {
+      return false;
+    }
+    if ((contextClass & REQUIRES_CONST) != 0 && !template.isConst()) {
+      return false;
+    }
+    if ((contextClass & REQUIRES_NO_ARGUMENTS) != 0 && template.getNumArguments() != 0) {
+      return false;
+    }
+    return true;
+  }
+
+}
@@ -56,7 +56,6 @@ import com.graphicsfuzz.common.typing.Scope;
 import com.graphicsfuzz.common.typing.SupportedTypes;
 import com.graphicsfuzz.common.util.IRandom;
 import com.graphicsfuzz.common.util.ShaderKind;
-import com.graphicsfuzz.generator.fuzzer.templates.FunctionCallExprTemplate;
 import com.graphicsfuzz.generator.fuzzer.templates.IExprTemplate;
 import com.graphicsfuzz.generator.fuzzer.templates.VariableIdentifierExprTemplate;
 import com.graphicsfuzz.generator.util.GenerationParams;
@@ -145,34 +144,42 @@ public class Fuzzer {
 
     if (targetType instanceof BasicType) {
       assert SupportedTypes.supported((BasicType) targetType, shadingLanguageVersion);
-      List<IExprTemplate> applicableTemplates = availableTemplatesFromContext()
-            .filter(item -> item.getResultType().equals(targetType)).collect(Collectors.toList());
-      if (isLValue) {
-        applicableTemplates = applicableTemplates.stream().filter(item -> item.isLValue())
-              .collect(Collectors.toList());
-      }
-      if (constContext) {
-        applicableTemplates = applicableTemplates.stream().filter(item -> item.isConst())
-              .collect(Collectors.toList());
-      }
-      if (isTooDeep(depth)) {
-        applicableTemplates = applicableTemplates.stream()
-              .filter(item -> item.getNumArguments() == 0)
-              .collect(Collectors.toList());
-      }
-
-      if (applicableTemplates.size() == 0) {
+      // The applicable templates are the builtin templates, then the variables in scope, then the
+      // functions declared so far, each filtered to those that fit the context.  Rather than
+      // concatenating these, we pick an index into the concatenation and find the template it
+      // refers to.
+      final boolean noArguments = isTooDeep(depth);
+      final List<IExprTemplate> builtinTemplates = Templates.getIndex(shadingLanguageVersion,
+          generationParams.isWgslCompatible(), generationParams.getShaderKind())
+          .getApplicableTemplates(targetType, isLValue, constContext, noArguments);
+      final List<IExprTemplate> variableTemplates = fuzzingContext.getVariableTemplates()
+          .getApplicableTemplates(targetType, isLValue, constContext, noArguments);
+      final List<IExprTemplate> functionTemplates = fuzzingContext.getFunctionTemplates()
+          .getApplicableTemplates(targetType, isLValue, constContext, noArguments);
+
+      final int numApplicableTemplates = builtinTemplates.size() + variableTemplates.size()
+          + functionTemplates.size();
+      if (numApplicableTemplates == 0) {
         throw new FuzzedIntoACornerException();
       }
 
-      IExprTemplate template = applicableTemplates
-            .get(generator.nextInt(applicableTemplates.size()));
+      int templateIndex = generator.nextInt(numApplicableTemplates);
+      final IExprTemplate template;
+      if (templateIndex < builtinTemplates.size()) {
+        template = builtinTemplates.get(templateIndex);
+      } else {
+        templateIndex -= builtinTemplates.size();
+        if (templateIndex < variableTemplates.size()) {
+          template = variableTemplates.get(templateIndex);
+        } else {
+          template = functionTemplates.get(templateIndex - variableTemplates.size());
+        }
+      }
 
       List<Expr> args = new ArrayList<Expr>();
       for (int i = 0; i < template.getNumArguments(); i++) {
         List<? extends Type> possibleArgTypes = template.getArgumentTypes().get(i);
-        Type argType = possibleArgTypes.stream().collect(Collectors.toList())
-              .get(generator.nextInt(possibleArgTypes.size()));
+        Type argType = possibleArgTypes.get(generator.nextInt(possibleArgTypes.size()));
         args.add(makeExpr(argType, template.requiresLValueForArgument(i), constContext,
               depth + 1));
       }
@@ -285,14 +292,6 @@ public class Fuzzer {
     return false;
   }
 
-  private Stream<IExprTemplate> availableTemplatesFromContext() {
-    return Stream.concat(availableTemplatesFromScope(shadingLanguageVersion,
-        generationParams.isWgslCompatible(),
-        generationParams.getShaderKind(),
-        fuzzingContext.getCurrentScope()),
-      fuzzingContext.getFunctionPrototypes().stream().map(FunctionCallExprTemplate::new));
-  }
-
   public static Stream<IExprTemplate> availableTemplatesFromScope(
       ShadingLanguageVersion shadingLanguageVersion,
       boolean isWgslCompatible,
@@ -21,6 +21,8 @@ import com.graphicsfuzz.common.ast.decl.ParameterDecl;
 import com.graphicsfuzz.common.ast.type.StructDefinitionType;
 import com.graphicsfuzz.common.ast.type.Type;
 import com.graphicsfuzz.common.typing.Scope;
+import com.graphicsfuzz.generator.fuzzer.templates.FunctionCallExprTemplate;
+import com.graphicsfuzz.generator.fuzzer.templates.VariableIdentifierExprTemplate;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -29,6 +31,15 @@ public class FuzzingContext {
 
   private final List<FunctionPrototype> functions;
 
+  // Templates for calling the functions in 'functions', maintained as functions are added.
+  private final ExprTemplateIndex functionTemplates;
+
+  // Templates for the variables in scope.  These are computed on demand, and recomputed only if the
+  // current scope, or its variables, have changed since they were last computed.
+  private ExprTemplateIndex variableTemplates;
+  private Scope variableTemplatesScope;
+  private int variableTemplatesScopeVersion;
+
   private final List<StructDefinitionType> structs;
 
   private Scope currentScope;
@@ -39,6 +50,10 @@ public class FuzzingContext {
 
   public FuzzingContext(Scope currentScope) {
     this.functions = new ArrayList<>();
+    this.functionTemplates = new ExprTemplateIndex();
+    this.variableTemplates = null;
+    this.variableTemplatesScope = null;
+    this.variableTemplatesScopeVersion = 0;
     this.structs = new ArrayList<>();
     this.currentScope = currentScope;
     this.enclosingLoops = 0;
@@ -72,6 +87,7 @@ public class FuzzingContext {
 
   public void addFunction(FunctionPrototype prototype) {
     functions.add(prototype);
+    functionTemplates.add(new FunctionCallExprTemplate(prototype));
   }
 
   public void addStruct(StructDefinitionType struct) {
@@ -131,6 +147,38 @@ public class FuzzingContext {
     return Collections.unmodifiableList(functions);
   }
 
+  /**
+   * Provides templates for calls to the functions that have been added to the context, in the order
+   * in which the functions were added.
+   * @return An index of function call templates.
+   */
+  public ExprTemplateIndex getFunctionTemplates() {
+    return functionTemplates;
+  }
+
+  /**
+   * Provides templates for the variables in the current scope, in alphabetical order of variable
+   * name.  A shadowed name occurs once per declaration, always with the type of the innermost
+   * declaration.
+   * @return An index of variable identifier templates.
+   */
+  public ExprTemplateIndex getVariableTemplates() {
+    final int currentScopeVersion = currentScope.getVariablesVersion();
+    if (variableTemplates == null
+        || variableTemplatesScope != currentScope
+        || variableTemplatesScopeVersion != currentScopeVersion) {
+      variableTemplates = new ExprTemplateIndex();
+      for (String name : currentScope.namesOfAllVariablesInScope()) {
+        variableTemplates.add(new VariableIdentifierExprTemplate(name,
+            currentScope.lookupType(name),
+            currentScope.lookupScopeEntry(name).hasParameterDecl()));
+      }
+      variableTemplatesScope = currentScope;
+      variableTemplatesScopeVersion = currentScopeVersion;
+    }
+    return variableTemplates;
+  }
+
   public boolean hasEnclosingFunction() {
     return enclosingFunction != null;
   }
@@ -46,9 +46,14 @@ import java.util.stream.Collectors;
 
 public class Templates {
 
-  private static ConcurrentMap<ShadingLanguageVersionAndKind, List<IExprTemplate>> templates
+  // Templates and their indices are built once per shading language version and kind, the first
+  // time they are asked for, and are then shared by all threads.
+  private static final ConcurrentMap<ShadingLanguageVersionAndKind, List<IExprTemplate>> templates
         = new ConcurrentHashMap<>();
 
+  private static final ConcurrentMap<ShadingLanguageVersionAndKind, ExprTemplateIndex>
+        templateIndices = new ConcurrentHashMap<>();
+
   private Templates() {
     // Utility class
   }
@@ -56,15 +61,22 @@ public class Templates {
   public static List<IExprTemplate> get(ShadingLanguageVersion shadingLanguageVersion,
                                         boolean isWgslCompatible,
                                         ShaderKind shaderKind) {
-    final ShadingLanguageVersionAndKind key =
-        new ShadingLanguageVersionAndKind(shadingLanguageVersion,
-                                          isWgslCompatible,
-                                          shaderKind);
-    if (!templates.containsKey(key)) {
-      templates.putIfAbsent(key,
-          makeTemplates(shadingLanguageVersion, isWgslCompatible, shaderKind));
-    }
-    return Collections.unmodifiableList(templates.get(key));
+    return templates.computeIfAbsent(
+        new ShadingLanguageVersionAndKind(shadingLanguageVersion, isWgslCompatible, shaderKind),
+        key -> Collections.unmodifiableList(makeTemplates(shadingLanguageVersion,
+            isWgslCompatible, shaderKind)));
+  }
+
+  /**
+   * Provides the templates yielded by get, indexed by result type and context requirements.  The
+   * index is computed once per shading language version and kind, and must not be modified.
+   */
+  public static ExprTemplateIndex getIndex(ShadingLanguageVersion shadingLanguageVersion,
+                                           boolean isWgslCompatible,
+                                           ShaderKind shaderKind) {
+    return templateIndices.computeIfAbsent(
+        new ShadingLanguageVersionAndKind(shadingLanguageVersion, isWgslCompatible, shaderKind),
+        key -> new ExprTemplateIndex(get(shadingLanguageVersion, isWgslCompatible, shaderKind)));
   }
 
   private static List<IExprTemplate> makeTemplates(ShadingLanguageVersion shadingLanguageVersion,
@@ -75,6 +87,10 @@ public class Templates {
 
     List<IExprTemplate> templates = new ArrayList<>();
 
+    // Worked out once, as many of the templates below are made for each of these types.
+    final List<BasicType> supportedBasicTypes =
+        Collections.unmodifiableList(supportedBasicTypes(shadingLanguageVersion));
+
     // Builtins
     {
       Map<String, List<FunctionPrototype>> builtins = TyperHelper.getBuiltins(
@@ -89,12 +105,12 @@ public class Templates {
     }
 
     // Constants
-    for (BasicType type : supportedBasicTypes(shadingLanguageVersion)) {
+    for (BasicType type : supportedBasicTypes) {
       addTemplate(templates, new ConstantExprTemplate(type));
     }
 
     // Parentheses
-    for (BasicType type : supportedBasicTypes(shadingLanguageVersion)) {
+    for (BasicType type : supportedBasicTypes) {
       addTemplate(templates, new ParenExprTemplate(type, true));
       addTemplate(templates, new ParenExprTemplate(type, false));
     }
@@ -652,7 +668,7 @@ public class Templates {
       the built-in functions equal and notEqual.
     */
 
-    for (BasicType type : supportedBasicTypes(shadingLanguageVersion)) {
+    for (BasicType type : supportedBasicTypes) {
       addTemplate(templates, new BinaryExprTemplate(type, type, BasicType.BOOL, BinOp.EQ));
       addTemplate(templates, new BinaryExprTemplate(type, type, BasicType.BOOL, BinOp.NE));
     }
@@ -680,9 +696,9 @@ public class Templates {
       the right-most expression in a comma separated list of expressions. All expressions are
       evaluated, in order, from left to right.
       */
-    for (BasicType type : supportedBasicTypes(shadingLanguageVersion)) {
+    for (BasicType type : supportedBasicTypes) {
       addTemplate(templates,
-            new BinaryExprTemplate(supportedBasicTypes(shadingLanguageVersion),
+            new BinaryExprTemplate(supportedBasicTypes,
                 type, type, BinOp.COMMA));
     }
 
@@ -695,7 +711,7 @@ public class Templates {
       section 4.1.10 "Implicit Conversions" that can be applied to one of the expressions to make
       their types match. This resulting matching type is the type of the entire expression.
     */
-    for (BasicType type : supportedBasicTypes(shadingLanguageVersion)) {
+    for (BasicType type : supportedBasicTypes) {
       addTemplate(templates, new TernaryExprTemplate(type));
     }
 
@@ -1087,10 +1103,13 @@ public class Templates {
 
   private static List<BasicType> supportedBasicTypes(
       ShadingLanguageVersion shadingLanguageVersion) {
-    return BasicType.allBasicTypes()
-        .stream()
-        .filter(item -> SupportedTypes.supported(item, shadingLanguageVersion))
-        .collect(Collectors.toList());
+    final List<BasicType> result = new ArrayList<>();
+    for (BasicType type : BasicType.allBasicTypes()) {
+      if (SupportedTypes.supported(type, shadingLanguageVersion)) {
+        result.add(type);
+      }
+    }
+    return result;
   }
 
   private static void addTemplate(List<IExprTemplate> templates, IExprTemplate template) {
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2019 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.generator.tool;
+
+import com.graphicsfuzz.common.ast.decl.FunctionPrototype;
+import com.graphicsfuzz.common.glslversion.ShadingLanguageVersion;
+import com.graphicsfuzz.common.typing.TyperHelper;
+import com.graphicsfuzz.common.util.ShaderKind;
+import com.graphicsfuzz.generator.fuzzer.Templates;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
+import net.sourceforge.argparse4j.inf.Namespace;
+
+/**
+ * Measures what the built-in function tables and the fuzzer's expression templates cost the tools
+ * at startup, and what looking up a built-in costs afterwards.
+ *
+ * <p>The type checker, which every tool runs, needs the built-ins for the shading language
+ * version and kind of each shader it handles; glsl-generate also needs the templates.  These are
+ * built the first time they are needed, so the benchmark must be run in a fresh JVM for the
+ * startup figures to mean anything.  Compare the figures from runs of the benchmark built with and
+ * without a change to see what the change saves.</p>
+ */
+public class BuiltinsBenchmark {
+
+  private static Namespace parse(String[] args) throws ArgumentParserException {
+    ArgumentParser parser = ArgumentParsers.newArgumentParser("BuiltinsBenchmark")
+        .defaultHelp(true)
+        .description("Benchmark construction of, and lookups in, the built-in function tables.");
+
+    // Optional arguments
+    parser.addArgument("--version")
+        .help("Shading language version, as given in a #version directive.")
+        .setDefault("310 es")
+        .type(String.class);
+
+    parser.addArgument("--lookups")
+        .help("Number of timed lookups of built-ins by name.")
+        .setDefault(1000000)
+        .type(Integer.class);
+
+    return parser.parseArgs(args);
+  }
+
+  public static void main(String[] args) {
+    try {
+      final Namespace ns = parse(args);
+      final ShadingLanguageVersion shadingLanguageVersion =
+          ShadingLanguageVersion.fromVersionString(ns.getString("version"));
+      final int lookups = ns.getInt("lookups");
+
+      // The order is that of a typical glsl-generate run: the type checker needs the fragment
+      // shader's built-ins first, and the generator then needs templates, which, when targeting
+      // WGSL, are built from a different table.  The vertex shader of the shader job comes next.
+      long startTime = System.nanoTime();
+      final Map<String, List<FunctionPrototype>> builtins =
+          TyperHelper.getBuiltins(shadingLanguageVersion, false, ShaderKind.FRAGMENT);
+      report("first built-ins (fragment)", startTime);
+
+      startTime = System.nanoTime();
+      Templates.getIndex(shadingLanguageVersion, false, ShaderKind.FRAGMENT);
+      report("templates (fragment)", startTime);
+
+      startTime = System.nanoTime();
+      TyperHelper.getBuiltins(shadingLanguageVersion, true, ShaderKind.FRAGMENT);
+      report("built-ins (fragment, WGSL)", startTime);
+
+      startTime = System.nanoTime();
+      TyperHelper.getBuiltins(shadingLanguageVersion, false, ShaderKind.VERTEX);
+      report("built-ins (vertex)", startTime);
+
+      int numPrototypes = 0;
+      for (List<FunctionPrototype> prototypes : builtins.values()) {
+        numPrototypes += prototypes.size();
+      }
+      System.out.printf("%d built-ins, with %d prototypes, for %s fragment shaders%n",
+          builtins.size(), numPrototypes, shadingLanguageVersion.getVersionString());
+
+      // Lookups are made in the way the type checker makes them, once for each function call.
+      final List<String> names = new ArrayList<>(builtins.keySet());
+      names.add("notABuiltin");
+      int found = 0;
+      // Warm up, so that the JIT has the chance to compile the lookup before timing.
+      for (int i = 0; i < lookups; i++) {
+        found += lookUp(shadingLanguageVersion, names.get(i % names.size()));
+      }
+      startTime = System.nanoTime();
+      for (int i = 0; i < lookups; i++) {
+        found += lookUp(shadingLanguageVersion, names.get(i % names.size()));
+      }
+      System.out.printf("%-32s %10.1f ns/lookup (%d found)%n", "lookup by name",
+          (System.nanoTime() - startTime) / (double) lookups, found);
+    } catch (ArgumentParserException exception) {
+      exception.getParser().handleError(exception);
+      System.exit(1);
+    } catch (Throwable exception) {
+      exception.printStackTrace();
+      System.exit(1);
+    }
+  }
+
+  private static int lookUp(ShadingLanguageVersion shadingLanguageVersion, String name) {
+    final List<FunctionPrototype> prototypes =
+        TyperHelper.getBuiltins(shadingLanguageVersion, false, ShaderKind.FRAGMENT).get(name);
+    return prototypes == null ? 0 : 1;
+  }
+
+  private static void report(String name, long startTime) {
+    System.out.printf("%-32s %10.2f ms%n", name, (System.nanoTime() - startTime) / 1000000.0);
+  }
+
+}
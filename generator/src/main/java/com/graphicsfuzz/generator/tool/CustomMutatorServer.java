@@ -25,9 +25,12 @@ import com.graphicsfuzz.common.util.ParseTimeoutException;
 import com.graphicsfuzz.common.util.RandomWrapper;
 import com.graphicsfuzz.common.util.ShaderKind;
 import com.graphicsfuzz.generator.fuzzer.FuzzedIntoACornerException;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintStream;
 import java.net.ServerSocket;
@@ -36,95 +39,243 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
 import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
+import net.sourceforge.argparse4j.inf.Namespace;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Server that can accept shaders from a libFuzzer custom mutator and send back a mutated shader.
+ *
+ * <p>Many clients, e.g. one per libFuzzer instance, can be served at once.  Each connection is
+ * handled by a thread from a bounded pool and carries a sequence of requests, each answered in
+ * turn.  A request is a header, composed of a little endian uint64_t shader size, a uint32_t
+ * seed and a uint8_t that is non-zero for a fragment shader, followed by the shader.  The answer
+ * is the size of the mutated shader, as a little endian uint64_t, followed by the mutated shader;
+ * the size is 0 if the shader could not be mutated.</p>
  */
 public class CustomMutatorServer {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(CustomMutatorServer.class);
   private static final int INDENTATION_WIDTH = 0;
   private static final int DEFAULT_PORT = 8666;
+  private static final int HEADER_SIZE = Long.BYTES + Integer.BYTES + Byte.BYTES;
+
+  /**
+   * Mutates a shader, writing the mutated shader to outputShader.  Returns false if the shader
+   * could not be mutated.
+   */
+  interface Mutator {
+    boolean mutate(String inputShader, int seed, boolean isFragment,
+        ByteArrayOutputStream outputShader);
+  }
+
+  private final int port;
+  private final int maxClients;
+  private final long statsIntervalSeconds;
+  private final Mutator mutator;
+
+  private final AtomicInteger clients = new AtomicInteger();
+  private final AtomicLong requests = new AtomicLong();
+  private final AtomicLong failedMutations = new AtomicLong();
+  private final AtomicLong failedConnections = new AtomicLong();
+  private final AtomicLong rejectedConnections = new AtomicLong();
+
+  public CustomMutatorServer(int port, int maxClients, long statsIntervalSeconds) {
+    this(port, maxClients, statsIntervalSeconds, CustomMutatorServer::mutate);
+  }
+
+  CustomMutatorServer(int port, int maxClients, long statsIntervalSeconds, Mutator mutator) {
+    this.port = port;
+    this.maxClients = maxClients;
+    this.statsIntervalSeconds = statsIntervalSeconds;
+    this.mutator = mutator;
+  }
+
+  private static Namespace parse(String[] args) throws ArgumentParserException {
+    ArgumentParser parser = ArgumentParsers.newArgumentParser("CustomMutatorServer")
+        .defaultHelp(true)
+        .description("Mutate shaders sent by libFuzzer custom mutators.");
+
+    parser.addArgument("--port")
+        .help("Port on which to listen.")
+        .setDefault(DEFAULT_PORT)
+        .type(Integer.class);
+
+    parser.addArgument("--max-clients")
+        .help("Maximum number of clients served at once; further connections are refused.")
+        .setDefault(Runtime.getRuntime().availableProcessors() * 4)
+        .type(Integer.class);
+
+    parser.addArgument("--stats-interval")
+        .help("Number of seconds between reports of requests per second and failures; 0 "
+            + "disables reports.")
+        .setDefault(60L)
+        .type(Long.class);
+
+    return parser.parseArgs(args);
+  }
 
   public static void main(String[] args) {
+    int port = DEFAULT_PORT;
     try {
-      // TODO(381): If we don't switch from TCP, allow this to be configured from the command
-      // line.
-      runServer(DEFAULT_PORT);
+      final Namespace ns = parse(args);
+      port = ns.getInt("port");
+      new CustomMutatorServer(port, ns.getInt("max_clients"), ns.getLong("stats_interval"))
+          .runServer();
+    } catch (ArgumentParserException exception) {
+      exception.getParser().handleError(exception);
+      System.exit(1);
     } catch (IOException exception) {
-      LOGGER.error("Failed to listen on port: " + DEFAULT_PORT, exception);
+      LOGGER.error("Failed to listen on port: " + port, exception);
       System.exit(1);
     }
   }
 
-  private static void runServer(int port) throws IOException {
-    LOGGER.info("Listening on port: " + port);
-    final ServerSocket serverSocket = new ServerSocket(port);
-    final Socket socket = serverSocket.accept();
-    final InputStream inputStream = socket.getInputStream();
-    final OutputStream outputStream = socket.getOutputStream();
-    // Header is composed of
-    // uint64_t size;
-    // uint32_t seed;
-    // uint8_t isFragment;
-    final int headerSize = Long.BYTES + Integer.BYTES + Byte.BYTES;
-    final byte[] headerBuff = new byte[headerSize];
-    while (true) {
-      int bytesRead = inputStream.read(headerBuff, 0, headerBuff.length);
-      if (bytesRead == -1) {
-        LOGGER.info("Client closed connection");
-        break;
-      }
-      final ByteBuffer headerByteBuffer = ByteBuffer.wrap(headerBuff);
-      headerByteBuffer.order(ByteOrder.LITTLE_ENDIAN);
-
-      // Java won't allow us to create an array with a "long" size. But the size of a
-      // shader on the client can technically be up to SIZE_T_MAX. Therefore, we must convert it to
-      // int before creating the array. This is probably a non-issue because libFuzzer is unlikely
-      // to ever give us a shader larger than Integer.MAX_VALUE (e.g. ~2G).
-      final long shaderSize = headerByteBuffer.getLong();
-      assert shaderSize <= Integer.MAX_VALUE;
-
-      final int seed = headerByteBuffer.getInt();
-      final byte isFragmentByte = headerByteBuffer.get();
-
-      // Read the shader.
-      byte[] inputShaderBuff = new byte[(int) shaderSize];
-      socket.getInputStream().read(inputShaderBuff, 0, inputShaderBuff.length);
-      final String inputShader = new String(inputShaderBuff);
-
-      // Mutate the shader.
-      String outputShader = mutate(inputShader, seed, isFragmentByte == 0);
-      if (outputShader == null) {
-        // Tell libFuzzer we will "send" it a 0-length shader.
-        for (int idx = 0; idx < Long.BYTES; idx++) {
-          outputStream.write(0);
+  public void runServer() throws IOException {
+    try (ServerSocket serverSocket = new ServerSocket(port)) {
+      runServer(serverSocket);
+    }
+  }
+
+  /**
+   * Serves clients that connect to the given socket, until the socket is closed.
+   * @param serverSocket A bound server socket.
+   * @throws IOException if accepting a connection fails.
+   */
+  public void runServer(ServerSocket serverSocket) throws IOException {
+    final ThreadPoolExecutor connectionExecutor = new ThreadPoolExecutor(
+        maxClients, maxClients, 60, TimeUnit.SECONDS, new SynchronousQueue<>());
+    // Threads that have handled a client are not needed when there are few clients.
+    connectionExecutor.allowCoreThreadTimeOut(true);
+    final ScheduledExecutorService statsExecutor = Executors.newSingleThreadScheduledExecutor(
+        runnable -> {
+          final Thread thread = new Thread(runnable, "CustomMutatorServerStats");
+          thread.setDaemon(true);
+          return thread;
+        });
+    if (statsIntervalSeconds > 0) {
+      final AtomicLong lastRequests = new AtomicLong();
+      statsExecutor.scheduleAtFixedRate(() -> {
+        final long total = requests.get();
+        LOGGER.info("Clients: {}; requests/s: {}; requests: {}; failed mutations: {}; "
+                + "failed connections: {}; refused connections: {}",
+            clients.get(),
+            String.format("%.1f", (total - lastRequests.getAndSet(total))
+                / (double) statsIntervalSeconds),
+            total,
+            failedMutations.get(),
+            failedConnections.get(),
+            rejectedConnections.get());
+      }, statsIntervalSeconds, statsIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    LOGGER.info("Listening on port: " + serverSocket.getLocalPort());
+    try {
+      while (true) {
+        final Socket socket = serverSocket.accept();
+        try {
+          connectionExecutor.execute(() -> serveClient(socket));
+        } catch (RejectedExecutionException exception) {
+          rejectedConnections.incrementAndGet();
+          LOGGER.warn("Refusing connection from {}: already serving {} clients.",
+              socket.getRemoteSocketAddress(), maxClients);
+          socket.close();
         }
-        continue;
       }
+    } finally {
+      connectionExecutor.shutdownNow();
+      statsExecutor.shutdownNow();
+    }
+  }
+
+  private void serveClient(Socket socket) {
+    clients.incrementAndGet();
+    LOGGER.info("Client connected: {}", socket.getRemoteSocketAddress());
+    try (Socket closedOnExit = socket) {
+      socket.setTcpNoDelay(true);
+      final DataInputStream inputStream =
+          new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      final OutputStream outputStream = new BufferedOutputStream(socket.getOutputStream());
+
+      // Buffers are reused across the requests on a connection.
+      final byte[] headerBuff = new byte[HEADER_SIZE];
+      final ByteBuffer headerByteBuffer =
+          ByteBuffer.wrap(headerBuff).order(ByteOrder.LITTLE_ENDIAN);
+      final ByteBuffer lengthByteBuffer =
+          ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+      byte[] inputShaderBuff = new byte[0];
+      final ByteArrayOutputStream outputShader = new ByteArrayOutputStream();
 
-      // Get shader size as a little endian uint64_t then write it to the socket so libFuzzer
-      // knows what to expect.
-      final ByteBuffer lengthByteBuffer = ByteBuffer.allocate(Long.BYTES);
-      lengthByteBuffer.order(ByteOrder.LITTLE_ENDIAN);
-      lengthByteBuffer.putLong((long) outputShader.length());
-      final byte[] length = new byte[Long.BYTES];
-      lengthByteBuffer.position(0);
-      lengthByteBuffer.get(length);
-      outputStream.write(length);
-      outputStream.write(outputShader.getBytes());
+      while (true) {
+        try {
+          inputStream.readFully(headerBuff);
+        } catch (EOFException exception) {
+          LOGGER.info("Client closed connection: {}", socket.getRemoteSocketAddress());
+          return;
+        }
+        headerByteBuffer.clear();
+
+        // Java won't allow us to create an array with a "long" size. But the size of a
+        // shader on the client can technically be up to SIZE_T_MAX. This is probably a non-issue
+        // because libFuzzer is unlikely to ever give us a shader larger than Integer.MAX_VALUE
+        // (e.g. ~2G).
+        final long shaderSize = headerByteBuffer.getLong();
+        if (shaderSize < 0 || shaderSize > Integer.MAX_VALUE) {
+          throw new IOException("Shader size out of range: " + Long.toUnsignedString(shaderSize));
+        }
+        final int seed = headerByteBuffer.getInt();
+        final byte isFragmentByte = headerByteBuffer.get();
+
+        // Read the shader.
+        if (inputShaderBuff.length < shaderSize) {
+          inputShaderBuff = new byte[(int) shaderSize];
+        }
+        inputStream.readFully(inputShaderBuff, 0, (int) shaderSize);
+        final String inputShader =
+            new String(inputShaderBuff, 0, (int) shaderSize, StandardCharsets.UTF_8);
+        requests.incrementAndGet();
+
+        // Mutate the shader.  If that fails, tell libFuzzer we will "send" it a 0-length shader.
+        outputShader.reset();
+        if (!mutator.mutate(inputShader, seed, isFragmentByte != 0, outputShader)) {
+          failedMutations.incrementAndGet();
+          outputShader.reset();
+        }
+
+        // Send the shader size as a little endian uint64_t so libFuzzer knows what to expect,
+        // followed by the shader.
+        lengthByteBuffer.clear();
+        lengthByteBuffer.putLong(outputShader.size());
+        outputStream.write(lengthByteBuffer.array());
+        outputShader.writeTo(outputStream);
+        outputStream.flush();
+      }
+    } catch (IOException exception) {
+      failedConnections.incrementAndGet();
+      LOGGER.error("Error serving client " + socket.getRemoteSocketAddress(), exception);
+    } finally {
+      clients.decrementAndGet();
     }
   }
 
-  private static String mutate(String inputShader, int seed, boolean isFragment) {
+  private static boolean mutate(String inputShader, int seed, boolean isFragment,
+      ByteArrayOutputStream outputShader) {
     final ShaderKind shaderKind = isFragment ? ShaderKind.FRAGMENT : ShaderKind.VERTEX;
     try {
       final TranslationUnit tu = ParseHelper.parse(inputShader, shaderKind);
       Mutate.mutate(tu, new RandomWrapper(seed));
-      final ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-      try (final PrintStream stream = new PrintStream(byteArrayOutputStream, true, "UTF-8")) {
+      try (final PrintStream stream = new PrintStream(outputShader, true, "UTF-8")) {
         PrettyPrinterVisitor.emitShader(
             tu,
             Optional.empty(),
@@ -132,18 +283,24 @@ public class CustomMutatorServer {
             INDENTATION_WIDTH,
             PrettyPrinterVisitor.DEFAULT_NEWLINE_SUPPLIER);
       }
-      final String outputShader =
-          new String(byteArrayOutputStream.toByteArray(), StandardCharsets.UTF_8);
-      return outputShader;
+      return true;
     } catch (GlslParserException
         | FuzzedIntoACornerException
         | DuplicateVariableException
         | ParseTimeoutException
         | IOException
         | InterruptedException exception) {
-      exception.printStackTrace();
       LOGGER.error("Failed to mutate:\n" + inputShader, exception);
+      return false;
+    }
+  }
+
+  // Used by the JNI example of libFuzzer integration.
+  private static String mutate(String inputShader, int seed, boolean isFragment) {
+    final ByteArrayOutputStream outputShader = new ByteArrayOutputStream();
+    if (!mutate(inputShader, seed, isFragment, outputShader)) {
       return null;
     }
+    return new String(outputShader.toByteArray(), StandardCharsets.UTF_8);
   }
 }
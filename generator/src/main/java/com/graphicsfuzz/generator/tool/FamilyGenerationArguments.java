@@ -0,0 +1,102 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.generator.tool;
+
+import com.graphicsfuzz.common.util.RandomAlgorithm;
+import java.util.Optional;
+
+/**
+ * Settings controlling the generation of a shader family, as opposed to the generation of each
+ * individual variant (which is controlled by GeneratorArguments).
+ */
+public class FamilyGenerationArguments {
+
+  private final int numVariants;
+  private final boolean verbose;
+  private final boolean disableGlslangValidator;
+  private final boolean disableShaderTranslator;
+  private final boolean writeProbabilities;
+  private final boolean keepBadVariants;
+  private final boolean stopOnFail;
+  private final Optional<Integer> maxBytes;
+  private final Optional<Float> maxFactor;
+  private final RandomAlgorithm randomAlgorithm;
+
+  public FamilyGenerationArguments(
+        int numVariants,
+        boolean verbose,
+        boolean disableGlslangValidator,
+        boolean disableShaderTranslator,
+        boolean writeProbabilities,
+        boolean keepBadVariants,
+        boolean stopOnFail,
+        Optional<Integer> maxBytes,
+        Optional<Float> maxFactor,
+        RandomAlgorithm randomAlgorithm) {
+    this.numVariants = numVariants;
+    this.verbose = verbose;
+    this.disableGlslangValidator = disableGlslangValidator;
+    this.disableShaderTranslator = disableShaderTranslator;
+    this.writeProbabilities = writeProbabilities;
+    this.keepBadVariants = keepBadVariants;
+    this.stopOnFail = stopOnFail;
+    this.maxBytes = maxBytes;
+    this.maxFactor = maxFactor;
+    this.randomAlgorithm = randomAlgorithm;
+  }
+
+  public int getNumVariants() {
+    return numVariants;
+  }
+
+  public boolean getVerbose() {
+    return verbose;
+  }
+
+  public boolean getDisableGlslangValidator() {
+    return disableGlslangValidator;
+  }
+
+  public boolean getDisableShaderTranslator() {
+    return disableShaderTranslator;
+  }
+
+  public boolean getWriteProbabilities() {
+    return writeProbabilities;
+  }
+
+  public boolean getKeepBadVariants() {
+    return keepBadVariants;
+  }
+
+  public boolean getStopOnFail() {
+    return stopOnFail;
+  }
+
+  public Optional<Integer> getMaxBytes() {
+    return maxBytes;
+  }
+
+  public Optional<Float> getMaxFactor() {
+    return maxFactor;
+  }
+
+  public RandomAlgorithm getRandomAlgorithm() {
+    return randomAlgorithm;
+  }
+
+}
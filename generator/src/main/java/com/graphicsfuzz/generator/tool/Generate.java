@@ -32,7 +32,7 @@ import com.graphicsfuzz.common.util.IRandom;
 import com.graphicsfuzz.common.util.ParseTimeoutException;
 import com.graphicsfuzz.common.util.PipelineInfo;
 import com.graphicsfuzz.common.util.PruneUniforms;
-import com.graphicsfuzz.common.util.RandomWrapper;
+import com.graphicsfuzz.common.util.RandomAlgorithm;
 import com.graphicsfuzz.common.util.ShaderJobFileOperations;
 import com.graphicsfuzz.common.util.ShaderKind;
 import com.graphicsfuzz.common.util.StatsVisitor;
@@ -54,7 +54,6 @@ import com.graphicsfuzz.generator.transformation.StructificationTransformation;
 import com.graphicsfuzz.generator.transformation.VectorizeTransformation;
 import com.graphicsfuzz.generator.util.GenerationParams;
 import com.graphicsfuzz.generator.util.TransformationProbabilities;
-import com.graphicsfuzz.util.ArgsUtil;
 import com.graphicsfuzz.util.Constants;
 import java.io.File;
 import java.io.IOException;
@@ -105,6 +104,8 @@ public class Generate {
         .help("Seed (unsigned 64 bit long integer) for the random number generator.")
         .type(String.class);
 
+    RandomAlgorithm.addRandomAlgorithmArgument(parser);
+
     parser.addArgument("--small")
         .help("Try to generate small shaders.")
         .action(Arguments.storeTrue());
@@ -378,7 +379,7 @@ public class Generate {
       GlslParserException {
     final Namespace ns = parse(args);
 
-    final IRandom random = new RandomWrapper(ArgsUtil.getSeedArgument(ns));
+    final IRandom random = RandomAlgorithm.createFromArgs(ns);
 
     generateVariant(
         new ShaderJobFileOperations(),
@@ -22,7 +22,7 @@ import com.google.gson.JsonObject;
 import com.graphicsfuzz.common.util.GlslParserException;
 import com.graphicsfuzz.common.util.IRandom;
 import com.graphicsfuzz.common.util.ParseTimeoutException;
-import com.graphicsfuzz.common.util.RandomWrapper;
+import com.graphicsfuzz.common.util.RandomAlgorithm;
 import com.graphicsfuzz.common.util.ShaderJobFileOperations;
 import com.graphicsfuzz.common.util.ShaderKind;
 import com.graphicsfuzz.util.ArgsUtil;
@@ -120,21 +120,59 @@ public class GenerateShaderFamily {
     Namespace ns = parse(args);
 
     final File referenceShaderJob = ns.get("reference_shader_job");
-    final File donorsDir = ns.get("donors");
     final File outputDir = ns.get("output_dir") == null ? new File(".") : ns.get("output_dir");
-    final boolean verbose = ns.getBoolean("verbose");
-    final boolean disableGlslangValidator = ns.getBoolean("disable_glslangValidator");
-    final boolean disableShaderTranslator = ns.getBoolean("disable_shader_translator");
-    final boolean writeProbabilities = ns.getBoolean("write_probabilities");
-    final boolean keepBadVariants = ns.getBoolean("keep_bad_variants");
-    final boolean stopOnFail = ns.getBoolean("stop_on_fail");
-    final IRandom generator = new RandomWrapper(ArgsUtil.getSeedArgument(ns));
-    final int numVariants = ns.getInt("num_variants");
-    Optional<Integer> maxBytes = ns.get("max_bytes") == null ? Optional.empty() :
-        Optional.of(ns.getInt("max_bytes"));
-    Optional<Float> maxFactor = ns.get("max_factor") == null ? Optional.empty() :
-        Optional.of(ns.getFloat("max_factor"));
-    final GeneratorArguments generatorArguments = Generate.getGeneratorArguments(ns);
+
+    generateShaderFamily(referenceShaderJob, outputDir, Generate.getGeneratorArguments(ns),
+        getFamilyGenerationArguments(ns), ArgsUtil.getSeedArgument(ns), String.join(" ", args));
+  }
+
+  static FamilyGenerationArguments getFamilyGenerationArguments(Namespace ns) {
+    return new FamilyGenerationArguments(
+        ns.getInt("num_variants"),
+        ns.getBoolean("verbose"),
+        ns.getBoolean("disable_glslangValidator"),
+        ns.getBoolean("disable_shader_translator"),
+        ns.getBoolean("write_probabilities"),
+        ns.getBoolean("keep_bad_variants"),
+        ns.getBoolean("stop_on_fail"),
+        ns.get("max_bytes") == null ? Optional.empty() : Optional.of(ns.getInt("max_bytes")),
+        ns.get("max_factor") == null ? Optional.empty() : Optional.of(ns.getFloat("max_factor")),
+        RandomAlgorithm.getFromArgs(ns));
+  }
+
+  /**
+   * Generates a shader family from a reference shader job.  This is thread-safe, so that several
+   * families can be generated concurrently, as long as they have distinct output directories.
+   *
+   * @param referenceShaderJob The reference shader job from which to generate the family.
+   * @param outputDir The directory into which the family is written.
+   * @param generatorArguments Settings controlling the generation of each variant.
+   * @param familyGenerationArguments Settings controlling the generation of the family.
+   * @param seed Seed for the random number generator that controls generation of the family.
+   * @param commandLine The arguments with which this family could be regenerated using this tool;
+   *                    it is recorded in the family's info log.
+   */
+  public static void generateShaderFamily(File referenceShaderJob,
+                                          File outputDir,
+                                          GeneratorArguments generatorArguments,
+                                          FamilyGenerationArguments familyGenerationArguments,
+                                          long seed,
+                                          String commandLine)
+      throws InterruptedException, IOException, ReferencePreparationException {
+
+    final File donorsDir = generatorArguments.getDonorsFolder();
+    final boolean verbose = familyGenerationArguments.getVerbose();
+    final boolean disableGlslangValidator =
+        familyGenerationArguments.getDisableGlslangValidator();
+    final boolean disableShaderTranslator =
+        familyGenerationArguments.getDisableShaderTranslator();
+    final boolean writeProbabilities = familyGenerationArguments.getWriteProbabilities();
+    final boolean keepBadVariants = familyGenerationArguments.getKeepBadVariants();
+    final boolean stopOnFail = familyGenerationArguments.getStopOnFail();
+    final IRandom generator = familyGenerationArguments.getRandomAlgorithm().create(seed);
+    final int numVariants = familyGenerationArguments.getNumVariants();
+    final Optional<Integer> maxBytes = familyGenerationArguments.getMaxBytes();
+    final Optional<Float> maxFactor = familyGenerationArguments.getMaxFactor();
 
     if (verbose) {
       LOGGER.info("Using random: " + generator.getDescription());
@@ -280,8 +318,10 @@ public class GenerateShaderFamily {
     final String hashContents = hashFile.isFile() ? FileUtils.readFileToString(hashFile,
         StandardCharsets.UTF_8) : "none";
     infoLog.addProperty("git_hash", hashContents);
-    infoLog.addProperty("args", String.join(" ", args));
+    infoLog.addProperty("args", commandLine);
     infoLog.addProperty("seed", generator.getDescription());
+    infoLog.addProperty("random_algorithm",
+        familyGenerationArguments.getRandomAlgorithm().toString());
 
     // Pretty-print the info log.
     FileUtils.writeStringToFile(new File(outputDir, "infolog.json"),
@@ -17,13 +17,18 @@
 package com.graphicsfuzz.generator.tool;
 
 import com.graphicsfuzz.common.util.IRandom;
-import com.graphicsfuzz.common.util.RandomWrapper;
+import com.graphicsfuzz.common.util.RandomAlgorithm;
 import com.graphicsfuzz.common.util.ShaderJobFileOperations;
-import com.graphicsfuzz.util.ArgsUtil;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 import net.sourceforge.argparse4j.ArgumentParsers;
 import net.sourceforge.argparse4j.inf.ArgumentParser;
 import net.sourceforge.argparse4j.inf.ArgumentParserException;
@@ -65,6 +70,11 @@ public class GlslGenerate {
 
     GenerateShaderFamily.addFamilyGenerationArguments(parser);
 
+    parser.addArgument("--family-threads")
+        .help("Number of shader families to generate concurrently.")
+        .setDefault(1)
+        .type(Integer.class);
+
     return parser.parseArgs(args);
 
   }
@@ -80,7 +90,7 @@ public class GlslGenerate {
     final String prefix = ns.get("prefix");
     final int numVariants = ns.getInt("num_variants");
     final boolean verbose = ns.getBoolean("verbose");
-    final IRandom generator = new RandomWrapper(ArgsUtil.getSeedArgument(ns));
+    final IRandom generator = RandomAlgorithm.createFromArgs(ns);
 
     final ShaderJobFileOperations fileOps = new ShaderJobFileOperations();
 
@@ -97,31 +107,94 @@ public class GlslGenerate {
           + " variant" + (numVariants == 1 ? "" : "s") + ".");
     }
 
-    int referenceCount = 0;
-    for (File shaderJobFile : referenceShaderJobFiles) {
-      LOGGER.info("Generating family " + referenceCount + " from reference "
-          + shaderJobFile.getName() + ".");
-      referenceCount++;
-
-      final List<String> generateShaderFamilyArgs = getGenerateShaderFamilyArgs(ns,
-          outputDir, shaderJobFile, prefix, generator.nextInt(Integer.MAX_VALUE));
-      if (verbose) {
-        LOGGER.info("Generating a shader family: " + generateShaderFamilyArgs.stream()
-            .reduce((String item1, String item2) -> item1 + " " + item2).orElse(""));
+    final GeneratorArguments generatorArguments = Generate.getGeneratorArguments(ns);
+    final FamilyGenerationArguments familyGenerationArguments =
+        GenerateShaderFamily.getFamilyGenerationArguments(ns);
+
+    // The seed for each family is drawn up front, in order, so that it does not depend on the
+    // order in which families are generated.
+    final List<Callable<Void>> familyGenerationTasks = new ArrayList<>();
+    // Set if a family fails in a manner that should stop generation, so that families that have
+    // not yet started are skipped.
+    final AtomicBoolean stopGeneration = new AtomicBoolean(false);
+    for (int i = 0; i < referenceShaderJobFiles.length; i++) {
+      final int referenceCount = i;
+      final File shaderJobFile = referenceShaderJobFiles[i];
+      final int innerSeed = generator.nextInt(Integer.MAX_VALUE);
+      familyGenerationTasks.add(() -> {
+        if (stopGeneration.get()) {
+          return null;
+        }
+        LOGGER.info("Generating family " + referenceCount + " from reference "
+            + shaderJobFile.getName() + ".");
+        // The arguments with which GenerateShaderFamily could be used to generate this family are
+        // recorded, so that the family can be reproduced.
+        final List<String> generateShaderFamilyArgs = getGenerateShaderFamilyArgs(ns,
+            outputDir, shaderJobFile, prefix, innerSeed);
+        if (verbose) {
+          LOGGER.info("Generating a shader family: " + generateShaderFamilyArgs.stream()
+              .reduce((String item1, String item2) -> item1 + " " + item2).orElse(""));
+        }
+        try {
+          GenerateShaderFamily.generateShaderFamily(shaderJobFile,
+              getFamilyOutputDir(outputDir, shaderJobFile, prefix),
+              generatorArguments,
+              familyGenerationArguments,
+              innerSeed,
+              String.join(" ", generateShaderFamilyArgs));
+        } catch (ReferencePreparationException referencePreparationException) {
+          LOGGER.info("Generation of shader family was aborted due to problems preparing the "
+              + "reference.");
+          if (failOnReferencePreparationException) {
+            stopGeneration.set(true);
+            throw referencePreparationException;
+          }
+        }
+        return null;
+      });
+    }
+
+    final ExecutorService executorService =
+        Executors.newFixedThreadPool(Math.max(1, ns.getInt("family_threads")));
+    try {
+      // Tasks are started in order; with a single thread, families are generated one at a time in
+      // order, as has always been the case.
+      final List<Future<Void>> results = new ArrayList<>();
+      for (Callable<Void> task : familyGenerationTasks) {
+        results.add(executorService.submit(task));
       }
-      try {
-        GenerateShaderFamily.mainHelper(generateShaderFamilyArgs.toArray(new String[0]));
-      } catch (ReferencePreparationException referencePreparationException) {
-        LOGGER.info("Generation of shader family was aborted due to problems preparing the "
-            + "reference.");
-        if (failOnReferencePreparationException) {
-          throw referencePreparationException;
+      for (Future<Void> result : results) {
+        try {
+          result.get();
+        } catch (ExecutionException exception) {
+          final Throwable cause = exception.getCause();
+          if (cause instanceof ReferencePreparationException) {
+            throw (ReferencePreparationException) cause;
+          }
+          if (cause instanceof IOException) {
+            throw (IOException) cause;
+          }
+          if (cause instanceof InterruptedException) {
+            throw (InterruptedException) cause;
+          }
+          if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+          }
+          throw new RuntimeException(cause);
         }
       }
+    } finally {
+      executorService.shutdownNow();
     }
     LOGGER.info("Generation complete.");
   }
 
+  private static File getFamilyOutputDir(File overallOutputDir, File shaderJobFile,
+                                         String prefix) {
+    return new File(overallOutputDir,
+        prefix + "_" + FilenameUtils.removeExtension(shaderJobFile.getName()));
+  }
+
   private static List<String> getGenerateShaderFamilyArgs(Namespace ns,
                                                           File overallOutputDir,
                                                           File shaderJobFile,
@@ -130,8 +203,7 @@ public class GlslGenerate {
     List<String> result = new ArrayList<>();
     result.add(shaderJobFile.getAbsolutePath());
     result.add(ns.get("donors").toString());
-    result.add(new File(overallOutputDir,
-        prefix + "_" + FilenameUtils.removeExtension(shaderJobFile.getName())).getAbsolutePath());
+    result.add(getFamilyOutputDir(overallOutputDir, shaderJobFile, prefix).getAbsolutePath());
     result.add("--seed");
     result.add(String.valueOf(innerSeed));
 
@@ -143,6 +215,7 @@ public class GlslGenerate {
         case "prefix":
         case "references":
         case "seed":
+        case "family_threads":
           continue;
         default:
           break;
@@ -50,7 +50,6 @@ import com.graphicsfuzz.common.util.GlslParserException;
 import com.graphicsfuzz.common.util.IRandom;
 import com.graphicsfuzz.common.util.MakeArrayAccessesInBounds;
 import com.graphicsfuzz.common.util.OpenGlConstants;
-import com.graphicsfuzz.common.util.ParseHelper;
 import com.graphicsfuzz.common.util.ParseTimeoutException;
 import com.graphicsfuzz.common.util.ShaderKind;
 import com.graphicsfuzz.generator.fuzzer.FuzzedIntoACornerException;
@@ -59,6 +58,7 @@ import com.graphicsfuzz.generator.fuzzer.FuzzingContext;
 import com.graphicsfuzz.generator.fuzzer.OpaqueExpressionGenerator;
 import com.graphicsfuzz.generator.transformation.donation.DonationContext;
 import com.graphicsfuzz.generator.transformation.donation.DonationContextFinder;
+import com.graphicsfuzz.generator.transformation.donation.DonorCorpus;
 import com.graphicsfuzz.generator.transformation.injection.IInjectionPoint;
 import com.graphicsfuzz.generator.transformation.injection.InjectionPoints;
 import com.graphicsfuzz.generator.util.GenerationParams;
@@ -86,6 +86,10 @@ public abstract class DonateCodeTransformation implements ITransformation {
   // During a single donation pass, this is populated on demand with the donors that are used.
   private final Map<File, TranslationUnit> donorsToTranslationUnits;
 
+  // During a single donation pass, this caches the donation context finder for each donor that is
+  // used, so that a donor is only searched for donation contexts once per pass.
+  private final Map<TranslationUnit, DonationContextFinder> donorsToContextFinders;
+
   // 'donorFiles' contains those donors that have not yet been used for a code donation.  Once a
   // donor has been used, it is moved to 'usedDonorFiles' (unless it is found to be incompatible,
   // in which case it is discarded).  If 'donorFiles' becomes empty, it and 'usedDonorFiles' are
@@ -100,6 +104,7 @@ public abstract class DonateCodeTransformation implements ITransformation {
                                   File donorsDirectory, GenerationParams generationParams) {
     this.probabilityOfDonation = probabilityOfDonation;
     this.donorsToTranslationUnits = new HashMap<>();
+    this.donorsToContextFinders = new HashMap<>();
     assert donorsDirectory.exists();
     this.donorFiles = new ArrayList<>();
     this.donorFiles.addAll(Arrays.asList(donorsDirectory.listFiles(
@@ -122,12 +127,9 @@ public abstract class DonateCodeTransformation implements ITransformation {
 
   private TranslationUnit prepareTranslationUnit(File donorFile, IRandom generator)
       throws IOException, ParseTimeoutException, InterruptedException, GlslParserException {
-    final TranslationUnit tu = ParseHelper.parse(donorFile);
-
-    // First, simplify the array info objects used by the shader so that they only refer to const
-    // expressions.  This is to avoid the situation where an array with e.g. a constant SOME_SIZE
-    // as its size expression gets donated into a context where SOME_SIZE is not declared.
-    simplifyArrayInfo(tu);
+    // The donor comes from the corpus with the array info objects used by the shader already
+    // simplified so that they only refer to const expressions.
+    final TranslationUnit tu = DonorCorpus.getDonor(donorFile);
 
     // Add a prefix to every identifier used in the shader.
     addPrefixes(tu);
@@ -277,25 +279,6 @@ public abstract class DonateCodeTransformation implements ITransformation {
     return tu;
   }
 
-  /**
-   * For every array info object that contains a size expression, replace that size expression with
-   * an integer constant expression reflecting the array's constant-folded size.
-   */
-  private void simplifyArrayInfo(TranslationUnit tu) {
-    new StandardVisitor() {
-      @Override
-      public void visitArrayInfo(ArrayInfo arrayInfo) {
-        super.visitArrayInfo(arrayInfo);
-        for (int i = 0; i < arrayInfo.getDimensionality(); i++) {
-          if (arrayInfo.hasSizeExpr(i)) {
-            assert arrayInfo.hasConstantSize(i);
-            arrayInfo.resetSizeExprToConstant(i);
-          }
-        }
-      }
-    }.visit(tu);
-  }
-
   private void addPrefixes(TranslationUnit tu) {
     new StandardVisitor() {
 
@@ -390,8 +373,11 @@ public abstract class DonateCodeTransformation implements ITransformation {
               + maybeDonor.get().getShaderKind());
         }
       }
-      Optional<DonationContext> donationContext = new DonationContextFinder(maybeDonor.get(),
-          generator)
+      if (!donorsToContextFinders.containsKey(maybeDonor.get())) {
+        donorsToContextFinders.put(maybeDonor.get(), new DonationContextFinder(maybeDonor.get(),
+            generator));
+      }
+      Optional<DonationContext> donationContext = donorsToContextFinders.get(maybeDonor.get())
           .getDonationContext();
       if (!donationContext.isPresent() || incompatible(injectionPoint, donationContext.get(),
           shadingLanguageVersion)) {
@@ -477,6 +463,7 @@ public abstract class DonateCodeTransformation implements ITransformation {
       usedDonorFiles = new ArrayList<>();
     }
     donorsToTranslationUnits.clear();
+    donorsToContextFinders.clear();
   }
 
   private boolean incompatible(IInjectionPoint injectionPoint, DonationContext donationContext,
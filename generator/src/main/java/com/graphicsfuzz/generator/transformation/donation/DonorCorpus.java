@@ -0,0 +1,139 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.generator.transformation.donation;
+
+import com.graphicsfuzz.common.ast.TranslationUnit;
+import com.graphicsfuzz.common.ast.decl.ArrayInfo;
+import com.graphicsfuzz.common.ast.visitors.StandardVisitor;
+import com.graphicsfuzz.common.util.GlslParserException;
+import com.graphicsfuzz.common.util.ParseHelper;
+import com.graphicsfuzz.common.util.ParseTimeoutException;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caches parsed donor shaders, so that each donor is parsed only once per run no matter how many
+ * donation passes and variants use it.
+ *
+ * <p>The cached form of a donor has had the parts of donor preparation that do not depend on
+ * how the donor is to be used applied to it: its array size expressions are replaced with
+ * integer constants.  Every request for a donor yields a fresh clone of the cached form, which
+ * the caller is free to modify.  An entry is parsed again if the size or modification time of the
+ * donor file changes.  So that a long-running process that draws on many donors does not hold on
+ * to all of them, only the most recently used donors are kept.</p>
+ *
+ * <p>The cache may be used from multiple threads.</p>
+ */
+public final class DonorCorpus {
+
+  // Donor corpora typically hold tens of shaders, so this keeps a whole corpus in a generation
+  // run.
+  static final int MAX_CACHED_DONORS = 100;
+
+  private static final Map<File, ParsedDonor> parsedDonors = Collections.synchronizedMap(
+      new LinkedHashMap<File, ParsedDonor>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<File, ParsedDonor> eldest) {
+          return size() > MAX_CACHED_DONORS;
+        }
+      });
+
+  private DonorCorpus() {
+    // Utility class
+  }
+
+  /**
+   * Yields a translation unit for the given donor, with array size expressions simplified to
+   * integer constants.
+   * @param donorFile The donor shader file.
+   * @return A translation unit that is not shared with any other caller.
+   * @throws IOException if the donor cannot be read.
+   * @throws ParseTimeoutException if parsing the donor times out.
+   * @throws InterruptedException if parsing is interrupted.
+   * @throws GlslParserException if the donor does not parse.
+   */
+  public static TranslationUnit getDonor(File donorFile)
+      throws IOException, ParseTimeoutException, InterruptedException, GlslParserException {
+    final File key = donorFile.getAbsoluteFile();
+    final long lastModified = key.lastModified();
+    final long length = key.length();
+    ParsedDonor parsedDonor = parsedDonors.get(key);
+    if (parsedDonor == null || parsedDonor.lastModified != lastModified
+        || parsedDonor.length != length) {
+      // Two threads may end up parsing the same donor at the same time; this is harmless, as
+      // they will produce equivalent results.
+      final TranslationUnit tu = ParseHelper.parse(key);
+      simplifyArrayInfo(tu);
+      parsedDonor = new ParsedDonor(lastModified, length, tu);
+      parsedDonors.put(key, parsedDonor);
+    }
+    return parsedDonor.tu.clone();
+  }
+
+  /**
+   * Discards all cached donors.
+   */
+  public static void clear() {
+    parsedDonors.clear();
+  }
+
+  static int getNumCachedDonors() {
+    return parsedDonors.size();
+  }
+
+  static boolean isCached(File donorFile) {
+    return parsedDonors.containsKey(donorFile.getAbsoluteFile());
+  }
+
+  /**
+   * For every array info object that contains a size expression, replace that size expression with
+   * an integer constant expression reflecting the array's constant-folded size.  This is to avoid
+   * the situation where an array with e.g. a constant SOME_SIZE as its size expression gets donated
+   * into a context where SOME_SIZE is not declared.
+   */
+  private static void simplifyArrayInfo(TranslationUnit tu) {
+    new StandardVisitor() {
+      @Override
+      public void visitArrayInfo(ArrayInfo arrayInfo) {
+        super.visitArrayInfo(arrayInfo);
+        for (int i = 0; i < arrayInfo.getDimensionality(); i++) {
+          if (arrayInfo.hasSizeExpr(i)) {
+            assert arrayInfo.hasConstantSize(i);
+            arrayInfo.resetSizeExprToConstant(i);
+          }
+        }
+      }
+    }.visit(tu);
+  }
+
+  private static final class ParsedDonor {
+    private final long lastModified;
+    private final long length;
+    // Never handed out directly; only clones of it are.
+    private final TranslationUnit tu;
+
+    private ParsedDonor(long lastModified, long length, TranslationUnit tu) {
+      this.lastModified = lastModified;
+      this.length = length;
+      this.tu = tu;
+    }
+  }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.generator.fuzzer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import com.graphicsfuzz.common.ast.type.BasicType;
+import com.graphicsfuzz.common.ast.type.QualifiedType;
+import com.graphicsfuzz.common.ast.type.TypeQualifier;
+import com.graphicsfuzz.common.glslversion.ShadingLanguageVersion;
+import com.graphicsfuzz.common.util.ShaderKind;
+import com.graphicsfuzz.generator.fuzzer.templates.IExprTemplate;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.Test;
+
+public class ExprTemplateIndexTest {
+
+  @Test
+  public void testIndexAgreesWithFiltering() {
+    final List<IExprTemplate> templates = Templates.get(ShadingLanguageVersion.ESSL_310, false,
+        ShaderKind.FRAGMENT);
+    final ExprTemplateIndex index = Templates.getIndex(ShadingLanguageVersion.ESSL_310, false,
+        ShaderKind.FRAGMENT);
+    for (BasicType type : BasicType.allBasicTypes()) {
+      for (boolean isLValue : new boolean[] { false, true }) {
+        for (boolean constContext : new boolean[] { false, true }) {
+          for (boolean noArguments : new boolean[] { false, true }) {
+            final List<IExprTemplate> expected = templates.stream()
+                .filter(item -> item.getResultType().equals(type))
+                .filter(item -> !isLValue || item.isLValue())
+                .filter(item -> !constContext || item.isConst())
+                .filter(item -> !noArguments || item.getNumArguments() == 0)
+                .collect(Collectors.toList());
+            assertEquals(expected, index.getApplicableTemplates(type, isLValue, constContext,
+                noArguments));
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testVariableTemplatesFollowScope() {
+    final FuzzingContext fuzzingContext = new FuzzingContext();
+    fuzzingContext.addGlobal("b", BasicType.INT);
+    fuzzingContext.addGlobal("a", new QualifiedType(BasicType.INT,
+        Collections.singletonList(TypeQualifier.CONST)));
+    final ExprTemplateIndex globals = fuzzingContext.getVariableTemplates();
+    assertSame(globals, fuzzingContext.getVariableTemplates());
+    assertEquals(2, globals.getApplicableTemplates(BasicType.INT, false, false, true).size());
+    assertEquals(1, globals.getApplicableTemplates(BasicType.INT, true, false, true).size());
+    assertEquals(1, globals.getApplicableTemplates(BasicType.INT, false, true, true).size());
+
+    fuzzingContext.enterScope();
+    fuzzingContext.addLocal("c", BasicType.INT);
+    final ExprTemplateIndex locals = fuzzingContext.getVariableTemplates();
+    assertNotSame(globals, locals);
+    assertEquals(3, locals.getApplicableTemplates(BasicType.INT, false, false, true).size());
+    // Variables are listed in alphabetical order of name.
+    assertEquals("VARIABLEc:()->int", locals.getApplicableTemplates(BasicType.INT, true, false,
+        false).get(1).toString());
+
+    fuzzingContext.leaveScope();
+    assertEquals(2, fuzzingContext.getVariableTemplates().getApplicableTemplates(BasicType.INT,
+        false, false, true).size());
+  }
+
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright 2019 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.generator.tool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.graphicsfuzz.common.util.ParseHelper;
+import com.graphicsfuzz.common.util.ShaderKind;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+
+public class CustomMutatorServerTest {
+
+  // Answers each request with a description of it, so that the decoding of requests can be
+  // checked; a shader of "fail" cannot be mutated.
+  private static boolean describe(String inputShader, int seed, boolean isFragment,
+      ByteArrayOutputStream outputShader) {
+    if (inputShader.equals("fail")) {
+      return false;
+    }
+    final byte[] description = ((isFragment ? "fragment" : "vertex") + " " + seed + " "
+        + inputShader).getBytes(StandardCharsets.UTF_8);
+    outputShader.write(description, 0, description.length);
+    return true;
+  }
+
+  private interface ServerTest {
+    void run(int port) throws Exception;
+  }
+
+  private static void withServer(CustomMutatorServer server, ServerTest test) throws Exception {
+    final ExecutorService executorService = Executors.newSingleThreadExecutor();
+    try (ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+      final Future<?> serverFuture = executorService.submit(() -> {
+        server.runServer(serverSocket);
+        return null;
+      });
+      try {
+        test.run(serverSocket.getLocalPort());
+      } finally {
+        serverSocket.close();
+        serverFuture.cancel(true);
+      }
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+
+  private static CustomMutatorServer describingServer(int maxClients) {
+    return new CustomMutatorServer(0, maxClients, 0, CustomMutatorServerTest::describe);
+  }
+
+  private static Socket connect(int port) throws IOException {
+    final Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+    socket.setSoTimeout(30000);
+    return socket;
+  }
+
+  private static byte[] encodeRequest(String shader, int seed, boolean isFragment) {
+    final byte[] shaderBytes = shader.getBytes(StandardCharsets.UTF_8);
+    return ByteBuffer.allocate(Long.BYTES + Integer.BYTES + Byte.BYTES + shaderBytes.length)
+        .order(ByteOrder.LITTLE_ENDIAN)
+        .putLong(shaderBytes.length)
+        .putInt(seed)
+        .put((byte) (isFragment ? 1 : 0))
+        .put(shaderBytes)
+        .array();
+  }
+
+  private static String readResponse(DataInputStream inputStream) throws IOException {
+    final byte[] sizeBytes = new byte[Long.BYTES];
+    inputStream.readFully(sizeBytes);
+    final long size = ByteBuffer.wrap(sizeBytes).order(ByteOrder.LITTLE_ENDIAN).getLong();
+    final byte[] shader = new byte[(int) size];
+    inputStream.readFully(shader);
+    return new String(shader, StandardCharsets.UTF_8);
+  }
+
+  private static String request(Socket socket, String shader, int seed, boolean isFragment)
+      throws IOException {
+    socket.getOutputStream().write(encodeRequest(shader, seed, isFragment));
+    socket.getOutputStream().flush();
+    return readResponse(new DataInputStream(socket.getInputStream()));
+  }
+
+  @Test
+  public void testRequestsArriveInPieces() throws Exception {
+    withServer(describingServer(2), port -> {
+      try (Socket socket = connect(port)) {
+        // Send each request a few bytes at a time, so that the server sees short reads of the
+        // header and of the shader.
+        final OutputStream outputStream = socket.getOutputStream();
+        final DataInputStream inputStream = new DataInputStream(socket.getInputStream());
+        for (int seed = 0; seed < 3; seed++) {
+          final byte[] request = encodeRequest("void main() { }", seed, true);
+          for (int offset = 0; offset < request.length; offset += 3) {
+            outputStream.write(request, offset, Math.min(3, request.length - offset));
+            outputStream.flush();
+            Thread.sleep(1);
+          }
+          assertEquals("fragment " + seed + " void main() { }", readResponse(inputStream));
+        }
+      }
+    });
+  }
+
+  @Test
+  public void testRequestsSentTogether() throws Exception {
+    withServer(describingServer(2), port -> {
+      try (Socket socket = connect(port)) {
+        // Several requests, including one with an empty shader and one that fails, arrive in a
+        // single write; each is answered in turn.
+        final ByteArrayOutputStream requests = new ByteArrayOutputStream();
+        requests.write(encodeRequest("first", 1, true));
+        requests.write(encodeRequest("", 2, true));
+        requests.write(encodeRequest("fail", 3, true));
+        requests.write(encodeRequest("last", 4, false));
+        socket.getOutputStream().write(requests.toByteArray());
+        socket.getOutputStream().flush();
+        final DataInputStream inputStream = new DataInputStream(socket.getInputStream());
+        assertEquals("fragment 1 first", readResponse(inputStream));
+        assertEquals("fragment 2 ", readResponse(inputStream));
+        assertEquals("", readResponse(inputStream));
+        assertEquals("vertex 4 last", readResponse(inputStream));
+      }
+    });
+  }
+
+  @Test
+  public void testFragmentFlag() throws Exception {
+    withServer(describingServer(2), port -> {
+      try (Socket socket = connect(port)) {
+        assertEquals("fragment 7 s", request(socket, "s", 7, true));
+        assertEquals("vertex 7 s", request(socket, "s", 7, false));
+        // Any non-zero value means a fragment shader.
+        final byte[] request = encodeRequest("s", 7, true);
+        request[Long.BYTES + Integer.BYTES] = (byte) 0xff;
+        socket.getOutputStream().write(request);
+        assertEquals("fragment 7 s", readResponse(new DataInputStream(socket.getInputStream())));
+      }
+    });
+  }
+
+  @Test
+  public void testManyClientsAtOnce() throws Exception {
+    final int numClients = 4;
+    final int requestsPerClient = 50;
+    withServer(describingServer(numClients), port -> {
+      final ExecutorService clients = Executors.newFixedThreadPool(numClients);
+      try {
+        final List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < numClients; i++) {
+          final int client = i;
+          futures.add(clients.submit(() -> {
+            try (Socket socket = connect(port)) {
+              for (int seed = 0; seed < requestsPerClient; seed++) {
+                final String shader = "client " + client;
+                assertEquals("vertex " + seed + " " + shader,
+                    request(socket, shader, seed, false));
+              }
+            }
+            return null;
+          }));
+        }
+        for (Future<?> future : futures) {
+          future.get();
+        }
+      } finally {
+        clients.shutdownNow();
+      }
+    });
+  }
+
+  @Test
+  public void testClientsBeyondMaximumAreRefused() throws Exception {
+    withServer(describingServer(1), port -> {
+      try (Socket first = connect(port)) {
+        // Once the first client has been answered, it is being served, and holds the only
+        // connection thread until it disconnects.
+        assertEquals("fragment 1 a", request(first, "a", 1, true));
+        try (Socket second = connect(port)) {
+          // The server closes the connection straight away.
+          assertEquals(-1, second.getInputStream().read());
+        }
+        assertEquals("fragment 3 c", request(first, "c", 3, true));
+      }
+      // The first client has gone, so another client can be served; the connection thread might
+      // take a moment to become available again.
+      boolean served = false;
+      for (int attempt = 0; attempt < 100 && !served; attempt++) {
+        try (Socket third = connect(port)) {
+          served = request(third, "d", 4, true).equals("fragment 4 d");
+        } catch (IOException exception) {
+          Thread.sleep(10);
+        }
+      }
+      assertTrue(served);
+    });
+  }
+
+  @Test
+  public void testClientThatDisconnectsMidRequest() throws Exception {
+    withServer(describingServer(1), port -> {
+      try (Socket socket = connect(port)) {
+        final byte[] request = encodeRequest("truncated", 1, true);
+        socket.getOutputStream().write(request, 0, request.length - 2);
+        socket.getOutputStream().flush();
+      }
+      // The server gives up on the truncated request, and serves other clients.
+      boolean served = false;
+      for (int attempt = 0; attempt < 100 && !served; attempt++) {
+        try (Socket socket = connect(port)) {
+          served = request(socket, "whole", 2, true).equals("fragment 2 whole");
+        } catch (IOException exception) {
+          Thread.sleep(10);
+        }
+      }
+      assertTrue(served);
+    });
+  }
+
+  @Test
+  public void testShaderIsMutated() throws Exception {
+    final String shader = "#version 310 es\n"
+        + "precision highp float;\n"
+        + "layout(location = 0) out vec4 color;\n"
+        + "void main() {\n"
+        + "  float x = 1.0;\n"
+        + "  color = vec4(x, 0.0, 0.0, 1.0);\n"
+        + "}\n";
+    withServer(new CustomMutatorServer(0, 1, 0), port -> {
+      try (Socket socket = connect(port)) {
+        final String mutated = request(socket, shader, 0, true);
+        assertTrue(!mutated.isEmpty());
+        // The mutated shader must be valid enough to parse.
+        ParseHelper.parse(mutated, ShaderKind.FRAGMENT);
+        // A shader that does not parse cannot be mutated.
+        assertEquals("", request(socket, "not a shader", 0, true));
+      }
+    });
+  }
+
+}
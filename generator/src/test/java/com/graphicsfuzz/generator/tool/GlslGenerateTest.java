@@ -145,6 +145,38 @@ public class GlslGenerateTest {
 
   }
 
+  @Test
+  public void testConcurrentFamilyGenerationMatchesSequential() throws Exception {
+    final String references = Paths.get(ToolPaths.getShadersDirectory(),
+        "samples", "100").toString();
+    final int numVariants = 2;
+    final String prefix = "family";
+    final int seed = 5;
+    final List<String> extraArgs = Arrays.asList("--disable-glslangValidator",
+        "--disable-shader-translator");
+    final File sequentialOutputDir = temporaryFolder.newFolder();
+    generateShaderFamily(references, references, numVariants, prefix,
+        sequentialOutputDir.getAbsolutePath(), seed, extraArgs, true);
+    final List<String> concurrentExtraArgs = new ArrayList<>(extraArgs);
+    concurrentExtraArgs.addAll(Arrays.asList("--family-threads", "3"));
+    final File concurrentOutputDir = temporaryFolder.newFolder();
+    generateShaderFamily(references, references, numVariants, prefix,
+        concurrentOutputDir.getAbsolutePath(), seed, concurrentExtraArgs, true);
+
+    final File[] families = sequentialOutputDir.listFiles(File::isDirectory);
+    assertTrue(families.length > 1);
+    for (File family : families) {
+      final File concurrentFamily = new File(concurrentOutputDir, family.getName());
+      for (int i = 0; i < numVariants; i++) {
+        final String variant = "variant_" + String.format("%03d", i) + ".frag";
+        assertEquals(FileUtils.readFileToString(new File(family, variant),
+            StandardCharsets.UTF_8),
+            FileUtils.readFileToString(new File(concurrentFamily, variant),
+                StandardCharsets.UTF_8));
+      }
+    }
+  }
+
 
   private void checkFragmentShaderFamilyGeneration(String references,
                                                    String donors,
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.generator.transformation.donation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import com.graphicsfuzz.common.ast.TranslationUnit;
+import com.graphicsfuzz.common.util.CompareAsts;
+import com.graphicsfuzz.common.util.ShaderKind;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DonorCorpusTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void testDonorsAreIndependentClones() throws Exception {
+    final File donor = temporaryFolder.newFile("donor.frag");
+    FileUtils.writeStringToFile(donor, "#version 310 es\n"
+        + "const int N = 2;\n"
+        + "int A[N];\n"
+        + "void main() { }\n", StandardCharsets.UTF_8);
+    final TranslationUnit first = DonorCorpus.getDonor(donor);
+    final TranslationUnit second = DonorCorpus.getDonor(donor);
+    assertNotSame(first, second);
+    assertEquals(ShaderKind.FRAGMENT, first.getShaderKind());
+    // The array size expression should have been replaced with a constant.
+    CompareAsts.assertEqualAsts("#version 310 es\n"
+        + "const int N = 2;\n"
+        + "int A[2];\n"
+        + "void main() { }\n", first);
+
+    // Changing one donor must not affect another.
+    first.removeTopLevelDeclaration(0);
+    assertEquals(3, second.getTopLevelDeclarations().size());
+    assertEquals(3, DonorCorpus.getDonor(donor).getTopLevelDeclarations().size());
+  }
+
+  @Test
+  public void testChangedDonorIsParsedAgain() throws Exception {
+    final File donor = temporaryFolder.newFile("donor.frag");
+    FileUtils.writeStringToFile(donor, "#version 310 es\n"
+        + "void main() { }\n", StandardCharsets.UTF_8);
+    DonorCorpus.getDonor(donor);
+    final String newContents = "#version 310 es\n"
+        + "int x;\n"
+        + "void main() { x = 1; }\n";
+    FileUtils.writeStringToFile(donor, newContents, StandardCharsets.UTF_8);
+    // The new contents differ in length from the old, so the change is noticed even if the
+    // modification time has too coarse a granularity to reflect it.
+    CompareAsts.assertEqualAsts(newContents, DonorCorpus.getDonor(donor));
+  }
+
+  @Test
+  public void testLeastRecentlyUsedDonorsAreDiscarded() throws Exception {
+    DonorCorpus.clear();
+    final File first = temporaryFolder.newFile("donor_first.frag");
+    FileUtils.writeStringToFile(first, "#version 310 es\n"
+        + "void main() { }\n", StandardCharsets.UTF_8);
+    DonorCorpus.getDonor(first);
+    for (int i = 0; i < DonorCorpus.MAX_CACHED_DONORS * 2; i++) {
+      final File donor = temporaryFolder.newFile("donor_" + i + ".frag");
+      FileUtils.writeStringToFile(donor, "#version 310 es\n"
+          + "int x" + i + ";\n"
+          + "void main() { }\n", StandardCharsets.UTF_8);
+      DonorCorpus.getDonor(donor);
+      // Keep using the first donor, so that it is never the least recently used one.
+      DonorCorpus.getDonor(first);
+      assertTrue(DonorCorpus.getNumCachedDonors() <= DonorCorpus.MAX_CACHED_DONORS);
+    }
+    assertEquals(DonorCorpus.MAX_CACHED_DONORS, DonorCorpus.getNumCachedDonors());
+    assertTrue(DonorCorpus.isCached(first));
+    assertFalse(DonorCorpus.isCached(new File(temporaryFolder.getRoot(), "donor_0.frag")));
+  }
+
+}
@@ -33,6 +33,9 @@ public class JobGetter implements Disposable {
 
   private static final String REQUEST_PATH = "/request";
 
+  // How often to renew the worker's lease while it is running a job.
+  private static final long HEARTBEAT_INTERVAL_MS = 30 * 1000;
+
   private CloseableHttpClient httpClient;
   private TTransport transport;
   public FuzzerService.Iface fuzzerServiceProxy;
@@ -44,6 +47,9 @@ public class JobGetter implements Disposable {
   // Used to ensure mutual exclusion when replying to jobs.
   private Object replyMutex;
 
+  // When the server last heard from the worker about the latest job.
+  private long lastContactMs;
+
   public JobGetter(String url) throws TException {
     Gdx.app.log("JobGetter", "Creating JobGetter");
     httpClient = HttpClients.createDefault();
@@ -84,6 +90,7 @@ public class JobGetter implements Disposable {
     synchronized (replyMutex) {
       checkJobNotSet();
       latestJob = job;
+      lastContactMs = System.currentTimeMillis();
     }
 
     return job;
@@ -131,6 +138,33 @@ public class JobGetter implements Disposable {
 
   }
 
+  /**
+   * Renews the worker's lease if a job is being run and the server has not heard from the worker
+   * for a while, so that the server does not abandon a job that takes many frames.  Cheap enough
+   * to call on every frame.
+   */
+  public void heartbeatIfDue() {
+
+    synchronized (replyMutex) {
+
+      if (latestJob == null
+          || System.currentTimeMillis() - lastContactMs < HEARTBEAT_INTERVAL_MS) {
+        return;
+      }
+      lastContactMs = System.currentTimeMillis();
+
+      try {
+        fuzzerServiceProxy.heartbeat(worker);
+      } catch (TException exception) {
+        // Not fatal: the lease is only needed until the job is replied to, and a lost connection
+        // is noticed then.
+        Gdx.app.log("JobGetter", "heartbeat() failed: " + exception);
+      }
+
+    }
+
+  }
+
   @Override
   public void dispose() {
 
@@ -711,6 +711,10 @@ public class Main extends ApplicationAdapter {
       Gdx.gl.glViewport(0, 0, getWidth(), getHeight());
       checkForGlError();
 
+      if (jobGetter != null) {
+        jobGetter.heartbeatIfDue();
+      }
+
       boolean skipRender =
           (job != null && job.getImageJob() != null && job.getImageJob().isSkipRender());
 
@@ -24,6 +24,7 @@ from typing import Optional, List, Union
 
 import runspv
 import gfuzz_common
+import worker_heartbeat
 
 HERE = os.path.abspath(__file__)
 
@@ -574,23 +575,24 @@ def main():
             else:
                 assert job.imageJob is not None
 
-                if job.imageJob.computeSource:
-                    print("#### Compute job: " + job.imageJob.name)
-                    job.imageJob.result = do_compute_job(
-                        args,
-                        job.imageJob,
-                        spirvopt_args,
-                        work_dir=worker
-                    )
-
-                else:
-                    print("#### Image job: " + job.imageJob.name)
-                    job.imageJob.result = do_image_job(
-                        args,
-                        job.imageJob,
-                        spirvopt_args,
-                        work_dir=worker
-                    )
+                with worker_heartbeat.Heartbeat(server, worker):
+                    if job.imageJob.computeSource:
+                        print("#### Compute job: " + job.imageJob.name)
+                        job.imageJob.result = do_compute_job(
+                            args,
+                            job.imageJob,
+                            spirvopt_args,
+                            work_dir=worker
+                        )
+
+                    else:
+                        print("#### Image job: " + job.imageJob.name)
+                        job.imageJob.result = do_image_job(
+                            args,
+                            job.imageJob,
+                            spirvopt_args,
+                            work_dir=worker
+                        )
 
                 print("Send back, results status: {}".format(job.imageJob.result.status))
                 service.jobDone(worker, job)
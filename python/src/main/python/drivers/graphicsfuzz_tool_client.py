@@ -0,0 +1,150 @@
+#!/usr/bin/env python3
+
+# Copyright 2019 The GraphicsFuzz Project Authors
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#     https://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+
+import argparse
+import os
+import socket
+import struct
+import subprocess
+import sys
+import time
+
+HERE = os.path.abspath(__file__)
+
+sys.path.insert(0, os.path.dirname(os.path.dirname(HERE)))
+
+import cmd_helpers
+
+DEFAULT_PORT = 8667
+# The file, in the user's home directory, holding the token that the server requires.
+DEFAULT_TOKEN_FILE = ".graphicsfuzz-tool-server-token"
+
+FRAME_STDOUT = 1
+FRAME_STDERR = 2
+FRAME_EXIT = 3
+
+# The classes whose main methods run the tools that the server offers, for running them in a new
+# JVM instead.
+TOOL_CLASSES = {
+    "glsl-generate": "com.graphicsfuzz.generator.tool.GlslGenerate",
+    "glsl-reduce": "com.graphicsfuzz.reducer.tool.GlslReduce",
+    "glsl-reduce-batch": "com.graphicsfuzz.reducer.tool.GlslReduceBatch",
+    "prepare-reference": "com.graphicsfuzz.generator.tool.PrepareReference",
+    "generate": "com.graphicsfuzz.generator.tool.Generate",
+    "generate-shader-family": "com.graphicsfuzz.generator.tool.GenerateShaderFamily",
+    "mutate": "com.graphicsfuzz.generator.tool.Mutate",
+    "fragment2compute": "com.graphicsfuzz.generator.tool.Fragment2Compute",
+    "upgrade-shading-language-version":
+        "com.graphicsfuzz.common.util.UpgradeShadingLanguageVersion",
+}
+
+
+def read_exactly(sock, size):
+    result = b""
+    while len(result) < size:
+        chunk = sock.recv(size - len(result))
+        if not chunk:
+            raise EOFError("Server closed the connection before the tool finished")
+        result += chunk
+    return result
+
+
+def read_token(token_file):
+    with open(token_file, "r", encoding="utf-8") as f:
+        return f.read().strip()
+
+
+def run_on_server(port, token, tool, tool_args, stdout, stderr):
+    """Runs a tool in the tool server, copying its output to the given binary streams.
+
+    Returns the exit status of the tool."""
+    strings = [token, os.getcwd(), tool] + tool_args
+    request = struct.pack(">I", len(strings))
+    for string in strings:
+        encoded = string.encode("utf-8")
+        request += struct.pack(">I", len(encoded)) + encoded
+
+    with socket.create_connection(("localhost", port)) as sock:
+        sock.sendall(request)
+        while True:
+            kind = read_exactly(sock, 1)[0]
+            if kind == FRAME_EXIT:
+                return struct.unpack(">i", read_exactly(sock, 4))[0]
+            length = struct.unpack(">I", read_exactly(sock, 4))[0]
+            data = read_exactly(sock, length)
+            stream = stdout if kind == FRAME_STDOUT else stderr
+            stream.write(data)
+            stream.flush()
+
+
+def run_in_new_jvm(tool, tool_args, stdout, stderr):
+    cmd = ["java", "-ea", "-cp", cmd_helpers.get_tool_path(), TOOL_CLASSES[tool]] + tool_args
+    proc = subprocess.Popen(cmd, stdout=stdout, stderr=stderr)
+    proc.communicate()
+    return proc.returncode
+
+
+def benchmark(port, token, tool, tool_args, runs):
+    """Runs a tool repeatedly, in the tool server and in new JVMs, and reports how long it took."""
+    if tool not in TOOL_CLASSES:
+        raise ValueError("Unknown tool: " + tool)
+
+    with open(os.devnull, "wb") as devnull:
+        results = []
+        for name, run in [
+            ("server", lambda: run_on_server(port, token, tool, tool_args, devnull, devnull)),
+            ("new JVM", lambda: run_in_new_jvm(tool, tool_args, devnull, devnull)),
+        ]:
+            start_time = time.monotonic()
+            failures = 0
+            for _ in range(runs):
+                if run() != 0:
+                    failures += 1
+            elapsed = time.monotonic() - start_time
+            results.append(elapsed)
+            print("%-8s %8.1f ms/run %8.2f runs/s (%d of %d runs failed)"
+                  % (name, 1000.0 * elapsed / runs, runs / elapsed, failures, runs))
+    print("speedup: %.1fx" % (results[1] / results[0]))
+    return 0
+
+
+def main_helper(argv):
+    parser = argparse.ArgumentParser(
+        description="Run a tool in the tool server, started with: java -ea -cp tool-1.0.jar "
+                    "com.graphicsfuzz.tool.ToolServer")
+    parser.add_argument("--port", type=int, default=DEFAULT_PORT,
+                        help="Port on which the tool server is listening.")
+    parser.add_argument("--token-file",
+                        default=os.path.join(os.path.expanduser("~"), DEFAULT_TOKEN_FILE),
+                        help="File holding the token that the tool server requires, as given to "
+                             "the server.")
+    parser.add_argument("--benchmark", type=int, metavar="RUNS",
+                        help="Instead of running the tool once, run it RUNS times in the server "
+                             "and RUNS times in new JVMs, and report the times taken; the tool "
+                             "should write its output to the same place each time.")
+    parser.add_argument("tool", help="Tool to run, one of: " + ", ".join(TOOL_CLASSES.keys()))
+    parser.add_argument("tool_args", nargs=argparse.REMAINDER, help="Arguments of the tool.")
+    args = parser.parse_args(argv)
+
+    token = read_token(args.token_file)
+    if args.benchmark is not None:
+        return benchmark(args.port, token, args.tool, args.tool_args, args.benchmark)
+    return run_on_server(args.port, token, args.tool, args.tool_args, sys.stdout.buffer,
+                         sys.stderr.buffer)
+
+
+if __name__ == "__main__":
+    sys.exit(main_helper(sys.argv[1:]))
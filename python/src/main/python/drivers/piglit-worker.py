@@ -25,6 +25,7 @@ from typing import List
 
 import gfuzz_common
 import graphicsfuzz_piglit_converter
+import worker_heartbeat
 
 HERE = os.path.abspath(__file__)
 
@@ -397,7 +398,8 @@ def main():
                     job.imageJob.result.status = tt.JobStatus.UNEXPECTED_ERROR
                 else:
                     gfuzz_common.log("#### Image job: " + job.imageJob.name)
-                    job.imageJob.result = do_image_job(job.imageJob, work_dir=worker)
+                    with worker_heartbeat.Heartbeat(server, worker):
+                        job.imageJob.result = do_image_job(job.imageJob, work_dir=worker)
                 gfuzz_common.log("Sending back, results status: {}"
                                  .format(job.imageJob.result.status))
                 service.jobDone(worker, job)
@@ -0,0 +1,77 @@
+#!/usr/bin/env python3
+
+# Copyright 2019 The GraphicsFuzz Project Authors
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#     https://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+
+import os
+import sys
+import threading
+
+HERE = os.path.abspath(__file__)
+
+# Add directory above to Python path for access to dependencies.
+# Prepend it so we override any globally installed dependencies.
+sys.path.insert(0, os.path.dirname(os.path.dirname(HERE)))
+
+# noinspection PyPep8
+from fuzzer_service import FuzzerService
+# noinspection PyPep8
+from thrift.transport import THttpClient, TTransport
+# noinspection PyPep8
+from thrift.Thrift import TException
+# noinspection PyPep8
+from thrift.protocol import TBinaryProtocol
+
+# Seconds between heartbeats; well below the server's default lease timeout of five minutes.
+HEARTBEAT_INTERVAL = 30
+
+
+class Heartbeat:
+    """
+    Renews a worker's lease on the server while the worker runs a job, so that the server does not
+    abandon long jobs.  Use as a context manager around running the job.  The heartbeats are sent
+    from a background thread over a connection of their own, as Thrift clients are not thread-safe.
+    """
+
+    def __init__(self, server: str, worker: str, interval: float = HEARTBEAT_INTERVAL):
+        self.server = server
+        self.worker = worker
+        self.interval = interval
+        self.stopped = threading.Event()
+        self.thread = threading.Thread(target=self._run, daemon=True)
+
+    def __enter__(self):
+        self.thread.start()
+        return self
+
+    def __exit__(self, exc_type, exc_value, traceback):
+        self.stopped.set()
+        self.thread.join()
+
+    def _run(self):
+        transport = None
+        service = None
+        while not self.stopped.wait(self.interval):
+            try:
+                if transport is None:
+                    transport = TTransport.TBufferedTransport(THttpClient.THttpClient(self.server))
+                    service = FuzzerService.Client(TBinaryProtocol.TBinaryProtocol(transport))
+                    transport.open()
+                service.heartbeat(self.worker)
+            except (TException, OSError):
+                # If the server has gone away, the worker's main loop finds out when it replies;
+                # keep trying until then.
+                transport = None
+        if transport is not None:
+            transport.close()
@@ -21,12 +21,18 @@ import java.io.File;
 public interface IFileJudge {
 
   /**
+   * Judging a shader job may be abandoned by interrupting the calling thread, e.g. because it has
+   * taken too long.  An implementation should then stop promptly, killing any process it has
+   * started and giving up any device it is waiting for, and throw a FileJudgeException.
+   *
    * @param shaderJobFile          The shader job file that will be tested.
    * @param shaderResultFileOutput Optional file where the result will be *written* in order to
    *                               determine if the shaderJobFile is interesting. Of course, the
    *                               result may not be written, as the isInteresting test may not
    *                               require running the shader at all; e.g., if isInteresting just
    *                               requires a shader to be valid according to glslangValidator.
+   * @throws FileJudgeException if the shader job could not be judged, including if judging was
+   *                            interrupted.
    */
   boolean isInteresting(
       File shaderJobFile,
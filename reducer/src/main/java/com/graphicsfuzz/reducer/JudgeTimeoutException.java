@@ -0,0 +1,29 @@
+/*
+ * Copyright 2019 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.reducer;
+
+/**
+ * Thrown by a judge that gave up on a shader job because judging it took too long.  The shader
+ * job should be treated as not interesting for now, but the verdict should not be remembered, as
+ * judging it again might well succeed.
+ */
+public class JudgeTimeoutException extends FileJudgeException {
+
+  public JudgeTimeoutException(String message) {
+    super(message);
+  }
+}
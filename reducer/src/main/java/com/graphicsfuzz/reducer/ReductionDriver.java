@@ -22,9 +22,13 @@ import com.graphicsfuzz.common.util.AddInitializers;
 import com.graphicsfuzz.common.util.GloballyTruncateLoops;
 import com.graphicsfuzz.common.util.MakeArrayAccessesInBounds;
 import com.graphicsfuzz.common.util.PipelineUniformValueSupplier;
+import com.graphicsfuzz.common.util.ReductionProgressHelper;
 import com.graphicsfuzz.common.util.ShaderJobFileOperations;
+import com.graphicsfuzz.reducer.glslreducers.HierarchicalReductionPass;
+import com.graphicsfuzz.reducer.glslreducers.HierarchicalReductionPassManager;
 import com.graphicsfuzz.reducer.glslreducers.IReductionPass;
 import com.graphicsfuzz.reducer.glslreducers.IReductionPassManager;
+import com.graphicsfuzz.reducer.glslreducers.PassManagerKind;
 import com.graphicsfuzz.reducer.glslreducers.SystematicReductionPass;
 import com.graphicsfuzz.reducer.glslreducers.SystematicReductionPassManager;
 import com.graphicsfuzz.reducer.reductionopportunities.IReductionOpportunity;
@@ -69,6 +73,9 @@ public class ReductionDriver {
 
   private int failHashCacheHits;
 
+  // Whether the judge gave up on the shader job most recently judged because it took too long.
+  private boolean lastJudgementTimedOut;
+
   private final IReductionPassManager passManager;
 
   public ReductionDriver(ReducerContext context,
@@ -90,6 +97,22 @@ public class ReductionDriver {
                          IFileJudge judge,
                          File workDir,
                          boolean literalsToUniforms) {
+    this(context,
+        verbose,
+        fileOps,
+        judge,
+        workDir,
+        literalsToUniforms,
+        PassManagerKind.SYSTEMATIC);
+  }
+
+  public ReductionDriver(ReducerContext context,
+                         boolean verbose,
+                         ShaderJobFileOperations fileOps,
+                         IFileJudge judge,
+                         File workDir,
+                         boolean literalsToUniforms,
+                         PassManagerKind passManagerKind) {
     this.context = context;
     this.fileOps = fileOps;
     this.judge = judge;
@@ -97,9 +120,12 @@ public class ReductionDriver {
     this.failHashCache = new HashSet<>();
     this.passHashCache = new HashSet<>();
     this.failHashCacheHits = 0;
+    this.lastJudgementTimedOut = false;
 
     if (literalsToUniforms) {
       this.passManager = ReductionDriver.getLiteralsToUniformsPassManager(context, verbose);
+    } else if (passManagerKind == PassManagerKind.HIERARCHICAL) {
+      this.passManager = ReductionDriver.getHierarchicalPassManager(context, verbose);
     } else {
       this.passManager = ReductionDriver.getDefaultPassManager(context, verbose);
     }
@@ -168,6 +194,52 @@ public class ReductionDriver {
     return new SystematicReductionPassManager(initialPasses, corePasses, cleanupPasses);
   }
 
+  private static IReductionPassManager getHierarchicalPassManager(
+      ReducerContext context,
+      boolean verbose) {
+    final List<IReductionPass> passes = new ArrayList<>();
+    for (IReductionOpportunityFinder<? extends IReductionOpportunity> finder : Arrays.asList(
+        // Functions and other top-level declarations.
+        IReductionOpportunityFinder.functionFinder(),
+        IReductionOpportunityFinder.globalVariablesDeclarationFinder(),
+        IReductionOpportunityFinder.interfaceBlockFinder(),
+        // Blocks, and the control flow around them.
+        IReductionOpportunityFinder.unswitchifyFinder(),
+        IReductionOpportunityFinder.switchToLoopFinder(),
+        IReductionOpportunityFinder.loopMergeFinder(),
+        IReductionOpportunityFinder.flattenControlFlowFinder(),
+        IReductionOpportunityFinder.outlinedStatementFinder(),
+        IReductionOpportunityFinder.unwrapFinder(),
+        // Statements.
+        IReductionOpportunityFinder.stmtFinder(),
+        IReductionOpportunityFinder.liveFragColorWriteFinder(),
+        IReductionOpportunityFinder.variableDeclFinder(),
+        // Expressions.
+        IReductionOpportunityFinder.vectorizationFinder(),
+        IReductionOpportunityFinder.exprToConstantFinder(),
+        IReductionOpportunityFinder.compoundExprToSubExprFinder(),
+        IReductionOpportunityFinder.mutationFinder(),
+        IReductionOpportunityFinder.removeStructFieldFinder(),
+        IReductionOpportunityFinder.destructifyFinder(),
+        IReductionOpportunityFinder.inlineStructFieldFinder(),
+        // Cleanup.
+        IReductionOpportunityFinder.inlineUniformFinder(),
+        IReductionOpportunityFinder.inlineInitializerFinder(),
+        IReductionOpportunityFinder.inlineFunctionFinder(),
+        IReductionOpportunityFinder.unusedParamFinder(),
+        IReductionOpportunityFinder.foldConstantFinder(),
+        IReductionOpportunityFinder.redundantUniformMetadataFinder(),
+        IReductionOpportunityFinder.variableDeclToExprFinder(),
+        IReductionOpportunityFinder.globalVariableDeclToExprFinder(),
+        IReductionOpportunityFinder.globalPrecisionDeclarationFinder(),
+        IReductionOpportunityFinder.removeSwizzleFinder(),
+        IReductionOpportunityFinder.shortenSwizzleFinder(),
+        IReductionOpportunityFinder.simplifySwizzleFinder())) {
+      passes.add(new HierarchicalReductionPass(context, verbose, finder));
+    }
+    return new HierarchicalReductionPassManager(passes);
+  }
+
   private static IReductionPassManager getLiteralsToUniformsPassManager(
       ReducerContext context,
       boolean verbose) {
@@ -188,20 +260,36 @@ public class ReductionDriver {
         int fileCountOffset, // Used when continuing a reduction - added on to the number associated
         // with each reduction step during the current reduction.
         int stepLimit) throws IOException {
+    return doReduction(initialState, shaderJobShortName, fileCountOffset, stepLimit, 0);
+  }
 
-    // This is used for Vulkan compatibility.
-    // TODO(https://github.com/google/graphicsfuzz/issues/1046): The check for zero uniforms is a
-    //  workaround for the fact that we don't have a way to infer what the right thing to do is
-    //  when there are no uniforms.  As per the issue, we should really have a --vulkan option that
-    //  instructs the reducer as to whether we want Vulkan-style uniform blocks.
-    final boolean requiresUniformBindings =
-        initialState.getPipelineInfo().getNumUniforms() == 0 || initialState.hasUniformBindings();
+  /**
+   * Reduces a shader job, stopping early if a step limit or time budget is reached.  When stopped
+   * early, the best state reached so far is the result, and a
+   * {@link Constants#REDUCTION_INCOMPLETE} file is written.
+   * @param initialState The shader job to reduce.
+   * @param shaderJobShortName The short name of the shader job.
+   * @param fileCountOffset Used when continuing a reduction - added on to the number associated
+   *                        with each reduction step during the current reduction.
+   * @param stepLimit The maximum number of steps, or -1 for no limit.
+   * @param timeBudgetMillis The time after which no further steps are started, or 0 for no
+   *                         limit.  A step that is under way is allowed to finish, so judges
+   *                         should be given deadlines of their own.
+   * @return The prefix of the files for the final result of the reduction, or null if the shader
+   *         job was not interesting to start with.
+   * @throws IOException on failure to write files.
+   */
+  public String doReduction(
+        ShaderJob initialState,
+        String shaderJobShortName,
+        int fileCountOffset,
+        int stepLimit,
+        long timeBudgetMillis) throws IOException {
+
+    final long startMillis = System.currentTimeMillis();
+    final boolean requiresUniformBindings = requiresUniformBindings(initialState);
     final Optional<String> pushConstant = initialState.getPushConstant();
-    if (initialState.hasUniformBindings()) {
-      // We eliminate uniform bindings while applying reduction steps, and re-introduce them
-      // each time we emit shaders.
-      initialState.removeUniformBindings();
-    }
+    removeUniformBindings(initialState);
 
     try {
       if (fileCountOffset > 0) {
@@ -279,82 +367,261 @@ public class ReductionDriver {
 
       }
 
-      ShaderJob currentState = initialState;
-
-      int stepCount = 0;
-      boolean stoppedEarly = false;
+      Optional<ReductionJournal> journal = Optional.empty();
+      if (fileCountOffset > 0) {
+        LOGGER.info("Not journaling the reduction, as it does not continue from a journal.");
+      } else {
+        journal = Optional.of(new ReductionJournal(
+            ReductionJournal.getJournalFile(workDir, shaderJobShortName)));
+        journal.get().start(new ReductionJournal.Header(addGlobalLoopLimiters,
+            makeArrayAccessesInBounds, addInitializers));
+        writeState(initialState,
+            ReductionJournal.getInitialShaderJobFile(workDir, shaderJobShortName),
+            requiresUniformBindings, pushConstant, false, false, false);
+      }
 
-      while (true) {
-        LOGGER.info("Trying reduction attempt " + stepCount + " (" + numSuccessfulReductions
-            + " successful so far).");
-        final Optional<ShaderJob> maybeNewState = passManager.applyReduction(currentState);
-        if (!maybeNewState.isPresent()) {
-          LOGGER.info("No more to reduce; stopping.");
-          break;
-        }
-        final ShaderJob newState = maybeNewState.get();
-        stepCount++;
-        final int currentReductionAttempt = stepCount + fileCountOffset;
-        String currentShaderJobShortName =
-            getReductionStepShaderJobShortName(
-                shaderJobShortName,
-                currentReductionAttempt);
-        final boolean interesting = isInterestingWithCache(newState,
-            requiresUniformBindings,
-            pushConstant,
-            addGlobalLoopLimiters,
-            makeArrayAccessesInBounds,
-            addInitializers,
-            currentShaderJobShortName);
-        passManager.notifyInteresting(interesting);
-        final String currentStepShaderJobShortNameWithOutcome =
-            getReductionStepShaderJobShortName(
-                shaderJobShortName,
-                currentReductionAttempt,
-                Optional.of(interesting ? "success" : "fail"));
-        fileOps.moveShaderJobFileTo(
-            new File(workDir, currentShaderJobShortName + ".json"),
-            new File(workDir, currentStepShaderJobShortNameWithOutcome + ".json"),
-            true
-        );
-        if (interesting) {
-          LOGGER.info("Successful reduction.");
-          numSuccessfulReductions++;
-          currentState = newState;
-        } else {
-          LOGGER.info("Failed reduction.");
-        }
+      return reduce(initialState, shaderJobShortName, fileCountOffset,
+          new ReductionProgress(
+              ReductionProgressHelper.getReductionProgressFile(workDir, shaderJobShortName),
+              startMillis, stepLimit, timeBudgetMillis),
+          stepLimit, startMillis, timeBudgetMillis, requiresUniformBindings, pushConstant,
+          addGlobalLoopLimiters, makeArrayAccessesInBounds, addInitializers, journal);
+    } catch (FileNotFoundException | FileJudgeException exception) {
+      throw new RuntimeException(exception);
+    }
+  }
 
-        if (stepLimit > -1 && stepCount >= stepLimit) {
-          LOGGER.info("Stopping reduction due to hitting step limit {}.", stepLimit);
-          stoppedEarly = true;
-          break;
-        }
+  /**
+   * Continues a reduction from its journal.  The state it had reached, the choices it made at the
+   * start, and which shader jobs turned out to be interesting or not are all recovered from the
+   * journal, without running the interestingness test.
+   * @param initialState The shader job that the reduction started from, as kept alongside the
+   *                     journal.
+   * @param shaderJobShortName The short name of the shader job, as passed to doReduction.
+   * @param stepLimit The maximum number of further steps, or -1 for no limit.
+   * @param timeBudgetMillis The time after which no further steps are started, or 0 for no
+   *                         limit.
+   * @return The prefix of the files for the final result of the reduction.
+   * @throws IOException on failure to read the journal or to write files.
+   */
+  public String resumeReduction(
+        ShaderJob initialState,
+        String shaderJobShortName,
+        int stepLimit,
+        long timeBudgetMillis) throws IOException {
+    final long startMillis = System.currentTimeMillis();
+    final boolean requiresUniformBindings = requiresUniformBindings(initialState);
+    final Optional<String> pushConstant = initialState.getPushConstant();
+    removeUniformBindings(initialState);
+
+    final ReductionJournal journal =
+        new ReductionJournal(ReductionJournal.getJournalFile(workDir, shaderJobShortName));
+    final ReductionJournal.Header header = journal.readHeader();
+    final List<ReductionJournal.Step> steps = journal.readSteps();
+    LOGGER.info("Continuing reduction for {} from step {} of its journal.", shaderJobShortName,
+        steps.size());
+    final ShaderJob currentState = ReductionJournal.replay(initialState, steps, Integer.MAX_VALUE,
+        passManager.getPasses(), context.getIdGenerator());
+    for (ReductionJournal.Step step : steps) {
+      if (step.isInteresting()) {
+        passHashCache.add(step.getHash());
+        numSuccessfulReductions++;
+      } else if (!step.isTimedOut()) {
+        failHashCache.add(step.getHash());
       }
+    }
+    final int fileCountOffset = steps.isEmpty() ? 0 : steps.get(steps.size() - 1).getStep();
+    try {
+      return reduce(currentState, shaderJobShortName, fileCountOffset,
+          new ReductionProgress(
+              ReductionProgressHelper.getReductionProgressFile(workDir, shaderJobShortName),
+              startMillis, stepLimit, timeBudgetMillis),
+          stepLimit, startMillis, timeBudgetMillis, requiresUniformBindings, pushConstant,
+          header.addGlobalLoopLimiters, header.makeArrayAccessesInBounds, header.addInitializers,
+          Optional.of(journal));
+    } catch (FileNotFoundException | FileJudgeException exception) {
+      throw new RuntimeException(exception);
+    }
+  }
 
-      ShaderJob finalState = finaliseReduction(currentState);
-
-      String finalOutputFilePrefix = shaderJobShortName + "_reduced_final";
+  /**
+   * Reconstructs, from its journal, the state that a reduction reached after a given step, and
+   * writes it out as it was given to the interestingness test.  The interestingness test is not
+   * run.
+   * @param initialState The shader job that the reduction started from, as kept alongside the
+   *                     journal.
+   * @param shaderJobShortName The short name of the shader job, as passed to doReduction.
+   * @param lastStep The step after which the state is wanted; -1 for the last step.
+   * @param outputShaderJobFile The shader job file to write the state to.
+   * @throws IOException on failure to read the journal or to write the state.
+   */
+  public void replay(
+        ShaderJob initialState,
+        String shaderJobShortName,
+        int lastStep,
+        File outputShaderJobFile) throws IOException {
+    final boolean requiresUniformBindings = requiresUniformBindings(initialState);
+    final Optional<String> pushConstant = initialState.getPushConstant();
+    removeUniformBindings(initialState);
+
+    final ReductionJournal journal =
+        new ReductionJournal(ReductionJournal.getJournalFile(workDir, shaderJobShortName));
+    final ReductionJournal.Header header = journal.readHeader();
+    final List<ReductionJournal.Step> steps = journal.readSteps();
+    final int stepToReach = lastStep < 0 ? Integer.MAX_VALUE : lastStep;
+    final ShaderJob state = ReductionJournal.replay(initialState, steps, stepToReach,
+        passManager.getPasses(), context.getIdGenerator());
+
+    // Check that the passes still behave as they did when the journal was written.
+    final Optional<String> expectedHash = steps
+        .stream()
+        .filter(item -> item.getStep() <= stepToReach && item.isInteresting())
+        .reduce((first, second) -> second)
+        .map(ReductionJournal.Step::getHash);
+    if (expectedHash.isPresent()
+        && !expectedHash.get().equals(getCacheHash(state, outputShaderJobFile))) {
+      LOGGER.warn("The replayed state differs from the one recorded in the journal; the reducer "
+          + "may have changed since the journal was written.");
+    }
+    writeState(state, outputShaderJobFile, requiresUniformBindings, pushConstant,
+        header.addGlobalLoopLimiters, header.makeArrayAccessesInBounds, header.addInitializers);
+  }
 
-      if (!isInterestingNoCache(finalState, requiresUniformBindings, pushConstant,
-          addGlobalLoopLimiters, makeArrayAccessesInBounds, addInitializers,
-          finalOutputFilePrefix)) {
-        LOGGER.info(
-            "Failed to simplify final reduction state! Reverting to the non-simplified state.");
-        writeState(currentState, new File(workDir, finalOutputFilePrefix + ".json"),
-            requiresUniformBindings, pushConstant, addGlobalLoopLimiters, makeArrayAccessesInBounds,
-            addInitializers);
+  private String reduce(ShaderJob initialState,
+                        String shaderJobShortName,
+                        int fileCountOffset,
+                        ReductionProgress progress,
+                        int stepLimit,
+                        long startMillis,
+                        long timeBudgetMillis,
+                        boolean requiresUniformBindings,
+                        Optional<String> pushConstant,
+                        boolean addGlobalLoopLimiters,
+                        boolean makeArrayAccessesInBounds,
+                        boolean addInitializers,
+                        Optional<ReductionJournal> journal)
+      throws IOException, FileJudgeException {
+    ShaderJob currentState = initialState;
+
+    int stepCount = 0;
+    final int numSuccessfulReductionsAtStart = numSuccessfulReductions;
+    ReductionProgress.State outcome = ReductionProgress.State.FINISHED;
+    progress.update(ReductionProgress.State.REDUCING, 0, 0,
+        passManager.getCurrentPass().getName());
+
+    while (true) {
+      if (timeBudgetMillis > 0 && System.currentTimeMillis() - startMillis >= timeBudgetMillis) {
+        LOGGER.info("Stopping reduction due to using up time budget of {} ms.", timeBudgetMillis);
+        outcome = ReductionProgress.State.STOPPED_AT_TIME_BUDGET;
+        break;
+      }
+      LOGGER.info("Trying reduction attempt " + stepCount + " (" + numSuccessfulReductions
+          + " successful so far).");
+      final int nextFreeId = context.getIdGenerator().getNextFreeId();
+      final Optional<ShaderJob> maybeNewState = passManager.applyReduction(currentState);
+      if (!maybeNewState.isPresent()) {
+        LOGGER.info("No more to reduce; stopping.");
+        break;
       }
+      final ShaderJob newState = maybeNewState.get();
+      stepCount++;
+      final int currentReductionAttempt = stepCount + fileCountOffset;
+      String currentShaderJobShortName =
+          getReductionStepShaderJobShortName(
+              shaderJobShortName,
+              currentReductionAttempt);
+      final String hash = getCacheHash(newState,
+          new File(workDir, currentShaderJobShortName + ".json"));
+      final boolean interesting = isInterestingWithCache(newState,
+          hash,
+          requiresUniformBindings,
+          pushConstant,
+          addGlobalLoopLimiters,
+          makeArrayAccessesInBounds,
+          addInitializers,
+          currentShaderJobShortName);
+      if (journal.isPresent()) {
+        final IReductionPass pass = passManager.getCurrentPass();
+        journal.get().record(new ReductionJournal.Step(currentReductionAttempt, pass.getName(),
+            passManager.getPasses().indexOf(pass), pass.getLastAppliedOpportunities().orElse(null),
+            nextFreeId, interesting, lastJudgementTimedOut, hash));
+      }
+      passManager.notifyInteresting(interesting);
+      final String currentStepShaderJobShortNameWithOutcome =
+          getReductionStepShaderJobShortName(
+              shaderJobShortName,
+              currentReductionAttempt,
+              Optional.of(interesting ? "success" : "fail"));
+      fileOps.moveShaderJobFileTo(
+          new File(workDir, currentShaderJobShortName + ".json"),
+          new File(workDir, currentStepShaderJobShortNameWithOutcome + ".json"),
+          true
+      );
+      if (interesting) {
+        LOGGER.info("Successful reduction.");
+        numSuccessfulReductions++;
+        currentState = newState;
+      } else {
+        LOGGER.info("Failed reduction.");
+      }
+
+      progress.update(ReductionProgress.State.REDUCING, stepCount,
+          numSuccessfulReductions - numSuccessfulReductionsAtStart,
+          passManager.getCurrentPass().getName());
 
-      if (stoppedEarly) {
-        // Place a marker file to indicate that the reduction was not complete.
-        fileOps.createFile(new File(workDir, Constants.REDUCTION_INCOMPLETE));
+      if (stepLimit > -1 && stepCount >= stepLimit) {
+        LOGGER.info("Stopping reduction due to hitting step limit {}.", stepLimit);
+        outcome = ReductionProgress.State.STOPPED_AT_STEP_LIMIT;
+        break;
       }
+    }
 
-      LOGGER.info("Total fail hash cache hits: " + failHashCacheHits);
-      return finalOutputFilePrefix;
-    } catch (FileNotFoundException | FileJudgeException exception) {
-      throw new RuntimeException(exception);
+    String finalOutputFilePrefix = shaderJobShortName + "_reduced_final";
+
+    if (outcome == ReductionProgress.State.STOPPED_AT_TIME_BUDGET) {
+      // There is no time to check that a simplified state is still interesting, so the result is
+      // the state known to be interesting.
+      writeState(currentState, new File(workDir, finalOutputFilePrefix + ".json"),
+          requiresUniformBindings, pushConstant, addGlobalLoopLimiters, makeArrayAccessesInBounds,
+          addInitializers);
+    } else if (!isInterestingNoCache(finaliseReduction(currentState), requiresUniformBindings,
+        pushConstant, addGlobalLoopLimiters, makeArrayAccessesInBounds, addInitializers,
+        finalOutputFilePrefix)) {
+      LOGGER.info(
+          "Failed to simplify final reduction state! Reverting to the non-simplified state.");
+      writeState(currentState, new File(workDir, finalOutputFilePrefix + ".json"),
+          requiresUniformBindings, pushConstant, addGlobalLoopLimiters, makeArrayAccessesInBounds,
+          addInitializers);
+    }
+
+    progress.update(outcome, stepCount,
+        numSuccessfulReductions - numSuccessfulReductionsAtStart,
+        passManager.getCurrentPass().getName());
+
+    if (outcome != ReductionProgress.State.FINISHED) {
+      // Place a marker file to indicate that the reduction was not complete.
+      fileOps.createFile(new File(workDir, Constants.REDUCTION_INCOMPLETE));
+    }
+
+    LOGGER.info("Total fail hash cache hits: " + failHashCacheHits);
+    return finalOutputFilePrefix;
+  }
+
+  private static boolean requiresUniformBindings(ShaderJob initialState) {
+    // This is used for Vulkan compatibility.
+    // TODO(https://github.com/google/graphicsfuzz/issues/1046): The check for zero uniforms is a
+    //  workaround for the fact that we don't have a way to infer what the right thing to do is
+    //  when there are no uniforms.  As per the issue, we should really have a --vulkan option that
+    //  instructs the reducer as to whether we want Vulkan-style uniform blocks.
+    return initialState.getPipelineInfo().getNumUniforms() == 0
+        || initialState.hasUniformBindings();
+  }
+
+  private static void removeUniformBindings(ShaderJob initialState) {
+    if (initialState.hasUniformBindings()) {
+      // We eliminate uniform bindings while applying reduction steps, and re-introduce them
+      // each time we emit shaders.
+      initialState.removeUniformBindings();
     }
   }
 
@@ -365,20 +632,13 @@ public class ReductionDriver {
                                 boolean makeArrayAccessesInBounds,
                                 boolean addInitializers,
                                 String shaderJobShortName,
-                                boolean useCache) throws IOException, FileJudgeException {
+                                Optional<String> cacheHash)
+      throws IOException, FileJudgeException {
 
     final File shaderJobFile = new File(workDir, shaderJobShortName + ".json");
-    String hash = null;
-    if (useCache) {
+    if (cacheHash.isPresent()) {
       // The cache is enabled, so first check for a cache hit.
-
-      // Write the state out to a shader job file, without doing any post-processing
-      // transformations.  This is because two different shader jobs might get post-processed to the
-      // same thing, and we want to avoid treating this as a reduction loop (and we *do* want to
-      // guard against reduction loops).
-      writeState(state, shaderJobFile, false, Optional.empty(), false, false, false);
-
-      hash = fileOps.getShaderJobFileHash(shaderJobFile);
+      final String hash = cacheHash.get();
       if (failHashCache.contains(hash)) {
         LOGGER.info(
             "Fail hash cache hit.");
@@ -390,26 +650,42 @@ public class ReductionDriver {
       }
     }
 
-    // If we used the cache, we will have already written the shader job out, but without any post-
-    // processing; we overwrite it now with any relevant post-processing.
+    // If we used the cache, the shader job will have already been written out, but without any
+    // post-processing; we overwrite it now with any relevant post-processing.
     writeState(state, shaderJobFile, requiresUniformBindings, pushConstant, addGlobalLoopLimiters,
         makeArrayAccessesInBounds, addInitializers);
 
-    if (judge.isInteresting(
-        shaderJobFile,
-        new File(workDir, shaderJobShortName + ".info.json"))) {
-      if (useCache) {
-        passHashCache.add(hash);
-      }
-      return true;
+    lastJudgementTimedOut = false;
+    final boolean interesting;
+    try {
+      interesting = judge.isInteresting(
+          shaderJobFile,
+          new File(workDir, shaderJobShortName + ".info.json"));
+    } catch (JudgeTimeoutException exception) {
+      // Not interesting for now, but the verdict is not cached, as it is not a real one.
+      LOGGER.info(exception.getMessage() + "  Not interesting.");
+      lastJudgementTimedOut = true;
+      return false;
     }
-    if (useCache) {
-      failHashCache.add(hash);
+    if (interesting) {
+      cacheHash.ifPresent(passHashCache::add);
+      return true;
     }
+    cacheHash.ifPresent(failHashCache::add);
     return false;
   }
 
+  // Writes the state out to a shader job file, without doing any post-processing transformations,
+  // and returns the hash by which the state is known to the caches.  Post-processing is avoided
+  // because two different shader jobs might get post-processed to the same thing, and we want to
+  // avoid treating this as a reduction loop (and we *do* want to guard against reduction loops).
+  private String getCacheHash(ShaderJob state, File shaderJobFile) throws IOException {
+    writeState(state, shaderJobFile, false, Optional.empty(), false, false, false);
+    return fileOps.getShaderJobFileHash(shaderJobFile);
+  }
+
   private boolean isInterestingWithCache(ShaderJob state,
+                                String cacheHash,
                                 boolean requiresUniformBindings,
                                 Optional<String> pushConstant,
                                 boolean addGlobalLoopLimiters,
@@ -418,7 +694,7 @@ public class ReductionDriver {
                                 String shaderJobShortName) throws IOException, FileJudgeException {
 
     return isInteresting(state, requiresUniformBindings, pushConstant, addGlobalLoopLimiters,
-        makeArrayAccessesInBounds, addInitializers, shaderJobShortName, true);
+        makeArrayAccessesInBounds, addInitializers, shaderJobShortName, Optional.of(cacheHash));
   }
 
   private boolean isInterestingNoCache(ShaderJob state,
@@ -429,7 +705,7 @@ public class ReductionDriver {
                                 boolean addInitializers,
                                 String shaderJobShortName) throws IOException, FileJudgeException {
     return isInteresting(state, requiresUniformBindings, pushConstant, addGlobalLoopLimiters,
-        makeArrayAccessesInBounds, addInitializers, shaderJobShortName, false);
+        makeArrayAccessesInBounds, addInitializers, shaderJobShortName, Optional.empty());
   }
 
   private void writeState(ShaderJob state, File shaderJobFileOutput,
@@ -0,0 +1,261 @@
+/*
+ * Copyright 2019 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.reducer;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.graphicsfuzz.common.transformreduce.ShaderJob;
+import com.graphicsfuzz.common.util.IdGenerator;
+import com.graphicsfuzz.reducer.glslreducers.IReductionPass;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A journal of the steps of a reduction, from which any state that the reduction reached can be
+ * reconstructed in-process, without running the interestingness test or reading step files.
+ *
+ * <p>The journal is a text file in the reduction's working directory with one JSON object per
+ * line.  The first line is a {@link Header}, recording the choices the reduction made before its
+ * first step; each further line is a {@link Step}, appended as soon as the step has been judged,
+ * so that the journal survives the reduction being interrupted.  The shader job that the
+ * reduction started from is kept alongside the journal; see
+ * {@link #getInitialShaderJobFile(File, String)}.</p>
+ *
+ * <p>A step records which opportunities of which pass were applied, so that replaying the
+ * interesting steps in order from the original shader job yields the same states, provided that
+ * the passes find opportunities in the same way as when the journal was written.  A pass is
+ * identified by its position among the passes of the pass manager, as distinct passes can share a
+ * name; the name is recorded too, as a check.</p>
+ */
+public class ReductionJournal {
+
+  private static final Gson GSON = new Gson();
+
+  /**
+   * Choices made at the start of a reduction.
+   */
+  public static class Header {
+    boolean addGlobalLoopLimiters;
+    boolean makeArrayAccessesInBounds;
+    boolean addInitializers;
+
+    Header(boolean addGlobalLoopLimiters, boolean makeArrayAccessesInBounds,
+           boolean addInitializers) {
+      this.addGlobalLoopLimiters = addGlobalLoopLimiters;
+      this.makeArrayAccessesInBounds = makeArrayAccessesInBounds;
+      this.addInitializers = addInitializers;
+    }
+  }
+
+  /**
+   * A reduction step.
+   */
+  public static class Step {
+    // The number of the step, as used in the names of step files.
+    int step;
+    // The name of the pass that took the step.
+    String pass;
+    // The position of the pass that took the step among the passes of the pass manager.
+    int passIndex;
+    // Indices of the opportunities applied, in order; null if the pass could not say.
+    List<Integer> opportunities;
+    // The position of the reducer's id generator before the step was taken.
+    int nextFreeId;
+    boolean interesting;
+    // Whether the step was deemed not interesting only because judging it took too long; such
+    // verdicts are not cached.
+    boolean timedOut;
+    // The hash used by the reducer's cache of the shader job the step produced.
+    String hash;
+
+    Step(int step, String pass, int passIndex, List<Integer> opportunities, int nextFreeId,
+         boolean interesting, boolean timedOut, String hash) {
+      this.step = step;
+      this.pass = pass;
+      this.passIndex = passIndex;
+      this.opportunities = opportunities;
+      this.nextFreeId = nextFreeId;
+      this.interesting = interesting;
+      this.timedOut = timedOut;
+      this.hash = hash;
+    }
+
+    public int getStep() {
+      return step;
+    }
+
+    public boolean isInteresting() {
+      return interesting;
+    }
+
+    public boolean isTimedOut() {
+      return timedOut;
+    }
+
+    public String getHash() {
+      return hash;
+    }
+  }
+
+  private final File journalFile;
+
+  public ReductionJournal(File journalFile) {
+    this.journalFile = journalFile;
+  }
+
+  public static File getJournalFile(File workDir, String shaderJobShortName) {
+    return new File(workDir, shaderJobShortName + ".journal");
+  }
+
+  public File getJournalFile() {
+    return journalFile;
+  }
+
+  /**
+   * Gives the shader job file in which a journaled reduction keeps the shader job it started from,
+   * as it was before any reduction step or measure against undefined behaviour was applied.
+   * @param workDir The reduction's working directory.
+   * @param shaderJobShortName The short name of the shader job being reduced.
+   * @return The shader job file.
+   */
+  public static File getInitialShaderJobFile(File workDir, String shaderJobShortName) {
+    return new File(workDir, shaderJobShortName + "_journal_start.json");
+  }
+
+  public boolean exists() {
+    return journalFile.isFile();
+  }
+
+  /**
+   * Starts a new journal, replacing any existing one.
+   * @param header The choices made at the start of the reduction.
+   * @throws IOException on failure to write the journal.
+   */
+  public void start(Header header) throws IOException {
+    Files.write(journalFile.toPath(),
+        Collections.singletonList(GSON.toJson(header)),
+        StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Appends a step to the journal.
+   * @param step The step.
+   * @throws IOException on failure to write the journal.
+   */
+  public void record(Step step) throws IOException {
+    Files.write(journalFile.toPath(),
+        Collections.singletonList(GSON.toJson(step)),
+        StandardCharsets.UTF_8,
+        StandardOpenOption.APPEND);
+  }
+
+  public Header readHeader() throws IOException {
+    final List<String> lines = readLines();
+    if (lines.isEmpty()) {
+      throw new IOException("Empty reduction journal: " + journalFile);
+    }
+    return parse(lines.get(0), Header.class);
+  }
+
+  /**
+   * Reads the steps in the journal.  A partially-written last line, as left by a reduction that
+   * was killed while recording a step, is ignored.
+   * @return The steps, in order.
+   * @throws IOException on failure to read the journal, or if it is malformed.
+   */
+  public List<Step> readSteps() throws IOException {
+    final List<String> lines = readLines();
+    final List<Step> result = new ArrayList<>();
+    for (int i = 1; i < lines.size(); i++) {
+      try {
+        result.add(parse(lines.get(i), Step.class));
+      } catch (IOException exception) {
+        if (i < lines.size() - 1) {
+          throw exception;
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Reconstructs the state that a reduction had reached after a given step.
+   * @param initialState The state that the reduction started from; left unchanged.
+   * @param steps The steps of the reduction, as read from its journal.
+   * @param lastStep The number of the step after which the state is wanted.
+   * @param passes The passes of the reduction, as given by the pass manager, looked up by
+   *               position to replay steps.
+   * @param idGenerator The id generator used by the passes; left in the position it was in after
+   *                    the last step replayed.
+   * @return The state.
+   */
+  public static ShaderJob replay(ShaderJob initialState, List<Step> steps, int lastStep,
+                                 List<IReductionPass> passes, IdGenerator idGenerator) {
+    ShaderJob state = initialState;
+    for (Step step : steps) {
+      if (step.step > lastStep) {
+        break;
+      }
+      // Steps that were not interesting do not change the state, but may have used ids.
+      idGenerator.setNextFreeId(step.nextFreeId);
+      if (!step.interesting) {
+        continue;
+      }
+      if (step.opportunities == null) {
+        throw new IllegalStateException("Step " + step.step + " of pass " + step.pass
+            + " cannot be replayed, because the opportunities it applied were not recorded.");
+      }
+      if (step.passIndex < 0 || step.passIndex >= passes.size()
+          || !passes.get(step.passIndex).getName().equals(step.pass)) {
+        throw new IllegalStateException("Step " + step.step + " cannot be replayed: there is no "
+            + "pass named " + step.pass + " at position " + step.passIndex + ".");
+      }
+      try {
+        state = passes.get(step.passIndex).applyOpportunities(state, step.opportunities);
+      } catch (IndexOutOfBoundsException exception) {
+        throw new IllegalStateException("Step " + step.step + " cannot be replayed: pass "
+            + step.pass + " finds fewer opportunities than when the journal was written.",
+            exception);
+      }
+    }
+    return state;
+  }
+
+  private List<String> readLines() throws IOException {
+    return Files.readAllLines(journalFile.toPath(), StandardCharsets.UTF_8);
+  }
+
+  private <T> T parse(String line, Class<T> classOfT) throws IOException {
+    try {
+      final T result = GSON.fromJson(line, classOfT);
+      if (result == null) {
+        throw new IOException("Malformed line in reduction journal " + journalFile + ": " + line);
+      }
+      return result;
+    } catch (JsonParseException exception) {
+      throw new IOException("Malformed line in reduction journal " + journalFile + ": " + line,
+          exception);
+    }
+  }
+
+}
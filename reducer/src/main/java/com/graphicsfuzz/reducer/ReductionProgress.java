@@ -0,0 +1,107 @@
+/*
+ * Copyright 2019 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.reducer;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Writes the progress of a reduction to a JSON file, so that it can be monitored while it runs.
+ *
+ * <p>Besides counts of steps and the time taken, the file gives an estimate of the time left.
+ * Reductions usually finish when there is nothing left to reduce, which cannot be foreseen, so the
+ * estimate is an upper bound derived from the step limit, at the rate achieved so far, and the
+ * time budget.  It is absent if the reduction has neither.</p>
+ *
+ * <p>The file is replaced as a whole each time, so a reader never sees a partly-written file.</p>
+ */
+class ReductionProgress {
+
+  enum State {
+    REDUCING,
+    FINISHED,
+    STOPPED_AT_STEP_LIMIT,
+    STOPPED_AT_TIME_BUDGET
+  }
+
+  private final File progressFile;
+  private final long startMillis;
+  private final int stepLimit;
+  private final long timeBudgetMillis;
+
+  /**
+   * Creates a progress file writer.
+   * @param progressFile The file to write.
+   * @param startMillis The time at which the reduction started.
+   * @param stepLimit The maximum number of steps, or -1 for no limit.
+   * @param timeBudgetMillis The time the reduction may take, or 0 for no limit.
+   */
+  ReductionProgress(File progressFile, long startMillis, int stepLimit, long timeBudgetMillis) {
+    this.progressFile = progressFile;
+    this.startMillis = startMillis;
+    this.stepLimit = stepLimit;
+    this.timeBudgetMillis = timeBudgetMillis;
+  }
+
+  void update(State state, int stepsTaken, int successfulSteps, String currentPass)
+      throws IOException {
+    final long elapsedMillis = System.currentTimeMillis() - startMillis;
+    final JsonObject progress = new JsonObject();
+    progress.addProperty("state", state.toString());
+    progress.addProperty("steps", stepsTaken);
+    progress.addProperty("successfulSteps", successfulSteps);
+    progress.addProperty("currentPass", currentPass);
+    progress.addProperty("elapsedSeconds", elapsedMillis / 1000.0);
+    if (stepsTaken > 0) {
+      progress.addProperty("secondsPerStep", elapsedMillis / 1000.0 / stepsTaken);
+    }
+    if (stepLimit > -1) {
+      progress.addProperty("stepLimit", stepLimit);
+    }
+    if (timeBudgetMillis > 0) {
+      progress.addProperty("timeBudgetSeconds", timeBudgetMillis / 1000.0);
+    }
+    if (state == State.REDUCING) {
+      long estimateMillis = Long.MAX_VALUE;
+      if (stepLimit > -1 && stepsTaken > 0) {
+        estimateMillis = (stepLimit - stepsTaken) * (elapsedMillis / stepsTaken);
+      }
+      if (timeBudgetMillis > 0) {
+        estimateMillis = Math.min(estimateMillis, timeBudgetMillis - elapsedMillis);
+      }
+      if (estimateMillis != Long.MAX_VALUE) {
+        progress.addProperty("estimatedSecondsRemaining", Math.max(0, estimateMillis) / 1000.0);
+      }
+    }
+
+    final File tempFile = new File(progressFile.getParentFile(), progressFile.getName() + ".tmp");
+    Files.write(tempFile.toPath(), new Gson().toJson(progress).getBytes(StandardCharsets.UTF_8));
+    try {
+      Files.move(tempFile.toPath(), progressFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException exception) {
+      Files.move(tempFile.toPath(), progressFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.reducer.filejudge;
+
+import com.graphicsfuzz.server.thrift.ImageJobResult;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Records the results that judges obtain by running shader jobs.  Judges work on results in
+ * memory, so recording them is only for the benefit of whoever inspects a reduction; see
+ * {@link ResultRecording} for the choices.
+ */
+public interface IShaderResultSink {
+
+  /**
+   * @param result The result of running a shader job.
+   * @param shaderResultFile The file to which the result would be written, e.g.
+   *                         "variant_blah.info.json".
+   * @param interesting Whether the judge deemed the shader job interesting.
+   */
+  void record(ImageJobResult result, File shaderResultFile, boolean interesting)
+      throws IOException, InterruptedException;
+
+}
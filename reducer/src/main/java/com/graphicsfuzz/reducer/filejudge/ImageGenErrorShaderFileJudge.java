@@ -25,7 +25,6 @@ import com.graphicsfuzz.shadersets.IShaderDispatcher;
 import com.graphicsfuzz.shadersets.ShaderDispatchException;
 import java.io.File;
 import java.io.IOException;
-import java.util.Optional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,6 +37,7 @@ public class ImageGenErrorShaderFileJudge implements IFileJudge {
   private final boolean skipRender;
   private final boolean throwExceptionOnValidationError;
   private final ShaderJobFileOperations fileOps;
+  private final IShaderResultSink resultSink;
 
   public ImageGenErrorShaderFileJudge(
       String errorString,
@@ -45,11 +45,23 @@ public class ImageGenErrorShaderFileJudge implements IFileJudge {
       boolean skipRender,
       boolean throwExceptionOnValidationError,
       ShaderJobFileOperations fileOps) {
+    this(errorString, imageGenerator, skipRender, throwExceptionOnValidationError, fileOps,
+        ResultRecording.FULL.createSink(fileOps));
+  }
+
+  public ImageGenErrorShaderFileJudge(
+      String errorString,
+      IShaderDispatcher imageGenerator,
+      boolean skipRender,
+      boolean throwExceptionOnValidationError,
+      ShaderJobFileOperations fileOps,
+      IShaderResultSink resultSink) {
     this.errorString = errorString;
     this.imageGenerator = imageGenerator;
     this.skipRender = skipRender;
     this.throwExceptionOnValidationError = throwExceptionOnValidationError;
     this.fileOps = fileOps;
+    this.resultSink = resultSink;
   }
 
   @Override
@@ -75,32 +87,35 @@ public class ImageGenErrorShaderFileJudge implements IFileJudge {
       // Run the image job.
       ImageJobResult imageRes = imageGenerator.getImage(imageJob);
 
-      // Write the shader result file.
-      fileOps.writeShaderResultToFile(imageRes, shaderResultFileOutput, Optional.empty());
-
-      switch (imageRes.getStatus()) {
-        case SUCCESS:
-        case SAME_AS_REFERENCE:
-          LOGGER.info("Get_image succeeded on shader. Not interesting.");
-          return false;
-        default:
-          LOGGER.info("get_image failed...which is good.");
-          if (errorString == null) {
-            LOGGER.info("Interesting.");
-            return true;
-          }
-          if (imageRes.getLog().contains(errorString)) {
-            LOGGER.info("Error string was found. Interesting");
-            return true;
-          }
-          LOGGER.info("Error string was not found. Not interesting");
-
-          return false;
-      }
+      final boolean interesting = isInteresting(imageRes);
+      resultSink.record(imageRes, shaderResultFileOutput, interesting);
+      return interesting;
     } catch (InterruptedException | IllegalStateException | IOException
           | ShaderDispatchException exception) {
       LOGGER.error("Error occurred while checking if file was interesting.", exception);
       throw new FileJudgeException(exception);
     }
   }
+
+  private boolean isInteresting(ImageJobResult imageRes) {
+    switch (imageRes.getStatus()) {
+      case SUCCESS:
+      case SAME_AS_REFERENCE:
+        LOGGER.info("Get_image succeeded on shader. Not interesting.");
+        return false;
+      default:
+        LOGGER.info("get_image failed...which is good.");
+        if (errorString == null) {
+          LOGGER.info("Interesting.");
+          return true;
+        }
+        if (imageRes.getLog().contains(errorString)) {
+          LOGGER.info("Error string was found. Interesting");
+          return true;
+        }
+        LOGGER.info("Error string was not found. Not interesting");
+
+        return false;
+    }
+  }
 }
@@ -27,7 +27,6 @@ import com.graphicsfuzz.shadersets.IShaderDispatcher;
 import com.graphicsfuzz.shadersets.ShaderDispatchException;
 import java.io.File;
 import java.io.IOException;
-import java.util.Optional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -40,6 +39,7 @@ public class ImageShaderFileJudge implements IFileJudge {
   private final ShaderJobFileOperations fileOps;
   private final File referenceShaderResultFile;
   private final IImageFileComparator fileComparator;
+  private final IShaderResultSink resultSink;
 
   public ImageShaderFileJudge(
       File referenceShaderResultFile,
@@ -47,11 +47,23 @@ public class ImageShaderFileJudge implements IFileJudge {
       boolean throwExceptionOnValidationError,
       IImageFileComparator fileComparator,
       ShaderJobFileOperations fileOps) {
+    this(referenceShaderResultFile, imageGenerator, throwExceptionOnValidationError,
+        fileComparator, fileOps, ResultRecording.FULL.createSink(fileOps));
+  }
+
+  public ImageShaderFileJudge(
+      File referenceShaderResultFile,
+      IShaderDispatcher imageGenerator,
+      boolean throwExceptionOnValidationError,
+      IImageFileComparator fileComparator,
+      ShaderJobFileOperations fileOps,
+      IShaderResultSink resultSink) {
     this.imageGenerator = imageGenerator;
     this.throwExceptionOnValidationError = throwExceptionOnValidationError;
     this.referenceShaderResultFile = referenceShaderResultFile;
     this.fileComparator = fileComparator;
     this.fileOps = fileOps;
+    this.resultSink = resultSink;
   }
 
   @Override
@@ -78,29 +90,9 @@ public class ImageShaderFileJudge implements IFileJudge {
       // Run the image job.
       ImageJobResult imageRes = imageGenerator.getImage(imageJob);
 
-      // Write the shader result file.
-      fileOps.writeShaderResultToFile(imageRes, shaderResultFileOutput, Optional.empty());
-
-      switch (imageRes.getStatus()) {
-        case SUCCESS:
-          break;
-        case SAME_AS_REFERENCE:
-          throw new IllegalStateException("No longer supported: " + JobStatus.SAME_AS_REFERENCE);
-        default:
-          LOGGER.info("Failed to run shader. Not interesting.");
-          return false;
-      }
-
-      // Success:
-
-      // 3.
-
-      if (!fileComparator.areFilesInteresting(referenceShaderResultFile, shaderResultFileOutput)) {
-        LOGGER.info("Shader image was not deemed interesting by file comparator. Not interesting.");
-        return false;
-      }
-      LOGGER.info("Interesting.");
-      return true;
+      final boolean interesting = isInteresting(imageRes);
+      resultSink.record(imageRes, shaderResultFileOutput, interesting);
+      return interesting;
     } catch (InterruptedException | ShaderDispatchException | IOException exception) {
       LOGGER.info("Error occurred while checking if file was interesting.", exception);
       throw new FileJudgeException(exception);
@@ -108,6 +100,32 @@ public class ImageShaderFileJudge implements IFileJudge {
 
   }
 
+  private boolean isInteresting(ImageJobResult imageRes) throws IOException {
+    switch (imageRes.getStatus()) {
+      case SUCCESS:
+        break;
+      case SAME_AS_REFERENCE:
+        throw new IllegalStateException("No longer supported: " + JobStatus.SAME_AS_REFERENCE);
+      default:
+        LOGGER.info("Failed to run shader. Not interesting.");
+        return false;
+    }
+
+    // Success:
+
+    // 3.
 
+    if (!imageRes.isSetPNG()) {
+      LOGGER.info("Shader produced no image. Not interesting.");
+      return false;
+    }
+    // The image is compared as it came back from the worker, rather than via the result file.
+    if (!fileComparator.isImageInteresting(referenceShaderResultFile, imageRes.getPNG())) {
+      LOGGER.info("Shader image was not deemed interesting by file comparator. Not interesting.");
+      return false;
+    }
+    LOGGER.info("Interesting.");
+    return true;
+  }
 
 }
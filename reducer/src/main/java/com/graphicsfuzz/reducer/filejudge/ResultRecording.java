@@ -0,0 +1,53 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.reducer.filejudge;
+
+import com.graphicsfuzz.common.util.ShaderJobFileOperations;
+import java.util.Optional;
+
+/**
+ * How much of the result of each reduction step to write to disk.
+ */
+public enum ResultRecording {
+
+  // The whole result: log, images and .info.json, as for results of running shader families.
+  FULL,
+  // Just the status and log, for judges that only care about errors.
+  MINIMAL,
+  // The whole result, but only for steps that are interesting.
+  INTERESTING_ONLY;
+
+  public IShaderResultSink createSink(ShaderJobFileOperations fileOps) {
+    switch (this) {
+      case FULL:
+        return (result, shaderResultFile, interesting) ->
+            fileOps.writeShaderResultToFile(result, shaderResultFile, Optional.empty());
+      case MINIMAL:
+        return (result, shaderResultFile, interesting) ->
+            fileOps.writeShaderResultStatusToFile(result, shaderResultFile);
+      case INTERESTING_ONLY:
+        return (result, shaderResultFile, interesting) -> {
+          if (interesting) {
+            fileOps.writeShaderResultToFile(result, shaderResultFile, Optional.empty());
+          }
+        };
+      default:
+        throw new RuntimeException("Unknown result recording: " + this);
+    }
+  }
+
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2019 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.reducer.filejudge;
+
+import com.graphicsfuzz.shadersets.IShaderDispatcher;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Things that the judges of several reductions running at once can share: the devices that
+ * shader jobs are rendered on, and the verdicts of validators.
+ */
+public class SharedJudgeResources {
+
+  private final Optional<IShaderDispatcher> imageGenerator;
+  private final Map<String, Boolean> validatorVerdicts;
+
+  /**
+   * Creates shared resources.
+   * @param imageGenerator A dispatcher, typically a pool of devices, to be used by the judges of
+   *                       all reductions in place of the dispatcher each would otherwise create;
+   *                       it must be safe to use from several threads at once.
+   * @param validatorVerdicts A cache of validator verdicts, as created by
+   *                          {@link ValidatorErrorShaderFileJudge#createVerdictCache()}.
+   */
+  public SharedJudgeResources(Optional<IShaderDispatcher> imageGenerator,
+                              Map<String, Boolean> validatorVerdicts) {
+    this.imageGenerator = imageGenerator;
+    this.validatorVerdicts = validatorVerdicts;
+  }
+
+  /**
+   * Gives resources that are not shared with any other reduction.
+   * @return Resources for a single reduction.
+   */
+  public static SharedJudgeResources unshared() {
+    return new SharedJudgeResources(Optional.empty(),
+        ValidatorErrorShaderFileJudge.createVerdictCache());
+  }
+
+  public Optional<IShaderDispatcher> getImageGenerator() {
+    return imageGenerator;
+  }
+
+  public Map<String, Boolean> getValidatorVerdicts() {
+    return validatorVerdicts;
+  }
+
+}
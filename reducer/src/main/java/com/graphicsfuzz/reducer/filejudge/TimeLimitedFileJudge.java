@@ -0,0 +1,151 @@
+/*
+ * Copyright 2019 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.reducer.filejudge;
+
+import com.graphicsfuzz.reducer.FileJudgeException;
+import com.graphicsfuzz.reducer.IFileJudge;
+import com.graphicsfuzz.reducer.JudgeTimeoutException;
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Gives each call to another judge a deadline.  A call that misses its deadline is cancelled, by
+ * interrupting the thread running it, and a {@link JudgeTimeoutException} is thrown, so that a
+ * hung device or interestingness test cannot stall a reduction; the reducer treats the shader job
+ * as not interesting, without remembering that verdict.
+ *
+ * <p>Calls run one at a time on a thread of their own, as the judge need not be thread-safe.  A
+ * cancelled call that does not end soon after being interrupted, e.g. because it is blocked in a
+ * network read, would hold up every later call, each of which would then time out; instead, a
+ * {@link FileJudgeException} is thrown, by that call and by any later call made while it is still
+ * running, so that the reduction stops.</p>
+ */
+public class TimeLimitedFileJudge implements IFileJudge {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(TimeLimitedFileJudge.class);
+
+  public static final long DEFAULT_CANCELLATION_GRACE_MILLIS = 5000;
+
+  private final IFileJudge judge;
+  private final long timeoutMillis;
+  private final long cancellationGraceMillis;
+  private final ExecutorService executorService;
+
+  // Counted down when the most recent call has ended, or if it was cancelled before it started.
+  private CountDownLatch lastCallEnded;
+
+  /**
+   * Creates a judge that allows cancelled calls the default time to end.
+   * @param judge The judge to call.
+   * @param timeoutMillis Time after which a call is cancelled; must be positive.
+   */
+  public TimeLimitedFileJudge(IFileJudge judge, long timeoutMillis) {
+    this(judge, timeoutMillis, DEFAULT_CANCELLATION_GRACE_MILLIS);
+  }
+
+  /**
+   * Creates a judge.
+   * @param judge The judge to call.
+   * @param timeoutMillis Time after which a call is cancelled; must be positive.
+   * @param cancellationGraceMillis Time that a cancelled call is given to end.
+   */
+  public TimeLimitedFileJudge(IFileJudge judge, long timeoutMillis,
+                              long cancellationGraceMillis) {
+    if (timeoutMillis <= 0) {
+      throw new IllegalArgumentException("A time limit must be positive.");
+    }
+    this.judge = judge;
+    this.timeoutMillis = timeoutMillis;
+    this.cancellationGraceMillis = cancellationGraceMillis;
+    this.executorService = Executors.newSingleThreadExecutor(runnable -> {
+      final Thread thread = new Thread(runnable, "TimeLimitedFileJudge");
+      // A call that ignores cancellation must not keep the program alive.
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.lastCallEnded = new CountDownLatch(0);
+  }
+
+  @Override
+  public boolean isInteresting(File shaderJobFile, File shaderResultFileOutput)
+      throws FileJudgeException {
+    if (lastCallEnded.getCount() > 0) {
+      throw new FileJudgeException("Cannot judge " + shaderJobFile + ": an earlier call that "
+          + "was cancelled is still running.");
+    }
+    final CountDownLatch callEnded = new CountDownLatch(1);
+    final AtomicBoolean claimed = new AtomicBoolean(false);
+    lastCallEnded = callEnded;
+    final Future<Boolean> result = executorService.submit(() -> {
+      if (!claimed.compareAndSet(false, true)) {
+        // Cancelled before it started.
+        return false;
+      }
+      try {
+        return judge.isInteresting(shaderJobFile, shaderResultFileOutput);
+      } finally {
+        callEnded.countDown();
+      }
+    });
+    try {
+      return result.get(timeoutMillis, TimeUnit.MILLISECONDS);
+    } catch (TimeoutException exception) {
+      cancel(result, claimed, callEnded);
+      try {
+        if (!callEnded.await(cancellationGraceMillis, TimeUnit.MILLISECONDS)) {
+          throw new FileJudgeException("Judging " + shaderJobFile + " took longer than "
+              + timeoutMillis + " ms, and did not stop when cancelled.");
+        }
+      } catch (InterruptedException interruptedException) {
+        Thread.currentThread().interrupt();
+        throw new FileJudgeException(interruptedException);
+      }
+      LOGGER.info("Judging " + shaderJobFile + " took longer than " + timeoutMillis
+          + " ms; cancelled.");
+      throw new JudgeTimeoutException("Judging " + shaderJobFile + " took longer than "
+          + timeoutMillis + " ms.");
+    } catch (InterruptedException exception) {
+      cancel(result, claimed, callEnded);
+      Thread.currentThread().interrupt();
+      throw new FileJudgeException(exception);
+    } catch (ExecutionException exception) {
+      if (exception.getCause() instanceof FileJudgeException) {
+        throw (FileJudgeException) exception.getCause();
+      }
+      throw new FileJudgeException(exception.getCause());
+    }
+  }
+
+  private static void cancel(Future<Boolean> result, AtomicBoolean claimed,
+                             CountDownLatch callEnded) {
+    result.cancel(true);
+    if (claimed.compareAndSet(false, true)) {
+      // The call had not started, and now never will.
+      callEnded.countDown();
+    }
+  }
+
+}
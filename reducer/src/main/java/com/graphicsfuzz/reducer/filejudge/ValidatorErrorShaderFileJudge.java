@@ -16,64 +16,218 @@
 
 package com.graphicsfuzz.reducer.filejudge;
 
+import com.graphicsfuzz.common.glslversion.ShadingLanguageVersion;
+import com.graphicsfuzz.common.util.ShaderJobFileOperations;
+import com.graphicsfuzz.common.util.ShaderKind;
+import com.graphicsfuzz.common.util.ShaderTranslatorShadingLanguageVersionSupport;
+import com.graphicsfuzz.reducer.FileJudgeException;
 import com.graphicsfuzz.reducer.IFileJudge;
+import com.graphicsfuzz.util.ExecHelper;
+import com.graphicsfuzz.util.ExecHelper.RedirectType;
+import com.graphicsfuzz.util.ExecResult;
+import com.graphicsfuzz.util.ToolPaths;
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Deems a shader job interesting if a validator rejects one of its shaders, with output containing
+ * a given error string if there is one.  Crashes of the validator count as rejections, so that
+ * validator crashes can be reduced too.
+ *
+ * <p>glslangValidator is given the shader text on its standard input, so that checking a
+ * candidate writes no files; shader_translator, which can only read files, is given the text via
+ * a file in a scratch directory that is deleted once the validator has run.  A validator that
+ * runs for longer than the timeout is killed, and the candidate is deemed uninteresting.  Verdicts
+ * are remembered by shader text, so that a candidate that the reducer happens to produce again is
+ * not validated again.</p>
+ */
 public class ValidatorErrorShaderFileJudge implements IFileJudge {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(ValidatorErrorShaderFileJudge.class);
 
-  private String errorString;
+  private static final int MAX_REMEMBERED_VERDICTS = 10000;
 
-  public ValidatorErrorShaderFileJudge(String errorString) {
+  public enum Validator {
+    GLSLANG,
+    GLSLANG_VULKAN,
+    SHADER_TRANSLATOR
+  }
+
+  private final String errorString;
+  private final Validator validator;
+  private final long timeoutMillis;
+  private final ShaderJobFileOperations fileOps;
+  private final Map<String, Boolean> verdicts;
+
+  /**
+   * Creates a judge.
+   * @param errorString String that the validator output must contain for a shader job to be
+   *                    interesting, or null if any validation failure is interesting.
+   * @param validator The validator to run.
+   * @param timeoutSeconds Time after which a validator run is abandoned; 0 means no limit.
+   * @param fileOps File operations.
+   */
+  public ValidatorErrorShaderFileJudge(String errorString, Validator validator, int timeoutSeconds,
+                                       ShaderJobFileOperations fileOps) {
+    this(errorString, validator, timeoutSeconds, fileOps, createVerdictCache());
+  }
+
+  /**
+   * Creates a judge that shares remembered verdicts with other judges, e.g. those of other
+   * reductions in a batch.  Verdicts are remembered per validator and error string, so judges
+   * looking for different errors can share a cache safely.
+   * @param errorString String that the validator output must contain for a shader job to be
+   *                    interesting, or null if any validation failure is interesting.
+   * @param validator The validator to run.
+   * @param timeoutSeconds Time after which a validator run is abandoned; 0 means no limit.
+   * @param fileOps File operations.
+   * @param verdicts Remembered verdicts, as created by {@link #createVerdictCache()}.
+   */
+  public ValidatorErrorShaderFileJudge(String errorString, Validator validator, int timeoutSeconds,
+                                       ShaderJobFileOperations fileOps,
+                                       Map<String, Boolean> verdicts) {
     this.errorString = errorString;
+    this.validator = validator;
+    this.timeoutMillis = timeoutSeconds * 1000L;
+    this.fileOps = fileOps;
+    this.verdicts = verdicts;
+  }
+
+  /**
+   * Creates a cache of verdicts that can be shared between judges used from different threads.
+   * The least recently used verdicts are forgotten once the cache is full.
+   * @return An empty cache.
+   */
+  public static Map<String, Boolean> createVerdictCache() {
+    return Collections.synchronizedMap(
+        new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > MAX_REMEMBERED_VERDICTS;
+          }
+        });
   }
 
   @Override
   public boolean isInteresting(
       File shaderJobFile,
       File shaderResultFileOutput
-  ) {
-
-    throw new RuntimeException();
-
-    /*
-    // 1. Shader file validates.
-
+  ) throws FileJudgeException {
     try {
-      // 1.
-      ExecResult res = ToolHelper.runValidatorOnShader(RedirectType.TO_LOG, file);
-      if (res.res == 0) {
-        LOGGER.info("Shader validated. Not interesting.");
-        return false;
+      for (ShaderKind shaderKind : ShaderKind.values()) {
+        if (!fileOps.doesShaderExist(shaderJobFile, shaderKind)) {
+          continue;
+        }
+        final String shaderText = fileOps.getShaderContents(shaderJobFile, shaderKind);
+        final String key = validator + ":" + errorString + ":" + shaderKind + ":"
+            + DigestUtils.sha256Hex(shaderText);
+        Boolean interesting = verdicts.get(key);
+        if (interesting == null) {
+          interesting = isInteresting(shaderText, shaderKind);
+          verdicts.put(key, interesting);
+        } else {
+          LOGGER.info("Shader text has been validated before.");
+        }
+        if (interesting) {
+          return true;
+        }
       }
+      return false;
+    } catch (InterruptedException | IOException exception) {
+      LOGGER.info("Error occurred while checking if file was interesting.", exception);
+      throw new FileJudgeException(exception);
+    }
+  }
 
-      LOGGER.info("Shader failed to validate...which is good.");
+  private boolean isInteresting(String shaderText, ShaderKind shaderKind)
+      throws IOException, InterruptedException {
+    final ExecResult res = runValidator(shaderText, shaderKind);
+    if (res.timedOut) {
+      LOGGER.info("Validator timed out. Not interesting.");
+      return false;
+    }
+    if (res.res == 0) {
+      LOGGER.info("Shader validated. Not interesting.");
+      return false;
+    }
 
-      if (errorString == null) {
-        LOGGER.info("Interesting.");
-        return true;
-      }
+    LOGGER.info("Shader failed to validate...which is good.");
 
-      if (res.stdout.contains(errorString)) {
-        LOGGER.info("Error string was found. Interesting");
-        return true;
-      }
+    if (errorString == null) {
+      LOGGER.info("Interesting.");
+      return true;
+    }
 
-      if (res.stderr.contains(errorString)) {
-        LOGGER.info("Error string was found. Interesting");
-        return true;
-      }
+    if (res.stdout.indexOf(errorString) != -1 || res.stderr.indexOf(errorString) != -1) {
+      LOGGER.info("Error string was found. Interesting");
+      return true;
+    }
 
-      LOGGER.info("Error string was not found. Not interesting");
+    LOGGER.info("Error string was not found. Not interesting");
+    return false;
+  }
 
-      return false;
-    } catch (InterruptedException | IOException exception) {
-      LOGGER.info("Error occurred while checking if file was interesting.", exception);
-      throw new FileJudgeException(exception);
+  private ExecResult runValidator(String shaderText, ShaderKind shaderKind)
+      throws IOException, InterruptedException {
+    switch (validator) {
+      case GLSLANG:
+      case GLSLANG_VULKAN:
+        return new ExecHelper().exec(
+            RedirectType.TO_BUFFER,
+            null,
+            false,
+            new ByteArrayInputStream(shaderText.getBytes(StandardCharsets.UTF_8)),
+            timeoutMillis,
+            validator == Validator.GLSLANG_VULKAN
+                ? new String[] { ToolPaths.glslangValidator(), "-V100", "--stdin", "-S",
+                    shaderKind.getFileExtension() }
+                : new String[] { ToolPaths.glslangValidator(), "--stdin", "-S",
+                    shaderKind.getFileExtension() });
+      case SHADER_TRANSLATOR:
+        final ShadingLanguageVersion shadingLanguageVersion =
+            ShadingLanguageVersion.getGlslVersionFromFirstTwoLines(
+                getFirstTwoLines(shaderText));
+        if (!ShaderTranslatorShadingLanguageVersionSupport.isVersionSupported(
+            shadingLanguageVersion)) {
+          throw new IOException("shader_translator does not support shading language version "
+              + shadingLanguageVersion.getVersionString());
+        }
+        final File scratchDir = Files.createTempDirectory("validator").toFile();
+        try {
+          // shader_translator infers the kind of shader from the file extension.
+          final File shaderFile = new File(scratchDir, "shader."
+              + shaderKind.getFileExtension());
+          FileUtils.writeStringToFile(shaderFile, shaderText, StandardCharsets.UTF_8);
+          return new ExecHelper().exec(
+              RedirectType.TO_BUFFER,
+              null,
+              false,
+              null,
+              timeoutMillis,
+              ToolPaths.shaderTranslator(),
+              ShaderTranslatorShadingLanguageVersionSupport
+                  .getShaderTranslatorArgument(shadingLanguageVersion),
+              shaderFile.toString());
+        } finally {
+          FileUtils.deleteQuietly(scratchDir);
+        }
+      default:
+        throw new RuntimeException("Unknown validator: " + validator);
     }
-    */
+  }
+
+  private static String[] getFirstTwoLines(String shaderText) {
+    final String[] lines = shaderText.split("\\r?\\n", 3);
+    return new String[] { lines[0], lines.length > 1 ? lines[1] : "" };
   }
 }
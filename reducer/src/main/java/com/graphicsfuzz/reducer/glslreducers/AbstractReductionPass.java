@@ -16,9 +16,11 @@
 
 package com.graphicsfuzz.reducer.glslreducers;
 
+import com.graphicsfuzz.common.transformreduce.ShaderJob;
 import com.graphicsfuzz.reducer.reductionopportunities.IReductionOpportunity;
 import com.graphicsfuzz.reducer.reductionopportunities.IReductionOpportunityFinder;
 import com.graphicsfuzz.reducer.reductionopportunities.ReducerContext;
+import java.util.List;
 
 public abstract class AbstractReductionPass implements IReductionPass {
 
@@ -36,6 +38,18 @@ public abstract class AbstractReductionPass implements IReductionPass {
     return finder.getName();
   }
 
+  @Override
+  public final ShaderJob applyOpportunities(ShaderJob shaderJob,
+                                            List<Integer> opportunityIndices) {
+    final ShaderJob workingShaderJob = shaderJob.clone();
+    final List<? extends IReductionOpportunity> opportunities =
+        finder.findOpportunities(workingShaderJob, reducerContext);
+    for (int index : opportunityIndices) {
+      opportunities.get(index).applyReduction();
+    }
+    return workingShaderJob;
+  }
+
   protected final IReductionOpportunityFinder<? extends IReductionOpportunity> getFinder() {
     return finder;
   }
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2019 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.reducer.glslreducers;
+
+import com.graphicsfuzz.common.ast.visitors.VisitationDepth;
+import com.graphicsfuzz.common.transformreduce.ShaderJob;
+import com.graphicsfuzz.reducer.reductionopportunities.IReductionOpportunity;
+import com.graphicsfuzz.reducer.reductionopportunities.IReductionOpportunityFinder;
+import com.graphicsfuzz.reducer.reductionopportunities.ReducerContext;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * A reduction pass that applies hierarchical delta debugging to the opportunities of one kind.
+ *
+ * <p>Opportunities are processed one level of the AST at a time, shallowest first, where the
+ * level of an opportunity is its depth.  At each level ddmin is used: the opportunities of the
+ * level are split into chunks, and the pass first tries applying all but one chunk, then
+ * applying one chunk, doubling the number of chunks when neither is interesting, until each
+ * opportunity has been tried on its own.  Opportunities are found afresh for every attempt, so
+ * that once a subtree has been removed the opportunities inside it are never tried.</p>
+ *
+ * <p>The pass sweeps over the levels until a sweep makes no progress, at which point the shader
+ * job is 1-minimal with respect to the opportunities of this kind.</p>
+ */
+public class HierarchicalReductionPass extends AbstractReductionPass {
+
+  private enum Phase {
+    // Try applying every opportunity of the level except those in one chunk.
+    REDUCE_TO_SUBSET,
+    // Try applying the opportunities in one chunk.
+    REDUCE_TO_COMPLEMENT
+  }
+
+  // The depth of the level being reduced; null between sweeps.
+  private VisitationDepth depth;
+  // The number of levels reduced so far in the current sweep; for logging.
+  private int levelCount;
+  private boolean levelFinished;
+  private int numChunks;
+  private int chunkIndex;
+  private Phase phase;
+  private int numOpportunitiesAtLevel;
+  private boolean sweepMadeProgress;
+  private List<Integer> lastAppliedOpportunities;
+
+  public HierarchicalReductionPass(
+      ReducerContext reducerContext,
+      boolean verbose,
+      IReductionOpportunityFinder<? extends IReductionOpportunity> finder) {
+    // Ignore verbose argument for now.
+    super(reducerContext, finder);
+    startSweep();
+    this.sweepMadeProgress = false;
+  }
+
+  @Override
+  public Optional<ShaderJob> tryApplyReduction(ShaderJob shaderJob) {
+    while (true) {
+      final ShaderJob workingShaderJob = shaderJob.clone();
+      final List<? extends IReductionOpportunity> opportunities =
+          getFinder().findOpportunities(workingShaderJob, getReducerContext());
+
+      if (depth == null || levelFinished) {
+        final Optional<VisitationDepth> nextDepth = opportunities
+            .stream()
+            .map(IReductionOpportunity::depth)
+            .filter(item -> depth == null || item.compareTo(depth) > 0)
+            .min(VisitationDepth::compareTo);
+        if (!nextDepth.isPresent()) {
+          final boolean anotherSweepWorthwhile = sweepMadeProgress;
+          startSweep();
+          sweepMadeProgress = false;
+          if (anotherSweepWorthwhile) {
+            // Removals at deeper levels may have made removals at shallower levels possible.
+            continue;
+          }
+          return Optional.empty();
+        }
+        startLevel(nextDepth.get());
+      }
+
+      final List<Integer> level = IntStream.range(0, opportunities.size())
+          .filter(item -> opportunities.get(item).depth().compareTo(depth) == 0)
+          .boxed()
+          .collect(Collectors.toList());
+      if (level.isEmpty()) {
+        levelFinished = true;
+        continue;
+      }
+      numOpportunitiesAtLevel = level.size();
+      numChunks = Math.min(numChunks, numOpportunitiesAtLevel);
+      chunkIndex = Math.min(chunkIndex, numChunks - 1);
+      if (phase == Phase.REDUCE_TO_SUBSET && numChunks <= 2) {
+        // With two chunks, keeping one chunk is the same as removing the other.
+        phase = Phase.REDUCE_TO_COMPLEMENT;
+        chunkIndex = 0;
+      }
+
+      final int chunkStart = chunkIndex * numOpportunitiesAtLevel / numChunks;
+      final int chunkEnd = (chunkIndex + 1) * numOpportunitiesAtLevel / numChunks;
+      final List<Integer> applied = new ArrayList<>();
+      for (int i = 0; i < numOpportunitiesAtLevel; i++) {
+        final boolean inChunk = chunkStart <= i && i < chunkEnd;
+        if (inChunk != (phase == Phase.REDUCE_TO_COMPLEMENT)) {
+          continue;
+        }
+        final IReductionOpportunity opportunity = opportunities.get(level.get(i));
+        if (opportunity.preconditionHolds()) {
+          opportunity.applyReduction();
+          applied.add(level.get(i));
+        }
+      }
+      if (!applied.isEmpty()) {
+        lastAppliedOpportunities = applied;
+        return Optional.of(workingShaderJob);
+      }
+      // None of the opportunities could be applied, so there is no point in asking whether the
+      // result is interesting.
+      advance();
+    }
+  }
+
+  @Override
+  public void notifyInteresting(boolean interesting) {
+    if (!interesting) {
+      advance();
+      return;
+    }
+    sweepMadeProgress = true;
+    if (phase == Phase.REDUCE_TO_SUBSET) {
+      numChunks = 2;
+      chunkIndex = 0;
+    } else {
+      // The chunks before this one could not be applied, and probably still cannot, so carry on
+      // from this chunk rather than starting again with subsets.
+      numChunks = Math.max(numChunks - 1, 2);
+    }
+  }
+
+  private void advance() {
+    chunkIndex++;
+    if (chunkIndex < numChunks) {
+      return;
+    }
+    chunkIndex = 0;
+    if (phase == Phase.REDUCE_TO_SUBSET) {
+      phase = Phase.REDUCE_TO_COMPLEMENT;
+      return;
+    }
+    if (numChunks >= numOpportunitiesAtLevel) {
+      // Every opportunity at this level has been tried on its own: the level is 1-minimal.
+      levelFinished = true;
+      return;
+    }
+    numChunks = Math.min(2 * numChunks, numOpportunitiesAtLevel);
+    phase = Phase.REDUCE_TO_SUBSET;
+  }
+
+  private void startSweep() {
+    depth = null;
+    levelCount = 0;
+    levelFinished = false;
+  }
+
+  private void startLevel(VisitationDepth depth) {
+    this.depth = depth;
+    levelCount++;
+    levelFinished = false;
+    numChunks = 2;
+    chunkIndex = 0;
+    phase = Phase.REDUCE_TO_SUBSET;
+  }
+
+  @Override
+  public Optional<List<Integer>> getLastAppliedOpportunities() {
+    return Optional.ofNullable(lastAppliedOpportunities);
+  }
+
+  @Override
+  public void replenish() {
+    startSweep();
+    sweepMadeProgress = false;
+  }
+
+  @Override
+  public boolean reachedMinimumGranularity() {
+    // The pass only runs out of reductions to try once every level has been tried one
+    // opportunity at a time.
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    return depth == null ? "between sweeps" : "level: " + levelCount + ", chunks: " + numChunks
+        + ", chunk: " + chunkIndex + ", phase: " + phase;
+  }
+
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2019 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.reducer.glslreducers;
+
+import com.graphicsfuzz.common.transformreduce.ShaderJob;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Applies passes, typically {@link HierarchicalReductionPass}es, in order from those that remove
+ * the largest parts of the tree to those that remove the smallest, e.g. functions, then blocks,
+ * then statements, then expressions, so that no effort is spent on the parts of a subtree that a
+ * coarser pass can remove outright.
+ *
+ * <p>Each pass is run until it has nothing left to try.  The passes are cycled through until all
+ * of them have, in turn, had nothing left to try since any pass last made progress.</p>
+ */
+public class HierarchicalReductionPassManager implements IReductionPassManager {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(
+      HierarchicalReductionPassManager.class);
+
+  private final List<IReductionPass> passes;
+
+  // The index of the pass currently being applied.
+  private int passIndex;
+
+  // The number of passes in a row that have run out of things to try without any progress being
+  // made in between.
+  private int numPassesWithoutProgress;
+
+  public HierarchicalReductionPassManager(List<IReductionPass> passes) {
+    if (passes.isEmpty()) {
+      throw new IllegalArgumentException("At least one pass is required.");
+    }
+    this.passes = new ArrayList<>();
+    this.passes.addAll(passes);
+    this.passIndex = 0;
+    this.numPassesWithoutProgress = 0;
+  }
+
+  @Override
+  public Optional<ShaderJob> applyReduction(ShaderJob shaderJob) {
+    while (numPassesWithoutProgress < passes.size()) {
+      LOGGER.info("About to apply pass " + getCurrentPass().getName() + ": " + getCurrentPass());
+      final Optional<ShaderJob> maybeResult = getCurrentPass().tryApplyReduction(shaderJob);
+      if (maybeResult.isPresent()) {
+        return maybeResult;
+      }
+      LOGGER.info("Pass " + getCurrentPass().getName() + " has nothing left to try.");
+      // A pass only runs out of things to try once its opportunities have each been tried
+      // on their own since it last made progress, so it counts towards the fixed-point.
+      numPassesWithoutProgress++;
+      passIndex = (passIndex + 1) % passes.size();
+    }
+    return Optional.empty();
+  }
+
+  @Override
+  public void notifyInteresting(boolean isInteresting) {
+    getCurrentPass().notifyInteresting(isInteresting);
+    if (isInteresting) {
+      numPassesWithoutProgress = 0;
+    }
+  }
+
+  @Override
+  public IReductionPass getCurrentPass() {
+    return passes.get(passIndex);
+  }
+
+  @Override
+  public List<IReductionPass> getPasses() {
+    return Collections.unmodifiableList(passes);
+  }
+
+}
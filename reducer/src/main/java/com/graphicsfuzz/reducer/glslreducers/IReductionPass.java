@@ -17,6 +17,7 @@
 package com.graphicsfuzz.reducer.glslreducers;
 
 import com.graphicsfuzz.common.transformreduce.ShaderJob;
+import java.util.List;
 import java.util.Optional;
 
 public interface IReductionPass {
@@ -31,4 +32,21 @@ public interface IReductionPass {
 
   boolean reachedMinimumGranularity();
 
+  /**
+   * Says which opportunities the last successful call to tryApplyReduction applied, so that the
+   * reduction step can be recorded and later replayed using applyOpportunities.
+   * @return The indices of the applied opportunities, in the order in which they were applied, in
+   *     the list of opportunities that the pass finds for the shader job that was passed to
+   *     tryApplyReduction; empty if the pass cannot say.
+   */
+  Optional<List<Integer>> getLastAppliedOpportunities();
+
+  /**
+   * Replays a reduction step that this pass took, by applying the given opportunities.
+   * @param shaderJob The shader job to which the step was applied; left unchanged.
+   * @param opportunityIndices Indices as returned by getLastAppliedOpportunities.
+   * @return The result of the step.
+   */
+  ShaderJob applyOpportunities(ShaderJob shaderJob, List<Integer> opportunityIndices);
+
 }
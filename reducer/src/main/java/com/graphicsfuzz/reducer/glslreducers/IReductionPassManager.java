@@ -17,6 +17,7 @@
 package com.graphicsfuzz.reducer.glslreducers;
 
 import com.graphicsfuzz.common.transformreduce.ShaderJob;
+import java.util.List;
 import java.util.Optional;
 
 public interface IReductionPassManager {
@@ -36,4 +37,16 @@ public interface IReductionPassManager {
    */
   void notifyInteresting(boolean isInteresting);
 
+  /**
+   * Get the pass that produced the shader job most recently returned by applyReduction.
+   * @return The pass.
+   */
+  IReductionPass getCurrentPass();
+
+  /**
+   * Get all of the managed passes, e.g. to look one up by position when replaying a reduction.
+   * @return The passes, each appearing once, always in the same order.
+   */
+  List<IReductionPass> getPasses();
+
 }
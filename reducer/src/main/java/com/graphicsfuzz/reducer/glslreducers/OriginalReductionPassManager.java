@@ -19,6 +19,7 @@ package com.graphicsfuzz.reducer.glslreducers;
 import com.graphicsfuzz.common.transformreduce.ShaderJob;
 import com.graphicsfuzz.reducer.reductionopportunities.FailedReductionException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 
@@ -96,8 +97,14 @@ public class OriginalReductionPassManager implements IReductionPassManager {
     getCurrentPass().notifyInteresting(isInteresting);
   }
 
-  private IReductionPass getCurrentPass() {
+  @Override
+  public IReductionPass getCurrentPass() {
     return passes.get(passIndex);
   }
 
+  @Override
+  public List<IReductionPass> getPasses() {
+    return Collections.unmodifiableList(passes);
+  }
+
 }
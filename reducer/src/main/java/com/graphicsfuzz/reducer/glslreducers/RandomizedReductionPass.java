@@ -209,6 +209,13 @@ public class RandomizedReductionPass extends AbstractReductionPass {
     percentageToReduce = Math.max(percentageToReduce, 1);
   }
 
+  @Override
+  public Optional<List<Integer>> getLastAppliedOpportunities() {
+    // Opportunities are taken from lists found after earlier ones have been applied, so a step
+    // cannot be described by indices into the list found at the start.
+    return Optional.empty();
+  }
+
   @Override
   public boolean reachedMinimumGranularity() {
     throw new UnsupportedOperationException("reachedMinimumGranularity not supported by this kind "
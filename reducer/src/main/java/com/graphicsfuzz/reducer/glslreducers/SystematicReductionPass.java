@@ -23,6 +23,8 @@ import com.graphicsfuzz.reducer.reductionopportunities.ReducerContext;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class SystematicReductionPass extends AbstractReductionPass {
 
@@ -30,6 +32,7 @@ public class SystematicReductionPass extends AbstractReductionPass {
   private int index;
   private int granularity;
   private final int maximumGranularity;
+  private List<Integer> lastAppliedOpportunities;
 
   public SystematicReductionPass(
       ReducerContext reducerContext,
@@ -53,10 +56,15 @@ public class SystematicReductionPass extends AbstractReductionPass {
   @Override
   public Optional<ShaderJob> tryApplyReduction(ShaderJob shaderJob) {
     final ShaderJob workingShaderJob = shaderJob.clone();
-    List<? extends IReductionOpportunity> opportunities =
+    final List<? extends IReductionOpportunity> opportunities =
         getFinder().findOpportunities(workingShaderJob, getReducerContext());
 
-    opportunities.sort(Comparator.comparing(IReductionOpportunity::depth));
+    // The opportunities are taken in order of depth; their indices in the list found are kept
+    // so that the step can be recorded.
+    final List<Integer> order = IntStream.range(0, opportunities.size())
+        .boxed()
+        .sorted(Comparator.comparing(item -> opportunities.get(item).depth()))
+        .collect(Collectors.toList());
 
     if (!isInitialized) {
       isInitialized = true;
@@ -73,8 +81,10 @@ public class SystematicReductionPass extends AbstractReductionPass {
     }
 
 
-    for (int i = index; i < Math.min(index + granularity, opportunities.size()); i++) {
-      opportunities.get(i).applyReduction();
+    lastAppliedOpportunities =
+        order.subList(index, Math.min(index + granularity, opportunities.size()));
+    for (int opportunityIndex : lastAppliedOpportunities) {
+      opportunities.get(opportunityIndex).applyReduction();
     }
 
     return Optional.of(workingShaderJob);
@@ -87,6 +97,11 @@ public class SystematicReductionPass extends AbstractReductionPass {
     }
   }
 
+  @Override
+  public Optional<List<Integer>> getLastAppliedOpportunities() {
+    return Optional.ofNullable(lastAppliedOpportunities);
+  }
+
   @Override
   public void replenish() {
     throw new UnsupportedOperationException(
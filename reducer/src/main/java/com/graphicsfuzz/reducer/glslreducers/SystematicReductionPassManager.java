@@ -18,6 +18,7 @@ package com.graphicsfuzz.reducer.glslreducers;
 
 import com.graphicsfuzz.common.transformreduce.ShaderJob;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 import org.slf4j.Logger;
@@ -120,8 +121,25 @@ public class SystematicReductionPassManager implements IReductionPassManager {
     }
   }
 
-  private IReductionPass getCurrentPass() {
+  @Override
+  public IReductionPass getCurrentPass() {
     return currentPasses.get(passIndex);
   }
 
+  @Override
+  public List<IReductionPass> getPasses() {
+    // Passes can be shared between the lists, e.g. core passes are typically also used for
+    // cleanup.
+    final List<IReductionPass> result = new ArrayList<>();
+    for (List<IReductionPass> passes : Arrays.asList(initialPasses, corePasses,
+        exhaustivePasses)) {
+      for (IReductionPass pass : passes) {
+        if (result.stream().noneMatch(item -> item == pass)) {
+          result.add(pass);
+        }
+      }
+    }
+    return result;
+  }
+
 }
@@ -27,7 +27,6 @@ import com.graphicsfuzz.common.transformreduce.ShaderJob;
 import com.graphicsfuzz.common.util.ContainsTopLevelBreak;
 import com.graphicsfuzz.common.util.ContainsTopLevelContinue;
 import com.graphicsfuzz.common.util.ListConcat;
-import com.graphicsfuzz.common.util.SideEffectChecker;
 import java.util.Arrays;
 import java.util.List;
 
@@ -127,8 +126,7 @@ public class FlattenControlFlowReductionOpportunities
           || currentProgramPointIsDeadCode()
           || (StmtReductionOpportunities.isLiveCodeInjection(compoundStmt)
                && !isLoopLimiterCheck(compoundStmt))
-          || SideEffectChecker.isSideEffectFree(compoundStmt, context.getShadingLanguageVersion(),
-        shaderKind);
+          || sideEffectAnalysis.isSideEffectFree(compoundStmt);
   }
 
   private boolean isLoopLimiterCheck(Stmt compoundStmt) {
@@ -35,7 +35,6 @@ import com.graphicsfuzz.common.ast.type.BasicType;
 import com.graphicsfuzz.common.ast.type.Type;
 import com.graphicsfuzz.common.transformreduce.ShaderJob;
 import com.graphicsfuzz.common.util.ListConcat;
-import com.graphicsfuzz.common.util.SideEffectChecker;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
@@ -234,7 +233,7 @@ public final class FoldConstantReductionOpportunities extends SimplifyExprReduct
       // We could handle cases such as vec2(0.0).x resolving to 0.0; but for now we do not.
       return;
     }
-    if (!SideEffectChecker.isSideEffectFree(tce, context.getShadingLanguageVersion(), shaderKind)) {
+    if (!sideEffectAnalysis.isSideEffectFree(tce)) {
       // We mustn't eliminate side-effects from elements of the vector that we are not popping out.
       return;
     }
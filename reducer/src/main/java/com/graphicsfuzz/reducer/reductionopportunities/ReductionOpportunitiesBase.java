@@ -25,7 +25,7 @@ import com.graphicsfuzz.common.ast.expr.Expr;
 import com.graphicsfuzz.common.ast.expr.UnaryExpr;
 import com.graphicsfuzz.common.ast.stmt.ExprCaseLabel;
 import com.graphicsfuzz.common.util.ShaderKind;
-import com.graphicsfuzz.common.util.SideEffectChecker;
+import com.graphicsfuzz.common.util.SideEffectAnalysis;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -39,6 +39,10 @@ public abstract class ReductionOpportunitiesBase
 
   final ShaderKind shaderKind;
 
+  // Answers questions about side effects in the translation unit, which is not changed while
+  // opportunities are sought.
+  final SideEffectAnalysis sideEffectAnalysis;
+
   // Each entry in this stack records how many l-values enclose the current expression. A new
   // stack entry is pushed each time an array indexing expression is encountered, because even when
   // an array indexing expression is an l-value, this does not mean that the index expression
@@ -56,6 +60,7 @@ public abstract class ReductionOpportunitiesBase
     this.opportunities = new ArrayList<>();
     this.context = context;
     this.shaderKind = tu.getShaderKind();
+    this.sideEffectAnalysis = new SideEffectAnalysis(tu, context.getShadingLanguageVersion());
     this.enclosingLValuesStack = new ArrayList<>();
     this.enclosingLValuesStack.add(0);
   }
@@ -130,10 +135,7 @@ public abstract class ReductionOpportunitiesBase
     if (!variableDeclInfo.hasInitializer()) {
       return false;
     }
-    return SideEffectChecker.isSideEffectFree(
-        (variableDeclInfo.getInitializer()).getExpr(),
-        context.getShadingLanguageVersion(),
-        shaderKind);
+    return sideEffectAnalysis.isSideEffectFree((variableDeclInfo.getInitializer()).getExpr());
   }
 
   public final List<ReductionOpportunityT> getOpportunities() {
@@ -38,7 +38,6 @@ import com.graphicsfuzz.common.ast.visitors.CheckPredicateVisitor;
 import com.graphicsfuzz.common.transformreduce.ShaderJob;
 import com.graphicsfuzz.common.util.ListConcat;
 import com.graphicsfuzz.common.util.MacroNames;
-import com.graphicsfuzz.common.util.SideEffectChecker;
 import com.graphicsfuzz.common.util.StructUtils;
 import com.graphicsfuzz.util.Constants;
 import java.util.Arrays;
@@ -115,7 +114,7 @@ public class StmtReductionOpportunities
       return true;
     }
 
-    if (SideEffectChecker.isSideEffectFree(stmt, context.getShadingLanguageVersion(), shaderKind)) {
+    if (sideEffectAnalysis.isSideEffectFree(stmt)) {
       return true;
     }
 
@@ -22,18 +22,25 @@ import com.graphicsfuzz.common.util.GlslParserException;
 import com.graphicsfuzz.common.util.IRandom;
 import com.graphicsfuzz.common.util.IdGenerator;
 import com.graphicsfuzz.common.util.ParseTimeoutException;
-import com.graphicsfuzz.common.util.RandomWrapper;
+import com.graphicsfuzz.common.util.RandomAlgorithm;
 import com.graphicsfuzz.common.util.ReductionProgressHelper;
 import com.graphicsfuzz.common.util.ShaderJobFileOperations;
 import com.graphicsfuzz.common.util.ShaderKind;
 import com.graphicsfuzz.reducer.IFileJudge;
 import com.graphicsfuzz.reducer.ReductionDriver;
+import com.graphicsfuzz.reducer.ReductionJournal;
 import com.graphicsfuzz.reducer.ReductionKind;
 import com.graphicsfuzz.reducer.filejudge.CustomFileJudge;
 import com.graphicsfuzz.reducer.filejudge.FuzzingFileJudge;
+import com.graphicsfuzz.reducer.filejudge.IShaderResultSink;
 import com.graphicsfuzz.reducer.filejudge.ImageGenErrorShaderFileJudge;
 import com.graphicsfuzz.reducer.filejudge.ImageShaderFileJudge;
+import com.graphicsfuzz.reducer.filejudge.ResultRecording;
+import com.graphicsfuzz.reducer.filejudge.SharedJudgeResources;
+import com.graphicsfuzz.reducer.filejudge.TimeLimitedFileJudge;
 import com.graphicsfuzz.reducer.filejudge.ValidatorErrorShaderFileJudge;
+import com.graphicsfuzz.reducer.filejudge.ValidatorErrorShaderFileJudge.Validator;
+import com.graphicsfuzz.reducer.glslreducers.PassManagerKind;
 import com.graphicsfuzz.reducer.reductionopportunities.ReducerContext;
 import com.graphicsfuzz.server.thrift.FuzzerServiceManager;
 import com.graphicsfuzz.server.thrift.ImageComparisonMetric;
@@ -42,10 +49,12 @@ import com.graphicsfuzz.shadersets.IShaderDispatcher;
 import com.graphicsfuzz.shadersets.LocalShaderDispatcher;
 import com.graphicsfuzz.shadersets.MetricImageFileComparator;
 import com.graphicsfuzz.shadersets.RemoteShaderDispatcher;
-import com.graphicsfuzz.util.ArgsUtil;
+import com.graphicsfuzz.shadersets.RendererSession;
+import com.graphicsfuzz.shadersets.SessionShaderDispatcher;
 import com.graphicsfuzz.util.Constants;
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicLong;
@@ -72,7 +81,7 @@ public class GlslReduce {
       + ImageComparisonMetric.PSNR
       + ": --reduction-kind BELOW_THRESHOLD --threshold 30.0\n\n";
 
-  private static ArgumentParser getParser() {
+  static ArgumentParser getParser() {
 
     ArgumentParser parser = ArgumentParsers.newArgumentParser("glsl-reduce")
         .defaultHelp(true)
@@ -150,12 +159,28 @@ public class GlslReduce {
             + "generator that is used to control reduction decisions.")
         .type(String.class);
 
+    RandomAlgorithm.addRandomAlgorithmArgument(parser);
+
     parser.addArgument("--timeout")
         .help(
             "Time in seconds after which checking interestingness of a shader job is aborted.")
         .setDefault(30)
         .type(Integer.class);
 
+    parser.addArgument("--judge-timeout")
+        .help("Time in seconds after which any check of interestingness is cancelled, and the "
+            + "shader job deemed not interesting, so that a hung device or interestingness test "
+            + "cannot stall the reduction; if a cancelled check does not stop, the reduction "
+            + "stops. 0 means no limit.")
+        .setDefault(0)
+        .type(Integer.class);
+
+    parser.addArgument("--time-budget")
+        .help("Time in seconds after which no further reduction steps are started, and the "
+            + "best shader job found so far is output, as with --max-steps; 0 means no limit.")
+        .setDefault(0)
+        .type(Integer.class);
+
     parser.addArgument("--metric")
         .help("Metric used for image comparison.  Options are:\n"
             + "   " + ImageComparisonMetric.FUZZY_DIFF + "\n"
@@ -181,6 +206,12 @@ public class GlslReduce {
           .setDefault(2)
           .type(Integer.class);
 
+    parser.addArgument("--no-result-cache")
+        .help("Run every image job on a worker, even if the server has a cached result for an "
+            + "identical job; use this when checking whether a device renders shaders "
+            + "nondeterministically.")
+        .action(Arguments.storeTrue());
+
     parser.addArgument("--skip-render")
           .help("Don't render (just compile) the shader on remote workers. "
               + "Useful when reducing compile or link errors.")
@@ -188,7 +219,28 @@ public class GlslReduce {
 
     parser.addArgument("--error-string")
           .help("For NO_IMAGE reductions, a shader is deemed interesting if this string is found "
-              + "in the run log. E.g. \"Signal 11\".")
+              + "in the run log. E.g. \"Signal 11\".  For VALIDATOR_ERROR reductions, a shader is "
+              + "deemed interesting if this string is found in the validator output; an empty "
+              + "string matches any validation failure.")
+          .type(String.class);
+
+    parser.addArgument("--result-recording")
+          .help("For reductions that run shader jobs on a worker, how much of the result of each "
+              + "step to write to the output directory.  Options are:\n"
+              + "   " + ResultRecording.FULL + "  log, images and .info.json\n"
+              + "   " + ResultRecording.MINIMAL + "  just status and log; enough for "
+              + ReductionKind.NO_IMAGE + " reductions\n"
+              + "   " + ResultRecording.INTERESTING_ONLY + "  full results of interesting steps "
+              + "only\n")
+          .setDefault(ResultRecording.FULL.toString())
+          .type(String.class);
+
+    parser.addArgument("--validator")
+          .help("For VALIDATOR_ERROR reductions, the validator to run.  Options are:\n"
+              + "   " + Validator.GLSLANG + "  glslangValidator\n"
+              + "   " + Validator.GLSLANG_VULKAN + "  glslangValidator, targeting Vulkan\n"
+              + "   " + Validator.SHADER_TRANSLATOR + "  shader_translator\n")
+          .setDefault(Validator.GLSLANG.toString())
           .type(String.class);
 
     parser.addArgument("--server")
@@ -197,29 +249,53 @@ public class GlslReduce {
           .type(String.class);
 
     parser.addArgument("--worker")
-          .help("For non-CUSTOM reductions, shaders will be run on this worker. "
-              + "Use with --server.")
+          .help("For non-CUSTOM reductions, shaders will be run on this worker, or on any "
+              + "worker in a pool if given as pool:NAME. Use with --server.")
           .type(String.class);
 
     parser.addArgument("--stop-on-error")
           .help("Quit if something goes wrong during reduction; useful for testing.")
           .action(Arguments.storeTrue());
 
+    parser.addArgument("--renderer-session")
+          .help("For local reductions, run shaders in a renderer that stays alive between steps, "
+              + "started by this command and spoken to over its standard input and output; see "
+              + "RendererSession.  E.g. \"graphicsfuzz-tool "
+              + "com.graphicsfuzz.shadersets.StubRenderer\".  Jobs taking longer than --timeout "
+              + "are abandoned and the renderer restarted.")
+          .type(String.class);
+
     parser.addArgument("--swiftshader")
           .help("Use swiftshader for rendering.")
           .action(Arguments.storeTrue());
 
     parser.addArgument("--continue-previous-reduction")
           .help("Carry on from where a previous reduction attempt left off.  Requires the "
-              + "temporary files written by the previous reduction to be intact, including the "
-              + "presence of a " + Constants.REDUCTION_INCOMPLETE + " file.")
+              + "presence of a " + Constants.REDUCTION_INCOMPLETE + " file, and either the "
+              + "reduction journal or the temporary files written by the previous reduction to "
+              + "be intact.")
           .action(Arguments.storeTrue());
 
+    parser.addArgument("--replay-to-step")
+          .help("Rather than reducing, use the journal of a previous reduction to reconstruct the "
+              + "shader job it had reached after the given step (-1 for the last step), without "
+              + "running the interestingness test.")
+          .type(Integer.class);
+
     parser.addArgument("--literals-to-uniforms")
           .help("A special mode where the only \"reduction\" performed is replacing literal "
               + "numbers with uniforms.")
           .action(Arguments.storeTrue());
 
+    parser.addArgument("--pass-manager")
+        .help("How to apply reduction passes.  Options are:\n"
+            + "   " + PassManagerKind.SYSTEMATIC + "  passes grouped into initial, core and "
+            + "cleanup rounds\n"
+            + "   " + PassManagerKind.HIERARCHICAL + "  hierarchical delta debugging, from "
+            + "functions down to expressions, one AST level at a time\n")
+        .setDefault(PassManagerKind.SYSTEMATIC.toString())
+        .type(String.class);
+
     parser.addArgument("--no-ub-guards")
         .help("Do not emit guards against undefined behaviour (such as loop limiters and array "
             + "bounds clamping).")
@@ -246,6 +322,23 @@ public class GlslReduce {
         FuzzerServiceManager.Iface managerOverride)
       throws ArgumentParserException, IOException, ParseTimeoutException, InterruptedException,
       GlslParserException {
+    mainHelper(args, managerOverride, SharedJudgeResources.unshared());
+  }
+
+  /**
+   * Performs a reduction whose judge uses resources shared with other reductions.
+   * @param args The command line arguments of the reduction.
+   * @param managerOverride The fuzzer service manager, when running in the server process.
+   * @param sharedJudgeResources Resources shared with other reductions; if these include an image
+   *                             generator then it is used in place of any specified by the
+   *                             arguments.
+   */
+  public static void mainHelper(
+        String[] args,
+        FuzzerServiceManager.Iface managerOverride,
+        SharedJudgeResources sharedJudgeResources)
+      throws ArgumentParserException, IOException, ParseTimeoutException, InterruptedException,
+      GlslParserException {
 
     ArgumentParser parser = getParser();
 
@@ -263,8 +356,16 @@ public class GlslReduce {
     String shaderJobShortName = FilenameUtils.removeExtension(inputShaderJobFile.getName());
 
     try {
-      if (ns.get("reduction_kind").equals(ReductionKind.VALIDATOR_ERROR)
-            && ns.get("error_string") == null) {
+      ReductionKind reductionKind = null;
+      try {
+        reductionKind = ReductionKind.valueOf(((String) ns.get("reduction_kind")).toUpperCase());
+      } catch (IllegalArgumentException exception) {
+        throw new ArgumentParserException(
+              "unknown reduction kind argument found: " + ns.get("reduction_kind"),
+              parser);
+      }
+
+      if (reductionKind == ReductionKind.VALIDATOR_ERROR && ns.get("error_string") == null) {
         throw new ArgumentParserException(
               "If reduction kind is "
                     + ReductionKind.VALIDATOR_ERROR
@@ -272,13 +373,33 @@ public class GlslReduce {
               parser);
       }
 
-      ReductionKind reductionKind = null;
+      Validator validator = null;
       try {
-        reductionKind = ReductionKind.valueOf(((String) ns.get("reduction_kind")).toUpperCase());
+        validator = Validator.valueOf(((String) ns.get("validator")).toUpperCase());
       } catch (IllegalArgumentException exception) {
         throw new ArgumentParserException(
-              "unknown reduction kind argument found: " + ns.get("reduction_kind"),
-              parser);
+            "unknown validator argument found: " + ns.get("validator"),
+            parser);
+      }
+
+      ResultRecording resultRecording = null;
+      try {
+        resultRecording =
+            ResultRecording.valueOf(((String) ns.get("result_recording")).toUpperCase());
+      } catch (IllegalArgumentException exception) {
+        throw new ArgumentParserException(
+            "unknown result recording argument found: " + ns.get("result_recording"),
+            parser);
+      }
+
+      PassManagerKind passManagerKind = null;
+      try {
+        passManagerKind =
+            PassManagerKind.valueOf(((String) ns.get("pass_manager")).toUpperCase());
+      } catch (IllegalArgumentException exception) {
+        throw new ArgumentParserException(
+            "unknown pass manager argument found: " + ns.get("pass_manager"),
+            parser);
       }
 
       ImageComparisonMetric metric = null;
@@ -291,13 +412,17 @@ public class GlslReduce {
       }
 
       final double threshold = ns.get("threshold");
-      // TODO: integrate timeout into reducer
-      @SuppressWarnings("unused") Integer timeout = ns.get("timeout");
+      // TODO: integrate timeout into reducer; for now only validators and renderer sessions are
+      // subject to it.
+      final Integer timeout = ns.get("timeout");
       final Integer maxSteps = ns.get("max_steps");
+      final int judgeTimeout = ns.getInt("judge_timeout");
+      final int timeBudget = ns.getInt("time_budget");
       final Integer retryLimit = ns.get("retry_limit");
       final Boolean verbose = ns.get("verbose");
       final boolean skipRender = ns.get("skip_render");
-      final IRandom random = new RandomWrapper(ArgsUtil.getSeedArgument(ns));
+      final boolean noResultCache = ns.getBoolean("no_result_cache");
+      final IRandom random = RandomAlgorithm.createFromArgs(ns);
       final String errorString = ns.get("error_string");
       final boolean reduceEverywhere = !ns.getBoolean("preserve_semantics");
       final boolean addUbGuards = !ns.getBoolean("no_ub_guards");
@@ -307,26 +432,47 @@ public class GlslReduce {
       final String worker = ns.get("worker");
 
       final boolean usingSwiftshader = ns.get("swiftshader");
+      final String rendererSession = ns.get("renderer_session");
 
       final boolean continuePreviousReduction = ns.get("continue_previous_reduction");
 
+      final Optional<Integer> replayToStep = Optional.ofNullable(ns.get("replay_to_step"));
+
       final boolean literalsToUniforms = ns.get("literals_to_uniforms");
 
-      if (managerOverride != null && (server == null || worker == null)) {
+      final Optional<IShaderDispatcher> sharedImageGenerator =
+          sharedJudgeResources.getImageGenerator();
+
+      if (managerOverride != null && !sharedImageGenerator.isPresent()
+          && (server == null || worker == null)) {
         throw new ArgumentParserException(
               "Must supply server (dummy string) and worker when executing in server process.",
               parser);
       }
+      if (sharedImageGenerator.isPresent() && (server != null || rendererSession != null)) {
+        LOGGER.warn("Warning: --server, --worker and --renderer-session ignored, as a shared "
+            + "pool of devices is being used");
+      }
 
       if (server != null && worker == null) {
         throw new ArgumentParserException("If --server is used then --worker is required", parser);
       }
+      if (judgeTimeout < 0 || timeBudget < 0) {
+        throw new ArgumentParserException("--judge-timeout and --time-budget must not be "
+            + "negative.", parser);
+      }
       if (server == null && worker != null) {
         LOGGER.warn("Warning: --worker ignored, as it is used without --server");
       }
       if (server != null && usingSwiftshader) {
         LOGGER.warn("Warning: --swiftshader ignored, as --server is being used");
       }
+      if (server != null && rendererSession != null) {
+        LOGGER.warn("Warning: --renderer-session ignored, as --server is being used");
+      }
+      if (rendererSession != null && usingSwiftshader) {
+        LOGGER.warn("Warning: --swiftshader ignored, as --renderer-session is being used");
+      }
 
       final File referenceResultFile = ns.get("reference");
 
@@ -374,6 +520,14 @@ public class GlslReduce {
       if (continuePreviousReduction) {
         fileOps.assertExists(new File(workDir, Constants.REDUCTION_INCOMPLETE));
       }
+      if (replayToStep.isPresent()) {
+        if (continuePreviousReduction) {
+          throw new ArgumentParserException(
+              "--replay-to-step and --continue-previous-reduction cannot be used together.",
+              parser);
+        }
+        fileOps.assertExists(ReductionJournal.getJournalFile(workDir, shaderJobShortName));
+      }
 
       // Copy input files to output dir.
       File copiedShaderJobFile = new File(workDir, inputShaderJobFile.getName());
@@ -387,19 +541,34 @@ public class GlslReduce {
 
       IFileJudge fileJudge;
 
-      IShaderDispatcher imageGenerator =
+      final IShaderResultSink resultSink = resultRecording.createSink(fileOps);
+
+      final boolean local = server == null || server.isEmpty() || server.equals(".");
+      SessionShaderDispatcher sessionDispatcher = null;
+      if (local && rendererSession != null && !sharedImageGenerator.isPresent()) {
+        sessionDispatcher = new SessionShaderDispatcher(new RendererSession(
+            Arrays.asList(rendererSession.trim().split("\\s+")), timeout * 1000L));
+      }
 
-            server == null || server.isEmpty() || server.equals(".")
-                  ? new LocalShaderDispatcher(
-                      usingSwiftshader,
-                      fileOps,
-                      new File(workDir, "temp"))
-                  : new RemoteShaderDispatcher(
-                      server + "/manageAPI",
-                      worker,
-                      managerOverride,
-                      new AtomicLong(),
-                      retryLimit);
+      final IShaderDispatcher imageGenerator;
+      if (sharedImageGenerator.isPresent()) {
+        imageGenerator = sharedImageGenerator.get();
+      } else if (!local) {
+        imageGenerator = new RemoteShaderDispatcher(
+            server + "/manageAPI",
+            worker,
+            managerOverride,
+            new AtomicLong(),
+            retryLimit,
+            noResultCache);
+      } else if (sessionDispatcher != null) {
+        imageGenerator = sessionDispatcher;
+      } else {
+        imageGenerator = new LocalShaderDispatcher(
+            usingSwiftshader,
+            fileOps,
+            new File(workDir, "temp"));
+      }
 
       File corpus = new File(workDir, "corpus");
 
@@ -414,7 +583,7 @@ public class GlslReduce {
                       (errorString == null || errorString.isEmpty() ? null : errorString),
                       imageGenerator,
                       skipRender,
-                      stopOnError, fileOps);
+                      stopOnError, fileOps, resultSink);
           break;
         case NOT_IDENTICAL:
           fileJudge = new ImageShaderFileJudge(
@@ -422,7 +591,8 @@ public class GlslReduce {
               imageGenerator,
               stopOnError,
               new ExactImageFileComparator(false, fileOps),
-              fileOps);
+              fileOps,
+              resultSink);
           break;
         case IDENTICAL:
           fileJudge = new ImageShaderFileJudge(
@@ -430,7 +600,8 @@ public class GlslReduce {
               imageGenerator,
               stopOnError,
               new ExactImageFileComparator(true, fileOps),
-              fileOps);
+              fileOps,
+              resultSink);
           break;
         case BELOW_THRESHOLD:
           fileJudge = new ImageShaderFileJudge(
@@ -438,7 +609,8 @@ public class GlslReduce {
               imageGenerator,
               stopOnError,
               new MetricImageFileComparator(threshold, false, metric, fileOps),
-              fileOps);
+              fileOps,
+              resultSink);
           break;
         case ABOVE_THRESHOLD:
           fileJudge = new ImageShaderFileJudge(
@@ -446,10 +618,12 @@ public class GlslReduce {
               imageGenerator,
               stopOnError,
               new MetricImageFileComparator(threshold, true, metric, fileOps),
-              fileOps);
+              fileOps,
+              resultSink);
           break;
         case VALIDATOR_ERROR:
-          fileJudge = new ValidatorErrorShaderFileJudge(errorString.isEmpty() ? null : errorString);
+          fileJudge = new ValidatorErrorShaderFileJudge(errorString.isEmpty() ? null : errorString,
+              validator, timeout, fileOps, sharedJudgeResources.getValidatorVerdicts());
           break;
         case ALWAYS_REDUCE:
           fileJudge = (shaderJobFile, shaderResultFile) -> true;
@@ -463,19 +637,32 @@ public class GlslReduce {
                 parser);
       }
 
-      doReductionHelper(
-          inputShaderJobFile,
-          shaderJobShortName,
-          random,
-          fileJudge,
-          workDir,
-          maxSteps,
-          reduceEverywhere,
-          addUbGuards,
-          continuePreviousReduction,
-          literalsToUniforms,
-          verbose,
-          fileOps);
+      if (judgeTimeout > 0) {
+        fileJudge = new TimeLimitedFileJudge(fileJudge, judgeTimeout * 1000L);
+      }
+
+      try {
+        doReductionHelper(
+            inputShaderJobFile,
+            shaderJobShortName,
+            random,
+            fileJudge,
+            workDir,
+            maxSteps,
+            timeBudget * 1000L,
+            reduceEverywhere,
+            addUbGuards,
+            continuePreviousReduction,
+            replayToStep,
+            literalsToUniforms,
+            passManagerKind,
+            verbose,
+            fileOps);
+      } finally {
+        if (sessionDispatcher != null) {
+          sessionDispatcher.close();
+        }
+      }
 
     } catch (Throwable throwable) {
 
@@ -498,10 +685,13 @@ public class GlslReduce {
       IFileJudge fileJudge,
       File workDir,
       int stepLimit,
+      long timeBudgetMillis,
       boolean reduceEverywhere,
       boolean addUbGuards,
       boolean continuePreviousReduction,
+      Optional<Integer> replayToStep,
       boolean literalsToUniforms,
+      PassManagerKind passManagerKind,
       boolean verbose,
       ShaderJobFileOperations fileOps)
       throws IOException, ParseTimeoutException, InterruptedException, GlslParserException {
@@ -509,6 +699,48 @@ public class GlslReduce {
         getGlslVersionForShaderJob(initialShaderJobFile, fileOps);
     final IdGenerator idGenerator = new IdGenerator();
 
+    final ReductionDriver reductionDriver = new ReductionDriver(
+        new ReducerContext(
+            reduceEverywhere,
+            addUbGuards,
+            shadingLanguageVersion,
+            random,
+            idGenerator),
+        verbose,
+        fileOps,
+        fileJudge,
+        workDir,
+        literalsToUniforms,
+        passManagerKind);
+
+    // A journaled reduction is continued, or replayed, from the shader job it started from, so
+    // that no step files are needed.
+    final boolean useJournal = (continuePreviousReduction || replayToStep.isPresent())
+        && ReductionJournal.getJournalFile(workDir, outputShortName).isFile();
+    if (useJournal) {
+      final ShaderJob initialState = fileOps.readShaderJobFile(
+          ReductionJournal.getInitialShaderJobFile(workDir, outputShortName));
+      if (replayToStep.isPresent()) {
+        final String outputShaderJobShortName = replayToStep.get() < 0
+            ? outputShortName + "_reduced_replayed"
+            : ReductionDriver.getReductionStepShaderJobShortName(outputShortName,
+                replayToStep.get(), Optional.of("replayed"));
+        final File outputShaderJobFile = new File(workDir, outputShaderJobShortName + ".json");
+        reductionDriver.replay(initialState, outputShortName, replayToStep.get(),
+            outputShaderJobFile);
+        LOGGER.info("Replayed reduction to " + outputShaderJobFile);
+        return;
+      }
+      fileOps.deleteFile(new File(workDir, Constants.REDUCTION_INCOMPLETE));
+      reductionDriver.resumeReduction(initialState, outputShortName, stepLimit,
+          timeBudgetMillis);
+      return;
+    }
+    if (replayToStep.isPresent()) {
+      throw new IOException("No reduction journal to replay was found for " + outputShortName
+          + ".");
+    }
+
     final int fileCountOffset = getFileCountOffset(
         workDir,
         outputShortName,
@@ -531,23 +763,12 @@ public class GlslReduce {
             shaderJobFile
         );
 
-    new ReductionDriver(
-        new ReducerContext(
-            reduceEverywhere,
-            addUbGuards,
-            shadingLanguageVersion,
-            random,
-            idGenerator),
-        verbose,
-        fileOps,
-        fileJudge,
-        workDir,
-        literalsToUniforms)
-        .doReduction(
-            initialState,
-            outputShortName,
-            fileCountOffset,
-            stepLimit);
+    reductionDriver.doReduction(
+        initialState,
+        outputShortName,
+        fileCountOffset,
+        stepLimit,
+        timeBudgetMillis);
   }
 
   private static ShadingLanguageVersion getGlslVersionForShaderJob(
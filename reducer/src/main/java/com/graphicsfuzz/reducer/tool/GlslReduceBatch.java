@@ -0,0 +1,284 @@
+/*
+ * Copyright 2019 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.reducer.tool;
+
+import com.graphicsfuzz.reducer.ReductionKind;
+import com.graphicsfuzz.reducer.filejudge.SharedJudgeResources;
+import com.graphicsfuzz.reducer.filejudge.ValidatorErrorShaderFileJudge;
+import com.graphicsfuzz.server.thrift.FuzzerServiceManager;
+import com.graphicsfuzz.shadersets.IShaderDispatcher;
+import com.graphicsfuzz.shadersets.PooledShaderDispatcher;
+import com.graphicsfuzz.shadersets.RemoteShaderDispatcher;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.impl.Arguments;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
+import net.sourceforge.argparse4j.inf.Namespace;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+/**
+ * Performs many reductions at once, sharing a pool of devices and a cache of validator verdicts
+ * between their judges.
+ *
+ * <p>Each line of the batch file gives the glsl-reduce arguments of one reduction.  The
+ * reductions run on their own threads, each with its own output directory, random number
+ * generator and reduction state, so each reduces exactly as it would if run on its own; they
+ * only meet when they ask for a shader job to be rendered, at which point each waits for a free
+ * device, in turn.  Reduction steps of different shader jobs are thus interleaved, and a device
+ * is kept busy with one reduction's candidate while other reductions prepare theirs.</p>
+ *
+ * <p>Several workers may only share the reductions if none of them compares rendered images with a
+ * reference image, as images rendered by different devices may legitimately differ.</p>
+ */
+public class GlslReduceBatch {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(GlslReduceBatch.class);
+
+  // Reductions of these kinds compare the image rendered for each candidate with a reference
+  // image, so every candidate must be rendered by the same worker.
+  private static final Set<ReductionKind> IMAGE_COMPARING_KINDS = EnumSet.of(
+      ReductionKind.NOT_IDENTICAL,
+      ReductionKind.IDENTICAL,
+      ReductionKind.BELOW_THRESHOLD,
+      ReductionKind.ABOVE_THRESHOLD);
+
+  private static ArgumentParser getParser() {
+    ArgumentParser parser = ArgumentParsers.newArgumentParser("glsl-reduce-batch")
+        .defaultHelp(true)
+        .description("Reduce many shader jobs at once, sharing devices between them.");
+
+    // Required arguments
+    parser.addArgument("batch-file")
+        .help("File with the glsl-reduce arguments of one reduction per line, separated by "
+            + "whitespace.  Blank lines and lines starting with # are ignored.  Each reduction "
+            + "must have its own --output directory.")
+        .type(File.class);
+
+    // Optional arguments
+    parser.addArgument("--server")
+        .help("Server URL to which image jobs of all reductions are sent; overrides any --server "
+            + "given for a reduction.")
+        .type(String.class);
+
+    parser.addArgument("--worker")
+        .help("Comma-separated list of the workers to share between the reductions; required with "
+            + "--server.  More than one worker can only be given if no reduction compares images, "
+            + "i.e. for reduction kinds such as " + ReductionKind.NO_IMAGE + " and "
+            + ReductionKind.VALIDATOR_ERROR + ".")
+        .type(String.class);
+
+    parser.addArgument("--jobs-per-worker")
+        .help("Number of image jobs to have in flight at once for each worker.")
+        .setDefault(1)
+        .type(Integer.class);
+
+    parser.addArgument("--retry-limit")
+        .help("When getting an image via the server, the number of times the server should allow "
+            + "the worker to retry a shader before assuming the shader crashes the worker.")
+        .setDefault(2)
+        .type(Integer.class);
+
+    parser.addArgument("--no-result-cache")
+        .help("Run every image job on a worker, even if the server has a cached result for an "
+            + "identical job; use this when checking whether a device renders shaders "
+            + "nondeterministically.")
+        .action(Arguments.storeTrue());
+
+    parser.addArgument("--parallel-reductions")
+        .help("Number of reductions to run at once; by default, twice the number of image jobs "
+            + "that can be in flight, so that devices need not wait while reducers prepare "
+            + "candidates, or the number of processors if no --server is given.")
+        .type(Integer.class);
+
+    return parser;
+  }
+
+  public static void main(String[] args) {
+    try {
+      mainHelper(args, null);
+    } catch (ArgumentParserException exception) {
+      exception.getParser().handleError(exception);
+      System.exit(1);
+    } catch (Throwable ex) {
+      ex.printStackTrace();
+      System.exit(1);
+    }
+  }
+
+  public static void mainHelper(
+        String[] args,
+        FuzzerServiceManager.Iface managerOverride)
+      throws ArgumentParserException, IOException, InterruptedException {
+
+    final ArgumentParser parser = getParser();
+    final Namespace ns = parser.parseArgs(args);
+
+    final String server = ns.get("server");
+    final String worker = ns.get("worker");
+    final int jobsPerWorker = ns.getInt("jobs_per_worker");
+
+    if (managerOverride != null && (server == null || worker == null)) {
+      throw new ArgumentParserException(
+          "Must supply server (dummy string) and worker when executing in server process.",
+          parser);
+    }
+    if (server != null && worker == null) {
+      throw new ArgumentParserException("If --server is used then --worker is required", parser);
+    }
+    if (jobsPerWorker < 1) {
+      throw new ArgumentParserException("Number of jobs per worker must be positive.", parser);
+    }
+
+    final boolean severalWorkers = worker != null
+        && Arrays.stream(worker.split(",")).map(String::trim).distinct().count() > 1;
+    final List<String[]> reductions = readReductions(ns.get("batch_file"), severalWorkers,
+        parser);
+
+    Optional<IShaderDispatcher> imageGenerator = Optional.empty();
+    int numDevices = 0;
+    if (server != null) {
+      final AtomicLong jobCounter = new AtomicLong();
+      final List<IShaderDispatcher> dispatchers = new ArrayList<>();
+      for (String workerName : worker.split(",")) {
+        final IShaderDispatcher dispatcher = new RemoteShaderDispatcher(
+            server + "/manageAPI",
+            workerName.trim(),
+            managerOverride,
+            jobCounter,
+            ns.getInt("retry_limit"),
+            ns.getBoolean("no_result_cache"));
+        for (int i = 0; i < jobsPerWorker; i++) {
+          dispatchers.add(dispatcher);
+        }
+      }
+      imageGenerator = Optional.of(new PooledShaderDispatcher(dispatchers));
+      numDevices = dispatchers.size();
+    }
+    final SharedJudgeResources sharedJudgeResources = new SharedJudgeResources(imageGenerator,
+        ValidatorErrorShaderFileJudge.createVerdictCache());
+
+    final Integer parallelReductions = ns.get("parallel_reductions");
+    final int numThreads = Math.min(reductions.size(), parallelReductions != null
+        ? parallelReductions
+        : (numDevices > 0 ? 2 * numDevices : Runtime.getRuntime().availableProcessors()));
+    if (numThreads < 1) {
+      throw new ArgumentParserException("Number of parallel reductions must be positive.",
+          parser);
+    }
+
+    LOGGER.info("Running {} reductions, {} at a time.", reductions.size(), numThreads);
+    final ExecutorService executorService = Executors.newFixedThreadPool(numThreads);
+    final List<Future<?>> futures = new ArrayList<>();
+    try {
+      for (int i = 0; i < reductions.size(); i++) {
+        final String[] reductionArgs = reductions.get(i);
+        final String name = "reduction" + i;
+        futures.add(executorService.submit(() -> {
+          MDC.put("worker", name);
+          try {
+            GlslReduce.mainHelper(reductionArgs, managerOverride, sharedJudgeResources);
+          } finally {
+            MDC.remove("worker");
+          }
+          return null;
+        }));
+      }
+      int numFailed = 0;
+      for (int i = 0; i < futures.size(); i++) {
+        try {
+          futures.get(i).get();
+        } catch (ExecutionException exception) {
+          // The reduction will have recorded the problem in its output directory.
+          numFailed++;
+          LOGGER.error("Reduction " + i + " (" + String.join(" ", reductions.get(i))
+              + ") failed.", exception.getCause());
+        }
+      }
+      LOGGER.info("{} of {} reductions completed.", reductions.size() - numFailed,
+          reductions.size());
+      if (numFailed > 0) {
+        throw new RuntimeException(numFailed + " of " + reductions.size()
+            + " reductions failed.");
+      }
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+
+  // Reads the arguments of the reductions, checking them up front so that a mistake in one line
+  // is found before hours are spent on the others.
+  private static List<String[]> readReductions(File batchFile, boolean severalWorkers,
+      ArgumentParser parser) throws IOException, ArgumentParserException {
+    final List<String[]> result = new ArrayList<>();
+    final Map<File, Integer> outputDirs = new HashMap<>();
+    final List<String> lines = Files.readAllLines(batchFile.toPath(), StandardCharsets.UTF_8);
+    for (int i = 0; i < lines.size(); i++) {
+      final String line = lines.get(i).trim();
+      if (line.isEmpty() || line.startsWith("#")) {
+        continue;
+      }
+      final String[] reductionArgs = line.split("\\s+");
+      final Namespace reductionNs;
+      try {
+        reductionNs = GlslReduce.getParser().parseArgs(reductionArgs);
+      } catch (ArgumentParserException exception) {
+        throw new ArgumentParserException("Line " + (i + 1) + " of " + batchFile + ": "
+            + exception.getMessage(), parser);
+      }
+      if (severalWorkers) {
+        final String reductionKind = reductionNs.getString("reduction_kind");
+        if (IMAGE_COMPARING_KINDS.stream().anyMatch(
+            item -> item.toString().equalsIgnoreCase(reductionKind))) {
+          throw new ArgumentParserException("Line " + (i + 1) + " of " + batchFile + ": a "
+              + reductionKind + " reduction compares images, so it cannot share several workers, "
+              + "whose images may differ; give a single --worker.", parser);
+        }
+      }
+      final File outputDir = ((File) reductionNs.get("output")).getCanonicalFile();
+      if (outputDirs.containsKey(outputDir)) {
+        throw new ArgumentParserException("Lines " + outputDirs.get(outputDir) + " and " + (i + 1)
+            + " of " + batchFile + " have the same output directory: " + outputDir, parser);
+      }
+      outputDirs.put(outputDir, i + 1);
+      result.add(reductionArgs);
+    }
+    if (result.isEmpty()) {
+      throw new ArgumentParserException("No reductions found in " + batchFile, parser);
+    }
+    return result;
+  }
+
+}
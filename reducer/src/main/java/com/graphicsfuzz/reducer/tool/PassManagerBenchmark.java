@@ -0,0 +1,230 @@
+/*
+ * Copyright 2019 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.reducer.tool;
+
+import com.graphicsfuzz.common.ast.IAstNode;
+import com.graphicsfuzz.common.ast.TranslationUnit;
+import com.graphicsfuzz.common.ast.expr.FunctionCallExpr;
+import com.graphicsfuzz.common.ast.visitors.StandardVisitor;
+import com.graphicsfuzz.common.glslversion.ShadingLanguageVersion;
+import com.graphicsfuzz.common.transformreduce.ShaderJob;
+import com.graphicsfuzz.common.util.IdGenerator;
+import com.graphicsfuzz.common.util.RandomWrapper;
+import com.graphicsfuzz.common.util.ShaderJobFileOperations;
+import com.graphicsfuzz.common.util.ShaderKind;
+import com.graphicsfuzz.common.util.StatsVisitor;
+import com.graphicsfuzz.reducer.CheckAstFeatureVisitor;
+import com.graphicsfuzz.reducer.CheckAstFeaturesFileJudge;
+import com.graphicsfuzz.reducer.FileJudgeException;
+import com.graphicsfuzz.reducer.IFileJudge;
+import com.graphicsfuzz.reducer.ReductionDriver;
+import com.graphicsfuzz.reducer.glslreducers.PassManagerKind;
+import com.graphicsfuzz.reducer.reductionopportunities.ReducerContext;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Optional;
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.impl.Arguments;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
+import net.sourceforge.argparse4j.inf.Namespace;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+
+/**
+ * Compares the pass managers by the number of calls to the interestingness judge needed to
+ * reduce each fragment shader job in a directory, e.g. the tester's shaders, to a result that is
+ * 1-minimal with respect to the passes.
+ *
+ * <p>A shader job is deemed interesting if it still calls, from main, the function whose call is
+ * most deeply nested in the original shader, so that a lot of the surrounding code must be
+ * reduced away around something that has to stay.</p>
+ */
+public class PassManagerBenchmark {
+
+  private static Namespace parse(String[] args) throws ArgumentParserException {
+    ArgumentParser parser = ArgumentParsers.newArgumentParser("PassManagerBenchmark")
+        .defaultHelp(true)
+        .description("Count the judge calls each reduction pass manager needs to reduce the "
+            + "shader jobs in a directory.");
+
+    // Required arguments
+    parser.addArgument("shader-jobs")
+        .help("Directory of shader jobs to reduce; those that are not fragment-only are skipped.")
+        .type(File.class);
+
+    // Optional arguments
+    parser.addArgument("--seed")
+        .help("Seed for the reducer's random number generator.")
+        .setDefault(0)
+        .type(Integer.class);
+
+    parser.addArgument("--preserve-semantics")
+        .help("Only perform semantics-preserving reductions.")
+        .action(Arguments.storeTrue());
+
+    return parser.parseArgs(args);
+  }
+
+  public static void main(String[] args) {
+    try {
+      final Namespace ns = parse(args);
+      final ShaderJobFileOperations fileOps = new ShaderJobFileOperations();
+      final File[] shaderJobFiles = fileOps.listShaderJobFiles(ns.get("shader_jobs"));
+      if (shaderJobFiles == null) {
+        throw new IllegalArgumentException("Not a directory: " + ns.get("shader_jobs"));
+      }
+
+      System.out.println("shader job, pass manager, judge calls, nodes before, nodes after");
+      final long[] totalJudgeCalls = new long[PassManagerKind.values().length];
+      for (File shaderJobFile : shaderJobFiles) {
+        if (!fileOps.doesShaderExist(shaderJobFile, ShaderKind.FRAGMENT)
+            || fileOps.doesShaderExist(shaderJobFile, ShaderKind.VERTEX)
+            || fileOps.doesShaderExist(shaderJobFile, ShaderKind.COMPUTE)) {
+          continue;
+        }
+        final ShaderJob shaderJob = fileOps.readShaderJobFile(shaderJobFile);
+        final TranslationUnit tu = shaderJob.getFragmentShader().get();
+        final Optional<String> callee = findMostDeeplyNestedCallee(tu);
+        if (!callee.isPresent()) {
+          System.out.println(shaderJobFile.getName() + ": skipped; no function calls");
+          continue;
+        }
+        for (PassManagerKind passManagerKind : PassManagerKind.values()) {
+          final CountingFileJudge judge = new CountingFileJudge(
+              new CheckAstFeaturesFileJudge(Collections.singletonList(
+                  () -> new CheckAstFeatureVisitor() {
+                    @Override
+                    public void visitFunctionCallExpr(FunctionCallExpr functionCallExpr) {
+                      super.visitFunctionCallExpr(functionCallExpr);
+                      if (functionCallExpr.getCallee().equals(callee.get())) {
+                        trigger();
+                      }
+                    }
+                  }), ShaderKind.FRAGMENT, fileOps));
+          final String nodesAfter = reduce(shaderJobFile, passManagerKind, judge,
+              ns.getInt("seed"), !ns.getBoolean("preserve_semantics"), fileOps);
+          totalJudgeCalls[passManagerKind.ordinal()] += judge.getNumCalls();
+          System.out.println(shaderJobFile.getName() + ", " + passManagerKind + ", "
+              + judge.getNumCalls() + ", " + new StatsVisitor(tu).getNumNodes() + ", "
+              + nodesAfter);
+        }
+      }
+      for (PassManagerKind passManagerKind : PassManagerKind.values()) {
+        System.out.println("Total judge calls for " + passManagerKind + ": "
+            + totalJudgeCalls[passManagerKind.ordinal()]);
+      }
+    } catch (ArgumentParserException exception) {
+      exception.getParser().handleError(exception);
+      System.exit(1);
+    } catch (Throwable exception) {
+      exception.printStackTrace();
+      System.exit(1);
+    }
+  }
+
+  // Reduces the shader job in a temporary directory, and returns the size of the result, or a
+  // note saying why there is no result.
+  private static String reduce(File shaderJobFile, PassManagerKind passManagerKind,
+                               IFileJudge judge, int seed, boolean reduceEverywhere,
+                               ShaderJobFileOperations fileOps) throws Exception {
+    final File workDir = Files.createTempDirectory("passmanagerbenchmark").toFile();
+    try {
+      final String shortName = FilenameUtils.removeExtension(shaderJobFile.getName());
+      final File workShaderJobFile = new File(workDir, shaderJobFile.getName());
+      fileOps.copyShaderJobFileTo(shaderJobFile, workShaderJobFile, false);
+      final ShaderJob initialState = fileOps.readShaderJobFile(workShaderJobFile);
+      if (!judge.isInteresting(workShaderJobFile, new File(workDir, shortName + ".info.json"))) {
+        return "not interesting to start with";
+      }
+      final String resultPrefix = new ReductionDriver(
+          new ReducerContext(
+              reduceEverywhere,
+              true,
+              ShadingLanguageVersion.getGlslVersionFromFirstTwoLines(
+                  fileOps.getFirstTwoLinesOfShader(workShaderJobFile, ShaderKind.FRAGMENT)),
+              new RandomWrapper(seed),
+              new IdGenerator()),
+          false,
+          fileOps,
+          judge,
+          workDir,
+          false,
+          passManagerKind)
+          .doReduction(initialState, shortName, 0, -1);
+      final ShaderJob result = fileOps.readShaderJobFile(new File(workDir,
+          resultPrefix + ".json"));
+      return String.valueOf(new StatsVisitor(result.getFragmentShader().get()).getNumNodes());
+    } finally {
+      FileUtils.deleteQuietly(workDir);
+    }
+  }
+
+  private static Optional<String> findMostDeeplyNestedCallee(TranslationUnit tu) {
+    return new StandardVisitor() {
+      private int depth = 0;
+      private int deepest = -1;
+      private Optional<String> callee = Optional.empty();
+
+      @Override
+      public void visit(IAstNode node) {
+        depth++;
+        super.visit(node);
+        depth--;
+      }
+
+      @Override
+      public void visitFunctionCallExpr(FunctionCallExpr functionCallExpr) {
+        super.visitFunctionCallExpr(functionCallExpr);
+        if (depth > deepest) {
+          deepest = depth;
+          callee = Optional.of(functionCallExpr.getCallee());
+        }
+      }
+
+      private Optional<String> find() {
+        visit(tu);
+        return callee;
+      }
+    }.find();
+  }
+
+  private static class CountingFileJudge implements IFileJudge {
+
+    private final IFileJudge judge;
+    private int numCalls;
+
+    CountingFileJudge(IFileJudge judge) {
+      this.judge = judge;
+      this.numCalls = 0;
+    }
+
+    @Override
+    public boolean isInteresting(File shaderJobFile, File shaderResultFileOutput)
+        throws FileJudgeException {
+      numCalls++;
+      return judge.isInteresting(shaderJobFile, shaderResultFileOutput);
+    }
+
+    int getNumCalls() {
+      return numCalls;
+    }
+
+  }
+
+}
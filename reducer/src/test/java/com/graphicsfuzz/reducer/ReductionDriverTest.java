@@ -21,6 +21,7 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import com.graphicsfuzz.common.ast.TranslationUnit;
 import com.graphicsfuzz.common.ast.expr.BinOp;
@@ -42,9 +43,14 @@ import com.graphicsfuzz.common.util.ParseHelper;
 import com.graphicsfuzz.common.util.ParseTimeoutException;
 import com.graphicsfuzz.common.util.PipelineInfo;
 import com.graphicsfuzz.common.util.RandomWrapper;
+import com.graphicsfuzz.common.util.ReductionProgressHelper;
 import com.graphicsfuzz.common.util.ShaderJobFileOperations;
 import com.graphicsfuzz.common.util.ShaderKind;
+import com.graphicsfuzz.reducer.glslreducers.IReductionPass;
+import com.graphicsfuzz.reducer.glslreducers.PassManagerKind;
+import com.graphicsfuzz.reducer.glslreducers.SystematicReductionPass;
 import com.graphicsfuzz.reducer.reductionopportunities.IReductionOpportunity;
+import com.graphicsfuzz.reducer.reductionopportunities.IReductionOpportunityFinder;
 import com.graphicsfuzz.reducer.reductionopportunities.MakeShaderJobFromFragmentShader;
 import com.graphicsfuzz.reducer.reductionopportunities.ReducerContext;
 import com.graphicsfuzz.reducer.reductionopportunities.ReductionOpportunities;
@@ -55,8 +61,10 @@ import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.junit.Rule;
@@ -1118,4 +1126,249 @@ public class ReductionDriverTest {
 
   }
 
+  @Test
+  public void testHierarchicalReduction() throws Exception {
+    final String shader = "#version 310 es\n"
+        + "precision highp float;\n"
+        + "layout(location = 0) out vec4 _GLF_color;\n"
+        + "void bar() { int x = 1; x = 2; }\n"
+        + "void foo() { }\n"
+        + "void main() {\n"
+        + "  int i = 0;\n"
+        + "  if (i == 0) {\n"
+        + "    bar();\n"
+        + "    if (i < 1) {\n"
+        + "      i++;\n"
+        + "      foo();\n"
+        + "      i--;\n"
+        + "    }\n"
+        + "  }\n"
+        + "  for (int j = 0; j < 2; j++) {\n"
+        + "    bar();\n"
+        + "  }\n"
+        + "  _GLF_color = vec4(1.0);\n"
+        + "}\n";
+
+    final ShaderJob shaderJob = new GlslShaderJob(Optional.empty(),
+        new PipelineInfo(),
+        ParseHelper.parse(shader));
+
+    final File workDir = testFolder.getRoot();
+    final File tempShaderJobFile = new File(workDir, "temp.json");
+    fileOps.writeShaderJobFile(shaderJob, tempShaderJobFile);
+
+    // Interesting as long as foo is still called; the call is nested two levels deep.
+    final IFileJudge callsFoo = (file, unused) -> {
+      try {
+        return fileOps.readShaderJobFile(file).getShaders().get(0).getText().contains("foo();");
+      } catch (Exception exception) {
+        throw new RuntimeException(exception);
+      }
+    };
+
+    final String resultsPrefix = new ReductionDriver(new ReducerContext(true,
+        true,
+        ShadingLanguageVersion.ESSL_310,
+        new RandomWrapper(0),
+        new IdGenerator()),
+        false,
+        fileOps,
+        callsFoo,
+        workDir,
+        false,
+        PassManagerKind.HIERARCHICAL)
+        .doReduction(shaderJob, "temp", 0, -1);
+
+    final String result = ParseHelper.parse(new File(testFolder.getRoot(),
+        resultsPrefix + ".frag")).getText();
+    assertTrue(result.contains("foo();"));
+    assertFalse(result.contains("bar"));
+    assertFalse(result.contains("if"));
+    assertFalse(result.contains("for"));
+    assertFalse(new File(workDir, Constants.REDUCTION_INCOMPLETE).exists());
+  }
+
+
+  @Test
+  public void testReplayAndResumeFromJournal() throws Exception {
+    final String shader = "#version 310 es\n"
+        + "precision highp float;\n"
+        + "layout(location = 0) out vec4 _GLF_color;\n"
+        + "void bar() { int x = 1; x = 2; }\n"
+        + "void foo() { }\n"
+        + "void main() {\n"
+        + "  int i = 0;\n"
+        + "  if (i == 0) {\n"
+        + "    bar();\n"
+        + "    foo();\n"
+        + "  }\n"
+        + "  for (int j = 0; j < 2; j++) {\n"
+        + "    bar();\n"
+        + "  }\n"
+        + "  _GLF_color = vec4(1.0);\n"
+        + "}\n";
+
+    final File workDir = testFolder.getRoot();
+    final IFileJudge callsFoo = (file, unused) -> {
+      try {
+        return fileOps.readShaderJobFile(file).getShaders().get(0).getText().contains("foo();");
+      } catch (Exception exception) {
+        throw new RuntimeException(exception);
+      }
+    };
+    final IFileJudge mustNotBeCalled = (file, unused) -> {
+      throw new RuntimeException("Replaying a journal should not require judgement.");
+    };
+
+    // Stop the reduction part of the way through.
+    new ReductionDriver(new ReducerContext(true, true, ShadingLanguageVersion.ESSL_310,
+        new RandomWrapper(0), new IdGenerator()), false, fileOps, callsFoo, workDir)
+        .doReduction(new GlslShaderJob(Optional.empty(), new PipelineInfo(),
+            ParseHelper.parse(shader)), "temp", 0, 10);
+    assertTrue(new File(workDir, Constants.REDUCTION_INCOMPLETE).exists());
+    assertTrue(ReductionJournal.getJournalFile(workDir, "temp").isFile());
+
+    // Replaying the journal should give the last state that the reduction found interesting.
+    final int latestSuccess =
+        ReductionProgressHelper.getLatestReductionStepSuccess(workDir, "temp", fileOps).get();
+    final File replayed = new File(workDir, "replayed.json");
+    new ReductionDriver(new ReducerContext(true, true, ShadingLanguageVersion.ESSL_310,
+        new RandomWrapper(0), new IdGenerator()), false, fileOps, mustNotBeCalled, workDir)
+        .replay(fileOps.readShaderJobFile(ReductionJournal.getInitialShaderJobFile(workDir,
+            "temp")), "temp", 10, replayed);
+    CompareAsts.assertEqualAsts(
+        fileOps.readShaderJobFile(new File(workDir,
+            ReductionDriver.getReductionStepShaderJobShortName("temp", latestSuccess,
+                Optional.of("success")) + ".json")).getFragmentShader().get(),
+        fileOps.readShaderJobFile(replayed).getFragmentShader().get());
+
+    // Resuming from the journal should carry on from that state and finish the reduction.
+    final String resultsPrefix = new ReductionDriver(new ReducerContext(true, true,
+        ShadingLanguageVersion.ESSL_310, new RandomWrapper(0), new IdGenerator()), false, fileOps,
+        callsFoo, workDir)
+        .resumeReduction(fileOps.readShaderJobFile(ReductionJournal.getInitialShaderJobFile(
+            workDir, "temp")), "temp", -1, 0);
+    final String result = ParseHelper.parse(new File(workDir, resultsPrefix + ".frag")).getText();
+    assertTrue(result.contains("foo();"));
+    assertFalse(result.contains("bar"));
+    assertTrue(ReductionJournal.getJournalFile(workDir, "temp").isFile());
+  }
+
+  @Test
+  public void testReplayDistinguishesPassesWithTheSameName() throws Exception {
+    // The passes that remove local and global variable declarations are both named
+    // "variableDecl", so a replayed step must be matched to its pass by position.
+    final ReducerContext context = new ReducerContext(true, true, ShadingLanguageVersion.ESSL_310,
+        new RandomWrapper(0), new IdGenerator());
+    final List<IReductionPass> passes = Arrays.asList(
+        new SystematicReductionPass(context, false,
+            IReductionOpportunityFinder.variableDeclFinder()),
+        new SystematicReductionPass(context, false,
+            IReductionOpportunityFinder.globalVariablesDeclarationFinder()));
+    assertEquals(passes.get(0).getName(), passes.get(1).getName());
+    final ShaderJob initialState = new GlslShaderJob(Optional.empty(), new PipelineInfo(),
+        ParseHelper.parse("#version 310 es\n"
+            + "struct S { int a; };\n"
+            + "void main() { int x; }\n"));
+
+    final ShaderJob replayed = ReductionJournal.replay(initialState, Collections.singletonList(
+        new ReductionJournal.Step(1, "variableDecl", 1, Collections.singletonList(0), 0, true,
+            false, "")), Integer.MAX_VALUE, passes, context.getIdGenerator());
+    CompareAsts.assertEqualAsts("#version 310 es\n"
+        + "void main() { int x; }\n", replayed.getFragmentShader().get());
+
+    try {
+      ReductionJournal.replay(initialState, Collections.singletonList(
+          new ReductionJournal.Step(1, "stmt", 1, Collections.singletonList(0), 0, true,
+              false, "")), Integer.MAX_VALUE, passes, context.getIdGenerator());
+      fail("A step whose pass name does not match the pass at its position should be rejected.");
+    } catch (IllegalStateException exception) {
+      assertTrue(exception.getMessage().contains("no pass named stmt at position 1"));
+    }
+  }
+
+
+  @Test
+  public void testTimedOutJudgementsAreJournaledAsSuch() throws Exception {
+    final String shader = "#version 310 es\n"
+        + "precision highp float;\n"
+        + "layout(location = 0) out vec4 _GLF_color;\n"
+        + "void bar() { int x = 1; x = 2; }\n"
+        + "void foo() { }\n"
+        + "void main() {\n"
+        + "  bar();\n"
+        + "  foo();\n"
+        + "  _GLF_color = vec4(1.0);\n"
+        + "}\n";
+    final File workDir = testFolder.getRoot();
+    final Set<String> timingOut = new HashSet<>(Arrays.asList(
+        ReductionDriver.getReductionStepShaderJobShortName("temp", 2, Optional.empty()),
+        ReductionDriver.getReductionStepShaderJobShortName("temp", 4, Optional.empty())));
+    final IFileJudge sometimesTimesOut = (file, unused) -> {
+      if (timingOut.contains(FilenameUtils.removeExtension(file.getName()))) {
+        throw new JudgeTimeoutException("Judging " + file + " took too long.");
+      }
+      try {
+        return fileOps.readShaderJobFile(file).getShaders().get(0).getText().contains("foo();");
+      } catch (Exception exception) {
+        throw new RuntimeException(exception);
+      }
+    };
+
+    final String resultsPrefix = new ReductionDriver(new ReducerContext(true, true,
+        ShadingLanguageVersion.ESSL_310, new RandomWrapper(0), new IdGenerator()), false, fileOps,
+        sometimesTimesOut, workDir)
+        .doReduction(new GlslShaderJob(Optional.empty(), new PipelineInfo(),
+            ParseHelper.parse(shader)), "temp", 0, -1);
+    assertTrue(ParseHelper.parse(new File(workDir, resultsPrefix + ".frag")).getText()
+        .contains("foo();"));
+
+    final List<ReductionJournal.Step> steps =
+        new ReductionJournal(ReductionJournal.getJournalFile(workDir, "temp")).readSteps();
+    assertTrue(steps.size() > 4);
+    for (ReductionJournal.Step step : steps) {
+      final boolean shouldTimeOut = step.getStep() == 2 || step.getStep() == 4;
+      assertEquals(shouldTimeOut, step.isTimedOut());
+      if (shouldTimeOut) {
+        assertFalse(step.isInteresting());
+      }
+    }
+  }
+
+  @Test
+  public void testTimeBudgetStopsReduction() throws Exception {
+    final String shader = "#version 310 es\n"
+        + "precision highp float;\n"
+        + "layout(location = 0) out vec4 _GLF_color;\n"
+        + "void main() {\n"
+        + "  int a = 1;\n"
+        + "  int b = 2;\n"
+        + "  int c = 3;\n"
+        + "  int d = 4;\n"
+        + "  _GLF_color = vec4(float(a + b + c + d));\n"
+        + "}\n";
+    final File workDir = testFolder.getRoot();
+    final IFileJudge slowJudge = (file, unused) -> {
+      try {
+        Thread.sleep(100);
+      } catch (InterruptedException exception) {
+        throw new FileJudgeException(exception);
+      }
+      return true;
+    };
+
+    final String resultsPrefix = new ReductionDriver(new ReducerContext(true, true,
+        ShadingLanguageVersion.ESSL_310, new RandomWrapper(0), new IdGenerator()), false, fileOps,
+        slowJudge, workDir)
+        .doReduction(new GlslShaderJob(Optional.empty(), new PipelineInfo(),
+            ParseHelper.parse(shader)), "temp", 0, -1, 500);
+
+    assertTrue(new File(workDir, resultsPrefix + ".frag").isFile());
+    assertTrue(new File(workDir, Constants.REDUCTION_INCOMPLETE).exists());
+    final String progress = FileUtils.readFileToString(
+        ReductionProgressHelper.getReductionProgressFile(workDir, "temp"),
+        StandardCharsets.UTF_8);
+    assertTrue(progress.contains("STOPPED_AT_TIME_BUDGET"));
+  }
+
 }
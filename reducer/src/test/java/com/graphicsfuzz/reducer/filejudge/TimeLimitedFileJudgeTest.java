@@ -0,0 +1,126 @@
+/*
+ * Copyright 2019 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.reducer.filejudge;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.graphicsfuzz.reducer.FileJudgeException;
+import com.graphicsfuzz.reducer.IFileJudge;
+import com.graphicsfuzz.reducer.JudgeTimeoutException;
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class TimeLimitedFileJudgeTest {
+
+  private static final File SHADER_JOB = new File("shader.json");
+  private static final File RESULT = new File("shader.info.json");
+
+  @Test
+  public void testHungJudgeIsCancelled() throws Exception {
+    final CountDownLatch cancelled = new CountDownLatch(1);
+    final IFileJudge hangs = (file, unused) -> {
+      try {
+        Thread.sleep(TimeUnit.HOURS.toMillis(1));
+      } catch (InterruptedException exception) {
+        cancelled.countDown();
+        throw new FileJudgeException(exception);
+      }
+      return true;
+    };
+    final TimeLimitedFileJudge judge = new TimeLimitedFileJudge(hangs, 100);
+    try {
+      judge.isInteresting(SHADER_JOB, RESULT);
+      fail();
+    } catch (JudgeTimeoutException exception) {
+      // Expected.
+    }
+    assertTrue(cancelled.await(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testCallThatIgnoresCancellationStopsJudging() throws Exception {
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicBoolean overlapped = new AtomicBoolean(false);
+    final CountDownLatch released = new CountDownLatch(1);
+    final IFileJudge ignoresInterruption = (file, unused) -> {
+      if (running.incrementAndGet() > 1) {
+        overlapped.set(true);
+      }
+      while (true) {
+        try {
+          released.await();
+          break;
+        } catch (InterruptedException exception) {
+          // Keep going regardless.
+        }
+      }
+      running.decrementAndGet();
+      return true;
+    };
+    final TimeLimitedFileJudge judge = new TimeLimitedFileJudge(ignoresInterruption, 100, 100);
+    // The call does not end when cancelled, which is not a timeout but a failure.
+    assertNotTimeoutFailure(judge);
+    // The first call is still running, so this one fails rather than waiting for it.
+    assertNotTimeoutFailure(judge);
+    released.countDown();
+    // Once the first call has ended, judging carries on.
+    for (int i = 0; ; i++) {
+      try {
+        assertTrue(judge.isInteresting(SHADER_JOB, RESULT));
+        break;
+      } catch (FileJudgeException exception) {
+        assertTrue(i < 10000);
+        Thread.sleep(1);
+      }
+    }
+    assertFalse(overlapped.get());
+  }
+
+  private static void assertNotTimeoutFailure(TimeLimitedFileJudge judge) {
+    try {
+      judge.isInteresting(SHADER_JOB, RESULT);
+      fail();
+    } catch (JudgeTimeoutException exception) {
+      fail("A call that cannot be judged is not a timeout.");
+    } catch (FileJudgeException exception) {
+      // Expected.
+    }
+  }
+
+  @Test
+  public void testVerdictAndFailureArePassedOn() throws Exception {
+    assertTrue(new TimeLimitedFileJudge((file, unused) -> true, 10000)
+        .isInteresting(SHADER_JOB, RESULT));
+    assertFalse(new TimeLimitedFileJudge((file, unused) -> false, 10000)
+        .isInteresting(SHADER_JOB, RESULT));
+    try {
+      new TimeLimitedFileJudge((file, unused) -> {
+        throw new FileJudgeException("Broken judge.");
+      }, 10000).isInteresting(SHADER_JOB, RESULT);
+      fail();
+    } catch (FileJudgeException exception) {
+      assertTrue(exception.getMessage().contains("Broken judge."));
+    }
+  }
+
+}
@@ -693,4 +693,39 @@ public class StmtReductionOpportunitiesTest {
     CompareAsts.assertEqualAsts(expected, tu);
   }
 
+  @Test
+  public void testCallToSideEffectFreeFunctionRemoved() throws Exception {
+    final String program = "int g;"
+        + "float f(float x) { x = x + 1.0; return x; }"
+        + "void h() { g = 1; }"
+        + "void main() { f(1.0); h(); }";
+    final String reducedProgram = "int g;"
+        + "float f(float x) { x = x + 1.0; return x; }"
+        + "void h() { g = 1; }"
+        + "void main() { h(); }";
+    final TranslationUnit tu = ParseHelper.parse(program);
+    List<StmtReductionOpportunity> ops =
+          StmtReductionOpportunities.findOpportunities(MakeShaderJobFromFragmentShader.make(tu),
+              new ReducerContext(false, true, ShadingLanguageVersion.ESSL_100,
+                  new RandomWrapper(0), new IdGenerator()));
+    assertEquals(1, ops.size());
+    ops.get(0).applyReduction();
+    CompareAsts.assertEqualAsts(reducedProgram, tu);
+  }
+
+  @Test
+  public void testCallToFunctionUsingBarrierOrImageStoreNotRemoved() throws Exception {
+    final String program = "#version 310 es\n"
+        + "uniform highp image2D img;"
+        + "void sync() { barrier(); }"
+        + "void store() { imageStore(img, ivec2(0), vec4(1.0)); }"
+        + "void main() { sync(); store(); }";
+    final TranslationUnit tu = ParseHelper.parse(program);
+    List<StmtReductionOpportunity> ops =
+          StmtReductionOpportunities.findOpportunities(MakeShaderJobFromFragmentShader.make(tu),
+              new ReducerContext(false, true, ShadingLanguageVersion.ESSL_310,
+                  new RandomWrapper(0), new IdGenerator()));
+    assertEquals(0, ops.size());
+  }
+
 }
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2019 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.reducer.tool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.graphicsfuzz.common.util.CompareAsts;
+import com.graphicsfuzz.common.util.ParseHelper;
+import com.graphicsfuzz.common.util.ShaderJobFileOperations;
+import java.io.File;
+import java.io.IOException;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class GlslReduceBatchTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final ShaderJobFileOperations fileOps = new ShaderJobFileOperations();
+
+  @Test
+  public void testEachReductionWritesToItsOwnDirectory() throws Exception {
+    final File first = makeShaderJob("first", "int a; void main() { a = 1; }");
+    final File second = makeShaderJob("second", "int b; void foo() { } void main() { foo(); }");
+    final File firstOutput = temporaryFolder.newFolder("first_output");
+    final File secondOutput = temporaryFolder.newFolder("second_output");
+    final File batchFile = temporaryFolder.newFile("batch.txt");
+    fileOps.writeStringToFile(batchFile, "# Two reductions.\n"
+        + first + " --reduction-kind ALWAYS_REDUCE --output " + firstOutput + "\n"
+        + "\n"
+        + second + " --reduction-kind ALWAYS_REDUCE --output " + secondOutput + "\n");
+
+    GlslReduceBatch.mainHelper(new String[] { batchFile.getAbsolutePath() }, null);
+
+    CompareAsts.assertEqualAsts("#version 100\nvoid main() { }",
+        ParseHelper.parse(new File(firstOutput, "first_reduced_final.frag")));
+    CompareAsts.assertEqualAsts("#version 100\nvoid main() { }",
+        ParseHelper.parse(new File(secondOutput, "second_reduced_final.frag")));
+    assertEquals(0, firstOutput.listFiles((dir, name) -> name.startsWith("second")).length);
+    assertEquals(0, secondOutput.listFiles((dir, name) -> name.startsWith("first")).length);
+  }
+
+  @Test
+  public void testSharedOutputDirectoryIsRejected() throws Exception {
+    final File first = makeShaderJob("first", "void main() { }");
+    final File second = makeShaderJob("second", "void main() { }");
+    final File output = temporaryFolder.newFolder("output");
+    final File batchFile = temporaryFolder.newFile("batch.txt");
+    fileOps.writeStringToFile(batchFile,
+        first + " --reduction-kind ALWAYS_REDUCE --output " + output + "\n"
+        + second + " --reduction-kind ALWAYS_REDUCE --output " + output + "\n");
+    try {
+      GlslReduceBatch.mainHelper(new String[] { batchFile.getAbsolutePath() }, null);
+      fail();
+    } catch (ArgumentParserException exception) {
+      assertTrue(exception.getMessage().contains("have the same output directory"));
+    }
+  }
+
+  @Test
+  public void testImageComparingReductionOnSeveralWorkersIsRejected() throws Exception {
+    final File shaderJob = makeShaderJob("shader", "void main() { }");
+    final File batchFile = temporaryFolder.newFile("batch.txt");
+    fileOps.writeStringToFile(batchFile,
+        shaderJob + " --reduction-kind NO_IMAGE --output "
+            + temporaryFolder.newFolder("first_output") + "\n"
+        + shaderJob + " --reduction-kind IDENTICAL --output "
+            + temporaryFolder.newFolder("second_output") + "\n");
+    try {
+      // The server is never contacted, as the batch file is checked first.
+      GlslReduceBatch.mainHelper(new String[] { batchFile.getAbsolutePath(),
+          "--server", "http://localhost:1", "--worker", "first,second" }, null);
+      fail();
+    } catch (ArgumentParserException exception) {
+      assertTrue(exception.getMessage(), exception.getMessage().contains("Line 2"));
+      assertTrue(exception.getMessage(), exception.getMessage().contains("compares images"));
+    }
+  }
+
+  private File makeShaderJob(String name, String body) throws IOException {
+    final File jsonFile = temporaryFolder.newFile(name + ".json");
+    fileOps.writeStringToFile(jsonFile, "{}");
+    fileOps.writeStringToFile(temporaryFolder.newFile(name + ".frag"), "#version 100\n" + body);
+    return jsonFile;
+  }
+
+}
@@ -28,6 +28,7 @@ import com.graphicsfuzz.common.util.ShaderJobFileOperations;
 import com.graphicsfuzz.util.ExecHelper;
 import java.io.File;
 import java.io.IOException;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
@@ -164,6 +165,50 @@ public class GlslReduceTest {
         ParseHelper.parse(reducedFinal[0]));
   }
 
+  @Test
+  public void testValidatorErrorReductionKeepsError() throws Exception {
+    final String fragmentShader = "#version 100\n"
+        + "int a;"
+        + "int b;"
+        + "void foo() { }"
+        + "void main() {"
+        + "  a = 2;"
+        + "  foo();"
+        + "  b = true;"
+        + "}";
+    final File jsonFile = temporaryFolder.newFile("bad.json");
+    final File fragmentFile = temporaryFolder.newFile("bad.frag");
+    final ShaderJobFileOperations fileOps = new ShaderJobFileOperations();
+    fileOps.writeStringToFile(jsonFile, "{}");
+    fileOps.writeStringToFile(fragmentFile, fragmentShader);
+    GlslReduce.mainHelper(new String[]{
+        jsonFile.getAbsolutePath(),
+        "--reduction-kind",
+        "VALIDATOR_ERROR",
+        "--error-string",
+        "cannot convert",
+        "--output",
+        temporaryFolder.getRoot().getAbsolutePath()}, null);
+    final File[] reducedFinal = temporaryFolder.getRoot().listFiles((dir, name) -> name.contains(
+        "reduced_final.frag"));
+    assertEquals(1, reducedFinal.length);
+    final String reduced = fileOps.readFileToString(reducedFinal[0]);
+    assertTrue(reduced.contains("true"));
+    assertTrue(reduced.length() < fragmentShader.length());
+  }
+
+  @Test
+  public void validatorErrorReductionRequiresErrorString() throws Exception {
+    try {
+      GlslReduce.mainHelper(new String[]{makeShaderJobAndReturnJsonFilename(),
+          "--reduction-kind", "VALIDATOR_ERROR", "--output",
+          temporaryFolder.getRoot().getAbsolutePath()}, null);
+      fail();
+    } catch (ArgumentParserException exception) {
+      assertTrue(exception.getMessage().contains("--error-string must be provided"));
+    }
+  }
+
   private File getShaderJobReady() throws IOException, ParseTimeoutException, InterruptedException,
       GlslParserException {
     final String fragmentShader = "#version 100\n"
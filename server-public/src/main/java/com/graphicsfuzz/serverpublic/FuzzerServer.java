@@ -101,7 +101,11 @@ public final class FuzzerServer {
     Server server = new Server(port);
 
     server.setHandler(gzipHandler);
-    server.start();
-    server.join();
+    try {
+      server.start();
+      server.join();
+    } finally {
+      fuzzerService.shutdown();
+    }
   }
 }
@@ -19,28 +19,37 @@ package com.graphicsfuzz.server;
 import com.graphicsfuzz.common.util.ShaderJobFileOperations;
 import com.graphicsfuzz.server.thrift.FuzzerService;
 import com.graphicsfuzz.server.thrift.FuzzerServiceManager;
+import com.graphicsfuzz.server.thrift.TransferInfo;
 import com.graphicsfuzz.server.webui.WebUi;
 import com.graphicsfuzz.util.ToolPaths;
 import java.nio.file.Paths;
+import java.util.Optional;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.protocol.TCompactProtocol;
 import org.apache.thrift.protocol.TJSONProtocol;
 import org.apache.thrift.server.TServlet;
+import org.eclipse.jetty.io.ConnectionStatistics;
+import org.eclipse.jetty.server.Connector;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.handler.HandlerList;
 import org.eclipse.jetty.server.handler.gzip.GzipHandler;
 import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.component.LifeCycle;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public final class FuzzerServer {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(FuzzerServer.class);
+  private static final int GZIP_INFLATE_BUFFER_SIZE = 64 * 1024;
   private final String workingDir;
   private final String shaderSetsDir = "shaderfamilies";
   private final String processingDir = "processing";
+  private final String poolsConfigFile = "pools.json";
 
   private final ExecutorService executorService = Executors.newCachedThreadPool();
 
@@ -48,27 +57,62 @@ public final class FuzzerServer {
 
   private final ShaderJobFileOperations fileOps;
 
+  private final Optional<JobResultCache> resultCache;
+
+  private final long leaseTimeoutMs;
+
+  private final long sessionExpiryMs;
+
   public FuzzerServer(int port, ShaderJobFileOperations fileOps) {
     this("", port, fileOps);
   }
 
   public FuzzerServer(String workingDir, int port, ShaderJobFileOperations fileOps) {
+    this(workingDir, port, fileOps, Optional.empty(), SessionMap.DEFAULT_LEASE_TIMEOUT_MS,
+        FuzzerServiceImpl.DEFAULT_SESSION_EXPIRY_MS);
+  }
+
+  public FuzzerServer(String workingDir, int port, ShaderJobFileOperations fileOps,
+        Optional<JobResultCache> resultCache, long leaseTimeoutMs, long sessionExpiryMs) {
     this.workingDir = workingDir;
     this.port = port;
     this.fileOps = fileOps;
+    this.resultCache = resultCache;
+    this.leaseTimeoutMs = leaseTimeoutMs;
+    this.sessionExpiryMs = sessionExpiryMs;
   }
 
   public void start() throws Exception {
+    launch().join();
+  }
+
+  /**
+   * Starts the server without waiting for it to finish, e.g. so that it can be driven from the
+   * same process in a load test.
+   * @return The running server, which the caller may stop.
+   * @throws Exception if the server cannot be started.
+   */
+  public Server launch() throws Exception {
 
-    FuzzerServiceImpl fuzzerService = new FuzzerServiceImpl(
+    final FuzzerServiceImpl fuzzerService = new FuzzerServiceImpl(
         Paths.get(workingDir, processingDir).toString(),
-        executorService);
+        executorService,
+        leaseTimeoutMs,
+        sessionExpiryMs);
 
     FuzzerService.Processor processor =
         new FuzzerService.Processor<FuzzerService.Iface>(fuzzerService);
 
+    // Counts the bytes that actually cross the network, i.e. after compression.
+    final ConnectionStatistics connectionStatistics = new ConnectionStatistics();
+
     FuzzerServiceManagerImpl fuzzerServiceManager = new FuzzerServiceManagerImpl(fuzzerService,
-          new GraphicsFuzzServerCommandDispatcher());
+          new GraphicsFuzzServerCommandDispatcher(),
+          Optional.of(Paths.get(workingDir, poolsConfigFile).toFile()),
+          resultCache,
+          Optional.of(() -> new TransferInfo()
+              .setBytesReceived(connectionStatistics.getReceivedBytes())
+              .setBytesSent(connectionStatistics.getSentBytes())));
     FuzzerServiceManager.Processor managerProcessor =
         new FuzzerServiceManager.Processor<FuzzerServiceManager.Iface>(fuzzerServiceManager);
 
@@ -86,11 +130,23 @@ public final class FuzzerServer {
       context.addServlet(serveltHolderJson, "/requestJSON");
     }
 
+    {
+      ServletHolder shCompact = new ServletHolder();
+      shCompact.setServlet(new TServlet(processor, new TCompactProtocol.Factory()));
+      context.addServlet(shCompact, "/requestCompact");
+    }
+
     {
       ServletHolder shManager = new ServletHolder();
       shManager.setServlet(new TServlet(managerProcessor, new TBinaryProtocol.Factory()));
       context.addServlet(shManager, "/manageAPI");
     }
+    {
+      ServletHolder shManagerCompact = new ServletHolder();
+      shManagerCompact.setServlet(
+          new TServlet(managerProcessor, new TCompactProtocol.Factory()));
+      context.addServlet(shManagerCompact, "/manageAPICompact");
+    }
 
     context.addServlet(new ServletHolder(new WebUi(fuzzerServiceManager, fileOps)), "/webui/*");
 
@@ -105,12 +161,26 @@ public final class FuzzerServer {
     handlerList.addHandler(context);
 
     GzipHandler gzipHandler = new GzipHandler();
+    // Thrift requests are POSTs: compress their responses for clients that accept gzip, and
+    // accept gzip-compressed request bodies.
+    gzipHandler.setIncludedMethods("GET", "POST");
+    gzipHandler.setInflateBufferSize(GZIP_INFLATE_BUFFER_SIZE);
     gzipHandler.setHandler(handlerList);
 
     Server server = new Server(port);
+    for (Connector connector : server.getConnectors()) {
+      connector.addBean(connectionStatistics);
+    }
 
     server.setHandler(gzipHandler);
+    // The service checks the workers' leases on its own thread, which must not outlive the server.
+    server.addLifeCycleListener(new AbstractLifeCycle.AbstractLifeCycleListener() {
+      @Override
+      public void lifeCycleStopped(LifeCycle event) {
+        fuzzerService.shutdown();
+      }
+    });
     server.start();
-    server.join();
+    return server;
   }
 }
@@ -19,6 +19,7 @@ package com.graphicsfuzz.server;
 import com.graphicsfuzz.common.util.GlslParserException;
 import com.graphicsfuzz.common.util.ParseTimeoutException;
 import com.graphicsfuzz.reducer.tool.GlslReduce;
+import com.graphicsfuzz.reducer.tool.GlslReduceBatch;
 import com.graphicsfuzz.server.thrift.FuzzerServiceManager.Iface;
 import com.graphicsfuzz.shadersets.RunShaderFamily;
 import com.graphicsfuzz.shadersets.ShaderDispatchException;
@@ -45,6 +46,12 @@ public class GraphicsFuzzServerCommandDispatcher implements ICommandDispatcher {
               fuzzerServiceManager
         );
         break;
+      case "glsl-reduce-batch":
+        GlslReduceBatch.mainHelper(
+              command.subList(1, command.size()).toArray(new String[0]),
+              fuzzerServiceManager
+        );
+        break;
       default:
         throw new RuntimeException("Unknown command: " + command.get(0));
     }
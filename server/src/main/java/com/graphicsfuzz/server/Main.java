@@ -16,8 +16,12 @@
 
 package com.graphicsfuzz.server;
 
+import com.graphicsfuzz.common.util.ImageStore;
 import com.graphicsfuzz.common.util.ShaderJobFileOperations;
+import java.io.File;
+import java.util.Optional;
 import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.impl.Arguments;
 import net.sourceforge.argparse4j.inf.ArgumentParser;
 import net.sourceforge.argparse4j.inf.ArgumentParserException;
 import net.sourceforge.argparse4j.inf.Namespace;
@@ -32,12 +36,53 @@ public class Main {
         .setDefault(8080)
         .type(Integer.class);
 
+    parser.addArgument("--result-cache-size")
+        .help("Maximum number of job results to cache, so that identical jobs for workers with "
+            + "identical platform info are not run again; 0 disables the cache.")
+        .setDefault(0)
+        .type(Integer.class);
+
+    parser.addArgument("--result-cache-ttl")
+        .help("Number of seconds for which a cached job result remains valid.")
+        .setDefault(3600L)
+        .type(Long.class);
+
+    parser.addArgument("--lease-timeout")
+        .help("Number of seconds after which a worker that has not contacted the server is "
+            + "considered dead, and the jobs queued for it are given up on.")
+        .setDefault(SessionMap.DEFAULT_LEASE_TIMEOUT_MS / 1000)
+        .type(Long.class);
+
+    parser.addArgument("--session-expiry")
+        .help("Number of seconds after which a dead worker is forgotten, if it has no queued "
+            + "commands.")
+        .setDefault(FuzzerServiceImpl.DEFAULT_SESSION_EXPIRY_MS / 1000)
+        .type(Long.class);
+
+    parser.addArgument("--no-image-store")
+        .help("Do not create the store, " + ImageStore.STORE_DIR_NAME + ", through which "
+            + "identical result images share disk space; a store that already exists is still "
+            + "used.")
+        .action(Arguments.storeTrue());
+
     try {
       Namespace ns = parser.parseArgs(args);
 
       ShaderJobFileOperations fileOps = new ShaderJobFileOperations();
 
-      new FuzzerServer(ns.get("port"), fileOps).start();
+      if (!ns.getBoolean("no_image_store")) {
+        // Results are written below the working directory, so they are covered by this store.
+        ImageStore.create(new File(".").getAbsoluteFile());
+      }
+
+      final int resultCacheSize = ns.getInt("result_cache_size");
+      final Optional<JobResultCache> resultCache = resultCacheSize > 0
+          ? Optional.of(new JobResultCache(resultCacheSize,
+              ns.getLong("result_cache_ttl") * 1000))
+          : Optional.empty();
+
+      new FuzzerServer("", ns.get("port"), fileOps, resultCache,
+          ns.getLong("lease_timeout") * 1000, ns.getLong("session_expiry") * 1000).start();
 
     } catch (ArgumentParserException ex) {
       ex.getParser().handleError(ex);
@@ -0,0 +1,447 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.server;
+
+import com.graphicsfuzz.common.util.ShaderJobFileOperations;
+import com.graphicsfuzz.server.thrift.FuzzerServiceManager;
+import com.graphicsfuzz.server.thrift.ImageJob;
+import com.graphicsfuzz.server.thrift.Job;
+import com.graphicsfuzz.server.thrift.JobStatus;
+import com.graphicsfuzz.server.thrift.TransferInfo;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.impl.Arguments;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
+import net.sourceforge.argparse4j.inf.Namespace;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.protocol.TCompactProtocol;
+import org.apache.thrift.transport.THttpClient;
+import org.apache.thrift.transport.TTransport;
+import org.eclipse.jetty.server.Server;
+
+/**
+ * Starts a fuzzer server in-process, connects many simulated workers to it, submits a stream of
+ * image jobs to the pool formed by those workers while loading WebUi pages, and reports job
+ * throughput, job and page latency, and the thread and heap usage of the process.  Needs no GPU,
+ * so can be used as a repeatable scaling benchmark for the server.
+ */
+public class ServerLoadGenerator {
+
+  private static final String MANAGER_PATH = "/manageAPI";
+  private static final String COMPACT_MANAGER_PATH = "/manageAPICompact";
+
+  // How often thread and heap usage are sampled.
+  private static final long SAMPLE_INTERVAL_MS = 100;
+
+  // How long to wait for all simulated workers to register with the server.
+  private static final long REGISTRATION_TIMEOUT_MS = 60000;
+
+  private static final String FRAGMENT_SOURCE = "#version 100\n"
+      + "precision mediump float;\n"
+      + "void main() { gl_FragColor = vec4(1.0, 0.0, 0.0, 1.0); }\n";
+
+  private static ArgumentParser getParser() {
+    ArgumentParser parser = ArgumentParsers.newArgumentParser("ServerLoadGenerator")
+        .defaultHelp(true)
+        .description("Benchmark the fuzzer server using simulated workers.");
+
+    parser.addArgument("--port")
+        .help("Port on which the server should listen.")
+        .setDefault(8089)
+        .type(Integer.class);
+
+    parser.addArgument("--working-dir")
+        .help("Working directory for the server; a temporary directory is used if omitted.")
+        .type(File.class);
+
+    parser.addArgument("--workers")
+        .help("Number of simulated workers.")
+        .setDefault(100)
+        .type(Integer.class);
+
+    parser.addArgument("--jobs")
+        .help("Number of jobs to submit.")
+        .setDefault(10000)
+        .type(Integer.class);
+
+    parser.addArgument("--submitters")
+        .help("Number of clients submitting jobs concurrently.")
+        .setDefault(200)
+        .type(Integer.class);
+
+    parser.addArgument("--latency")
+        .help("Average time in milliseconds a simulated worker takes per job.")
+        .setDefault(20L)
+        .type(Long.class);
+
+    parser.addArgument("--crash-rate")
+        .help("Probability that a simulated worker crashes on a job.")
+        .setDefault(0.0)
+        .type(Double.class);
+
+    parser.addArgument("--timeout-rate")
+        .help("Probability that a simulated worker reports a timeout for a job.")
+        .setDefault(0.0)
+        .type(Double.class);
+
+    parser.addArgument("--png-size")
+        .help("Approximate size in bytes of the PNG returned for each successful job.")
+        .setDefault(16384)
+        .type(Integer.class);
+
+    parser.addArgument("--retry-limit")
+        .help("Number of times a job is retried after a worker crash before being skipped.")
+        .setDefault(2)
+        .type(Integer.class);
+
+    parser.addArgument("--webui-readers")
+        .help("Number of clients that repeatedly load WebUi pages (the homepage and the pages of "
+            + "simulated workers) while jobs run; 0 disables page loads.")
+        .setDefault(1)
+        .type(Integer.class);
+
+    parser.addArgument("--compact-protocol")
+        .help("Use the compact rather than the binary Thrift protocol.")
+        .action(Arguments.storeTrue());
+
+    parser.addArgument("--source-cache-size")
+        .help("Number of shader sources each simulated worker caches; 0 disables the cache.")
+        .setDefault(0)
+        .type(Integer.class);
+
+    parser.addArgument("--seed")
+        .help("Seed for the random choices made by simulated workers.")
+        .setDefault(0L)
+        .type(Long.class);
+
+    return parser;
+  }
+
+  public static void main(String[] args) throws Exception {
+    try {
+      mainHelper(args);
+    } catch (ArgumentParserException exception) {
+      exception.getParser().handleError(exception);
+      System.exit(1);
+    }
+    // Worker and server threads may linger.
+    System.exit(0);
+  }
+
+  public static void mainHelper(String[] args) throws Exception {
+    final Namespace ns = getParser().parseArgs(args);
+
+    final int port = ns.getInt("port");
+    final int numWorkers = ns.getInt("workers");
+    final int numJobs = ns.getInt("jobs");
+    final int numSubmitters = ns.getInt("submitters");
+    final int numWebUiReaders = ns.getInt("webui_readers");
+    final int retryLimit = ns.getInt("retry_limit");
+    final boolean compactProtocol = ns.getBoolean("compact_protocol");
+    final String url = "http://localhost:" + port;
+
+    final boolean temporaryWorkingDir = ns.get("working_dir") == null;
+    final File workingDir = temporaryWorkingDir
+        ? Files.createTempDirectory("server-load-generator").toFile()
+        : ns.get("working_dir");
+
+    final Server server = new FuzzerServer(workingDir.toString(), port,
+        new ShaderJobFileOperations()).launch();
+
+    final ExecutorService workerExecutor = Executors.newCachedThreadPool();
+    final ExecutorService submitterExecutor =
+        Executors.newFixedThreadPool(numSubmitters + numWebUiReaders);
+    final List<SimulatedWorker> workers = new ArrayList<>();
+    final UsageSampler sampler = new UsageSampler();
+    final Thread samplerThread = new Thread(sampler);
+    samplerThread.setDaemon(true);
+
+    try {
+      for (int i = 0; i < numWorkers; i++) {
+        final SimulatedWorker worker = new SimulatedWorker(url, ns.getLong("latency"),
+            ns.getDouble("crash_rate"), ns.getDouble("timeout_rate"), ns.getInt("png_size"),
+            compactProtocol, ns.getInt("source_cache_size"), ns.getLong("seed") + i);
+        workers.add(worker);
+        workerExecutor.submit(worker);
+      }
+      final String pool = WorkerPools.POOL_PREFIX + awaitRegistration(workers);
+
+      samplerThread.start();
+      final long[] latenciesNs = new long[numJobs];
+      final Map<JobStatus, AtomicInteger> statusCounts = new ConcurrentHashMap<>();
+      final AtomicInteger nextJob = new AtomicInteger();
+      final AtomicLong jobIdCounter = new AtomicLong();
+      final long startTime = System.nanoTime();
+
+      final AtomicBoolean jobsDone = new AtomicBoolean(false);
+      final List<Long> pageLatenciesNs = Collections.synchronizedList(new ArrayList<>());
+      final Map<Integer, AtomicInteger> pageStatusCounts = new ConcurrentHashMap<>();
+      final AtomicInteger pageFailures = new AtomicInteger();
+      final List<Future<?>> readers = new ArrayList<>();
+      for (int i = 0; i < numWebUiReaders; i++) {
+        final Random random = new Random(ns.getLong("seed") + i);
+        readers.add(submitterExecutor.submit(() -> {
+          while (!jobsDone.get()) {
+            final String page = random.nextBoolean()
+                ? "/webui"
+                : "/webui/worker/"
+                    + workers.get(random.nextInt(workers.size())).getWorkerName();
+            final long pageStart = System.nanoTime();
+            final int status;
+            try {
+              status = loadPage(url + page);
+            } catch (IOException exception) {
+              pageFailures.incrementAndGet();
+              continue;
+            }
+            pageLatenciesNs.add(System.nanoTime() - pageStart);
+            pageStatusCounts.computeIfAbsent(status, item -> new AtomicInteger())
+                .incrementAndGet();
+          }
+          return null;
+        }));
+      }
+
+      final List<Future<?>> submitters = new ArrayList<>();
+      for (int i = 0; i < numSubmitters; i++) {
+        submitters.add(submitterExecutor.submit(() -> {
+          final TTransport transport = openManagerTransport(url, compactProtocol);
+          try {
+            final FuzzerServiceManager.Iface manager =
+                createManagerClient(transport, compactProtocol);
+            for (int jobIndex = nextJob.getAndIncrement(); jobIndex < numJobs;
+                 jobIndex = nextJob.getAndIncrement()) {
+              final Job job = new Job()
+                  .setJobId(jobIdCounter.incrementAndGet())
+                  .setImageJob(new ImageJob()
+                      .setName("load_test_" + jobIndex)
+                      .setFragmentSource(FRAGMENT_SOURCE)
+                      .setUniformsInfo("{}"));
+              final long jobStart = System.nanoTime();
+              final Job result = manager.submitJob(job, pool, retryLimit);
+              latenciesNs[jobIndex] = System.nanoTime() - jobStart;
+              statusCounts.computeIfAbsent(result.getImageJob().getResult().getStatus(),
+                  item -> new AtomicInteger()).incrementAndGet();
+            }
+          } finally {
+            transport.close();
+          }
+          return null;
+        }));
+      }
+      for (Future<?> submitter : submitters) {
+        submitter.get();
+      }
+      jobsDone.set(true);
+      for (Future<?> reader : readers) {
+        reader.get();
+      }
+
+      final long elapsedNs = System.nanoTime() - startTime;
+      sampler.stop();
+      report(numWorkers, numJobs, elapsedNs, latenciesNs, statusCounts, sampler);
+      reportPages(pageLatenciesNs, pageStatusCounts, pageFailures.get());
+      reportTransfer(url, compactProtocol);
+    } finally {
+      sampler.stop();
+      for (SimulatedWorker worker : workers) {
+        worker.stop();
+      }
+      submitterExecutor.shutdownNow();
+      workerExecutor.shutdown();
+      workerExecutor.awaitTermination(10, TimeUnit.SECONDS);
+      server.stop();
+      if (temporaryWorkingDir) {
+        FileUtils.deleteQuietly(workingDir);
+      }
+    }
+  }
+
+  /**
+   * Loads a page in full, as a browser would.
+   * @param pageUrl The URL of the page.
+   * @return The HTTP status of the response.
+   * @throws IOException if the page cannot be loaded.
+   */
+  private static int loadPage(String pageUrl) throws IOException {
+    final HttpURLConnection connection = (HttpURLConnection) new URL(pageUrl).openConnection();
+    try {
+      final int status = connection.getResponseCode();
+      try (InputStream body = status < HttpURLConnection.HTTP_BAD_REQUEST
+          ? connection.getInputStream()
+          : connection.getErrorStream()) {
+        if (body != null) {
+          IOUtils.toByteArray(body);
+        }
+      }
+      return status;
+    } finally {
+      connection.disconnect();
+    }
+  }
+
+  private static TTransport openManagerTransport(String url, boolean compactProtocol)
+      throws TException {
+    final TTransport transport =
+        new THttpClient(url + (compactProtocol ? COMPACT_MANAGER_PATH : MANAGER_PATH));
+    transport.open();
+    return transport;
+  }
+
+  private static FuzzerServiceManager.Iface createManagerClient(TTransport transport,
+        boolean compactProtocol) {
+    return new FuzzerServiceManager.Client(compactProtocol
+        ? new TCompactProtocol(transport)
+        : new TBinaryProtocol(transport));
+  }
+
+  private static void reportTransfer(String url, boolean compactProtocol) throws TException {
+    final TTransport transport = openManagerTransport(url, compactProtocol);
+    try {
+      final TransferInfo transfer =
+          createManagerClient(transport, compactProtocol).getServerState().getTransfer();
+      System.out.println("Bytes received by server: " + transfer.getBytesReceived());
+      System.out.println("Bytes sent by server: " + transfer.getBytesSent());
+      System.out.println("Sources elided: " + transfer.getSourcesElided() + " ("
+          + transfer.getSourceBytesElided() + " bytes)");
+    } finally {
+      transport.close();
+    }
+  }
+
+  private static String awaitRegistration(List<SimulatedWorker> workers)
+      throws InterruptedException, TException {
+    final long deadline = System.currentTimeMillis() + REGISTRATION_TIMEOUT_MS;
+    while (workers.stream().anyMatch(item -> item.getWorkerName() == null)) {
+      if (System.currentTimeMillis() > deadline) {
+        throw new TException("Simulated workers did not all register with the server.");
+      }
+      Thread.sleep(SAMPLE_INTERVAL_MS);
+    }
+    return workers.get(0).getWorkerName();
+  }
+
+  private static void report(int numWorkers, int numJobs, long elapsedNs, long[] latenciesNs,
+        Map<JobStatus, AtomicInteger> statusCounts, UsageSampler sampler) {
+    final long[] sorted = latenciesNs.clone();
+    Arrays.sort(sorted);
+    final double elapsedSeconds = elapsedNs / 1e9;
+    System.out.println("Workers: " + numWorkers);
+    System.out.println("Jobs: " + numJobs);
+    System.out.println(String.format("Elapsed: %.2f s", elapsedSeconds));
+    System.out.println(String.format("Throughput: %.1f jobs/s", numJobs / elapsedSeconds));
+    if (sorted.length > 0) {
+      System.out.println(String.format("Latency p50: %.1f ms", percentile(sorted, 50) / 1e6));
+      System.out.println(String.format("Latency p99: %.1f ms", percentile(sorted, 99) / 1e6));
+      System.out.println(String.format("Latency max: %.1f ms", sorted[sorted.length - 1] / 1e6));
+    }
+    for (JobStatus status : JobStatus.values()) {
+      if (statusCounts.containsKey(status)) {
+        System.out.println("Status " + status + ": " + statusCounts.get(status).get());
+      }
+    }
+    System.out.println("Peak threads: " + sampler.getPeakThreads());
+    System.out.println(String.format("Peak heap used: %.1f MB",
+        sampler.getPeakHeapBytes() / (1024.0 * 1024.0)));
+  }
+
+  private static void reportPages(List<Long> pageLatenciesNs,
+        Map<Integer, AtomicInteger> pageStatusCounts, int pageFailures) {
+    final long[] sorted = pageLatenciesNs.stream().mapToLong(Long::longValue).sorted().toArray();
+    System.out.println("WebUi pages loaded: " + sorted.length);
+    if (sorted.length > 0) {
+      System.out.println(String.format("Page latency p50: %.1f ms", percentile(sorted, 50) / 1e6));
+      System.out.println(String.format("Page latency p99: %.1f ms", percentile(sorted, 99) / 1e6));
+    }
+    for (Map.Entry<Integer, AtomicInteger> entry : pageStatusCounts.entrySet()) {
+      System.out.println("Page HTTP status " + entry.getKey() + ": " + entry.getValue().get());
+    }
+    System.out.println("Pages that failed to load: " + pageFailures);
+  }
+
+  private static long percentile(long[] sorted, int percentile) {
+    final int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+    return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+  }
+
+  /**
+   * Periodically records the number of live threads and the heap usage of the process.  The
+   * simulated workers run in the same process as the server, so these figures include them.
+   */
+  private static class UsageSampler implements Runnable {
+
+    private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    private final MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+
+    private volatile boolean stopped = false;
+    private volatile int peakThreads = 0;
+    private volatile long peakHeapBytes = 0;
+
+    @Override
+    public void run() {
+      while (!stopped) {
+        peakThreads = Math.max(peakThreads, threadBean.getThreadCount());
+        peakHeapBytes = Math.max(peakHeapBytes, memoryBean.getHeapMemoryUsage().getUsed());
+        try {
+          Thread.sleep(SAMPLE_INTERVAL_MS);
+        } catch (InterruptedException exception) {
+          return;
+        }
+      }
+    }
+
+    void stop() {
+      stopped = true;
+    }
+
+    int getPeakThreads() {
+      return peakThreads;
+    }
+
+    long getPeakHeapBytes() {
+      return peakHeapBytes;
+    }
+
+  }
+
+}
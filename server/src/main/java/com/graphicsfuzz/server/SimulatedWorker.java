@@ -0,0 +1,275 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.server;
+
+import com.graphicsfuzz.server.thrift.FuzzerService;
+import com.graphicsfuzz.server.thrift.GetWorkerNameResult;
+import com.graphicsfuzz.server.thrift.ImageJob;
+import com.graphicsfuzz.server.thrift.ImageJobResult;
+import com.graphicsfuzz.server.thrift.Job;
+import com.graphicsfuzz.server.thrift.JobStatus;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.imageio.ImageIO;
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.protocol.TCompactProtocol;
+import org.apache.thrift.transport.THttpClient;
+import org.apache.thrift.transport.TTransport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A worker that talks to the fuzzer server over HTTP in the same way as a real worker, but that
+ * does not render anything: every image job is answered with a synthetic result after a
+ * configurable delay.  A simulated worker can also be made to crash (i.e. to ask for the same job
+ * again without replying) or to time out at a given rate.  Used to exercise the server without a
+ * GPU.
+ */
+public class SimulatedWorker implements Runnable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(SimulatedWorker.class);
+
+  private static final String REQUEST_PATH = "/request";
+  private static final String COMPACT_REQUEST_PATH = "/requestCompact";
+
+  // How long to wait before asking again when the server has no job.
+  private static final long NO_JOB_SLEEP_MS = 10;
+
+  // How often to renew the worker's lease while "rendering" a job.
+  private static final long HEARTBEAT_INTERVAL_MS = 1000;
+
+  // All simulated workers report this platform info, so that they form a single pool.
+  public static final String PLATFORM_INFO = "{\"simulated\": true}";
+
+  private final String url;
+  private final long latencyMs;
+  private final double crashRate;
+  private final double timeoutRate;
+  private final int pngSize;
+  private final boolean compactProtocol;
+  private final int sourceCacheSize;
+  private final Random random;
+
+  // Shader sources by content hash, most recently used last.
+  private final LinkedHashMap<String, String> sourceCache;
+
+  private volatile boolean stopped;
+  private volatile String workerName;
+
+  private final AtomicLong jobsCompleted;
+
+  /**
+   * Creates a simulated worker.
+   * @param url Base URL of the server, e.g. http://localhost:8080.
+   * @param latencyMs Average time taken to "render" a job; the actual time varies by up to 50%.
+   * @param crashRate Probability that the worker crashes on receiving a job.
+   * @param timeoutRate Probability that a job is reported as having timed out.
+   * @param pngSize Approximate size in bytes of the image sent with each successful result, a PNG
+   *                of random pixels.
+   * @param compactProtocol Whether to use the compact rather than the binary Thrift protocol.
+   * @param sourceCacheSize Number of shader sources to cache; 0 disables the source cache.
+   * @param seed Seed for the random choices made by the worker.
+   */
+  public SimulatedWorker(String url, long latencyMs, double crashRate, double timeoutRate,
+        int pngSize, boolean compactProtocol, int sourceCacheSize, long seed) {
+    this.url = url;
+    this.latencyMs = latencyMs;
+    this.crashRate = crashRate;
+    this.timeoutRate = timeoutRate;
+    this.pngSize = pngSize;
+    this.compactProtocol = compactProtocol;
+    this.sourceCacheSize = sourceCacheSize;
+    this.sourceCache = new LinkedHashMap<String, String>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+        return size() > sourceCacheSize;
+      }
+    };
+    this.random = new Random(seed);
+    this.stopped = false;
+    this.workerName = null;
+    this.jobsCompleted = new AtomicLong();
+  }
+
+  /**
+   * Asks the worker to stop after it has finished its current job.
+   */
+  public void stop() {
+    stopped = true;
+  }
+
+  /**
+   * Yields the name given to the worker by the server.
+   * @return The worker name, or null if the worker has not yet registered with the server.
+   */
+  public String getWorkerName() {
+    return workerName;
+  }
+
+  public long getJobsCompleted() {
+    return jobsCompleted.get();
+  }
+
+  @Override
+  public void run() {
+    try {
+      final TTransport transport =
+          new THttpClient(url + (compactProtocol ? COMPACT_REQUEST_PATH : REQUEST_PATH));
+      transport.open();
+      final FuzzerService.Iface fuzzerService = new FuzzerService.Client(compactProtocol
+          ? new TCompactProtocol(transport)
+          : new TBinaryProtocol(transport));
+      try {
+        final GetWorkerNameResult getWorkerNameResult =
+            fuzzerService.getWorkerName(PLATFORM_INFO, "");
+        if (!getWorkerNameResult.isSetWorkerName()) {
+          LOGGER.error("Simulated worker was not given a name: {}",
+              getWorkerNameResult.getError());
+          return;
+        }
+        workerName = getWorkerNameResult.getWorkerName();
+        if (sourceCacheSize > 0) {
+          fuzzerService.enableSourceCache(workerName, sourceCacheSize);
+        }
+        while (!stopped) {
+          processJob(fuzzerService, fuzzerService.getJob(workerName));
+        }
+      } finally {
+        transport.close();
+      }
+    } catch (TException exception) {
+      if (!stopped) {
+        LOGGER.error("Simulated worker " + workerName + " failed.", exception);
+      }
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void processJob(FuzzerService.Iface fuzzerService, Job job)
+      throws TException, InterruptedException {
+    if (job.isSetNoJob()) {
+      Thread.sleep(NO_JOB_SLEEP_MS);
+      return;
+    }
+    if (job.isSetSkipJob()) {
+      fuzzerService.jobDone(workerName, job);
+      return;
+    }
+    if (!job.isSetImageJob()) {
+      LOGGER.error("Simulated worker cannot handle job {}", job.getJobId());
+      Thread.sleep(NO_JOB_SLEEP_MS);
+      return;
+    }
+    resolveSources(fuzzerService, job.getImageJob());
+    simulateRendering(fuzzerService, latencyMs / 2 + (long) (random.nextDouble() * latencyMs));
+    if (random.nextDouble() < crashRate) {
+      // A crashed worker never replies; on restarting it asks for a job again, and the server
+      // gives it the same job, counting this as a retry.
+      return;
+    }
+    final ImageJobResult result = new ImageJobResult();
+    if (random.nextDouble() < timeoutRate) {
+      result.setStatus(JobStatus.TIMEOUT).setLog("Simulated timeout\n");
+    } else {
+      final byte[] png = makePng();
+      result.setStatus(JobStatus.SUCCESS).setLog("Simulated success\n").setPNG(png);
+    }
+    job.getImageJob().setResult(result);
+    // As with real workers, the sources are not sent back.
+    job.getImageJob().setFragmentSource("");
+    fuzzerService.jobDone(workerName, job);
+    jobsCompleted.incrementAndGet();
+  }
+
+  /**
+   * Waits for the given time, sending heartbeats as a real worker does while running a long job.
+   */
+  private void simulateRendering(FuzzerService.Iface fuzzerService, long durationMs)
+      throws TException, InterruptedException {
+    long remainingMs = durationMs;
+    while (remainingMs > HEARTBEAT_INTERVAL_MS) {
+      Thread.sleep(HEARTBEAT_INTERVAL_MS);
+      fuzzerService.heartbeat(workerName);
+      remainingMs -= HEARTBEAT_INTERVAL_MS;
+    }
+    Thread.sleep(remainingMs);
+  }
+
+  /**
+   * Encodes an image of random pixels as a PNG.  Random pixels barely compress, so an image of
+   * pngSize / 3 pixels gives a PNG of about pngSize bytes.
+   */
+  private byte[] makePng() {
+    final int side = Math.max(1, (int) Math.ceil(Math.sqrt(pngSize / 3.0)));
+    final BufferedImage image = new BufferedImage(side, side, BufferedImage.TYPE_INT_RGB);
+    for (int y = 0; y < side; y++) {
+      for (int x = 0; x < side; x++) {
+        image.setRGB(x, y, random.nextInt(1 << 24));
+      }
+    }
+    final ByteArrayOutputStream png = new ByteArrayOutputStream();
+    try {
+      ImageIO.write(image, "png", png);
+    } catch (IOException exception) {
+      // Writing to memory cannot fail.
+      throw new RuntimeException(exception);
+    }
+    return png.toByteArray();
+  }
+
+  /**
+   * Fills in any sources the server left out because this worker should have them cached.
+   */
+  private void resolveSources(FuzzerService.Iface fuzzerService, ImageJob imageJob)
+      throws TException {
+    if (imageJob.isSetFragmentSourceHash()) {
+      imageJob.setFragmentSource(resolveSource(fuzzerService,
+          imageJob.getFragmentSourceHash(), imageJob.getFragmentSource()));
+    }
+    if (imageJob.isSetVertexSourceHash()) {
+      imageJob.setVertexSource(resolveSource(fuzzerService,
+          imageJob.getVertexSourceHash(), imageJob.getVertexSource()));
+    }
+    if (imageJob.isSetComputeSourceHash()) {
+      imageJob.setComputeSource(resolveSource(fuzzerService,
+          imageJob.getComputeSourceHash(), imageJob.getComputeSource()));
+    }
+  }
+
+  private String resolveSource(FuzzerService.Iface fuzzerService, String hash, String source)
+      throws TException {
+    if (source != null) {
+      sourceCache.put(hash, source);
+      return source;
+    }
+    final String cached = sourceCache.get(hash);
+    if (cached != null) {
+      return cached;
+    }
+    final String fetched = fuzzerService.getSource(hash);
+    sourceCache.put(hash, fetched);
+    return fetched;
+  }
+
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.server.webui;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.graphicsfuzz.alphanumcomparator.AlphanumComparator;
+import com.graphicsfuzz.common.util.FileHelper;
+import com.graphicsfuzz.common.util.ReductionProgressHelper;
+import com.graphicsfuzz.util.Constants;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.LongSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An in-memory index of shader families and of the results of running them, so that pages showing
+ * many results need not list directories and parse every result file each time they are loaded.
+ *
+ * <p>The results of a worker for a shader family are brought up to date, re-reading only the
+ * result files that changed, when a result for them is written by this process (see
+ * {@link #resultWritten(File)}), when their directory changes because a result was added or
+ * deleted, or when they have not been checked for longer than the refresh interval; the last
+ * catches results that other processes rewrite in place.  Shader families and reduction statuses
+ * are recomputed whenever their directory changes.</p>
+ */
+public class ResultIndex {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ResultIndex.class);
+
+  public static final long DEFAULT_REFRESH_INTERVAL_MS = 30 * 1000;
+
+  private static final String RESULT_EXTENSION = ".info.json";
+
+  private final File workerDir;
+  private final File shaderFamiliesDir;
+  private final long refreshIntervalMs;
+  private final LongSupplier clock;
+  private final Gson gson;
+
+  private final Map<String, ResultDir> resultDirs;
+  private final Map<String, ShaderFamilyInfo> shaderFamilies;
+  private final Map<String, ReductionInfo> reductions;
+
+  public ResultIndex(File workerDir, File shaderFamiliesDir, long refreshIntervalMs) {
+    this(workerDir, shaderFamiliesDir, refreshIntervalMs, System::currentTimeMillis);
+  }
+
+  ResultIndex(File workerDir, File shaderFamiliesDir, long refreshIntervalMs,
+      LongSupplier clock) {
+    this.workerDir = workerDir;
+    this.shaderFamiliesDir = shaderFamiliesDir;
+    this.refreshIntervalMs = refreshIntervalMs;
+    this.clock = clock;
+    this.gson = new Gson();
+    this.resultDirs = new HashMap<>();
+    this.shaderFamilies = new HashMap<>();
+    this.reductions = new HashMap<>();
+  }
+
+  /**
+   * A shader family, as found in the shader families directory.
+   */
+  static final class ShaderFamilyInfo {
+    final String name;
+    final boolean isCompute;
+    // The number of variant shaders, as opposed to shader jobs.
+    final int nbVariants;
+    // The names of the variant shader jobs, without extension, in alphanumeric order.
+    final List<String> variantShaderJobs;
+    private final long lastModified;
+
+    private ShaderFamilyInfo(String name, boolean isCompute, int nbVariants,
+        List<String> variantShaderJobs, long lastModified) {
+      this.name = name;
+      this.isCompute = isCompute;
+      this.nbVariants = nbVariants;
+      this.variantShaderJobs = Collections.unmodifiableList(variantShaderJobs);
+      this.lastModified = lastModified;
+    }
+  }
+
+  private static final class ResultFile {
+    final long lastModified;
+    final JsonObject info;
+
+    ResultFile(long lastModified, JsonObject info) {
+      this.lastModified = lastModified;
+      this.info = info;
+    }
+  }
+
+  private static final class ResultDir {
+    Map<String, ResultFile> files = new HashMap<>();
+    long lastModified;
+    long checkedAt;
+    boolean stale = true;
+  }
+
+  private static final class ReductionInfo {
+    final long lastModified;
+    final WebUi.ReductionStatus status;
+
+    ReductionInfo(long lastModified, WebUi.ReductionStatus status) {
+      this.lastModified = lastModified;
+      this.status = status;
+    }
+  }
+
+  public synchronized ShaderFamilyInfo getShaderFamily(String shaderFamily) {
+    final File dir = new File(shaderFamiliesDir, shaderFamily);
+    final long lastModified = dir.lastModified();
+    final ShaderFamilyInfo cached = shaderFamilies.get(shaderFamily);
+    if (cached != null && cached.lastModified == lastModified) {
+      return cached;
+    }
+    final boolean isCompute = new File(dir, "reference.comp").isFile();
+    final String shaderExtension = isCompute ? ".comp" : ".frag";
+    int nbVariants = 0;
+    final List<String> variantShaderJobs = new ArrayList<>();
+    final String[] names = dir.list();
+    if (names != null) {
+      for (String name : names) {
+        if (!name.startsWith("variant")) {
+          continue;
+        }
+        if (name.endsWith(shaderExtension)) {
+          nbVariants++;
+        } else if (name.startsWith("variant_") && name.endsWith(".json")) {
+          variantShaderJobs.add(FileHelper.removeEnd(name, ".json"));
+        }
+      }
+    }
+    variantShaderJobs.sort(new AlphanumComparator());
+    final ShaderFamilyInfo result =
+        new ShaderFamilyInfo(shaderFamily, isCompute, nbVariants, variantShaderJobs, lastModified);
+    shaderFamilies.put(shaderFamily, result);
+    return result;
+  }
+
+  /**
+   * Yields the results of a worker for a shader family.
+   * @param worker The worker.
+   * @param shaderFamily The shader family.
+   * @return A map from the name of each result, e.g. "reference" or "variant_001", to the contents
+   *     of its .info.json file, in alphanumeric order of name.
+   */
+  public synchronized SortedMap<String, JsonObject> getResults(String worker,
+      String shaderFamily) {
+    final File dir = new File(new File(workerDir, worker), shaderFamily);
+    final ResultDir resultDir = resultDirs.computeIfAbsent(key(worker, shaderFamily),
+        item -> new ResultDir());
+    if (resultDir.stale
+        || resultDir.lastModified != dir.lastModified()
+        || clock.getAsLong() - resultDir.checkedAt > refreshIntervalMs) {
+      refresh(dir, resultDir);
+    }
+    final SortedMap<String, JsonObject> result = new TreeMap<>(new AlphanumComparator());
+    for (Map.Entry<String, ResultFile> entry : resultDir.files.entrySet()) {
+      result.put(entry.getKey(), entry.getValue().info);
+    }
+    return result;
+  }
+
+  public synchronized WebUi.ReductionStatus getReductionStatus(String worker, String shaderFamily,
+      String shader) {
+    final File reductionDir =
+        new File(new File(new File(new File(workerDir, worker), shaderFamily), "reductions"),
+            shader);
+    // The files that determine the status of a reduction are only ever added to or removed from
+    // the reduction directory, each of which changes the directory's modification time.
+    final long lastModified = reductionDir.lastModified();
+    final String key = reductionDir.getPath();
+    final ReductionInfo cached = reductions.get(key);
+    if (cached != null && cached.lastModified == lastModified) {
+      return cached.status;
+    }
+    final WebUi.ReductionStatus status = computeReductionStatus(reductionDir, shader);
+    reductions.put(key, new ReductionInfo(lastModified, status));
+    return status;
+  }
+
+  /**
+   * Records that a result has been written, so that it is re-read when next needed.
+   * @param resultFile The .info.json file of the result.
+   */
+  public synchronized void resultWritten(File resultFile) {
+    final File dir = resultFile.getAbsoluteFile().getParentFile();
+    if (dir == null || dir.getParentFile() == null) {
+      return;
+    }
+    final ResultDir resultDir = resultDirs.get(key(dir.getParentFile().getName(), dir.getName()));
+    if (resultDir == null) {
+      return;
+    }
+    // The file's modification time may not have changed if it was written twice in quick
+    // succession, so forget it rather than relying on that.
+    resultDir.files.remove(FileHelper.removeEnd(resultFile.getName(), RESULT_EXTENSION));
+    resultDir.stale = true;
+  }
+
+  private void refresh(File dir, ResultDir resultDir) {
+    // Note the modification time before listing the directory, so that a result added while
+    // the directory is being listed leads to another refresh.
+    resultDir.lastModified = dir.lastModified();
+    resultDir.checkedAt = clock.getAsLong();
+    resultDir.stale = false;
+    final Map<String, ResultFile> files = new HashMap<>();
+    final File[] resultFiles = dir.listFiles((unused, name) -> name.endsWith(RESULT_EXTENSION));
+    if (resultFiles != null) {
+      for (File resultFile : resultFiles) {
+        final String name = FileHelper.removeEnd(resultFile.getName(), RESULT_EXTENSION);
+        final long lastModified = resultFile.lastModified();
+        final ResultFile previous = resultDir.files.get(name);
+        if (previous != null && previous.lastModified == lastModified) {
+          files.put(name, previous);
+          continue;
+        }
+        try (Reader reader = new FileReader(resultFile)) {
+          final JsonObject info = gson.fromJson(reader, JsonObject.class);
+          if (info != null) {
+            files.put(name, new ResultFile(lastModified, info));
+          }
+        } catch (IOException | JsonParseException exception) {
+          // Most likely the result is still being written; try again next time.
+          LOGGER.warn("Could not read result " + resultFile + ".", exception);
+          resultDir.stale = true;
+        }
+      }
+    }
+    resultDir.files = files;
+  }
+
+  private static WebUi.ReductionStatus computeReductionStatus(File reductionDir, String shader) {
+    if (!reductionDir.exists()) {
+      return WebUi.ReductionStatus.NOREDUCTION;
+    }
+
+    if (new File(reductionDir, Constants.REDUCTION_INCOMPLETE).exists()) {
+      return WebUi.ReductionStatus.INCOMPLETE;
+    }
+
+    if (new File(reductionDir, shader + "_reduced_final.frag").exists()) {
+      return WebUi.ReductionStatus.FINISHED;
+    }
+
+    if (new File(reductionDir, "NOT_INTERESTING").exists()) {
+      return WebUi.ReductionStatus.NOTINTERESTING;
+    }
+
+    if (ReductionProgressHelper.getReductionExceptionFile(reductionDir, shader).exists()) {
+      return WebUi.ReductionStatus.EXCEPTION;
+    }
+
+    return WebUi.ReductionStatus.ONGOING;
+  }
+
+  private static String key(String worker, String shaderFamily) {
+    return worker + "/" + shaderFamily;
+  }
+
+}
@@ -29,10 +29,7 @@ import com.graphicsfuzz.server.thrift.CommandInfo;
 import com.graphicsfuzz.server.thrift.CommandResult;
 import com.graphicsfuzz.server.thrift.FuzzerServiceManager;
 import com.graphicsfuzz.server.thrift.WorkerInfo;
-import com.graphicsfuzz.util.Constants;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
@@ -45,6 +42,7 @@ import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
 import java.util.regex.Pattern;
 import javax.servlet.ServletException;
 import javax.servlet.ServletOutputStream;
@@ -83,6 +81,8 @@ public class WebUi extends HttpServlet {
   private final StringBuilder html;
   private long startTime;
   private final AccessFileInfo accessFileInfo;
+  private final ResultIndex resultIndex;
+  private final Consumer<File> resultListener;
 
   private static final String WARNING_CLASS_WRONG_RESULT = "wrongresult";
   private static final String WARNING_CLASS_WARN_RESULT = "warnresult";
@@ -114,10 +114,20 @@ public class WebUi extends HttpServlet {
   public WebUi(FuzzerServiceManager.Iface fuzzerServiceManager, ShaderJobFileOperations fileOps) {
     this.html = new StringBuilder();
     this.accessFileInfo = new AccessFileInfo();
+    this.resultIndex = new ResultIndex(new File(WebUiConstants.WORKER_DIR),
+        new File(WebUiConstants.SHADER_FAMILIES_DIR), ResultIndex.DEFAULT_REFRESH_INTERVAL_MS);
+    this.resultListener = resultIndex::resultWritten;
+    ShaderJobFileOperations.addResultListener(resultListener);
     this.fileOps = fileOps;
     this.fuzzerServiceManagerProxy = fuzzerServiceManager;
   }
 
+  @Override
+  public void destroy() {
+    ShaderJobFileOperations.removeResultListener(resultListener);
+    super.destroy();
+  }
+
   private static final class ShaderFamily {
     final String name;
     final File dir;
@@ -125,24 +135,13 @@ public class WebUi extends HttpServlet {
     final int nbVariants;
     final boolean isCompute;
 
-    public ShaderFamily(String name) {
+    public ShaderFamily(String name, ResultIndex resultIndex) {
+      final ResultIndex.ShaderFamilyInfo info = resultIndex.getShaderFamily(name);
       this.name = name;
       this.dir = new File(WebUiConstants.SHADER_FAMILIES_DIR, name);
       this.preview = new File(dir, "thumb.png");
-      this.isCompute = new File(dir, "reference.comp").isFile();
-      this.nbVariants = getNbVariants();
-    }
-
-    private int getNbVariants() {
-      final File[] variants;
-      if (this.isCompute) {
-        variants = dir.listFiles(item -> item.getName().startsWith("variant")
-            && item.getName().endsWith(".comp"));
-      } else {
-        variants = dir.listFiles(item -> item.getName().startsWith("variant")
-            && item.getName().endsWith(".frag"));
-      }
-      return variants == null ? 0 : variants.length;
+      this.isCompute = info.isCompute;
+      this.nbVariants = info.nbVariants;
     }
   }
 
@@ -166,19 +165,18 @@ public class WebUi extends HttpServlet {
     int nbSlightlyDifferentComputeResult;
     int nbWrongComputeResult;
 
-    public ShaderFamilyResult(String name, String worker, AccessFileInfo accessFileInfo)
-        throws FileNotFoundException {
+    public ShaderFamilyResult(String name, String worker, ResultIndex resultIndex) {
       this.name = name;
       this.worker = worker;
       this.dir = new File(WebUiConstants.WORKER_DIR + "/" + worker + "/" + name);
-      this.shaderFamily = new ShaderFamily(name);
+      this.shaderFamily = new ShaderFamily(name, resultIndex);
       this.nbVariants = shaderFamily.nbVariants;
 
       // Set variant counters
-      for (File file : dir.listFiles()) {
-        if (file.getName().startsWith("variant") && file.getName().endsWith(".info.json")) {
+      for (Map.Entry<String, JsonObject> result : resultIndex.getResults(worker, name).entrySet()) {
+        if (result.getKey().startsWith("variant")) {
           nbVariantDone++;
-          JsonObject info = accessFileInfo.getResultInfo(file);
+          JsonObject info = result.getValue();
           String status = info.get("status").getAsString();
           if (status.contentEquals("SUCCESS")) {
             if (shaderFamily.isCompute) {
@@ -308,7 +306,7 @@ public class WebUi extends HttpServlet {
 
   }
 
-  private enum ReductionStatus {
+  enum ReductionStatus {
     NOREDUCTION, ONGOING, FINISHED, NOTINTERESTING, EXCEPTION, INCOMPLETE
   }
 
@@ -468,8 +466,8 @@ public class WebUi extends HttpServlet {
         "<div class='ui middle aligned selection animated celled list'>\n");
     List<File> shaderFamilies = getAllShaderFamilies(request, response);
     if (shaderFamilies.size() > 0) {
-      for (File file : shaderFamilies) {
-        ShaderFamily shaderFamily = new ShaderFamily(file.getName());
+      for (File file : getPage(request, shaderFamilies)) {
+        ShaderFamily shaderFamily = new ShaderFamily(file.getName(), resultIndex);
         htmlAppendLn("<a class='item' href='/webui/shaderset/", shaderFamily.name, "'>",
             "<img class='ui mini image' alt='Reference image preview' src='/webui/file/",
             shaderFamily.preview.getPath(), "' onerror=\"this.style.display='none'\">",
@@ -478,7 +476,9 @@ public class WebUi extends HttpServlet {
             "</div></a>");
       }
     }
-    htmlAppendLn("</div></div>");
+    htmlAppendLn("</div>");
+    htmlPagination(request, shaderFamilies.size());
+    htmlAppendLn("</div>");
 
     // Server log
     String serverLog = getFileContents(new File(WebUiConstants.WORKER_DIR + "/server.log"));
@@ -612,11 +612,11 @@ public class WebUi extends HttpServlet {
     File[] shaderFamilies = workerDir.listFiles(File::isDirectory);
     Arrays.sort(shaderFamilies,
         (f1, f2) -> new AlphanumComparator().compare(f1.getName(), f2.getName()));
-    for (File shaderFamilyFile : shaderFamilies) {
+    for (File shaderFamilyFile : getPage(request, Arrays.asList(shaderFamilies))) {
       final String shaderFamily = shaderFamilyFile.getName();
 
       ShaderFamilyResult shaderFamilyResult = new ShaderFamilyResult(shaderFamily, workerName,
-          accessFileInfo);
+          resultIndex);
 
       if (shaderFamilyResult.shaderFamily.isCompute) {
         htmlAppendLn(
@@ -646,7 +646,9 @@ public class WebUi extends HttpServlet {
             "</div></a>");
       }
     }
-    htmlAppendLn("</div></div>");
+    htmlAppendLn("</div>");
+    htmlPagination(request, shaderFamilies.length);
+    htmlAppendLn("</div>");
 
     htmlFooter();
     response.getWriter().println(html);
@@ -687,7 +689,9 @@ public class WebUi extends HttpServlet {
     String[] workers = new String[1];
     workers[0] = workerName;
 
-    htmlComparativeTable(shaderFamily, workers);
+    final List<String> variants = resultIndex.getShaderFamily(shaderFamily).variantShaderJobs;
+    htmlComparativeTable(shaderFamily, workers, getPage(request, variants));
+    htmlPagination(request, variants.size());
 
     htmlAppendLn("</div>");
 
@@ -725,13 +729,14 @@ public class WebUi extends HttpServlet {
     Arrays.sort(shaderFamilies,
         (f1, f2) -> new AlphanumComparator().compare(f1.getName(), f2.getName()));
     String[] workers = new String[1];
-    for (File shaderFamilyFile : shaderFamilies) {
+    for (File shaderFamilyFile : getPage(request, Arrays.asList(shaderFamilies))) {
       final String shaderFamily = shaderFamilyFile.getName();
       htmlAppendLn("<div class='ui segment'>\n", "<h3>", shaderFamily, "</h3>");
       workers[0] = workerName;
       htmlComparativeTable(shaderFamily, workers);
       htmlAppendLn("</div>");
     }
+    htmlPagination(request, shaderFamilies.length);
 
     htmlFooter();
     response.getWriter().println(html);
@@ -843,7 +848,9 @@ public class WebUi extends HttpServlet {
       workers[i] = workerList.get(i);
     }
 
-    htmlComparativeTable(shaderFamily, workers);
+    final List<String> variants = resultIndex.getShaderFamily(shaderFamily).variantShaderJobs;
+    htmlComparativeTable(shaderFamily, workers, getPage(request, variants));
+    htmlPagination(request, variants.size());
 
     htmlAppendLn("</div>");
     htmlFooter();
@@ -1039,9 +1046,10 @@ public class WebUi extends HttpServlet {
         }
       }
 
+      // The animation itself may not have been made yet; it is made when first requested.
       String gifPath = posixPath(variantDir, variant + ".gif");
-      File gifFile = posixPathToFile(gifPath);
-      if (gifFile.exists()) {
+      File nondetFile = posixPathToFile(gifPath.replace(".gif", "_nondet1.png"));
+      if (nondetFile.exists()) {
         htmlAppendLn("<p>Results non-deterministic animation:</p>",
             "<img src='/webui/file/", gifPath, "'>",
             "<p>Here are the second-to-last and last renderings:</p>\n",
@@ -1053,7 +1061,7 @@ public class WebUi extends HttpServlet {
             "'> ");
       }
 
-      if (!pngFile.exists() && !gifFile.exists()) {
+      if (!pngFile.exists() && !nondetFile.exists()) {
         htmlAppendLn("<p>No image to display for this result status</p>");
       }
 
@@ -1126,8 +1134,8 @@ public class WebUi extends HttpServlet {
     htmlAppendLn("<div class='ui segment'>\n",
         "<h3>Reduction results</h3>");
 
-    final ReductionStatus referenceReductionStatus = getReductionStatus(worker, shaderFamily,
-        "reference");
+    final ReductionStatus referenceReductionStatus = resultIndex.getReductionStatus(worker,
+        shaderFamily, "reference");
     File referenceShader = new File(WebUiConstants.SHADER_FAMILIES_DIR + "/"
         + shaderFamily, "reference.frag");
     if (referenceReductionStatus == ReductionStatus.FINISHED) {
@@ -1137,7 +1145,8 @@ public class WebUi extends HttpServlet {
       );
     }
 
-    final ReductionStatus reductionStatus = getReductionStatus(worker, shaderFamily, variant);
+    final ReductionStatus reductionStatus =
+        resultIndex.getReductionStatus(worker, shaderFamily, variant);
 
     htmlAppendLn("<p>Reduction status: <b>", reductionStatus.toString(), "</b></p>");
 
@@ -1278,31 +1287,6 @@ public class WebUi extends HttpServlet {
     }
   }
 
-  private ReductionStatus getReductionStatus(String worker, String shaderFamily, String shader) {
-    final File reductionDir = ReductionFilesHelper.getReductionDir(worker, shaderFamily, shader);
-    if (! reductionDir.exists()) {
-      return ReductionStatus.NOREDUCTION;
-    }
-
-    if (new File(reductionDir, Constants.REDUCTION_INCOMPLETE).exists()) {
-      return ReductionStatus.INCOMPLETE;
-    }
-
-    if (new File(reductionDir, shader + "_reduced_final.frag").exists()) {
-      return ReductionStatus.FINISHED;
-    }
-
-    if (new File(reductionDir, "NOT_INTERESTING").exists()) {
-      return ReductionStatus.NOTINTERESTING;
-    }
-
-    if (ReductionProgressHelper.getReductionExceptionFile(reductionDir, shader).exists()) {
-      return ReductionStatus.EXCEPTION;
-    }
-
-    return ReductionStatus.ONGOING;
-  }
-
   // Page to setup running a shader on workers
   private void startRunShader(HttpServletRequest request, HttpServletResponse response)
       throws IOException, TException {
@@ -1492,7 +1476,7 @@ public class WebUi extends HttpServlet {
     for (File shaderFamilyFile: getAllShaderFamilies(request, response)) {
 
       // TODO(360): Handle compute shaders
-      ShaderFamily shaderFamily = new ShaderFamily(shaderFamilyFile.getName());
+      ShaderFamily shaderFamily = new ShaderFamily(shaderFamilyFile.getName(), resultIndex);
       if (shaderFamily.isCompute) {
         continue;
       }
@@ -1872,6 +1856,10 @@ public class WebUi extends HttpServlet {
     }
     String filename = request.getPathInfo().substring(prefix.length());
     File file = new File(filename);
+    if (!file.exists() && filename.endsWith(".gif")) {
+      // Animations of nondeterministic results are made lazily.
+      fileOps.createNondetGif(new File(FileHelper.removeEnd(filename, ".gif") + ".info.json"));
+    }
     if ((!file.exists()) || file.isDirectory()) {
       err404(request, response);
       return;
@@ -2050,10 +2038,9 @@ public class WebUi extends HttpServlet {
     }
   }
 
-  private void htmlVariantResultTableCell(File variantInfoFile, String referencePngPath,
-      ReductionStatus reductionStatus, boolean isCompute) throws FileNotFoundException {
+  private void htmlVariantResultTableCell(File variantInfoFile, JsonObject info,
+      String referencePngPath, ReductionStatus reductionStatus, boolean isCompute) {
 
-    JsonObject info = accessFileInfo.getResultInfo(variantInfoFile);
     String status = info.get("status").getAsString();
     String cellHref = "/webui/result/" + variantInfoFile.getPath().replace(".info.json", "");
 
@@ -2313,27 +2300,18 @@ public class WebUi extends HttpServlet {
         "</form>");
   }
 
-  private void htmlComparativeTable(String shaderFamilyFilename, String[] workers)
-      throws FileNotFoundException {
+  private void htmlComparativeTable(String shaderFamilyFilename, String[] workers) {
+    htmlComparativeTable(shaderFamilyFilename, workers,
+        resultIndex.getShaderFamily(shaderFamilyFilename).variantShaderJobs);
+  }
 
-    final ShaderFamily shaderFamily = new ShaderFamily(shaderFamilyFilename);
+  private void htmlComparativeTable(String shaderFamilyFilename, String[] workers,
+      List<String> variantShaderJobs) {
 
-    // A filter for all variant shader jobs
-    final FilenameFilter variantShaderJobFilter =
-        (dir, name) -> name.startsWith("variant_") && name.endsWith(".json");
+    final ShaderFamily shaderFamily = new ShaderFamily(shaderFamilyFilename, resultIndex);
 
     htmlAppendLn("<table class='ui celled compact collapsing table'>\n",
         "<thead><tr>");
-    final File variantsDir = new File(WebUiConstants.SHADER_FAMILIES_DIR, shaderFamilyFilename);
-    File[] variantShaderJobFiles = variantsDir.listFiles(variantShaderJobFilter);
-    if (variantShaderJobFiles == null) {
-      // If no variant shader job files are found, the array reference will be null; set it to an
-      // empty array so that we can render a table with references only.
-      variantShaderJobFiles = new File[0];
-    }
-
-    Arrays.sort(variantShaderJobFiles, (f1, f2) ->
-        new AlphanumComparator().compare(f1.getName(), f2.getName()));
 
     boolean showWorkerNames = workers.length > 1;
 
@@ -2352,10 +2330,11 @@ public class WebUi extends HttpServlet {
         "'>",
         "reference",
         "</a></th>");
-    for (File f: variantShaderJobFiles) {
+    for (String variant : variantShaderJobs) {
       htmlAppendLn("<th class='selectable center aligned'>",
-          "<a href='/webui/shader/", f.getPath(), "'>",
-          FilenameUtils.removeExtension(f.getName()), "</a></th>");
+          "<a href='/webui/shader/", WebUiConstants.SHADER_FAMILIES_DIR, "/",
+          shaderFamilyFilename, "/", variant, ".json'>",
+          variant, "</a></th>");
     }
     htmlAppendLn("</tr></thead>\n",
         "<tbody>");
@@ -2367,14 +2346,16 @@ public class WebUi extends HttpServlet {
         htmlAppendLn("<td>", worker, "</td>");
       }
 
+      final Map<String, JsonObject> results =
+          resultIndex.getResults(worker, shaderFamilyFilename);
+
       final String refHref = WebUiConstants.WORKER_DIR + "/" + worker + "/"
           + shaderFamilyFilename + "/reference";
-      final File refInfoFile = new File(refHref + ".info.json");
       final String refPngPath = refHref + ".png";
 
       htmlAppendLn("<td ");
-      if (refInfoFile.exists()) {
-        JsonObject refInfo = accessFileInfo.getResultInfo(refInfoFile);
+      if (results.containsKey("reference")) {
+        JsonObject refInfo = results.get("reference");
         String refStatus = refInfo.get("status").getAsString();
         if (refStatus.contentEquals("SUCCESS")) {
           htmlAppendLn("class='selectable center aligned'><a href='/webui/result/",
@@ -2399,17 +2380,15 @@ public class WebUi extends HttpServlet {
       }
       htmlAppendLn("</td>");
 
-      for (File f : variantShaderJobFiles) {
-        final String filenameWithoutExtension = FilenameUtils.removeExtension(f.getName());
-        File infoFile = new File(WebUiConstants.WORKER_DIR,
-            Paths.get(worker, shaderFamilyFilename, filenameWithoutExtension + ".info.json")
-            .toString());
+      for (String variant : variantShaderJobs) {
+        if (results.containsKey(variant)) {
+          File infoFile = new File(WebUiConstants.WORKER_DIR,
+              Paths.get(worker, shaderFamilyFilename, variant + ".info.json").toString());
+          ReductionStatus reductionStatus = resultIndex.getReductionStatus(worker,
+              shaderFamilyFilename, variant);
 
-        if (infoFile.isFile()) {
-          ReductionStatus reductionStatus = getReductionStatus(worker, shaderFamilyFilename,
-              filenameWithoutExtension);
-
-          htmlVariantResultTableCell(infoFile, refPngPath, reductionStatus, shaderFamily.isCompute);
+          htmlVariantResultTableCell(infoFile, results.get(variant), refPngPath, reductionStatus,
+              shaderFamily.isCompute);
         } else {
           htmlAppendLn("<td class='bound-cell-width center aligned'>No result yet</td>");
         }
@@ -2419,6 +2398,52 @@ public class WebUi extends HttpServlet {
     htmlAppendLn("</tbody>\n</table>");
   }
 
+  // Yields the page of items asked for by the "page" parameter of a request, counting from 1,
+  // with pages of the size given by the "pageSize" parameter.
+  private static <T> List<T> getPage(HttpServletRequest request, List<T> items) {
+    final int pageSize = getPageSize(request);
+    final int numPages = Math.max(1, (items.size() + pageSize - 1) / pageSize);
+    final int page = Math.min(getIntParameter(request, "page", 1), numPages);
+    return items.subList((page - 1) * pageSize, Math.min(page * pageSize, items.size()));
+  }
+
+  private static int getPageSize(HttpServletRequest request) {
+    return getIntParameter(request, "pageSize", WebUiConstants.PAGE_SIZE);
+  }
+
+  private static int getIntParameter(HttpServletRequest request, String name, int defaultValue) {
+    final String value = request.getParameter(name);
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      return Math.max(1, Integer.parseInt(value));
+    } catch (NumberFormatException exception) {
+      return defaultValue;
+    }
+  }
+
+  // Links to the previous and next pages of a list shown using getPage().
+  private void htmlPagination(HttpServletRequest request, int numItems) {
+    final int pageSize = getPageSize(request);
+    final int numPages = Math.max(1, (numItems + pageSize - 1) / pageSize);
+    if (numPages == 1) {
+      return;
+    }
+    final int page = Math.min(getIntParameter(request, "page", 1), numPages);
+    final String href = request.getRequestURI() + "?pageSize=" + pageSize + "&page=";
+    htmlAppendLn("<div class='ui pagination menu'>\n");
+    if (page > 1) {
+      htmlAppendLn("<a class='item' href='", href, Integer.toString(page - 1), "'>Previous</a>\n");
+    }
+    htmlAppendLn("<div class='active item'>Page ", Integer.toString(page), " of ",
+        Integer.toString(numPages), "</div>\n");
+    if (page < numPages) {
+      htmlAppendLn("<a class='item' href='", href, Integer.toString(page + 1), "'>Next</a>\n");
+    }
+    htmlAppendLn("</div>");
+  }
+
   private void htmlResultColorLegendTable() {
     htmlAppendLn("<div class='ui segment'>\n",
         "<h4>Legend for background colors in result table</h4>",
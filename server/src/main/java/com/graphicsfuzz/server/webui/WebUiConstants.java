@@ -26,6 +26,8 @@ public final class WebUiConstants {
   static final String WORKER_DIR = "processing";
   static final String SHADER_FAMILIES_DIR = "shaderfamilies";
   static final String WORKER_INFO_FILE = "client.json";
+  // Number of items shown per page in long lists of results.
+  static final int PAGE_SIZE = 50;
   static final String COMPUTE_SHADER_DOC_URL =
       "https://github.com/google/graphicsfuzz/blob/master/docs/glsl-fuzz-walkthrough"
           + ".md#Inspecting-results-for-compute-shader-families";
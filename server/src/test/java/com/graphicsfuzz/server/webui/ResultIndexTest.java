@@ -0,0 +1,110 @@
+/*
+ * Copyright 2018 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.server.webui;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.gson.JsonObject;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ResultIndexTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private static void writeResult(File dir, String name, String status) throws Exception {
+    FileUtils.writeStringToFile(new File(dir, name + ".info.json"),
+        "{\"status\": \"" + status + "\"}", StandardCharsets.UTF_8);
+  }
+
+  private static String getStatus(Map<String, JsonObject> results, String name) {
+    return results.get(name).get("status").getAsString();
+  }
+
+  @Test
+  public void testResultsAreUpdated() throws Exception {
+    final File workerDir = temporaryFolder.newFolder("processing");
+    final File resultDir = new File(workerDir, "worker/family");
+    final AtomicLong time = new AtomicLong(0);
+    final ResultIndex index = new ResultIndex(workerDir, temporaryFolder.newFolder("families"),
+        1000, time::get);
+
+    assertTrue(index.getResults("worker", "family").isEmpty());
+
+    writeResult(resultDir, "reference", "SUCCESS");
+    writeResult(resultDir, "variant_10", "CRASH");
+    writeResult(resultDir, "variant_9", "SUCCESS");
+    // The directory was created, which must be noticed.
+    Map<String, JsonObject> results = index.getResults("worker", "family");
+    assertEquals(Arrays.asList("reference", "variant_9", "variant_10"),
+        Arrays.asList(results.keySet().toArray()));
+
+    // A result rewritten by this process.
+    writeResult(resultDir, "variant_9", "TIMEOUT");
+    index.resultWritten(new File(resultDir, "variant_9.info.json"));
+    assertEquals("TIMEOUT", getStatus(index.getResults("worker", "family"), "variant_9"));
+
+    // A result rewritten by another process is only noticed after the refresh interval.
+    writeResult(resultDir, "variant_10", "SUCCESS");
+    final File variant10 = new File(resultDir, "variant_10.info.json");
+    assertTrue(variant10.setLastModified(variant10.lastModified() + 10000));
+    assertEquals("CRASH", getStatus(index.getResults("worker", "family"), "variant_10"));
+    time.set(1001);
+    assertEquals("SUCCESS", getStatus(index.getResults("worker", "family"), "variant_10"));
+  }
+
+  @Test
+  public void testShaderFamily() throws Exception {
+    final File familiesDir = temporaryFolder.newFolder("families");
+    final File familyDir = new File(familiesDir, "family");
+    for (String name : new String[] { "reference", "variant_1", "variant_0" }) {
+      FileUtils.writeStringToFile(new File(familyDir, name + ".frag"), "", StandardCharsets.UTF_8);
+      FileUtils.writeStringToFile(new File(familyDir, name + ".json"), "{}",
+          StandardCharsets.UTF_8);
+    }
+    final ResultIndex index = new ResultIndex(temporaryFolder.newFolder("processing"),
+        familiesDir, 1000);
+    final ResultIndex.ShaderFamilyInfo info = index.getShaderFamily("family");
+    assertFalse(info.isCompute);
+    assertEquals(2, info.nbVariants);
+    assertEquals(Arrays.asList("variant_0", "variant_1"), info.variantShaderJobs);
+  }
+
+  @Test
+  public void testReductionStatus() throws Exception {
+    final File workerDir = temporaryFolder.newFolder("processing");
+    final ResultIndex index = new ResultIndex(workerDir, temporaryFolder.newFolder("families"),
+        1000);
+    assertEquals(WebUi.ReductionStatus.NOREDUCTION,
+        index.getReductionStatus("worker", "family", "variant_0"));
+    final File reductionDir = new File(workerDir, "worker/family/reductions/variant_0");
+    assertTrue(reductionDir.mkdirs());
+    assertEquals(WebUi.ReductionStatus.ONGOING,
+        index.getReductionStatus("worker", "family", "variant_0"));
+  }
+
+}
@@ -83,7 +83,8 @@ public class RunShaderFamily {
         .type(String.class);
 
     parser.addArgument("--worker")
-        .help("The name of the worker used for get image requests. Used with --server.")
+        .help("The name of the worker used for get image requests, or pool:NAME to share the "
+            + "requests between the workers of a pool. Used with --server.")
         .type(String.class);
 
     parser.addArgument("--output")
@@ -88,9 +88,30 @@ struct WorkerInfo {
   4 : optional bool live,
 }
 
+struct ResultCacheInfo {
+  1 : optional i64 hits,
+  2 : optional i64 misses,
+  3 : optional i32 size,
+  4 : optional i32 capacity,
+}
+
+struct TransferInfo {
+  // Bytes received and sent by the server over all connections, after compression.
+  1 : optional i64 bytesReceived,
+  2 : optional i64 bytesSent,
+  // Shader sources left out of jobs because the worker already had them.
+  3 : optional i64 sourcesElided,
+  4 : optional i64 sourceBytesElided,
+}
+
 struct ServerInfo {
   1 : optional list<CommandInfo> reductionQueue,
   2 : optional list<WorkerInfo> workers
+  // Configured worker pools, mapping each pool name to its member workers.
+  3 : optional map<string, list<string>> pools
+  // Only set if the server caches job results.
+  4 : optional ResultCacheInfo resultCache
+  5 : optional TransferInfo transfer
 }
 
 struct GetWorkerNameResult {
@@ -191,6 +212,17 @@ struct ImageJob {
     7  : optional binary textureBinary;        // unused for now
     8  : optional bool skipRender = false;
     9  : optional ImageJobResult result;
+
+    // If set, the server will not answer the job from its result cache, e.g. because the job is
+    // checking for nondeterminism.  Ignored by workers.
+    12 : optional bool bypassResultCache = false;
+
+    // Only set for workers that have enabled their source cache (see
+    // FuzzerService.enableSourceCache).  The content hash of each source; if the source itself is
+    // not set, the worker has been sent it recently and should take it from its cache.
+    13 : optional string fragmentSourceHash;
+    14 : optional string vertexSourceHash;
+    15 : optional string computeSourceHash;
 }
 
 // The server does not expect a reply for a NoJob
@@ -218,6 +250,10 @@ exception WorkerNameNotFoundException {
   1 : optional string workerName
 }
 
+exception SourceNotFoundException {
+  1 : optional string hash
+}
+
 
 /**
 * Our public FuzzerService interface.
@@ -229,6 +265,19 @@ service FuzzerService {
   Job getJob(1 : string workerName) throws (1 : WorkerNameNotFoundException ex),
 
   void jobDone(1 : string workerName, 2 : Job job) throws (1 : WorkerNameNotFoundException ex),
+
+  // Renews the worker's lease, e.g. while it is running a long job.  Any call to getJob or
+  // jobDone also renews the lease.
+  void heartbeat(1 : string workerName) throws (1 : WorkerNameNotFoundException ex),
+
+  // Tells the server that the worker keeps the most recently used `capacity` shader sources it
+  // has been sent, keyed by content hash, so that the server can omit those sources from later
+  // jobs.  Forgets anything the server knew about the worker's previous cache.
+  void enableSourceCache(1 : string workerName, 2 : i32 capacity)
+      throws (1 : WorkerNameNotFoundException ex),
+
+  // Yields a shader source by content hash, for a worker that no longer has it cached.
+  string getSource(1 : string hash) throws (1 : SourceNotFoundException ex),
 }
 
 /**
@@ -0,0 +1,649 @@
+/*
+ * Copyright 2019 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.tool;
+
+import com.graphicsfuzz.common.util.UpgradeShadingLanguageVersion;
+import com.graphicsfuzz.generator.tool.Fragment2Compute;
+import com.graphicsfuzz.generator.tool.Generate;
+import com.graphicsfuzz.generator.tool.GenerateShaderFamily;
+import com.graphicsfuzz.generator.tool.GlslGenerate;
+import com.graphicsfuzz.generator.tool.Mutate;
+import com.graphicsfuzz.generator.tool.PrepareReference;
+import com.graphicsfuzz.reducer.tool.GlslReduce;
+import com.graphicsfuzz.reducer.tool.GlslReduceBatch;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
+import net.sourceforge.argparse4j.inf.Namespace;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+/**
+ * Server that runs the command line tools on behalf of clients, so that scripts that run many
+ * short tools pay for starting a JVM, and for building the tables that the tools share, once.
+ *
+ * <p>The server only listens on the loopback interface, and only serves clients that know a secret
+ * token, kept in a file that only the user who runs the server can read: see
+ * {@link #readOrCreateToken}.  Each connection carries one request, made up of a big endian
+ * uint32_t count of strings followed by the strings, each a big endian uint32_t length followed
+ * by that many bytes of UTF-8.  The strings are the token, the client's working directory, the
+ * name of the tool and the tool's arguments.  The answer is a sequence of frames,
+ * each starting with a uint8_t kind: output written by the tool to standard output (kind 1) or
+ * standard error (kind 2), as a big endian uint32_t length followed by the bytes, and finally the
+ * exit status of the tool (kind 3), as a big endian int32_t.</p>
+ *
+ * <p>Requests are run concurrently, each by the thread serving its connection.  Output written by
+ * that thread, or by threads it starts, goes to the client while the request runs; other output,
+ * including that of threads that outlive the request, goes to the server's console.  The JVM has
+ * a single working directory, so relative paths among the arguments that each tool takes as paths
+ * are resolved against the client's working directory instead: see {@link #resolveArguments}.
+ * The tools share static state, which is limited to tables that are built once and never
+ * changed, such as the built-in functions; sharing these is much of what the server saves.</p>
+ */
+public class ToolServer {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ToolServer.class);
+  private static final int DEFAULT_PORT = 8667;
+  private static final String DEFAULT_TOKEN_FILE = ".graphicsfuzz-tool-server-token";
+  private static final int TOKEN_BYTES = 32;
+
+  static final int FRAME_STDOUT = 1;
+  static final int FRAME_STDERR = 2;
+  static final int FRAME_EXIT = 3;
+
+  private static final int EXIT_SUCCESS = 0;
+  private static final int EXIT_FAILURE = 1;
+
+  // The largest number of strings, and the longest string, accepted in a request.
+  private static final int MAX_STRINGS = 1 << 16;
+  private static final int MAX_STRING_LENGTH = 1 << 20;
+
+  /**
+   * A tool that the server can run.
+   */
+  public interface Tool {
+
+    /**
+     * Runs the tool, as its main method would but without exiting.
+     * @param args The command line arguments of the tool.
+     * @throws Exception if the tool fails, which gives an exit status of 1.
+     */
+    void run(String[] args) throws Exception;
+
+  }
+
+  /**
+   * Which arguments of a tool are paths, so that those that are relative can be resolved against
+   * the client's working directory.  Options that take no value are listed too, so that the
+   * arguments after them are told apart correctly; any other option is taken to have one value.
+   */
+  static final class PathArguments {
+
+    private final Set<Integer> pathPositionals = new HashSet<>();
+    private final Set<Integer> commandPositionals = new HashSet<>();
+    private final Set<String> pathOptions = new HashSet<>();
+    private final Set<String> flags = new HashSet<>(Arrays.asList("-h", "--help"));
+
+    /**
+     * Positional arguments, counted from 0, that are paths.
+     */
+    PathArguments paths(Integer... indices) {
+      pathPositionals.addAll(Arrays.asList(indices));
+      return this;
+    }
+
+    /**
+     * Positional arguments that are commands to run, which are paths only if they have a directory
+     * part; otherwise, as in a shell, they are looked up on the PATH.
+     */
+    PathArguments commands(Integer... indices) {
+      commandPositionals.addAll(Arrays.asList(indices));
+      return this;
+    }
+
+    /**
+     * Options whose values are paths.
+     */
+    PathArguments pathOptions(String... options) {
+      pathOptions.addAll(Arrays.asList(options));
+      return this;
+    }
+
+    /**
+     * Options that take no value.
+     */
+    PathArguments flags(String... options) {
+      flags.addAll(Arrays.asList(options));
+      return this;
+    }
+
+  }
+
+  private static final String[] GENERATOR_FLAGS = { "--small", "--allow-long-loops",
+      "--aggressively-complicate-control-flow", "--single-pass", "--vulkan", "--wgsl-compatible",
+      "--no-injection-switch", "--write-probabilities" };
+
+  private static final String[] SHADER_FAMILY_FLAGS = { "--disable-glslangValidator",
+      "--disable-shader-translator", "--keep-bad-variants", "--stop-on-fail", "--verbose",
+      "--require-license" };
+
+  private static final Map<String, Tool> TOOLS;
+
+  static final Map<String, PathArguments> PATH_ARGUMENTS;
+
+  static {
+    final Map<String, Tool> tools = new LinkedHashMap<>();
+    final Map<String, PathArguments> pathArguments = new HashMap<>();
+    tools.put("glsl-generate", args -> GlslGenerate.mainHelper(args, false));
+    pathArguments.put("glsl-generate", new PathArguments().paths(0, 1, 4)
+        .flags(GENERATOR_FLAGS).flags(SHADER_FAMILY_FLAGS));
+    tools.put("glsl-reduce", args -> GlslReduce.mainHelper(args, null));
+    pathArguments.put("glsl-reduce", new PathArguments().paths(0).commands(1)
+        .pathOptions("--output", "--reference")
+        .flags("--preserve-semantics", "--verbose", "--no-result-cache", "--skip-render",
+            "--stop-on-error", "--swiftshader", "--continue-previous-reduction",
+            "--literals-to-uniforms", "--no-ub-guards"));
+    tools.put("glsl-reduce-batch", args -> GlslReduceBatch.mainHelper(args, null));
+    pathArguments.put("glsl-reduce-batch", new PathArguments().paths(0)
+        .flags("--no-result-cache"));
+    tools.put("prepare-reference", PrepareReference::mainHelper);
+    pathArguments.put("prepare-reference", new PathArguments().paths(0, 1).flags("--vulkan"));
+    tools.put("generate", Generate::mainHelper);
+    pathArguments.put("generate", new PathArguments().paths(0, 1, 2).flags(GENERATOR_FLAGS));
+    tools.put("generate-shader-family", GenerateShaderFamily::mainHelper);
+    pathArguments.put("generate-shader-family", new PathArguments().paths(0, 1, 2)
+        .flags(GENERATOR_FLAGS).flags(SHADER_FAMILY_FLAGS));
+    tools.put("mutate", Mutate::mainHelper);
+    pathArguments.put("mutate", new PathArguments().paths(0, 1));
+    tools.put("fragment2compute", Fragment2Compute::mainHelper);
+    pathArguments.put("fragment2compute", new PathArguments().paths(0, 1).flags("--vulkan"));
+    tools.put("upgrade-shading-language-version", UpgradeShadingLanguageVersion::mainHelper);
+    pathArguments.put("upgrade-shading-language-version", new PathArguments().paths(0, 1)
+        .flags("--norename"));
+    TOOLS = Collections.unmodifiableMap(tools);
+    PATH_ARGUMENTS = Collections.unmodifiableMap(pathArguments);
+  }
+
+  /**
+   * The streams to which the output of a request is sent, until the request is finished.
+   */
+  private static final class RequestStreams {
+
+    private final OutputStream stdout;
+    private final OutputStream stderr;
+    private volatile boolean finished;
+
+    private RequestStreams(OutputStream stdout, OutputStream stderr) {
+      this.stdout = stdout;
+      this.stderr = stderr;
+      this.finished = false;
+    }
+
+  }
+
+  // The streams of the request that the current thread is running, if any.  A thread started while
+  // a request runs inherits its streams, so that output of threads started by a tool also goes to
+  // the client.  Such a thread, for instance in a pool, may outlive the request; its output then
+  // goes to the server's console, as the streams are marked finished, and threads it starts
+  // inherit nothing.
+  private static final InheritableThreadLocal<RequestStreams> requestStreams =
+      new InheritableThreadLocal<RequestStreams>() {
+        @Override
+        protected RequestStreams childValue(RequestStreams parentValue) {
+          return parentValue == null || parentValue.finished ? null : parentValue;
+        }
+      };
+
+  private final int port;
+  private final int maxClients;
+  private final Map<String, Tool> tools;
+  private final byte[] token;
+
+  public ToolServer(int port, int maxClients, Map<String, Tool> tools, String token) {
+    this.port = port;
+    this.maxClients = maxClients;
+    this.tools = tools;
+    this.token = token.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static Namespace parse(String[] args) throws ArgumentParserException {
+    ArgumentParser parser = ArgumentParsers.newArgumentParser("ToolServer")
+        .defaultHelp(true)
+        .description("Run tools for local clients, avoiding the cost of starting a JVM for "
+            + "each. Tools: " + String.join(", ", TOOLS.keySet()) + ".");
+
+    parser.addArgument("--port")
+        .help("Loopback port on which to listen.")
+        .setDefault(DEFAULT_PORT)
+        .type(Integer.class);
+
+    parser.addArgument("--max-clients")
+        .help("Maximum number of requests run at once; further connections are refused.")
+        .setDefault(Runtime.getRuntime().availableProcessors())
+        .type(Integer.class);
+
+    parser.addArgument("--token-file")
+        .help("File holding the token that clients must present; it is created, readable only "
+            + "by its owner, if it does not exist.")
+        .setDefault(new File(System.getProperty("user.home"), DEFAULT_TOKEN_FILE))
+        .type(File.class);
+
+    return parser.parseArgs(args);
+  }
+
+  public static void main(String[] args) {
+    int port = DEFAULT_PORT;
+    try {
+      final Namespace ns = parse(args);
+      port = ns.getInt("port");
+      final String token = readOrCreateToken(ns.get("token_file"));
+      new ToolServer(port, ns.getInt("max_clients"), TOOLS, token).runServer();
+    } catch (ArgumentParserException exception) {
+      exception.getParser().handleError(exception);
+      System.exit(1);
+    } catch (IOException exception) {
+      LOGGER.error("Failed to start server on port: " + port, exception);
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Reads the token that clients must present, first creating the file that holds it, with a new
+   * random token, if there is no such file.  The file is made readable and writable only by its
+   * owner, and an existing file that others can access is rejected, as the token lets any local
+   * user who knows it run tools, which can read and write files, as the user running the server.
+   * @param tokenFile The file holding the token.
+   * @return The token.
+   * @throws IOException if the file cannot be created or read, or others can access it.
+   */
+  static String readOrCreateToken(File tokenFile) throws IOException {
+    final Path path = tokenFile.toPath();
+    final boolean posix = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+    try {
+      if (posix) {
+        Files.createFile(path, PosixFilePermissions.asFileAttribute(
+            PosixFilePermissions.fromString("rw-------")));
+      } else {
+        // Without POSIX permissions, as on Windows, this is a best effort; files in the user's
+        // home directory are usually private anyway.
+        Files.createFile(path);
+        tokenFile.setReadable(false, false);
+        tokenFile.setReadable(true, true);
+        tokenFile.setWritable(false, false);
+        tokenFile.setWritable(true, true);
+      }
+      final byte[] bytes = new byte[TOKEN_BYTES];
+      new SecureRandom().nextBytes(bytes);
+      final StringBuilder newToken = new StringBuilder();
+      for (byte value : bytes) {
+        newToken.append(String.format("%02x", value));
+      }
+      Files.write(path, (newToken + "\n").getBytes(StandardCharsets.UTF_8));
+      LOGGER.info("Created token file: " + tokenFile);
+    } catch (FileAlreadyExistsException exception) {
+      if (posix) {
+        for (PosixFilePermission permission : Files.getPosixFilePermissions(path)) {
+          if (permission != PosixFilePermission.OWNER_READ
+              && permission != PosixFilePermission.OWNER_WRITE) {
+            throw new IOException("Token file must be readable and writable only by its owner: "
+                + tokenFile);
+          }
+        }
+      }
+    }
+    final String result = new String(Files.readAllBytes(path), StandardCharsets.UTF_8).trim();
+    if (result.isEmpty()) {
+      throw new IOException("Token file is empty: " + tokenFile);
+    }
+    return result;
+  }
+
+  public void runServer() throws IOException {
+    try (ServerSocket serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+      runServer(serverSocket);
+    }
+  }
+
+  /**
+   * Serves clients that connect to the given socket, until the socket is closed.
+   * @param serverSocket A socket bound to a loopback address.
+   * @throws IOException if accepting a connection fails.
+   */
+  public void runServer(ServerSocket serverSocket) throws IOException {
+    routeStandardStreams();
+    final ThreadFactory defaultThreadFactory = Executors.defaultThreadFactory();
+    final ThreadPoolExecutor connectionExecutor = new ThreadPoolExecutor(
+        maxClients, maxClients, 60, TimeUnit.SECONDS, new SynchronousQueue<>(),
+        runnable -> defaultThreadFactory.newThread(() -> {
+          // A pool thread can be started by another pool thread, from which it must not inherit
+          // the streams of a request.
+          requestStreams.remove();
+          runnable.run();
+        }));
+    // Threads that have run a request are not needed when there are few clients.
+    connectionExecutor.allowCoreThreadTimeOut(true);
+
+    LOGGER.info("Listening on port: " + serverSocket.getLocalPort());
+    try {
+      while (true) {
+        final Socket socket = serverSocket.accept();
+        try {
+          connectionExecutor.execute(() -> serveClient(socket));
+        } catch (RejectedExecutionException exception) {
+          LOGGER.warn("Refusing connection from {}: already running {} requests.",
+              socket.getRemoteSocketAddress(), maxClients);
+          refuse(socket, "Server busy: try again later.");
+        }
+      }
+    } finally {
+      connectionExecutor.shutdownNow();
+    }
+  }
+
+  /**
+   * Replaces the standard streams with streams that send the output of each request to its
+   * client, and other output where it went before.  Doing this again has no effect.
+   */
+  private static synchronized void routeStandardStreams() {
+    if (!(System.out instanceof RoutingPrintStream)) {
+      System.setOut(new RoutingPrintStream(System.out, streams -> streams.stdout));
+    }
+    if (!(System.err instanceof RoutingPrintStream)) {
+      System.setErr(new RoutingPrintStream(System.err, streams -> streams.stderr));
+    }
+  }
+
+  private void serveClient(Socket socket) {
+    String toolName = null;
+    int exitStatus = EXIT_FAILURE;
+    final long startTime = System.currentTimeMillis();
+    try (Socket closedOnExit = socket) {
+      socket.setTcpNoDelay(true);
+      final DataInputStream inputStream =
+          new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      final DataOutputStream outputStream =
+          new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+      final List<String> request = readRequest(inputStream);
+      if (request.isEmpty()
+          || !MessageDigest.isEqual(request.get(0).getBytes(StandardCharsets.UTF_8), token)) {
+        LOGGER.warn("Refusing connection from {}: wrong token.", socket.getRemoteSocketAddress());
+        writeRefusal(outputStream, "Wrong token: the token must be that in the server's token "
+            + "file.");
+        return;
+      }
+      if (request.size() < 3) {
+        throw new IOException("Request must give a token, a working directory and a tool.");
+      }
+      final File workingDirectory = new File(request.get(1));
+      toolName = request.get(2);
+      final String[] args = resolveArguments(workingDirectory,
+          PATH_ARGUMENTS.getOrDefault(toolName, new PathArguments()),
+          request.subList(3, request.size()));
+
+      try (PrintStream stdout = new PrintStream(new FrameOutputStream(outputStream,
+               FRAME_STDOUT), true, "UTF-8");
+           PrintStream stderr = new PrintStream(new FrameOutputStream(outputStream,
+               FRAME_STDERR), true, "UTF-8")) {
+        final RequestStreams streams = new RequestStreams(stdout, stderr);
+        requestStreams.set(streams);
+        try {
+          exitStatus = runTool(toolName, args, stderr);
+        } finally {
+          streams.finished = true;
+          requestStreams.remove();
+          MDC.clear();
+        }
+      }
+
+      synchronized (outputStream) {
+        outputStream.writeByte(FRAME_EXIT);
+        outputStream.writeInt(exitStatus);
+        outputStream.flush();
+      }
+    } catch (IOException exception) {
+      LOGGER.error("Error serving client " + socket.getRemoteSocketAddress(), exception);
+    }
+    LOGGER.info("Ran {}: exit status {} after {} ms.", toolName, exitStatus,
+        System.currentTimeMillis() - startTime);
+  }
+
+  private int runTool(String toolName, String[] args, PrintStream stderr) {
+    final Tool tool = tools.get(toolName);
+    if (tool == null) {
+      stderr.println("Unknown tool: " + toolName + "; known tools: "
+          + String.join(", ", tools.keySet()));
+      return EXIT_FAILURE;
+    }
+    try {
+      tool.run(args);
+      return EXIT_SUCCESS;
+    } catch (ArgumentParserException exception) {
+      exception.getParser().handleError(exception);
+      return EXIT_FAILURE;
+    } catch (Throwable throwable) {
+      throwable.printStackTrace();
+      return EXIT_FAILURE;
+    }
+  }
+
+  private static List<String> readRequest(DataInputStream inputStream) throws IOException {
+    final int numStrings = inputStream.readInt();
+    if (numStrings < 0 || numStrings > MAX_STRINGS) {
+      throw new IOException("Number of strings out of range: "
+          + Integer.toUnsignedString(numStrings));
+    }
+    final List<String> result = new ArrayList<>();
+    for (int i = 0; i < numStrings; i++) {
+      final int length = inputStream.readInt();
+      if (length < 0 || length > MAX_STRING_LENGTH) {
+        throw new IOException("String length out of range: "
+            + Integer.toUnsignedString(length));
+      }
+      final byte[] bytes = new byte[length];
+      inputStream.readFully(bytes);
+      result.add(new String(bytes, StandardCharsets.UTF_8));
+    }
+    return result;
+  }
+
+  private static void refuse(Socket socket, String message) {
+    try (Socket closedOnExit = socket) {
+      writeRefusal(new DataOutputStream(new BufferedOutputStream(socket.getOutputStream())),
+          message);
+    } catch (IOException exception) {
+      LOGGER.error("Error refusing client " + socket.getRemoteSocketAddress(), exception);
+    }
+  }
+
+  private static void writeRefusal(DataOutputStream outputStream, String message)
+      throws IOException {
+    final byte[] bytes = (message + "\n").getBytes(StandardCharsets.UTF_8);
+    outputStream.writeByte(FRAME_STDERR);
+    outputStream.writeInt(bytes.length);
+    outputStream.write(bytes);
+    outputStream.writeByte(FRAME_EXIT);
+    outputStream.writeInt(EXIT_FAILURE);
+    outputStream.flush();
+  }
+
+  /**
+   * Resolves the relative paths among the arguments of a tool against the client's working
+   * directory.  Only the arguments that the tool takes as paths are resolved, so that other
+   * arguments, such as URLs, are passed on unchanged.  Options must be given in full, not
+   * abbreviated, for their values to be resolved.  Paths inside files, such as those in a batch
+   * file of reductions, are not resolved; such paths should be absolute.
+   * @param workingDirectory The client's working directory.
+   * @param pathArguments Which arguments of the tool are paths.
+   * @param args The arguments of the tool.
+   * @return The arguments, with relative paths made absolute.
+   */
+  static String[] resolveArguments(File workingDirectory, PathArguments pathArguments,
+      List<String> args) {
+    final String[] result = args.toArray(new String[0]);
+    boolean onlyPositionals = false;
+    int positional = 0;
+    for (int i = 0; i < result.length; i++) {
+      final String arg = result[i];
+      if (!onlyPositionals && arg.equals("--")) {
+        onlyPositionals = true;
+      } else if (!onlyPositionals && arg.startsWith("-") && arg.length() > 1) {
+        final int equals = arg.indexOf('=');
+        if (equals >= 0) {
+          if (pathArguments.pathOptions.contains(arg.substring(0, equals))) {
+            result[i] = arg.substring(0, equals + 1)
+                + resolvePath(workingDirectory, arg.substring(equals + 1));
+          }
+        } else if (!pathArguments.flags.contains(arg) && i + 1 < result.length) {
+          // The next argument is the value of this option.
+          i++;
+          if (pathArguments.pathOptions.contains(arg)) {
+            result[i] = resolvePath(workingDirectory, result[i]);
+          }
+        }
+      } else {
+        if (pathArguments.pathPositionals.contains(positional)
+            || (pathArguments.commandPositionals.contains(positional)
+                && (arg.indexOf('/') >= 0 || arg.indexOf(File.separatorChar) >= 0))) {
+          result[i] = resolvePath(workingDirectory, arg);
+        }
+        positional++;
+      }
+    }
+    return result;
+  }
+
+  private static String resolvePath(File workingDirectory, String path) {
+    if (path.isEmpty() || new File(path).isAbsolute()) {
+      return path;
+    }
+    return new File(workingDirectory, path).getPath();
+  }
+
+  /**
+   * Sends each write to the client as a frame of the given kind.
+   */
+  private static final class FrameOutputStream extends OutputStream {
+
+    private final DataOutputStream outputStream;
+    private final int kind;
+
+    private FrameOutputStream(DataOutputStream outputStream, int kind) {
+      this.outputStream = outputStream;
+      this.kind = kind;
+    }
+
+    @Override
+    public void write(int value) throws IOException {
+      write(new byte[] { (byte) value }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+      if (length == 0) {
+        return;
+      }
+      // The standard output and standard error streams of a request share the connection.
+      synchronized (outputStream) {
+        outputStream.writeByte(kind);
+        outputStream.writeInt(length);
+        outputStream.write(bytes, offset, length);
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      synchronized (outputStream) {
+        outputStream.flush();
+      }
+    }
+
+  }
+
+  /**
+   * A standard stream that writes to the given stream of the request being run by the current
+   * thread, if there is one that is not finished, and otherwise to the stream it replaced.
+   */
+  private static final class RoutingPrintStream extends PrintStream {
+
+    private RoutingPrintStream(PrintStream fallback,
+        Function<RequestStreams, OutputStream> requestStream) {
+      super(new OutputStream() {
+
+        private OutputStream current() {
+          final RequestStreams streams = requestStreams.get();
+          return streams == null || streams.finished ? fallback : requestStream.apply(streams);
+        }
+
+        @Override
+        public void write(int value) throws IOException {
+          current().write(value);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+          current().write(bytes, offset, length);
+        }
+
+        @Override
+        public void flush() throws IOException {
+          current().flush();
+        }
+
+      }, true);
+    }
+
+  }
+
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2019 The GraphicsFuzz Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.graphicsfuzz.tool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ToolServerTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private static final File WORKING_DIRECTORY = new File("/home/user/work");
+
+  private static String[] resolve(String tool, String... args) {
+    return ToolServer.resolveArguments(WORKING_DIRECTORY, ToolServer.PATH_ARGUMENTS.get(tool),
+        Arrays.asList(args));
+  }
+
+  private static String inWorkingDirectory(String path) {
+    return new File(WORKING_DIRECTORY, path).getPath();
+  }
+
+  @Test
+  public void testUrlIsNotResolved() {
+    final String[] resolved = resolve("glsl-reduce", "shader.json", "--server",
+        "http://localhost:8080", "--worker", "my-worker", "--output", "out");
+    assertArrayEquals(new String[] { inWorkingDirectory("shader.json"), "--server",
+        "http://localhost:8080", "--worker", "my-worker", "--output",
+        inWorkingDirectory("out") }, resolved);
+  }
+
+  @Test
+  public void testOnlyPathPositionalsAreResolved() {
+    final String[] resolved = resolve("glsl-generate", "refs", "donors", "10", "family/prefix",
+        "out", "--seed", "0", "--small");
+    assertArrayEquals(new String[] { inWorkingDirectory("refs"), inWorkingDirectory("donors"),
+        "10", "family/prefix", inWorkingDirectory("out"), "--seed", "0", "--small" }, resolved);
+  }
+
+  @Test
+  public void testFlagsDoNotTakeValues() {
+    final String[] resolved = resolve("prepare-reference", "--vulkan", "shader.json",
+        "prepared.json");
+    assertArrayEquals(new String[] { "--vulkan", inWorkingDirectory("shader.json"),
+        inWorkingDirectory("prepared.json") }, resolved);
+  }
+
+  @Test
+  public void testOptionValuesAfterEquals() {
+    final String[] resolved = resolve("glsl-reduce", "shader.json", "python3",
+        "--reference=ref.info.json", "--metric=fuzzy_diff");
+    assertArrayEquals(new String[] { inWorkingDirectory("shader.json"), "python3",
+        "--reference=" + inWorkingDirectory("ref.info.json"), "--metric=fuzzy_diff" }, resolved);
+  }
+
+  @Test
+  public void testCommandsAreResolvedOnlyWithDirectoryPart() {
+    final String[] resolved = resolve("glsl-reduce", "shader.json", "./interesting.sh", "--",
+        "-1");
+    assertArrayEquals(new String[] { inWorkingDirectory("shader.json"),
+        inWorkingDirectory("./interesting.sh"), "--", "-1" }, resolved);
+  }
+
+  @Test
+  public void testAbsolutePathsAreUnchanged() {
+    final String[] resolved = resolve("mutate", "/tmp/in.json", "/tmp/out.json", "--seed", "1");
+    assertArrayEquals(new String[] { "/tmp/in.json", "/tmp/out.json", "--seed", "1" }, resolved);
+  }
+
+  @Test
+  public void testTokenFileIsCreatedPrivateAndReused() throws Exception {
+    final File tokenFile = new File(temporaryFolder.getRoot(), "token");
+    final String token = ToolServer.readOrCreateToken(tokenFile);
+    assertEquals(64, token.length());
+    assertEquals("rw-------",
+        PosixFilePermissions.toString(Files.getPosixFilePermissions(tokenFile.toPath())));
+    assertEquals(token, ToolServer.readOrCreateToken(tokenFile));
+  }
+
+  @Test(expected = IOException.class)
+  public void testTokenFileReadableByOthersIsRejected() throws Exception {
+    final File tokenFile = temporaryFolder.newFile("token");
+    Files.write(tokenFile.toPath(), "secret\n".getBytes(StandardCharsets.UTF_8));
+    Files.setPosixFilePermissions(tokenFile.toPath(), PosixFilePermissions.fromString("rw-r--r--"));
+    ToolServer.readOrCreateToken(tokenFile);
+  }
+
+  @Test
+  public void testClientMustPresentToken() throws Exception {
+    final ToolServer toolServer = new ToolServer(0, 4,
+        Collections.singletonMap("echo", args -> System.out.print(String.join(" ", args))),
+        "secret");
+    try (ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+      final Thread serverThread = new Thread(() -> {
+        try {
+          toolServer.runServer(serverSocket);
+        } catch (IOException exception) {
+          // The socket was closed, ending the test.
+        }
+      });
+      serverThread.start();
+
+      final ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+      assertEquals(1, request(serverSocket.getLocalPort(),
+          Arrays.asList("wrong", "/", "echo", "hello"), stdout));
+      assertEquals("", stdout.toString("UTF-8"));
+
+      assertEquals(0, request(serverSocket.getLocalPort(),
+          Arrays.asList("secret", "/", "echo", "hello"), stdout));
+      assertEquals("hello", stdout.toString("UTF-8"));
+
+      serverSocket.close();
+      serverThread.join();
+    }
+  }
+
+  @Test
+  public void testThreadsOutlivingRequestDoNotInheritItsOutput() throws Exception {
+    // Started by the first request that uses it, and used by later requests.
+    final ExecutorService sharedExecutor = Executors.newSingleThreadExecutor();
+    final ToolServer toolServer = new ToolServer(0, 4,
+        Collections.singletonMap("print", args -> sharedExecutor.submit(
+            () -> System.out.print(args[0])).get()),
+        "secret");
+    // The server sends output that is not for a client to the standard output it finds.
+    final PrintStream originalStdout = System.out;
+    final ByteArrayOutputStream consoleStdout = new ByteArrayOutputStream();
+    System.setOut(new PrintStream(consoleStdout, true, "UTF-8"));
+    try (ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+      final Thread serverThread = new Thread(() -> {
+        try {
+          toolServer.runServer(serverSocket);
+        } catch (IOException exception) {
+          // The socket was closed, ending the test.
+        }
+      });
+      serverThread.start();
+
+      final ByteArrayOutputStream firstStdout = new ByteArrayOutputStream();
+      assertEquals(0, request(serverSocket.getLocalPort(),
+          Arrays.asList("secret", "/", "print", "first"), firstStdout));
+      assertEquals("first", firstStdout.toString("UTF-8"));
+
+      // The executor's thread was started by the first request, which has finished, so its output
+      // now goes to the server's console.
+      final ByteArrayOutputStream secondStdout = new ByteArrayOutputStream();
+      assertEquals(0, request(serverSocket.getLocalPort(),
+          Arrays.asList("secret", "/", "print", "second"), secondStdout));
+      assertEquals("", secondStdout.toString("UTF-8"));
+      assertEquals("second", consoleStdout.toString("UTF-8"));
+
+      serverSocket.close();
+      serverThread.join();
+    } finally {
+      System.setOut(originalStdout);
+      sharedExecutor.shutdownNow();
+    }
+  }
+
+  private static int request(int port, List<String> strings, ByteArrayOutputStream stdout)
+      throws IOException {
+    try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+      final DataOutputStream outputStream = new DataOutputStream(socket.getOutputStream());
+      outputStream.writeInt(strings.size());
+      for (String string : strings) {
+        final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        outputStream.writeInt(bytes.length);
+        outputStream.write(bytes);
+      }
+      outputStream.flush();
+      final DataInputStream inputStream = new DataInputStream(socket.getInputStream());
+      while (true) {
+        final int kind = inputStream.readUnsignedByte();
+        if (kind == ToolServer.FRAME_EXIT) {
+          return inputStream.readInt();
+        }
+        final byte[] bytes = new byte[inputStream.readInt()];
+        inputStream.readFully(bytes);
+        if (kind == ToolServer.FRAME_STDOUT) {
+          stdout.write(bytes);
+        }
+      }
+    }
+  }
+
+}
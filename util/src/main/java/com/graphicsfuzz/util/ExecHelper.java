@@ -19,11 +19,13 @@ package com.graphicsfuzz.util;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.lang.ProcessBuilder.Redirect;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -72,6 +74,28 @@ public class ExecHelper {
       boolean shell,
       InputStream inputStream,
       String... command) throws IOException, InterruptedException {
+    return exec(redirectType, directory, shell, inputStream, 0, command);
+  }
+
+  /**
+   * Executes a command, killing it if it does not finish in time.
+   * @param redirectType How output should be redirected.
+   * @param directory The working directory, or null for the current one.
+   * @param shell Whether to run the command via the shell.
+   * @param inputStream Copied to the process's standard input, unless null.
+   * @param timeoutMillis Time after which the process is killed; 0 means no limit.
+   * @param command The command.
+   * @return The result, which records whether the process was killed.
+   * @throws InterruptedException if interrupted while waiting, in which case the process is
+   *                              killed.
+   */
+  public ExecResult exec(
+      RedirectType redirectType,
+      File directory,
+      boolean shell,
+      InputStream inputStream,
+      long timeoutMillis,
+      String... command) throws IOException, InterruptedException {
 
     LOGGER.info(String.join(" ", command));
 
@@ -143,13 +167,41 @@ public class ExecHelper {
         assert false;
     }
 
-    // If an input stream has been provided, copy it to the process's standard input.
-    if (inputStream != null) {
-      IOUtils.copy(inputStream, process.getOutputStream());
+    Thread inputCopier = null;
+    if (timeoutMillis > 0) {
+      // Copy any input on another thread, so that a process that hangs without reading it cannot
+      // block us beyond the timeout.
+      inputCopier = new Thread(() -> {
+        try {
+          copyInput(inputStream, process);
+        } catch (IOException exception) {
+          LOGGER.debug("Could not write input to process.", exception);
+        }
+      });
+      inputCopier.setDaemon(true);
+      inputCopier.start();
+    } else {
+      copyInput(inputStream, process);
     }
-    process.getOutputStream().close();
 
-    int res = process.waitFor();
+    boolean timedOut = false;
+    int res;
+    try {
+      if (timeoutMillis > 0 && !process.waitFor(timeoutMillis, TimeUnit.MILLISECONDS)) {
+        LOGGER.info("Timed out after {} ms; killing process.", timeoutMillis);
+        timedOut = true;
+        process.destroyForcibly();
+      }
+      res = process.waitFor();
+    } catch (InterruptedException exception) {
+      // Whoever interrupted us no longer wants the result, so do not leave the process running.
+      LOGGER.info("Interrupted; killing process.");
+      process.destroyForcibly();
+      throw exception;
+    }
+    if (inputCopier != null) {
+      inputCopier.join();
+    }
 
     if (outputGobbler != null) {
       outputGobbler.join();
@@ -162,7 +214,7 @@ public class ExecHelper {
 
     LOGGER.info("Result: {}", res);
 
-    return new ExecResult(res, stdout, stderr, stdoutFile, stderrFile);
+    return new ExecResult(res, stdout, stderr, stdoutFile, stderrFile, timedOut);
   }
 
   /**
@@ -176,6 +228,16 @@ public class ExecHelper {
     return exec(redirectType, directory, shell, null, command);
   }
 
+  // If an input stream has been provided, copies it to the process's standard input.  The standard
+  // input is closed either way.
+  private static void copyInput(InputStream inputStream, Process process) throws IOException {
+    try (OutputStream processInput = process.getOutputStream()) {
+      if (inputStream != null) {
+        IOUtils.copy(inputStream, processInput);
+      }
+    }
+  }
+
   public static void addToPath(Map<String, String> envVars, String pathToAdd) {
     if (!envVars.containsKey(pathVar)) {
       envVars.put(pathVar, pathToAdd);